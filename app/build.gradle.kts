@@ -32,6 +32,9 @@ android {
 }
 
 dependencies {
+    // Android-free recording core
+    implementation(project(":core"))
+
     // Core & compatibility
     implementation(libs.core)
     implementation(libs.appcompat)
@@ -0,0 +1,249 @@
+package com.example.roadsensorrecorder;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.Arrays;
+
+/**
+ * {@link SensorSource} backed by the sensors of a {@link ChannelSchema}, optionally batched in
+ * the sensor hub FIFO. Events are dispatched to their channel through a table indexed by sensor
+ * type, so each extra sensor costs one array slot rather than per-event work. All callbacks,
+ * including the flush-completion and timeout, run on the thread of the {@link Handler} passed
+ * in; start/stop may be called from any thread.
+ */
+final class AndroidSensorSource implements SensorSource, SensorEventListener2 {
+
+    private static final String TAG = "AndroidSensorSource";
+
+    // Upper bound on waiting for the FIFO flush that precedes a rate change
+    private static final long REREGISTER_FLUSH_TIMEOUT_MS = 1000;
+
+    private final SensorManager sensorManager;
+    private final Handler handler;
+    private final ChannelSchema schema;
+    // Parallel: the registered sensors, their channels and fixed periods (SESSION_RATE to follow samplingPeriodUs)
+    private final Sensor[] sensors;
+    private final int[] channels;
+    private final int[] fixedPeriodsUs;
+    // Channel id by Sensor.getType(), -1 for types not recorded
+    private final int[] channelByType;
+    // Values kept per channel id
+    private final int[] valueCounts = new int[Channels.COUNT];
+
+    private volatile Listener listener;
+    // Sampling time to hand-off into the pipeline, written on the callback thread only
+    private final LatencyStats deliveryLatency = new LatencyStats("sensor sample-to-enqueue latency");
+    private boolean started;
+    private SensorBatching batching = SensorBatching.CONTINUOUS;
+    private int samplingPeriodUs = DEFAULT_SAMPLING_PERIOD_US;
+    private boolean reregisterPending;
+    private int registered;
+    private int batched;
+    private int pendingFlushes;
+    private Runnable pendingStop;
+    private final Runnable flushTimeout = () -> {
+        Log.w(TAG, "Sensor flush timed out; stopping with " + pendingFlushes + " flushes outstanding");
+        finishStop();
+    };
+    private final Runnable reregisterTimeout = () -> {
+        synchronized (this) {
+            if (!reregisterPending) return;
+            Log.w(TAG, "Sensor flush timed out; changing rate with " + pendingFlushes + " flushes outstanding");
+            pendingFlushes = 0;
+            reregister();
+        }
+    };
+
+    /** @param requested channels to record; those the device has no sensor for are left out of {@link #schema()} */
+    AndroidSensorSource(SensorManager sensorManager, Handler handler, ChannelSchema requested) {
+        this.sensorManager = sensorManager;
+        this.handler = handler;
+        int[] wanted = requested.sensorChannels();
+        Sensor[] found = new Sensor[wanted.length];
+        int n = 0;
+        int maxType = 0;
+        ChannelSchema available = requested;
+        for (int ch : wanted) {
+            Sensor s = sensorManager == null ? null : sensorManager.getDefaultSensor(Channels.sensorType(ch));
+            if (s == null) {
+                Log.w(TAG, "No " + Channels.name(ch) + " sensor; not recording it");
+                available = available.without(ch);
+                continue;
+            }
+            found[n++] = s;
+            maxType = Math.max(maxType, Channels.sensorType(ch));
+        }
+        schema = available;
+        sensors = new Sensor[n];
+        channels = available.sensorChannels();
+        fixedPeriodsUs = new int[n];
+        channelByType = new int[maxType + 1];
+        Arrays.fill(channelByType, -1);
+        for (int i = 0; i < n; i++) {
+            int ch = channels[i];
+            sensors[i] = found[i];
+            fixedPeriodsUs[i] = available.periodUs(ch);
+            channelByType[Channels.sensorType(ch)] = ch;
+            valueCounts[ch] = BinaryFormat.valueCount(BinaryFormat.kindOf(ch));
+        }
+    }
+
+    /** The requested schema minus the sensors this device lacks: what the session file should declare. */
+    ChannelSchema schema() {
+        return schema;
+    }
+
+    @Override
+    public synchronized void start(Listener listener, SensorBatching batching) {
+        if (sensorManager == null) return;
+        this.listener = listener;
+        this.batching = batching;
+        handler.post(deliveryLatency::reset);
+        registerAll();
+    }
+
+    // Caller holds the lock
+    private void registerAll() {
+        registered = 0;
+        batched = 0;
+        for (int i = 0; i < sensors.length; i++) {
+            Sensor s = sensors[i];
+            int periodUs = fixedPeriodsUs[i] > 0 ? fixedPeriodsUs[i] : samplingPeriodUs;
+            int latencyUs = batching.reportLatencyUs(periodUs, s.getFifoMaxEventCount(),
+                    s.getFifoReservedEventCount(), sensors.length, RecordingPipeline.RING_CAPACITY);
+            boolean ok = sensorManager.registerListener(this, s, periodUs, latencyUs, handler);
+            Log.i(TAG, "Registered " + s.getName() + " periodUs=" + periodUs + " fifo=" + s.getFifoMaxEventCount()
+                    + " maxReportLatencyUs=" + latencyUs + " ok=" + ok);
+            if (ok) {
+                registered++;
+                if (latencyUs > 0) batched++;
+            }
+        }
+        started = registered > 0;
+    }
+
+    @Override
+    public synchronized void setSamplingPeriod(int periodUs) {
+        if (periodUs == samplingPeriodUs) return;
+        samplingPeriodUs = periodUs;
+        if (!started || pendingStop != null || reregisterPending) return;
+        // Unregistering discards whatever batched sensors still hold, so drain the FIFOs first
+        if (batched > 0 && sensorManager.flush(this)) {
+            reregisterPending = true;
+            pendingFlushes += registered;
+            handler.postDelayed(reregisterTimeout, REREGISTER_FLUSH_TIMEOUT_MS);
+        } else {
+            reregister();
+        }
+    }
+
+    // Caller holds the lock
+    private void reregister() {
+        reregisterPending = false;
+        handler.removeCallbacks(reregisterTimeout);
+        if (!started) return;
+        sensorManager.unregisterListener(this);
+        registerAll();
+    }
+
+    @Override
+    public synchronized void stop(long flushTimeoutMillis, Runnable onStopped) {
+        if (!started) {
+            if (onStopped != null) handler.post(onStopped);
+            return;
+        }
+        pendingStop = onStopped;
+        // Stopping supersedes a rate change waiting for its flush
+        reregisterPending = false;
+        handler.removeCallbacks(reregisterTimeout);
+        // Only batched sensors hold samples back; a flush completion arrives for every registered one
+        if (batched > 0 && sensorManager.flush(this)) {
+            pendingFlushes += registered;
+            handler.postDelayed(flushTimeout, flushTimeoutMillis);
+        } else {
+            finishStop();
+        }
+    }
+
+    @Override
+    public void stopNow() {
+        Runnable r;
+        synchronized (this) {
+            if (!started) return;
+            r = unregister();
+        }
+        if (r != null) r.run();
+    }
+
+    private void finishStop() {
+        Runnable r;
+        synchronized (this) {
+            r = unregister();
+        }
+        if (r != null) r.run();
+    }
+
+    // Caller holds the lock; returns the pending stop callback to run outside it
+    private Runnable unregister() {
+        handler.removeCallbacks(flushTimeout);
+        handler.removeCallbacks(reregisterTimeout);
+        reregisterPending = false;
+        sensorManager.unregisterListener(this);
+        listener = null;
+        started = false;
+        pendingFlushes = 0;
+        Runnable r = pendingStop;
+        pendingStop = null;
+        handler.post(() -> Log.i(TAG, deliveryLatency.summary()));
+        return r;
+    }
+
+    @Override
+    public void onSensorChanged(SensorEvent event) {
+        Listener l = listener;
+        if (l == null || event == null || event.sensor == null || event.values == null) return;
+        int type = event.sensor.getType();
+        int channel = type >= 0 && type < channelByType.length ? channelByType[type] : -1;
+        if (channel < 0) return;
+
+        float[] v = event.values;
+        int n = Math.min(valueCounts[channel], v.length);
+        float x = n > 0 ? v[0] : 0f;
+        float y = n > 1 ? v[1] : 0f;
+        float z = n > 2 ? v[2] : 0f;
+        if (channel == Channels.ROTATION_VECTOR && v.length > 3 && v[3] < 0) {
+            // q and -q are the same rotation; keep w >= 0 so the dropped w can be recomputed
+            x = -x;
+            y = -y;
+            z = -z;
+        }
+
+        // event.timestamp is the elapsed-realtime time of sampling, monotonic and immune to wall-clock
+        // steps; the drain writes periodic anchors that map it back to wall time
+        long now = SystemClock.elapsedRealtimeNanos();
+        l.onSensorSample(channel, event.timestamp, now, x, y, z);
+        deliveryLatency.record(now - event.timestamp);
+    }
+
+    @Override
+    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+
+    @Override
+    public void onFlushCompleted(Sensor sensor) {
+        synchronized (this) {
+            if (pendingFlushes > 0) pendingFlushes--;
+            if (pendingFlushes > 0) return;
+            if (pendingStop == null) {
+                if (reregisterPending) reregister();
+                return;
+            }
+        }
+        finishStop();
+    }
+}
@@ -8,9 +8,13 @@ import android.content.IntentFilter;
 import android.content.pm.PackageManager;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.util.Log;
 import android.widget.Button;
+import android.widget.TextView;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -26,10 +30,33 @@ public class MainActivity extends AppCompatActivity {
     private static final String TAG = "MainActivity";
 
     private Button startButton, stopButton;
+    // Pipeline metrics of the running session, when enabled in settings
+    private TextView statsText;
+    // Live sensor magnitudes, fix age and rates, polled from RecordingService.sTelemetry
+    private TextView telemetryText;
     private static final int REQ_PERMS = 100;
     // If user triggers start but permissions are missing, remember to start after grant
     private boolean pendingStartRequest = false;
 
+    // The live panel is redrawn at this fixed rate however fast the sensors deliver
+    private static final long TELEMETRY_FRAME_MS = 200;
+    // Sample rates are averaged over windows of at least this length
+    private static final long RATE_WINDOW_NS = 1_000_000_000L;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    // Reused every frame so polling allocates nothing but the text
+    private final LiveTelemetry.Reading[] readings = new LiveTelemetry.Reading[Channels.COUNT];
+    private final long[] rateWindowCounts = new long[Channels.COUNT];
+    private final float[] rates = new float[Channels.COUNT];
+    private long rateWindowStartNanos;
+    private final StringBuilder telemetryLine = new StringBuilder(128);
+    private final Runnable telemetryFrame = new Runnable() {
+        @Override
+        public void run() {
+            showTelemetry();
+            uiHandler.postDelayed(this, TELEMETRY_FRAME_MS);
+        }
+    };
+
     // Local broadcast receiver to listen for recording state changes from the service
     private final BroadcastReceiver recordingStateReceiver = new BroadcastReceiver() {
         @Override
@@ -41,6 +68,8 @@ public class MainActivity extends AppCompatActivity {
                 updateButtons(true);
             } else if (RecordingService.ACTION_RECORDING_STOPPED.equals(action)) {
                 updateButtons(false);
+            } else if (RecordingService.ACTION_STATS_UPDATED.equals(action)) {
+                showStats();
             }
         }
     };
@@ -52,6 +81,9 @@ public class MainActivity extends AppCompatActivity {
 
         startButton = findViewById(R.id.startButton);
         stopButton = findViewById(R.id.stopButton);
+        statsText = findViewById(R.id.statsText);
+        telemetryText = findViewById(R.id.telemetryText);
+        for (int ch = 0; ch < readings.length; ch++) readings[ch] = new LiveTelemetry.Reading();
 
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
             checkPermissions();
@@ -81,7 +113,11 @@ public class MainActivity extends AppCompatActivity {
         IntentFilter filter = new IntentFilter();
         filter.addAction(RecordingService.ACTION_RECORDING_STARTED);
         filter.addAction(RecordingService.ACTION_RECORDING_STOPPED);
+        filter.addAction(RecordingService.ACTION_STATS_UPDATED);
         LocalBroadcastManager.getInstance(this).registerReceiver(recordingStateReceiver, filter);
+        showStats();
+        rateWindowStartNanos = 0;
+        uiHandler.post(telemetryFrame);
 
         // If user was sent to settings to enable notifications or permissions, resume pending start
         if (pendingStartRequest) {
@@ -103,6 +139,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
+        uiHandler.removeCallbacks(telemetryFrame);
         // Unregister local broadcast receiver
         try {
             LocalBroadcastManager.getInstance(this).unregisterReceiver(recordingStateReceiver);
@@ -243,6 +280,74 @@ public class MainActivity extends AppCompatActivity {
         updateButtons(false);
     }
 
+    private void showStats() {
+        PipelineMetrics.Snapshot stats = RecordingService.sLatestStats;
+        runOnUiThread(() -> statsText.setText(stats == null ? "" : stats.summary()));
+    }
+
+    // Runs on the UI thread every TELEMETRY_FRAME_MS while the activity is in front
+    private void showTelemetry() {
+        if (!RecordingService.sIsRunning) {
+            telemetryText.setText("");
+            rateWindowStartNanos = 0;
+            return;
+        }
+        LiveTelemetry telemetry = RecordingService.sTelemetry;
+        for (int ch = 0; ch < readings.length; ch++) telemetry.read(ch, readings[ch]);
+        long now = SystemClock.elapsedRealtimeNanos();
+        if (rateWindowStartNanos == 0 || now - rateWindowStartNanos >= RATE_WINDOW_NS) {
+            float seconds = (now - rateWindowStartNanos) / 1e9f;
+            for (int ch = 0; ch < readings.length; ch++) {
+                long count = readings[ch].count;
+                rates[ch] = rateWindowStartNanos == 0 ? 0 : (count - rateWindowCounts[ch]) / seconds;
+                rateWindowCounts[ch] = count;
+            }
+            rateWindowStartNanos = now;
+        }
+
+        StringBuilder sb = telemetryLine;
+        sb.setLength(0);
+        sb.append("Accel ");
+        appendFixed(sb, readings[Channels.ACCELEROMETER].magnitude(), 2);
+        sb.append(" m/s2  ");
+        appendFixed(sb, rates[Channels.ACCELEROMETER], 0);
+        sb.append(" Hz\nGyro  ");
+        appendFixed(sb, readings[Channels.GYROSCOPE].magnitude(), 2);
+        sb.append(" rad/s ");
+        appendFixed(sb, rates[Channels.GYROSCOPE], 0);
+        sb.append(" Hz\nFix   ");
+        LiveTelemetry.Reading fix = readings[Channels.LOCATION];
+        if (fix.timestamp == 0) {
+            sb.append("none");
+        } else {
+            appendFixed(sb, (now - fix.timestamp) / 1e9f, 1);
+            sb.append(" s old ");
+            appendFixed(sb, rates[Channels.LOCATION], 1);
+            sb.append(" Hz");
+        }
+        telemetryText.setText(sb);
+    }
+
+    // String.format would allocate a Formatter every frame
+    private static void appendFixed(StringBuilder sb, float value, int decimals) {
+        if (Float.isNaN(value)) {
+            sb.append('-');
+            return;
+        }
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        long scale = decimals == 0 ? 1 : decimals == 1 ? 10 : 100;
+        long scaled = Math.round(value * scale);
+        sb.append(scaled / scale);
+        if (decimals == 0) return;
+        sb.append('.');
+        long frac = scaled % scale;
+        if (decimals == 2 && frac < 10) sb.append('0');
+        sb.append(frac);
+    }
+
     private void updateButtons(boolean recording) {
         runOnUiThread(() -> {
             startButton.setEnabled(!recording);
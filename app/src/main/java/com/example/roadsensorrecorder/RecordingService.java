@@ -6,13 +6,16 @@ import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.Context;
 import android.content.Intent;
-import android.hardware.Sensor;
-import android.hardware.SensorEvent;
-import android.hardware.SensorEventListener;
+import android.content.SharedPreferences;
 import android.hardware.SensorManager;
 import android.location.Location;
 import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -28,17 +31,20 @@ import com.google.android.gms.location.LocationRequest;
 import com.google.android.gms.location.LocationResult;
 import com.google.android.gms.location.LocationServices;
 
-import java.io.BufferedWriter;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
-public class RecordingService extends LifecycleService implements SensorEventListener {
+public class RecordingService extends LifecycleService implements SensorSource.Listener {
 
     public static final String ACTION_START = "com.example.roadsensorrecorder.action.START";
     public static final String ACTION_STOP = "com.example.roadsensorrecorder.action.STOP";
@@ -47,30 +53,102 @@ public class RecordingService extends LifecycleService implements SensorEventLis
     // Broadcast actions for activity to observe recording state changes
     public static final String ACTION_RECORDING_STARTED = "com.example.roadsensorrecorder.action.RECORDING_STARTED";
     public static final String ACTION_RECORDING_STOPPED = "com.example.roadsensorrecorder.action.RECORDING_STOPPED";
+    // Broadcast after each metrics interval; read the numbers from sLatestStats
+    public static final String ACTION_STATS_UPDATED = "com.example.roadsensorrecorder.action.STATS_UPDATED";
 
     // Public flag visible to Activity to check whether service is currently recording
     public static volatile boolean sIsRunning = false;
+    // Last pipeline metrics interval of the current or previous session, null if metrics are off
+    static volatile PipelineMetrics.Snapshot sLatestStats;
+    // Latest sample per channel for the live panel; the callback threads publish, the UI polls
+    static final LiveTelemetry sTelemetry = new LiveTelemetry(Channels.COUNT);
 
     private static final String CHANNEL_ID = "recording_channel";
     private static final int NOTIFICATION_ID = 1;
     private static final String TAG = "RecordingService";
 
+    // How often the IO thread drains the ring into the file
+    private static final long DRAIN_INTERVAL_MS = 100;
+    // Path of the session file currently being written; left behind if the process is killed
+    private static final String KEY_ACTIVE_SESSION = "active_session_file";
+    // Upper bound on waiting for batched sensors to hand over their FIFO contents at stop
+    private static final long SENSOR_FLUSH_TIMEOUT_MS = 1000;
+    // Longest onDestroy blocks the main thread for the close to finish, well inside the service timeout
+    private static final long DESTROY_WAIT_MAX_MS = 8000;
+    // Time left for finishing the pipeline stages and closing the file after the drain deadline
+    private static final long CLOSE_MARGIN_MS = 1000;
+    // Resampler look-behind per sensor (~5 s at 100 Hz) and how long a silent channel is held
+    private static final int RESAMPLE_LOOK_BEHIND = 512;
+    private static final long RESAMPLE_MAX_HOLD_NS = 2_000_000_000L;
+    // Requested location update interval
+    private static final long LOCATION_INTERVAL_MS = ChannelSchema.LOCATION_PERIOD_US / 1000;
+    // Vertical acceleration counted as a roughness peak, m/s^2
+    private static final double FEATURE_PEAK_THRESHOLD = 3.0;
+    // Event capture summary cadence
+    private static final long EVENT_SUMMARY_INTERVAL_NS = 1_000_000_000L;
+    // Adaptive rate: speed margin around tier thresholds and how long to wait before slowing down
+    private static final float RATE_HYSTERESIS_MPS = 0.5f;
+    private static final long RATE_DOWNSHIFT_DELAY_NS = 10_000_000_000L;
+    // Sixth-order Butterworth anti-aliasing filter for decimated output
+    private static final int DECIMATION_SECTIONS = 3;
+
     private SensorManager sensorManager;
-    private Sensor accelerometer, gyroscope;
+    // Written on the main thread, read by the location thread for rate changes
+    private volatile SensorSource sensorSource;
+    // Speed-driven sampling rate, null unless enabled; used on the location thread
+    private volatile SamplingRateController rateController;
+    // Sensor and location callbacks run here instead of the main looper, so UI work cannot delay them
+    private HandlerThread sensorThread;
+    private HandlerThread locationThread;
+    private Handler mainHandler;
+    // Fix time to hand-off into the pipeline, written on the location callback thread only
+    private final LatencyStats locationLatency = new LatencyStats("location fix-to-enqueue latency");
+    // Main-thread view of whether a session is active (sIsRunning is also written by the Activity)
+    private boolean recording;
+    // Main thread: true from a stop until its session is closed on the IO thread. The closing
+    // session still owns the ring and the drain task, so a start meanwhile waits for it.
+    private boolean stopping;
+    private boolean startPending;
+    // Main thread: start id of the latest stop command, released once the session is closed
+    private int stopStartId;
     private FusedLocationProviderClient fusedLocationClient;
     private LocationCallback locationCallback;
 
-    private BufferedWriter bufferedWriter;
-    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    // The open session and its drain state; written on the IO thread once the file is open
+    private volatile RecordingPipeline pipeline;
+    // True from just before the sensors are registered until the session close is queued. Samples
+    // are accepted into the ring while the file is still being opened and written once it is.
+    private volatile boolean accepting;
+    private final ScheduledExecutorService ioExecutor = Executors.newSingleThreadScheduledExecutor();
+
+    // Sensor/location callbacks copy primitives here; the IO thread drains in bulk
+    private final SampleRingBuffer ringBuffer = new SampleRingBuffer(RecordingPipeline.RING_CAPACITY, Channels.COUNT);
+    private final RecordingPipeline.Listener pipelineListener = new RecordingPipeline.Listener() {
+        @Override
+        public void onFirstPersisted(long nanos) {
+            Log.i(TAG, "First samples persisted " + nanos / 1_000_000 + " ms after start");
+        }
+
+        @Override
+        public void onStats(PipelineMetrics.Snapshot snapshot) {
+            sLatestStats = snapshot;
+            LocalBroadcastManager.getInstance(RecordingService.this).sendBroadcast(new Intent(ACTION_STATS_UPDATED));
+        }
+    };
+    // Main thread: how long the final drain at stop may take, from the session's settings
+    private long stopDrainDeadlineMs = RecordingSettings.DEFAULT_STOP_DRAIN_DEADLINE_MS;
+    private final Runnable drainTask = this::drainRingBuffer;
+    private ScheduledFuture<?> drainFuture;
 
     @Override
     public void onCreate() {
         super.onCreate();
         sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
-        if (sensorManager != null) {
-            accelerometer = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER);
-            gyroscope = sensorManager.getDefaultSensor(Sensor.TYPE_GYROSCOPE);
-        }
+        mainHandler = new Handler(getMainLooper());
+        sensorThread = new HandlerThread("SensorCallbacks", Process.THREAD_PRIORITY_URGENT_DISPLAY);
+        sensorThread.start();
+        locationThread = new HandlerThread("LocationCallbacks", Process.THREAD_PRIORITY_FOREGROUND);
+        locationThread.start();
         fusedLocationClient = LocationServices.getFusedLocationProviderClient(this);
 
         locationCallback = new LocationCallback() {
@@ -78,11 +156,31 @@ public class RecordingService extends LifecycleService implements SensorEventLis
             public void onLocationResult(@NonNull LocationResult locationResult) {
                 for (Location location : locationResult.getLocations()) {
                     writeLocation(location);
+                    updateSamplingRate(location);
                 }
             }
         };
 
         createNotificationChannel();
+        ioExecutor.execute(this::recoverUnclosedSession);
+    }
+
+    // Runs on ioExecutor: repair a session the previous process never closed
+    private void recoverUnclosedSession() {
+        SharedPreferences prefs = getSharedPreferences(RecordingSettings.PREFS_NAME, Context.MODE_PRIVATE);
+        String path = prefs.getString(KEY_ACTIVE_SESSION, null);
+        if (path == null) return;
+        File file = new File(path);
+        if (file.exists()) {
+            try {
+                SessionRecovery.Result result = SessionRecovery.recover(file);
+                Log.w(TAG, "Recovered unclosed session " + result.file.getName() + ": kept " + result.keptBytes
+                        + " bytes, discarded " + result.discardedBytes + " bytes of torn tail");
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to recover unclosed session " + path, e);
+            }
+        }
+        prefs.edit().remove(KEY_ACTIVE_SESSION).commit();
     }
 
     private void createNotificationChannel() {
@@ -122,20 +220,82 @@ public class RecordingService extends LifecycleService implements SensorEventLis
 
     private void startRecordingInternal() {
         Log.i(TAG, "startRecordingInternal: starting recording");
+        RecordingSettings settings = RecordingSettings.load(this);
+        ringBuffer.setPolicy(settings.backpressurePolicy);
+        ringBuffer.setDecimationFactor(settings.decimationFactor);
+        ringBuffer.resetDroppedCounts();
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        stopDrainDeadlineMs = settings.stopDrainDeadlineMs;
+        // The period the sensors are registered at below
+        int sensorPeriodUs = settings.decimationOutputHz > 0
+                ? 1_000_000 / (settings.decimationOutputHz * settings.decimationInputFactor)
+                : settings.adaptiveRate
+                        ? SamplingRateController.DEFAULT_PERIODS_US[SamplingRateController.DEFAULT_PERIODS_US.length - 1]
+                        : SensorSource.DEFAULT_SAMPLING_PERIOD_US;
+        // The period session-rate channels reach the pipeline stages at, after decimation
+        int stagePeriodUs = settings.decimationOutputHz > 0 ? 1_000_000 / settings.decimationOutputHz : sensorPeriodUs;
+        sLatestStats = null;
+        // Registers nothing yet; settles which of the requested sensors this device has. The
+        // main-looper option is kept to compare sample-to-enqueue latency against the dedicated threads.
+        Looper sensorLooper = settings.dedicatedCallbackThreads ? sensorThread.getLooper() : getMainLooper();
+        AndroidSensorSource source = new AndroidSensorSource(sensorManager, new Handler(sensorLooper), settings.channels);
+        ChannelSchema schema = source.schema();
+        Log.i(TAG, "Recording " + schema);
         ioExecutor.execute(() -> {
             try {
-                String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-                File file = new File(getExternalFilesDir(null), "sensor_data_" + timestamp + ".csv");
-                bufferedWriter = new BufferedWriter(new FileWriter(file));
-                bufferedWriter.write("Time,Type,X,Y,Z,Latitude,Longitude\n");
-                bufferedWriter.flush();
+                long openStart = SystemClock.elapsedRealtimeNanos();
+                RecordingSession opened = openSession(settings, schema);
+                Log.i(TAG, "Opened " + opened.file.getName() + " in " + (SystemClock.elapsedRealtimeNanos() - openStart) / 1_000_000
+                        + " ms; " + ringBuffer.size() + " samples buffered meanwhile");
+                RecordingPipeline p = new RecordingPipeline(ringBuffer, opened, SystemClock::elapsedRealtimeNanos, startNanos);
+                p.setListener(pipelineListener);
+                opened.setSegmentListener((writer, index) -> {
+                    p.onSegmentStarted(writer);
+                    Log.i(TAG, "Started segment " + index);
+                });
+                if (settings.decimationOutputHz > 0) {
+                    p.setDecimation(new DecimationFilter(Channels.COUNT,
+                            settings.decimationOutputHz * settings.decimationInputFactor,
+                            settings.decimationInputFactor, DECIMATION_SECTIONS));
+                }
+                if (settings.resampleEnabled) {
+                    p.setResampler(new FixedRateResampler(opened.writer(), settings.resampleRateHz,
+                            RESAMPLE_LOOK_BEHIND, RESAMPLE_MAX_HOLD_NS));
+                }
+                if (settings.eventCapture) p.setEventCapture(newEventCapture(settings, schema, stagePeriodUs, opened.writer()));
+                p.setRecordRaw(settings.recordRaw);
+                if (settings.metricsEnabled) {
+                    PipelineMetrics metrics = new PipelineMetrics(Channels.COUNT, settings.metricsIntervalNanos, startNanos);
+                    for (int ch = 0; ch < Channels.COUNT; ch++) {
+                        if (!schema.contains(ch)) continue;
+                        metrics.setRequestedPeriodUs(ch, schema.followsSessionRate(ch) ? sensorPeriodUs : schema.periodUs(ch));
+                    }
+                    p.setMetrics(metrics);
+                }
+                if (settings.adaptiveRate) {
+                    // Controllers start at full rate; state it so every sample has a known rate
+                    int[] periods = SamplingRateController.DEFAULT_PERIODS_US;
+                    opened.writer().writeRate(SystemClock.elapsedRealtimeNanos(), periods[periods.length - 1], Float.NaN);
+                } else if (settings.decimationOutputHz > 0) {
+                    // Record the effective output rate, not the oversampled input rate
+                    opened.writer().writeRate(SystemClock.elapsedRealtimeNanos(),
+                            1_000_000 / settings.decimationOutputHz, Float.NaN);
+                }
+                if (settings.featuresEnabled) openFeatures(settings, p);
+                getSharedPreferences(RecordingSettings.PREFS_NAME, Context.MODE_PRIVATE).edit()
+                        .putString(KEY_ACTIVE_SESSION, opened.file.getAbsolutePath()).commit();
+                pipeline = p;
+                // Write what was captured while the file was opening without waiting for the first tick
+                drainRingBuffer();
             } catch (IOException e) {
                 Log.e(TAG, "Failed to create file", e);
             }
         });
+        drainFuture = ioExecutor.scheduleWithFixedDelay(drainTask, DRAIN_INTERVAL_MS, DRAIN_INTERVAL_MS, TimeUnit.MILLISECONDS);
 
         // mark service as running
         sIsRunning = true;
+        recording = true;
         // Persist state so Activity can recover UI state even if it missed the broadcast
         try {
             getSharedPreferences("app_prefs", Context.MODE_PRIVATE).edit().putBoolean("is_recording", true).apply();
@@ -143,9 +303,22 @@ public class RecordingService extends LifecycleService implements SensorEventLis
             Log.w(TAG, "Failed to persist recording state (start)", e);
         }
 
-        // Register sensors
-        if (accelerometer != null) sensorManager.registerListener(this, accelerometer, SensorManager.SENSOR_DELAY_GAME);
-        if (gyroscope != null) sensorManager.registerListener(this, gyroscope, SensorManager.SENSOR_DELAY_GAME);
+        accepting = true;
+        // Register sensors, batched in the hardware FIFO when enabled
+        Looper locationLooper = settings.dedicatedCallbackThreads ? locationThread.getLooper() : getMainLooper();
+        SamplingRateController controller = settings.adaptiveRate
+                ? new SamplingRateController(SamplingRateController.DEFAULT_SPEED_THRESHOLDS,
+                        SamplingRateController.DEFAULT_PERIODS_US, RATE_HYSTERESIS_MPS, RATE_DOWNSHIFT_DELAY_NS)
+                : null;
+        if (controller != null) source.setSamplingPeriod(controller.periodUs());
+        if (settings.decimationOutputHz > 0) {
+            // Oversample so the anti-aliasing filter has headroom above the output band
+            source.setSamplingPeriod(1_000_000 / (settings.decimationOutputHz * settings.decimationInputFactor));
+        }
+        source.start(this, settings.batching);
+        sensorSource = source;
+        rateController = controller;
+        new Handler(locationLooper).post(locationLatency::reset);
 
         // Request location updates - only if we have location permission
         try {
@@ -153,11 +326,11 @@ public class RecordingService extends LifecycleService implements SensorEventLis
             boolean hasCoarse = ContextCompat.checkSelfPermission(this, android.Manifest.permission.ACCESS_COARSE_LOCATION) == android.content.pm.PackageManager.PERMISSION_GRANTED;
             if (hasFine || hasCoarse) {
                 // Use new LocationRequest.Builder API (non-deprecated)
-                LocationRequest req = new LocationRequest.Builder(1000)
+                LocationRequest req = new LocationRequest.Builder(LOCATION_INTERVAL_MS)
                         .setMinUpdateIntervalMillis(500)
                         .setPriority(com.google.android.gms.location.Priority.PRIORITY_HIGH_ACCURACY)
                         .build();
-                fusedLocationClient.requestLocationUpdates(req, locationCallback, getMainLooper());
+                fusedLocationClient.requestLocationUpdates(req, locationCallback, locationLooper);
             } else {
                 Log.w(TAG, "Skipping location updates because no location permission granted");
             }
@@ -174,29 +347,77 @@ public class RecordingService extends LifecycleService implements SensorEventLis
         }
     }
 
-    private void stopRecordingInternal() {
+    // Runs on ioExecutor: create the session file and the encoder stack selected in settings
+    private RecordingSession openSession(RecordingSettings settings, ChannelSchema schema) throws IOException {
+        long startMillis = System.currentTimeMillis();
+        String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date(startMillis));
+        String name = "sensor_data_" + timestamp + settings.format.extension
+                + (settings.compressionEnabled ? RecordingFormat.COMPRESSED_SUFFIX : "");
+        File file = new File(getExternalFilesDir(null), name);
+        return RecordingSession.open(file, settings.format,
+                settings.compressionEnabled ? settings.compressionBlockSize : 0, schema,
+                settings.csvPrecision, settings.durability, settings.segments, settings.indexing, startMillis);
+    }
+
+    /** @param sessionPeriodUs period of the session-rate channels as the capture sees them */
+    private static EventCapture newEventCapture(RecordingSettings settings, ChannelSchema schema, int sessionPeriodUs,
+                                                RecordWriter writer) {
+        // Pre-trigger history for every sensor at up to twice its nominal rate (batching, FASTEST)
+        int perSecond = 0;
+        for (int ch : schema.sensorChannels()) {
+            int periodUs = schema.followsSessionRate(ch) ? sessionPeriodUs : schema.periodUs(ch);
+            perSecond += 2 * (1_000_000 / periodUs);
+        }
+        return new EventCapture(writer, settings.eventPreTriggerSeconds * perSecond,
+                TimeUnit.SECONDS.toNanos(settings.eventPreTriggerSeconds),
+                TimeUnit.SECONDS.toNanos(settings.eventPostTriggerSeconds),
+                EVENT_SUMMARY_INTERVAL_NS, settings.eventJerkThreshold, settings.eventGyroThreshold);
+    }
+
+    // Runs on ioExecutor: "sensor_data_X.csv" gets "sensor_data_X_features.csv"
+    private void openFeatures(RecordingSettings settings, RecordingPipeline p) throws IOException {
+        File sessionFile = p.session().file;
+        String name = sessionFile.getName();
+        int dot = name.indexOf('.');
+        File file = new File(sessionFile.getParentFile(), (dot < 0 ? name : name.substring(0, dot)) + FeatureFileWriter.SUFFIX);
+        FeatureFileWriter featureFile = new FeatureFileWriter(new BufferedOutputStream(new FileOutputStream(file), 8192));
+        // Features see the decimated stream when decimation is on; settings keep the rate fixed otherwise
+        double rateHz = settings.decimationOutputHz > 0
+                ? settings.decimationOutputHz : 1_000_000.0 / SensorSource.DEFAULT_SAMPLING_PERIOD_US;
+        p.setFeatures(new RoughnessFeatureEngine(featureFile, rateHz, settings.featuresSegmentMeters,
+                FEATURE_PEAK_THRESHOLD), featureFile);
+    }
+
+    /**
+     * @param whenStopped run on the main thread once the sensors have been flushed and the
+     *                    session file has been closed, or null
+     */
+    private void stopRecordingInternal(@Nullable Runnable whenStopped) {
         Log.i(TAG, "stopRecordingInternal: stopping recording");
         // mark service as not running
         sIsRunning = false;
+        recording = false;
+        stopping = true;
 
-        if (sensorManager != null) sensorManager.unregisterListener(this);
+        rateController = null;
         try {
             fusedLocationClient.removeLocationUpdates(locationCallback);
         } catch (Exception e) {
             Log.w(TAG, "Error removing location updates", e);
         }
+        new Handler(locationThread.getLooper()).post(() -> Log.i(TAG, locationLatency.summary()));
 
-        ioExecutor.execute(() -> {
-            try {
-                if (bufferedWriter != null) {
-                    bufferedWriter.flush();
-                    bufferedWriter.close();
-                    bufferedWriter = null;
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "Error closing file", e);
-            }
+        // Batched sensors still hold samples in the hub FIFO; get them into the ring before closing.
+        // The source calls back on the sensor thread, so hop to the main thread to finish.
+        Runnable finish = () -> closeSession(() -> {
+            stopping = false;
+            if (whenStopped != null) whenStopped.run();
         });
+        if (sensorSource == null) {
+            finish.run();
+        } else {
+            sensorSource.stop(SENSOR_FLUSH_TIMEOUT_MS, () -> mainHandler.post(finish));
+        }
 
         // Broadcast that recording stopped so Activity can update its UI
         try {
@@ -213,6 +434,64 @@ public class RecordingService extends LifecycleService implements SensorEventLis
         }
     }
 
+    /**
+     * Queue the final drain and close on the IO thread. Samples still queued are written until
+     * {@link #stopDrainDeadlineMs} after this call, counting IO work already queued; the rest is
+     * abandoned so the file is always finalized (footers, indices, manifest) in bounded time.
+     *
+     * @param whenClosed posted to the main thread after the close, whether or not it succeeded;
+     *                   dropped if the service has been destroyed by then. May be null.
+     */
+    private void closeSession(@Nullable Runnable whenClosed) {
+        accepting = false;
+        if (drainFuture != null) {
+            drainFuture.cancel(false);
+            drainFuture = null;
+        }
+        long queuedAt = SystemClock.elapsedRealtimeNanos();
+        long deadline = queuedAt + stopDrainDeadlineMs * 1_000_000L;
+        ioExecutor.execute(() -> {
+            finishSession(deadline, queuedAt);
+            if (whenClosed != null) {
+                mainHandler.post(() -> {
+                    if (!ioExecutor.isShutdown()) whenClosed.run();
+                });
+            }
+        });
+    }
+
+    // Runs on ioExecutor: the final drain and close queued by closeSession
+    private void finishSession(long deadline, long queuedAt) {
+        // Without an open session, leftovers are skipped by the next session's start time
+        RecordingPipeline p = pipeline;
+        if (p == null) return;
+        // Write whatever the callbacks queued before the listeners were removed, and a final
+        // anchor so post-processing can interpolate clock drift across the whole session
+        p.requestClockAnchor();
+        long flushed = drainRingBuffer(deadline);
+        long abandoned = p.discardQueued();
+        RecordingSession closing = p.session();
+        Log.i(TAG, "Stop drain: " + flushed + " samples flushed, " + abandoned + " abandoned, "
+                + (SystemClock.elapsedRealtimeNanos() - queuedAt) / 1_000_000 + " ms after stop");
+        try {
+            finishPipeline(p);
+        } catch (IOException e) {
+            Log.e(TAG, "Error finishing pipeline; closing the file anyway", e);
+        }
+        pipeline = null;
+        try {
+            closing.close();
+            Log.i(TAG, "Closed " + closing.file.getName() + ": " + closing.encodedBytes() + " bytes in "
+                    + closing.segmentCount() + " file(s), "
+                    + closing.commitCount() + " commits taking " + closing.commitNanos() / 1_000_000 + " ms");
+            // Only a cleanly closed session clears the marker; otherwise it is recovered on next start
+            getSharedPreferences(RecordingSettings.PREFS_NAME, Context.MODE_PRIVATE).edit()
+                    .remove(KEY_ACTIVE_SESSION).commit();
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing file", e);
+        }
+    }
+
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         super.onStartCommand(intent, flags, startId);
@@ -221,14 +500,45 @@ public class RecordingService extends LifecycleService implements SensorEventLis
         Log.i(TAG, "onStartCommand: action=" + act + " flags=" + flags + " startId=" + startId);
 
         if (intent != null && ACTION_STOP.equals(intent.getAction())) {
-            stopRecordingInternal();
-            stopForeground(true);
-            stopSelf();
+            // A later stop cancels a start still waiting for the previous session to close
+            startPending = false;
+            stopStartId = startId;
+            if (recording) {
+                // Stay alive until the sensor FIFOs are flushed and the session file is closed
+                stopRecordingInternal(this::onSessionClosed);
+            } else if (!stopping) {
+                stopForeground(true);
+                stopSelf(startId);
+            }
+            return START_NOT_STICKY;
+        }
+
+        if (recording) {
+            Log.i(TAG, "Already recording; start ignored");
             return START_NOT_STICKY;
         }
+        if (stopping) {
+            Log.i(TAG, "Previous session still closing; start deferred");
+            startPending = true;
+        } else {
+            startRecordingInternal();
+        }
+        enterForeground();
+        return START_NOT_STICKY;
+    }
 
-        // Start foreground
-        startRecordingInternal();
+    // Main thread, after a stop command's session is closed: begin a start that arrived meanwhile, or stop
+    private void onSessionClosed() {
+        if (startPending) {
+            startPending = false;
+            startRecordingInternal();
+            return;
+        }
+        stopForeground(true);
+        stopSelf(stopStartId);
+    }
+
+    private void enterForeground() {
         Notification n = buildNotification();
         try {
             startForeground(NOTIFICATION_ID, n);
@@ -239,7 +549,20 @@ public class RecordingService extends LifecycleService implements SensorEventLis
             Log.e(TAG, "Failed to start foreground due to missing permission", se);
             // Do not rethrow; sensors continue to run but location updates were skipped earlier.
         }
-        return START_NOT_STICKY;
+    }
+
+    // Runs on ioExecutor: flush what the pipeline stages still hold into the session
+    private void finishPipeline(RecordingPipeline p) throws IOException {
+        EventCapture capture = p.eventCapture();
+        FixedRateResampler frames = p.resampler();
+        p.finish();
+        if (capture != null) {
+            Log.i(TAG, "Event capture: " + capture.eventCount() + " triggers, "
+                    + capture.writtenCount() + " samples kept, " + capture.skippedCount() + " skipped");
+        }
+        if (frames != null) {
+            Log.i(TAG, "Resampled " + frames.frameCount() + " frames, " + frames.discardedCount() + " samples discarded");
+        }
     }
 
     @Nullable
@@ -251,43 +574,101 @@ public class RecordingService extends LifecycleService implements SensorEventLis
     @Override
     public void onDestroy() {
         super.onDestroy();
-        stopRecordingInternal();
-        ioExecutor.shutdownNow();
+        if (recording) stopRecordingInternal(null);
+        // The service is going away: don't wait for a pending FIFO flush
+        if (sensorSource != null) sensorSource.stopNow();
+        mainHandler.removeCallbacksAndMessages(null);
+        closeSession(null);
+        sensorThread.quitSafely();
+        locationThread.quitSafely();
+        // Let the queued drain and close run; shutdownNow() would discard them
+        ioExecutor.shutdown();
+        // The process may be killed once onDestroy returns, so wait for the close, bounded by the
+        // drain deadline and kept well inside the main-thread service timeout
+        long waitMs = Math.min(stopDrainDeadlineMs + CLOSE_MARGIN_MS, DESTROY_WAIT_MAX_MS);
+        try {
+            if (!ioExecutor.awaitTermination(waitMs, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Session close still running after " + waitMs + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
-    // SensorEventListener
+    // SensorSource.Listener, runs on the sensor callback thread
     @Override
-    public void onSensorChanged(SensorEvent event) {
-        if (bufferedWriter == null) return;
-        if (event == null || event.sensor == null || event.values == null) return;
+    public void onSensorSample(int channel, long timestampNanos, long deliveredNanos, float x, float y, float z) {
+        // Not gated on the session: samples arriving before the file is open wait in the ring
+        if (!accepting) return;
+        // Hot path: copy primitives only, formatting happens on the IO thread
+        ringBuffer.offer(channel, timestampNanos, deliveredNanos, x, y, z);
+        sTelemetry.publishSensor(channel, timestampNanos, x, y, z);
+    }
 
-        String type = event.sensor.getType() == Sensor.TYPE_ACCELEROMETER ? "Accelerometer" : "Gyroscope";
-        float x = event.values.length > 0 ? event.values[0] : 0f;
-        float y = event.values.length > 1 ? event.values[1] : 0f;
-        float z = event.values.length > 2 ? event.values[2] : 0f;
+    // Runs on the location callback thread
+    private void writeLocation(Location location) {
+        if (location == null || !accepting) return;
+        long now = SystemClock.elapsedRealtimeNanos();
+        // Same elapsed-realtime clock as SensorEvent.timestamp, so fixes line up with sensor rows
+        ringBuffer.offer(Channels.LOCATION, location.getElapsedRealtimeNanos(), now,
+                location.getLatitude(), location.getLongitude(), location.getTime());
+        sTelemetry.publishLocation(location.getElapsedRealtimeNanos(), location.getLatitude(), location.getLongitude());
+        locationLatency.record(now - location.getElapsedRealtimeNanos());
+    }
 
-        String line = System.currentTimeMillis() + "," + type + "," + x + "," + y + "," + z + ",,\n";
-        writeToFile(line);
+    // Runs on the location callback thread: re-register the sensors when the speed tier changes
+    private void updateSamplingRate(Location location) {
+        SamplingRateController controller = rateController;
+        SensorSource source = sensorSource;
+        if (controller == null || source == null || location == null || !location.hasSpeed()) return;
+        long timestamp = location.getElapsedRealtimeNanos();
+        float speed = location.getSpeed();
+        if (!controller.update(timestamp, speed)) return;
+        int periodUs = controller.periodUs();
+        Log.i(TAG, "Sampling period " + periodUs + " us at " + speed + " m/s");
+        source.setSamplingPeriod(periodUs);
+        try {
+            ioExecutor.execute(() -> writeRateChange(timestamp, periodUs, speed));
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Rate change after shutdown not recorded", e);
+        }
     }
 
-    @Override
-    public void onAccuracyChanged(Sensor sensor, int accuracy) {}
+    // Runs on ioExecutor
+    private void writeRateChange(long timestamp, int periodUs, float speed) {
+        RecordingPipeline p = pipeline;
+        if (p == null) return;
+        try {
+            p.changeRate(timestamp, periodUs, speed);
+        } catch (IOException e) {
+            Log.e(TAG, "IO error", e);
+        }
+    }
 
-    private void writeLocation(Location location) {
-        if (location == null) return;
-        String line = System.currentTimeMillis() + ",Location,,," + "," + location.getLatitude() + "," + location.getLongitude() + "\n";
-        writeToFile(line);
+    // Runs on ioExecutor: encode every queued sample into the file in one pass
+    private void drainRingBuffer() {
+        drainRingBuffer(Long.MAX_VALUE);
     }
 
-    private void writeToFile(String line) {
-        ioExecutor.execute(() -> {
-            try {
-                if (bufferedWriter != null) {
-                    bufferedWriter.write(line);
-                }
-            } catch (IOException e) {
-                Log.e(TAG, "IO error", e);
-            }
-        });
+    /**
+     * Runs on ioExecutor. Stops early, leaving the rest queued, once elapsed realtime passes
+     * {@code deadlineNanos}. Never throws: the scheduled executor would cancel the drain task for
+     * good, and the ring would fill and drop for the rest of the session.
+     *
+     * @return samples taken off the ring
+     */
+    private long drainRingBuffer(long deadlineNanos) {
+        RecordingPipeline p = pipeline;
+        if (p == null) return 0;
+        try {
+            return p.drain(deadlineNanos);
+        } catch (IOException e) {
+            Log.e(TAG, "IO error", e);
+            return 0;
+        } catch (RuntimeException e) {
+            // The sample being written is lost; the rest stay queued for the next pass
+            Log.e(TAG, "Drain failed", e);
+            return 0;
+        }
     }
 }
@@ -0,0 +1,154 @@
+package com.example.roadsensorrecorder;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Recording options read from the shared "app_prefs" preferences when a session starts.
+ * Missing or malformed values fall back to the defaults below.
+ */
+final class RecordingSettings {
+
+    static final String PREFS_NAME = "app_prefs";
+
+    static final String KEY_RECORDING_FORMAT = "recording_format";
+    static final String KEY_COMPRESSION_ENABLED = "compression_enabled";
+    static final String KEY_COMPRESSION_BLOCK_KB = "compression_block_kb";
+    static final String KEY_FLUSH_INTERVAL_MS = "durability_flush_interval_ms";
+    static final String KEY_FLUSH_KB = "durability_flush_kb";
+    static final String KEY_FLUSH_ON_LOCATION = "durability_flush_on_location";
+    static final String KEY_FSYNC = "durability_fsync";
+    static final String KEY_SENSOR_BATCHING = "sensor_batching";
+    static final String KEY_BATCH_MAX_LATENCY_MS = "sensor_batch_max_latency_ms";
+    static final String KEY_DEDICATED_CALLBACK_THREADS = "dedicated_callback_threads";
+    static final String KEY_BACKPRESSURE_POLICY = "backpressure_policy";
+    static final String KEY_DECIMATION_FACTOR = "backpressure_decimation_factor";
+    static final String KEY_RESAMPLE_ENABLED = "resample_enabled";
+    static final String KEY_RESAMPLE_RATE_HZ = "resample_rate_hz";
+    static final String KEY_RECORD_RAW = "record_raw";
+    static final String KEY_FEATURES_ENABLED = "features_enabled";
+    static final String KEY_FEATURES_SEGMENT_M = "features_segment_m";
+    static final String KEY_ADAPTIVE_RATE = "adaptive_sampling_rate";
+    static final String KEY_DECIMATION_OUTPUT_HZ = "decimation_output_hz";
+    static final String KEY_DECIMATION_INPUT_FACTOR = "decimation_input_factor";
+    static final String KEY_CAPTURE_MODE = "capture_mode";
+    static final String KEY_EVENT_PRE_TRIGGER_S = "event_pre_trigger_s";
+    static final String KEY_EVENT_POST_TRIGGER_S = "event_post_trigger_s";
+    static final String KEY_EVENT_JERK_THRESHOLD = "event_jerk_threshold";
+    static final String KEY_EVENT_GYRO_THRESHOLD = "event_gyro_threshold";
+    static final String KEY_CSV_VALUE_DIGITS = "csv_value_digits";
+    static final String KEY_CSV_COORDINATE_DIGITS = "csv_coordinate_digits";
+    static final String KEY_SEGMENT_SIZE_MB = "segment_size_mb";
+    static final String KEY_SEGMENT_MINUTES = "segment_minutes";
+    static final String KEY_INDEX_ENABLED = "index_enabled";
+    static final String KEY_INDEX_INTERVAL_MS = "index_interval_ms";
+    static final String KEY_INDEX_MAX_RECORDS = "index_max_records";
+    static final String KEY_STOP_DRAIN_DEADLINE_MS = "stop_drain_deadline_ms";
+    static final String KEY_METRICS_ENABLED = "metrics_enabled";
+    static final String KEY_METRICS_INTERVAL_MS = "metrics_interval_ms";
+    static final String KEY_MAGNETOMETER_HZ = "magnetometer_hz";
+    static final String KEY_LINEAR_ACCELERATION_HZ = "linear_acceleration_hz";
+    static final String KEY_ROTATION_VECTOR_HZ = "rotation_vector_hz";
+    static final String KEY_PRESSURE_HZ = "pressure_hz";
+
+    static final long DEFAULT_STOP_DRAIN_DEADLINE_MS = 3000;
+
+    /** {@link #KEY_CAPTURE_MODE} value that keeps raw samples only around road events. */
+    static final String CAPTURE_MODE_EVENTS = "events";
+
+    final RecordingFormat format;
+    final boolean compressionEnabled;
+    final int compressionBlockSize;
+    final DurabilityPolicy durability;
+    final SensorBatching batching;
+    final boolean dedicatedCallbackThreads;
+    final BackpressurePolicy backpressurePolicy;
+    final int decimationFactor;
+    final boolean resampleEnabled;
+    final int resampleRateHz;
+    final boolean recordRaw;
+    final boolean featuresEnabled;
+    final int featuresSegmentMeters;
+    final boolean adaptiveRate;
+    final int decimationOutputHz;
+    final int decimationInputFactor;
+    final boolean eventCapture;
+    final int eventPreTriggerSeconds;
+    final int eventPostTriggerSeconds;
+    final float eventJerkThreshold;
+    final float eventGyroThreshold;
+    final CsvPrecision csvPrecision;
+    final SegmentPolicy segments;
+    final IndexPolicy indexing;
+    final long stopDrainDeadlineMs;
+    final boolean metricsEnabled;
+    final long metricsIntervalNanos;
+    final ChannelSchema channels;
+
+    private RecordingSettings(SharedPreferences prefs) {
+        format = RecordingFormat.fromName(prefs.getString(KEY_RECORDING_FORMAT, null), RecordingFormat.CSV);
+        compressionEnabled = prefs.getBoolean(KEY_COMPRESSION_ENABLED, false);
+        compressionBlockSize = Math.max(4, prefs.getInt(KEY_COMPRESSION_BLOCK_KB, 64)) * 1024;
+        durability = new DurabilityPolicy(
+                prefs.getInt(KEY_FLUSH_INTERVAL_MS, 2000),
+                prefs.getInt(KEY_FLUSH_KB, 256) * 1024L,
+                prefs.getBoolean(KEY_FLUSH_ON_LOCATION, true),
+                prefs.getBoolean(KEY_FSYNC, true));
+        batching = new SensorBatching(prefs.getBoolean(KEY_SENSOR_BATCHING, false),
+                Math.max(0, prefs.getInt(KEY_BATCH_MAX_LATENCY_MS, 10_000)) * 1000);
+        dedicatedCallbackThreads = prefs.getBoolean(KEY_DEDICATED_CALLBACK_THREADS, true);
+        backpressurePolicy = BackpressurePolicy.fromName(
+                prefs.getString(KEY_BACKPRESSURE_POLICY, null), BackpressurePolicy.DROP_OLDEST);
+        decimationFactor = Math.max(1, prefs.getInt(KEY_DECIMATION_FACTOR, 2));
+        decimationOutputHz = Math.max(0, Math.min(200, prefs.getInt(KEY_DECIMATION_OUTPUT_HZ, 0)));
+        decimationInputFactor = Math.max(2, Math.min(8, prefs.getInt(KEY_DECIMATION_INPUT_FACTOR, 4)));
+        featuresEnabled = prefs.getBoolean(KEY_FEATURES_ENABLED, false);
+        featuresSegmentMeters = Math.max(10, prefs.getInt(KEY_FEATURES_SEGMENT_M, 100));
+        // The decimation filters and the feature engine's filters are designed for one fixed input rate
+        adaptiveRate = prefs.getBoolean(KEY_ADAPTIVE_RATE, false) && decimationOutputHz == 0 && !featuresEnabled;
+        eventCapture = CAPTURE_MODE_EVENTS.equalsIgnoreCase(prefs.getString(KEY_CAPTURE_MODE, null));
+        eventPreTriggerSeconds = Math.max(1, Math.min(30, prefs.getInt(KEY_EVENT_PRE_TRIGGER_S, 5)));
+        eventPostTriggerSeconds = Math.max(1, Math.min(60, prefs.getInt(KEY_EVENT_POST_TRIGGER_S, 5)));
+        eventJerkThreshold = prefs.getFloat(KEY_EVENT_JERK_THRESHOLD, 150f);
+        eventGyroThreshold = prefs.getFloat(KEY_EVENT_GYRO_THRESHOLD, 1.5f);
+        // Event windows are raw bursts; a fixed-rate frame stream does not apply to them
+        resampleEnabled = prefs.getBoolean(KEY_RESAMPLE_ENABLED, false) && !eventCapture;
+        resampleRateHz = Math.max(1, Math.min(1000, prefs.getInt(KEY_RESAMPLE_RATE_HZ, 50)));
+        // Raw samples can only be skipped when something else captures the trip
+        recordRaw = prefs.getBoolean(KEY_RECORD_RAW, true) || !featuresEnabled;
+        // -1 keeps the shortest round-trip digits; 0..9 switches to fixed, allocation-free formatting
+        csvPrecision = new CsvPrecision(
+                Math.max(-1, Math.min(AsciiBuffer.MAX_PRECISION, prefs.getInt(KEY_CSV_VALUE_DIGITS, -1))),
+                Math.max(-1, Math.min(AsciiBuffer.MAX_PRECISION, prefs.getInt(KEY_CSV_COORDINATE_DIGITS, -1))));
+        // 0 for both keeps a single file; either limit switches to memory-mapped segments.
+        // Capped so a segment's preallocated file stays small next to the free space on a phone
+        segments = new SegmentPolicy(
+                Math.max(0, Math.min(256, prefs.getInt(KEY_SEGMENT_SIZE_MB, 0))) * (1L << 20),
+                Math.max(0, prefs.getInt(KEY_SEGMENT_MINUTES, 0)) * 60_000_000_000L);
+        indexing = new IndexPolicy(prefs.getBoolean(KEY_INDEX_ENABLED, false),
+                Math.max(64, prefs.getInt(KEY_INDEX_MAX_RECORDS, 4096)),
+                Math.max(100, prefs.getInt(KEY_INDEX_INTERVAL_MS, 1000)) * 1_000_000L);
+        // Capped so the close still fits the time onDestroy may block for
+        stopDrainDeadlineMs = Math.max(100, Math.min(6000,
+                prefs.getInt(KEY_STOP_DRAIN_DEADLINE_MS, (int) DEFAULT_STOP_DRAIN_DEADLINE_MS)));
+        metricsEnabled = prefs.getBoolean(KEY_METRICS_ENABLED, false);
+        metricsIntervalNanos = Math.max(1000, prefs.getInt(KEY_METRICS_INTERVAL_MS, 5000)) * 1_000_000L;
+        // Extra sensors at their own fixed rate, 0 Hz leaves them out; frames only combine the standard channels
+        int[] periods = ChannelSchema.standardPeriods();
+        if (!resampleEnabled) {
+            periods[Channels.MAGNETOMETER] = periodUs(prefs.getInt(KEY_MAGNETOMETER_HZ, 0));
+            periods[Channels.LINEAR_ACCELERATION] = periodUs(prefs.getInt(KEY_LINEAR_ACCELERATION_HZ, 0));
+            periods[Channels.ROTATION_VECTOR] = periodUs(prefs.getInt(KEY_ROTATION_VECTOR_HZ, 0));
+            periods[Channels.PRESSURE] = periodUs(prefs.getInt(KEY_PRESSURE_HZ, 0));
+        }
+        channels = new ChannelSchema(periods, resampleEnabled);
+    }
+
+    private static int periodUs(int hz) {
+        return hz <= 0 ? ChannelSchema.OFF : 1_000_000 / Math.min(200, hz);
+    }
+
+    static RecordingSettings load(Context context) {
+        return new RecordingSettings(context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE));
+    }
+}
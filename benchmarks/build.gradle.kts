@@ -0,0 +1,27 @@
+plugins {
+    java
+}
+
+// JMH benchmarks for the recording core. Run all of them with
+//   ./gradlew :benchmarks:jmh
+// or pass JMH options, e.g. a regex and a results file:
+//   ./gradlew :benchmarks:jmh -PjmhArgs="Encoding -rf json -rff build/jmh.json"
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":core"))
+    implementation(libs.jmh.core)
+    annotationProcessor(libs.jmh.generator.annprocess)
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs the JMH benchmarks."
+    classpath = sourceSets["main"].runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    val jmhArgs = project.findProperty("jmhArgs") as String?
+    if (jmhArgs != null) args(jmhArgs.split(" ").filter { it.isNotBlank() })
+}
@@ -0,0 +1,39 @@
+package com.example.roadsensorrecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/** Throughput of {@link DecimationFilter} in input samples, two channels interleaved. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class DecimationFilterBenchmark {
+
+    private static final int BATCH = 4096;
+
+    private final DecimationFilter filter = new DecimationFilter(Channels.COUNT, 200, 4, 3);
+    private final float[] out = new float[3];
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public float process() {
+        for (int i = 0; i < BATCH; i++) {
+            float v = Workload.signal(i);
+            filter.process(i & 1, v, -v, v * 0.5f, out);
+        }
+        return out[0];
+    }
+}
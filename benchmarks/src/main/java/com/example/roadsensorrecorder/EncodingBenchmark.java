@@ -0,0 +1,120 @@
+package com.example.roadsensorrecorder;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Record encoding alone: one second of {@link Workload} per operation into a sink that only
+ * counts bytes. {@code csv-legacy} is the StringBuilder + BufferedWriter path the CSV writer
+ * replaced, kept as the baseline. Besides seconds of data encoded per second, the
+ * {@code bytes} counter reports encoded bytes per second, the rate that decides whether storage
+ * or the encoder is the bottleneck.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodingBenchmark {
+
+    @Param({"csv-legacy", "csv-shortest", "csv-fixed", "binary"})
+    public String encoding;
+
+    private final CountingSink sink = new CountingSink();
+    private RecordWriter writer;
+    private Writer legacy;
+    private long timestamp = 1_000_000_000L;
+
+    private static final class CountingSink extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            bytes += len;
+        }
+    }
+
+    /** Encoded output, reported per second of measurement next to the operation rate. */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Output {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() throws IOException {
+        switch (encoding) {
+            case "csv-legacy":
+                legacy = new BufferedWriter(new OutputStreamWriter(sink, StandardCharsets.UTF_8));
+                break;
+            case "csv-shortest":
+                writer = new CsvRecordWriter(sink, null, false, CsvPrecision.SHORTEST);
+                break;
+            case "csv-fixed":
+                writer = new CsvRecordWriter(sink, null, false, new CsvPrecision(4, 7));
+                break;
+            case "binary":
+                writer = new BinaryRecordWriter(sink, null, 0, ChannelSchema.standard(false));
+                break;
+            default:
+                throw new IllegalArgumentException(encoding);
+        }
+    }
+
+    /** @return encoded bytes so far, so the work cannot be eliminated */
+    @Benchmark
+    public long oneSecond(Output output) throws IOException {
+        long before = sink.bytes;
+        if (legacy != null) {
+            timestamp = writeLegacy(legacy, timestamp);
+            legacy.flush();
+        } else {
+            timestamp = Workload.write(writer, timestamp);
+            writer.flush();
+        }
+        output.bytes += sink.bytes - before;
+        return sink.bytes;
+    }
+
+    // Same rows as Workload.write, formatted the way the original recorder did
+    private static long writeLegacy(Writer w, long t) throws IOException {
+        for (int i = 0; i < Workload.SENSOR_HZ; i++, t += Workload.SENSOR_PERIOD_NS) {
+            float v = Workload.signal(i);
+            w.write(t + ",Accelerometer," + v * 0.1f + "," + -v * 0.1f + "," + v + ",,\n");
+            w.write((t + Workload.SENSOR_PERIOD_NS / 2) + ",Gyroscope," + v * 0.01f + "," + v * 0.02f + ","
+                    + -v * 0.01f + ",,\n");
+        }
+        w.write(t + ",Location,,,," + (52.52 + t * 1e-15) + "," + (13.40 + t * 1e-15) + "\n");
+        return t;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.roadsensorrecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The callback-side hot path: copying samples into the {@link SampleRingBuffer} and taking them
+ * out again. {@code interval} is one 100 ms drain interval of {@link Workload} on one thread;
+ * the {@code contended} group runs two producers (sensor and location callbacks) against the
+ * IO thread.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class IngestBenchmark {
+
+    private SampleRingBuffer ring;
+
+    @State(Scope.Thread)
+    public static class Producer {
+        long timestamp;
+    }
+
+    @State(Scope.Thread)
+    public static class Consumer {
+        final SampleRingBuffer.Sample sample = new SampleRingBuffer.Sample();
+    }
+
+    @Setup
+    public void setUp() {
+        ring = new SampleRingBuffer(RecordingPipeline.RING_CAPACITY, Channels.COUNT);
+        ring.setPolicy(BackpressurePolicy.DROP_NEWEST);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long interval(Producer producer, Consumer consumer) {
+        producer.timestamp = Workload.offer(ring, producer.timestamp, 100);
+        long drained = 0;
+        while (ring.poll(consumer.sample)) drained++;
+        return drained;
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(2)
+    public boolean offer(Producer producer) {
+        long t = producer.timestamp += Workload.SENSOR_PERIOD_NS;
+        float v = Workload.signal((int) (t >>> 10));
+        return ring.offer(Channels.ACCELEROMETER, t, t, v, -v, v * 0.5f);
+    }
+
+    @Benchmark
+    @Group("contended")
+    @GroupThreads(1)
+    public boolean poll(Consumer consumer) {
+        return ring.poll(consumer.sample);
+    }
+}
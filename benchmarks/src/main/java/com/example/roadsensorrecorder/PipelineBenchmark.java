@@ -0,0 +1,78 @@
+package com.example.roadsensorrecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest to file end to end, as the IO thread sees it: each operation queues one 100 ms drain
+ * interval of {@link Workload} in the ring and runs {@link RecordingPipeline#drain} on it into
+ * a session file. The pipeline clock follows the sample timestamps, so anchors and metrics
+ * intervals fall where they would on a device. {@code metrics} shows the instrumentation cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PipelineBenchmark {
+
+    // A String, since the generated benchmark code cannot see the package-private enum
+    @Param({"csv", "binary"})
+    public String format;
+
+    @Param({"false", "true"})
+    public boolean metrics;
+
+    private File file;
+    private SampleRingBuffer ring;
+    private RecordingPipeline pipeline;
+    private long now = 1_000_000_000L;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        RecordingFormat format = RecordingFormat.valueOf(this.format.toUpperCase(Locale.ROOT));
+        file = File.createTempFile("pipeline-bench", format.extension);
+        ring = new SampleRingBuffer(RecordingPipeline.RING_CAPACITY, Channels.COUNT);
+        RecordingSession session = RecordingSession.open(file, format, 0, ChannelSchema.standard(false),
+                CsvPrecision.SHORTEST, new DurabilityPolicy(2000, 256 * 1024, true, false), SegmentPolicy.NONE, IndexPolicy.NONE,
+                System.currentTimeMillis());
+        pipeline = new RecordingPipeline(ring, session, () -> now, now);
+        if (metrics) {
+            PipelineMetrics m = new PipelineMetrics(Channels.COUNT, 5_000_000_000L, now);
+            m.setRequestedPeriodUs(Channels.ACCELEROMETER, (int) (Workload.SENSOR_PERIOD_NS / 1000));
+            m.setRequestedPeriodUs(Channels.GYROSCOPE, (int) (Workload.SENSOR_PERIOD_NS / 1000));
+            pipeline.setMetrics(m);
+        }
+    }
+
+    @Benchmark
+    public long drainInterval() throws IOException {
+        now = Workload.offer(ring, now, 100);
+        return pipeline.drain(Long.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        pipeline.finish();
+        pipeline.session().close();
+        Files.delete(file.toPath());
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.roadsensorrecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing to disk through the full {@link RecordingSession} stack: encoder, optional block
+ * compression, buffered or memory-mapped file, and the default group-commit policy. One
+ * operation is one second of {@link Workload}. fsync is off by default since it measures the
+ * disk rather than the code; {@code -p fsync=true} shows what durability costs on that disk.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SessionWriteBenchmark {
+
+    // A String, since the generated benchmark code cannot see the package-private enum
+    @Param({"csv", "binary"})
+    public String format;
+
+    /** Block size for compression, 0 for none. */
+    @Param({"0", "65536"})
+    public int compressionBlockSize;
+
+    /** Rotating memory-mapped segments instead of one buffered file. */
+    @Param({"false", "true"})
+    public boolean segmented;
+
+    @Param({"false"})
+    public boolean fsync;
+
+    private File dir;
+    private RecordingSession session;
+    private long timestamp = 1_000_000_000L;
+
+    @Setup(Level.Trial)
+    public void open() throws IOException {
+        RecordingFormat format = RecordingFormat.valueOf(this.format.toUpperCase(Locale.ROOT));
+        dir = Files.createTempDirectory("session-bench").toFile();
+        File file = new File(dir, "bench" + format.extension
+                + (compressionBlockSize > 0 ? RecordingFormat.COMPRESSED_SUFFIX : ""));
+        session = RecordingSession.open(file, format, compressionBlockSize, ChannelSchema.standard(false),
+                CsvPrecision.SHORTEST, new DurabilityPolicy(2000, 256 * 1024, true, fsync),
+                segmented ? new SegmentPolicy(64L << 20, 0) : SegmentPolicy.NONE,
+                IndexPolicy.NONE, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    public long oneSecond() throws IOException {
+        timestamp = Workload.write(session.writer(), timestamp);
+        session.markEvent();
+        session.maybeCommit(System.currentTimeMillis());
+        return session.encodedBytes();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws IOException {
+        session.close();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) Files.delete(f.toPath());
+        }
+        Files.delete(dir.toPath());
+    }
+}
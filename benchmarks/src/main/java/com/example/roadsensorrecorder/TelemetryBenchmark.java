@@ -0,0 +1,62 @@
+package com.example.roadsensorrecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the live panel costs the sensor callback: {@code publish} alone, and the {@code polled}
+ * group with the UI reading the same channel flat out, far more often than its real frame rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Group)
+public class TelemetryBenchmark {
+
+    private final LiveTelemetry telemetry = new LiveTelemetry(Channels.COUNT);
+
+    @State(Scope.Thread)
+    public static class Writer {
+        long timestamp;
+    }
+
+    @State(Scope.Thread)
+    public static class Reader {
+        final LiveTelemetry.Reading reading = new LiveTelemetry.Reading();
+    }
+
+    @Benchmark
+    public long publish(Writer writer) {
+        long t = writer.timestamp += Workload.SENSOR_PERIOD_NS;
+        float v = Workload.signal((int) (t >>> 10));
+        telemetry.publishSensor(Channels.ACCELEROMETER, t, v * 0.1f, -v * 0.1f, v);
+        return t;
+    }
+
+    @Benchmark
+    @Group("polled")
+    @GroupThreads(1)
+    public long publishWhilePolled(Writer writer) {
+        return publish(writer);
+    }
+
+    @Benchmark
+    @Group("polled")
+    @GroupThreads(1)
+    public boolean poll(Reader reader) {
+        return telemetry.read(Channels.ACCELEROMETER, reader.reading);
+    }
+}
@@ -0,0 +1,60 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+
+/**
+ * The synthetic drive every benchmark replays: accelerometer and gyroscope at
+ * {@link #SENSOR_HZ} each plus a 1 Hz location fix, the load of SENSOR_DELAY_FASTEST on a
+ * mid-range phone. Values are a precomputed road-like signal, so no benchmark measures Math.sin.
+ */
+final class Workload {
+
+    static final int SENSOR_HZ = 200;
+    static final long SENSOR_PERIOD_NS = 1_000_000_000L / SENSOR_HZ;
+    /** Samples in one second of recording, both sensors and the fix. */
+    static final int SAMPLES_PER_SECOND = 2 * SENSOR_HZ + 1;
+
+    private static final float[] SIGNAL = new float[4096];
+
+    static {
+        for (int i = 0; i < SIGNAL.length; i++) SIGNAL[i] = (float) Math.sin(i * 0.37) * 3 + 9.81f;
+    }
+
+    private Workload() {}
+
+    static float signal(int i) {
+        return SIGNAL[i & (SIGNAL.length - 1)];
+    }
+
+    /**
+     * Offer {@code millis} of samples starting at {@code startNanos} to {@code ring}, the way the
+     * sensor and location callbacks would.
+     *
+     * @return the timestamp following the last sample
+     */
+    static long offer(SampleRingBuffer ring, long startNanos, int millis) {
+        long end = startNanos + millis * 1_000_000L;
+        int i = 0;
+        for (long t = startNanos; t < end; t += SENSOR_PERIOD_NS, i++) {
+            float v = signal(i);
+            ring.offer(Channels.ACCELEROMETER, t, t, v * 0.1f, -v * 0.1f, v);
+            ring.offer(Channels.GYROSCOPE, t + SENSOR_PERIOD_NS / 2, t + SENSOR_PERIOD_NS / 2, v * 0.01f, v * 0.02f, -v * 0.01f);
+            if (t % 1_000_000_000L < SENSOR_PERIOD_NS) {
+                ring.offer(Channels.LOCATION, t, t, 52.52 + i * 1e-7, 13.40 + i * 1e-7, 1_700_000_000_000L + t / 1_000_000);
+            }
+        }
+        return end;
+    }
+
+    /** One second of recording straight into {@code writer}, without the ring. */
+    static long write(RecordWriter writer, long startNanos) throws IOException {
+        long t = startNanos;
+        for (int i = 0; i < SENSOR_HZ; i++, t += SENSOR_PERIOD_NS) {
+            float v = signal(i);
+            writer.writeSensor(Channels.ACCELEROMETER, t, v * 0.1f, -v * 0.1f, v);
+            writer.writeSensor(Channels.GYROSCOPE, t + SENSOR_PERIOD_NS / 2, v * 0.01f, v * 0.02f, -v * 0.01f);
+        }
+        writer.writeLocation(t, 52.52 + t * 1e-15, 13.40 + t * 1e-15);
+        return t;
+    }
+}
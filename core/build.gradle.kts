@@ -0,0 +1,14 @@
+plugins {
+    `java-library`
+}
+
+// Android-free recording core: sample model, ring buffer, pipeline stages, writers and readers.
+// Shared by :app and :benchmarks, and runs on a plain JVM.
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    testImplementation(libs.junit)
+}
@@ -0,0 +1,142 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Growable byte[] that numbers and ASCII text are formatted straight into, with no String or
+ * charset encoder in between. Integers and fixed-precision decimals are written digit by digit
+ * without allocating; only "shortest" decimals (precision < 0) go through Float/Double.toString.
+ *
+ * Fixed-precision output is the exact binary value rounded half-up to {@code precision}
+ * fraction digits, i.e. {@code new BigDecimal(v).setScale(precision, HALF_UP).toPlainString()};
+ * a value that rounds to zero is written without a sign.
+ */
+final class AsciiBuffer {
+
+    /** Largest supported fraction digit count. */
+    static final int MAX_PRECISION = 9;
+
+    private static final long[] POW10 = new long[MAX_PRECISION + 1];
+    private static final double[] POW10_D = new double[MAX_PRECISION + 1];
+
+    static {
+        long p = 1;
+        for (int i = 0; i <= MAX_PRECISION; i++) {
+            POW10[i] = p;
+            POW10_D[i] = p;
+            p *= 10;
+        }
+    }
+
+    // Scaled magnitudes up to this are whole numbers held exactly in a double and a long
+    private static final double EXACT_LIMIT = 0x1p52;
+
+    private byte[] bytes;
+    private int length;
+    // Scratch for writing integer digits back to front
+    private final byte[] digits = new byte[20];
+
+    AsciiBuffer(int capacity) {
+        bytes = new byte[Math.max(16, capacity)];
+    }
+
+    int length() {
+        return length;
+    }
+
+    void clear() {
+        length = 0;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, length);
+    }
+
+    AsciiBuffer append(char c) {
+        ensure(1);
+        bytes[length++] = (byte) c;
+        return this;
+    }
+
+    /** Append {@code s}, which must be ASCII. */
+    AsciiBuffer append(String s) {
+        int n = s.length();
+        ensure(n);
+        for (int i = 0; i < n; i++) bytes[length + i] = (byte) s.charAt(i);
+        length += n;
+        return this;
+    }
+
+    AsciiBuffer append(long v) {
+        if (v < 0) {
+            if (v == Long.MIN_VALUE) return append(Long.toString(v));
+            append('-');
+            v = -v;
+        }
+        appendDigits(v, 1);
+        return this;
+    }
+
+    /** Append {@code v} with {@code precision} fraction digits, or as Float.toString if negative. */
+    AsciiBuffer append(float v, int precision) {
+        if (precision < 0) return append(Float.toString(v));
+        // Widening is exact, and so is scaling a 24-bit significand by 10^9 or less
+        return appendFixed(v, precision);
+    }
+
+    /** Append {@code v} with {@code precision} fraction digits, or as Double.toString if negative. */
+    AsciiBuffer append(double v, int precision) {
+        if (precision < 0) return append(Double.toString(v));
+        return appendFixed(v, precision);
+    }
+
+    private AsciiBuffer appendFixed(double v, int precision) {
+        if (precision > MAX_PRECISION) throw new IllegalArgumentException("precision > " + MAX_PRECISION);
+        if (Double.isNaN(v) || Double.isInfinite(v)) return append(Double.toString(v));
+        double magnitude = Math.abs(v);
+        double scaled = magnitude * POW10_D[precision];
+        if (!(scaled < EXACT_LIMIT)) return appendExact(v, precision);
+        double floor = Math.floor(scaled);
+        // The fraction is exact; the product is off by at most half an ulp, which only matters
+        // when the fraction is that close to a tie
+        double fraction = scaled - floor;
+        if (Math.abs(fraction - 0.5) <= Math.ulp(scaled)) return appendExact(v, precision);
+        long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+        if (v < 0 && units != 0) append('-');
+        long pow = POW10[precision];
+        appendDigits(units / pow, 1);
+        if (precision > 0) {
+            append('.');
+            appendDigits(units % pow, precision);
+        }
+        return this;
+    }
+
+    // Rare slow path: near-ties and magnitudes beyond exact double range
+    private AsciiBuffer appendExact(double v, int precision) {
+        return append(new BigDecimal(v).setScale(precision, RoundingMode.HALF_UP).toPlainString());
+    }
+
+    // Non-negative v, zero-padded to at least minDigits
+    private void appendDigits(long v, int minDigits) {
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        while (n < minDigits) digits[n++] = '0';
+        ensure(n);
+        for (int i = n - 1; i >= 0; i--) bytes[length++] = digits[i];
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+    }
+}
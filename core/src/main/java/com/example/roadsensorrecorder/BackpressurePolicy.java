@@ -0,0 +1,22 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * What {@link SampleRingBuffer} does when the writer falls behind the sensors.
+ */
+enum BackpressurePolicy {
+    /** Reject the incoming sample once the ring is full. */
+    DROP_NEWEST,
+    /** Evict the oldest queued sample to make room for the incoming one. */
+    DROP_OLDEST,
+    /** Above the high watermark keep only every Nth sample per channel; drop newest when full. */
+    DECIMATE;
+
+    static BackpressurePolicy fromName(String name, BackpressurePolicy fallback) {
+        if (name == null) return fallback;
+        try {
+            return valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,714 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Exports many sessions at once on a desktop JVM. Each session file, CSV or binary, compressed
+ * or not, is split by {@link SessionRangeReader#chunks} into runs of about
+ * {@value #DEFAULT_CHUNK_MB} MB, and one fork-join pool works through the chunks of all files in
+ * parallel. Written to the output directory:
+ *
+ * <ul>
+ * <li>{@value #MERGED_CSV}: the sensor and location rows of every session, sessions in file name
+ *     order, each row prefixed with the session and its wall-clock time;</li>
+ * <li>{@value #TRACKS_GEOJSON}: a LineString of the fixes of every session with at least two;</li>
+ * <li>{@value #SEGMENTS_CSV}: per session, aggregates over fixed windows of elapsed time.</li>
+ * </ul>
+ *
+ * A chunk streams its rows into a part file and keeps only its fixes, clock anchors and window
+ * aggregates in memory; the parts are then joined in file order, so memory use does not depend
+ * on the input size. Rows take the wall-clock time of the latest system clock anchor before
+ * them. The rows of a chunk ahead of its first anchor are parked in a small binary head file
+ * until the anchors of the chunks before it are known. Resampled sessions are read as one
+ * chunk, since which frame stands for a location fix depends on the frames before it. A
+ * segmented session is given by its {@link SegmentManifest} and exported as one session, its
+ * segments chunked in order.
+ *
+ * A session that cannot be read, in part or at all, is left out of every output and listed in
+ * the {@link Report}; the other sessions are exported as usual.
+ *
+ * <pre>java com.example.roadsensorrecorder.BatchExporter [--threads N] [--chunk-mb M] [--segment-s S] out_dir sessions...</pre>
+ */
+public final class BatchExporter {
+
+    static final String MERGED_CSV = "merged.csv";
+    static final String TRACKS_GEOJSON = "tracks.geojson";
+    static final String SEGMENTS_CSV = "segments.csv";
+    static final String MERGED_HEADER = "Session,WallTimeMs,TimeNs,Type,X,Y,Z,Latitude,Longitude\n";
+    static final String SEGMENTS_HEADER = "Session,Segment,StartTimeNs,EndTimeNs,StartWallMs,AccelSamples,"
+            + "VibrationRms,AccelMax,GyroSamples,GyroRms,GyroMax,Fixes,DistanceM,MeanSpeedMps\n";
+
+    static final int DEFAULT_CHUNK_MB = 8;
+    static final int DEFAULT_SEGMENT_SECONDS = 10;
+
+    private static final String PARTS_DIR = ".parts";
+    private static final int VALUE_DIGITS = 6;
+    private static final int COORDINATE_DIGITS = 7;
+    private static final double STANDARD_GRAVITY = 9.80665;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    // Rows are formatted into a buffer of about this size before it is written out
+    private static final int FLUSH_BYTES = 1 << 16;
+    // Head files hold any channel, frames already split into their sensors
+    private static final ChannelSchema HEAD_SCHEMA;
+
+    static {
+        int[] periods = new int[Channels.COUNT];
+        Arrays.fill(periods, ChannelSchema.SESSION_RATE);
+        HEAD_SCHEMA = new ChannelSchema(periods, false);
+    }
+
+    private final File outDir;
+    private final int threads;
+    private final long chunkBytes;
+    private final long segmentNanos;
+
+    /**
+     * @param chunkBytes   uncompressed bytes per chunk, at least
+     * @param segmentNanos length of the aggregate windows
+     */
+    BatchExporter(File outDir, int threads, long chunkBytes, long segmentNanos) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be >= 1");
+        if (chunkBytes < 1 || segmentNanos < 1) throw new IllegalArgumentException("sizes must be > 0");
+        this.outDir = outDir;
+        this.threads = threads;
+        this.chunkBytes = chunkBytes;
+        this.segmentNanos = segmentNanos;
+    }
+
+    /** Totals of one run. */
+    static final class Report {
+        int sessions;
+        int chunks;
+        long records;
+        long inputBytes;
+        long elapsedNanos;
+        int threads;
+        /** Sessions left out, each as "name: reason". */
+        final List<String> skipped = new ArrayList<>();
+
+        double megabytesPerSecond() {
+            return inputBytes / 1e6 / (Math.max(1, elapsedNanos) / 1e9);
+        }
+
+        double megabytesPerSecondPerCore() {
+            return megabytesPerSecond() / threads;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d sessions, %d chunks, %d records, %.1f MB in %.2f s: "
+                            + "%.1f MB/s, %.1f MB/s per core on %d threads, %d skipped",
+                    sessions, chunks, records, inputBytes / 1e6, elapsedNanos / 1e9,
+                    megabytesPerSecond(), megabytesPerSecondPerCore(), threads, skipped.size());
+        }
+    }
+
+    /** Export {@code files}, replacing the outputs in the output directory. */
+    Report export(List<File> files) throws IOException {
+        long start = System.nanoTime();
+        List<File> sorted = new ArrayList<>(files);
+        sorted.sort(Comparator.comparing(File::getName));
+        File parts = new File(outDir, PARTS_DIR);
+        if (!parts.isDirectory() && !parts.mkdirs()) throw new IOException("Cannot create " + parts);
+        SessionTask[] sessions = new SessionTask[sorted.size()];
+        for (int i = 0; i < sessions.length; i++) sessions[i] = new SessionTask(sorted.get(i), parts, i);
+
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            pool.invoke(new RecursiveAction() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected void compute() {
+                    invokeAll(sessions);
+                }
+            });
+        } finally {
+            pool.shutdown();
+        }
+
+        Report report = new Report();
+        report.threads = threads;
+        try (FileOutputStream merged = new FileOutputStream(new File(outDir, MERGED_CSV));
+             OutputStream tracks = new BufferedOutputStream(new FileOutputStream(new File(outDir, TRACKS_GEOJSON)), FLUSH_BYTES);
+             OutputStream segments = new BufferedOutputStream(new FileOutputStream(new File(outDir, SEGMENTS_CSV)), FLUSH_BYTES)) {
+            AsciiBuffer line = new AsciiBuffer(FLUSH_BYTES);
+            line.append(MERGED_HEADER);
+            line.writeTo(merged);
+            line.clear();
+            line.append(SEGMENTS_HEADER);
+            line.writeTo(segments);
+            line.clear();
+            tracks.write("{\"type\":\"FeatureCollection\",\"features\":[".getBytes(StandardCharsets.US_ASCII));
+            boolean firstTrack = true;
+            for (SessionTask session : sessions) {
+                IOException failure = session.failure();
+                if (failure != null) {
+                    report.skipped.add(session.name + ": "
+                            + (failure.getMessage() != null ? failure.getMessage() : failure.toString()));
+                    continue;
+                }
+                SessionMerge merge = new SessionMerge(session.name);
+                for (ChunkTask chunk : session.chunks) {
+                    merge.add(chunk, merged, line);
+                    report.records += chunk.records;
+                }
+                merge.writeSegments(segments, line);
+                if (merge.trackPoints >= 2) {
+                    if (!firstTrack) tracks.write(',');
+                    merge.writeTrack(tracks, line);
+                    firstTrack = false;
+                }
+                report.sessions++;
+                report.chunks += session.chunks.length;
+                report.inputBytes += session.inputBytes;
+            }
+            tracks.write("]}\n".getBytes(StandardCharsets.US_ASCII));
+        } finally {
+            File[] leftovers = parts.listFiles();
+            if (leftovers != null) for (File f : leftovers) f.delete();
+            parts.delete();
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    /** Plans the chunks of one session, a file or the segments of a manifest, and runs them. */
+    private final class SessionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        final File file;
+        final String name;
+        private final File parts;
+        private final int number;
+        ChunkTask[] chunks = new ChunkTask[0];
+        // Size of the files read, segments rather than the manifest
+        long inputBytes;
+        // Why the file could not be planned, or null
+        private IOException failure;
+
+        SessionTask(File file, File parts, int number) {
+            this.file = file;
+            this.name = sessionName(file);
+            this.parts = parts;
+            this.number = number;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                List<List<SessionRangeReader.Cursor>> runs = new ArrayList<>();
+                List<SessionRangeReader.Cursor> frames = null;
+                for (File data : SegmentManifest.dataFiles(file)) {
+                    SessionRangeReader reader = SessionRangeReader.open(data);
+                    inputBytes += data.length();
+                    if (reader.isResampled()) {
+                        // Which frame stands for a fix depends on the frames before it, so frames are
+                        // read in one pass, across segments too
+                        if (frames == null) {
+                            frames = new ArrayList<>();
+                            runs.add(frames);
+                        }
+                        frames.addAll(reader.chunks(Long.MAX_VALUE));
+                    } else {
+                        for (SessionRangeReader.Cursor c : reader.chunks(chunkBytes)) runs.add(Collections.singletonList(c));
+                    }
+                }
+                chunks = new ChunkTask[runs.size()];
+                for (int i = 0; i < chunks.length; i++) {
+                    chunks[i] = new ChunkTask(name, runs.get(i), new File(parts, number + "-" + i));
+                }
+            } catch (IOException e) {
+                failure = e;
+                return;
+            }
+            invokeAll(chunks);
+        }
+
+        /** The first error planning or reading the file, or null if every chunk was read. */
+        IOException failure() {
+            if (failure != null) return failure;
+            for (ChunkTask chunk : chunks) {
+                if (chunk.failure != null) return chunk.failure;
+            }
+            return null;
+        }
+    }
+
+    /** Aggregates over one window of elapsed time; partial windows of adjacent chunks merge exactly. */
+    static final class Window {
+        long firstNanos = Long.MAX_VALUE;
+        long lastNanos = Long.MIN_VALUE;
+        long accelSamples;
+        // Of the acceleration magnitude minus standard gravity
+        double vibrationSumSquares;
+        double accelMax;
+        long gyroSamples;
+        double gyroSumSquares;
+        double gyroMax;
+        long fixes;
+        // Each pair of consecutive fixes counts in the window of its later fix
+        double distanceMeters;
+        long fixPairNanos;
+
+        void merge(Window o) {
+            firstNanos = Math.min(firstNanos, o.firstNanos);
+            lastNanos = Math.max(lastNanos, o.lastNanos);
+            accelSamples += o.accelSamples;
+            vibrationSumSquares += o.vibrationSumSquares;
+            accelMax = Math.max(accelMax, o.accelMax);
+            gyroSamples += o.gyroSamples;
+            gyroSumSquares += o.gyroSumSquares;
+            gyroMax = Math.max(gyroMax, o.gyroMax);
+            fixes += o.fixes;
+            distanceMeters += o.distanceMeters;
+            fixPairNanos += o.fixPairNanos;
+        }
+    }
+
+    /** Reads one chunk, one or more cursors in turn: rows into its part file, everything else into memory. */
+    private final class ChunkTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String session;
+        private final List<SessionRangeReader.Cursor> cursors;
+        final File part;
+        final File head;
+        private final AsciiBuffer line = new AsciiBuffer(FLUSH_BYTES + 256);
+        private OutputStream out;
+        private BinaryRecordWriter headWriter;
+        private OutputStream headOut;
+        // Resampled sessions are a single chunk, so this sees every frame of the session
+        private final FixedRateResampler.FixCadence fixes = new FixedRateResampler.FixCadence();
+
+        long records;
+        boolean hasHead;
+        // Why the chunk could not be read, or null
+        IOException failure;
+        // System clock anchors in file order
+        long[] anchorNanos = new long[8];
+        long[] anchorMillis = new long[8];
+        int anchors;
+        // Longitude, latitude pairs of the fixes
+        double[] track = new double[64];
+        int trackPoints;
+        long firstFixNanos;
+        double firstLatitude, firstLongitude;
+        long lastFixNanos;
+        double lastLatitude, lastLongitude;
+        final TreeMap<Long, Window> windows = new TreeMap<>();
+
+        ChunkTask(String session, List<SessionRangeReader.Cursor> cursors, File part) {
+            this.session = session;
+            this.cursors = cursors;
+            this.part = part;
+            this.head = new File(part.getPath() + ".head");
+        }
+
+        @Override
+        protected void compute() {
+            BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+            try (OutputStream o = new FileOutputStream(part)) {
+                out = o;
+                for (SessionRangeReader.Cursor cursor : cursors) {
+                    try (SessionRangeReader.Cursor c = cursor) {
+                        while (c.next(r)) {
+                            records++;
+                            switch (r.type) {
+                                case BinaryRecordReader.RECORD_ANCHOR:
+                                    if (r.channel == RecordWriter.ANCHOR_SYSTEM_CLOCK) anchor(r.timestamp, r.count);
+                                    break;
+                                case BinaryRecordReader.RECORD_SENSOR:
+                                    sensor(r.channel, r.timestamp, r.x, r.y, r.z);
+                                    break;
+                                case BinaryRecordReader.RECORD_LOCATION:
+                                    fix(r.timestamp, r.latitude, r.longitude);
+                                    break;
+                                case BinaryRecordReader.RECORD_FRAME:
+                                    if (!Float.isNaN(r.x)) sensor(Channels.ACCELEROMETER, r.timestamp, r.x, r.y, r.z);
+                                    if (!Float.isNaN(r.gx)) sensor(Channels.GYROSCOPE, r.timestamp, r.gx, r.gy, r.gz);
+                                    if (fixes.isFix(r.timestamp, r.latitude)) fix(r.timestamp, r.latitude, r.longitude);
+                                    break;
+                                default:
+                                    break;
+                            }
+                        }
+                    }
+                }
+                line.writeTo(o);
+                line.clear();
+            } catch (IOException e) {
+                failure = e;
+            } finally {
+                closeHead();
+            }
+        }
+
+        private void anchor(long elapsedNanos, long wallMillis) {
+            if (anchors == anchorNanos.length) {
+                anchorNanos = Arrays.copyOf(anchorNanos, anchors * 2);
+                anchorMillis = Arrays.copyOf(anchorMillis, anchors * 2);
+            }
+            anchorNanos[anchors] = elapsedNanos;
+            anchorMillis[anchors] = wallMillis;
+            anchors++;
+        }
+
+        private void sensor(int channel, long timestamp, float x, float y, float z) throws IOException {
+            Window w = window(timestamp);
+            if (channel == Channels.ACCELEROMETER) {
+                double magnitude = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+                double vibration = magnitude - STANDARD_GRAVITY;
+                w.accelSamples++;
+                w.vibrationSumSquares += vibration * vibration;
+                w.accelMax = Math.max(w.accelMax, magnitude);
+            } else if (channel == Channels.GYROSCOPE) {
+                double magnitude = Math.sqrt((double) x * x + (double) y * y + (double) z * z);
+                w.gyroSamples++;
+                w.gyroSumSquares += magnitude * magnitude;
+                w.gyroMax = Math.max(w.gyroMax, magnitude);
+            }
+            if (anchors == 0) {
+                head().writeSensor(channel, timestamp, x, y, z);
+                return;
+            }
+            appendSensor(line, session, true, anchorNanos[anchors - 1], anchorMillis[anchors - 1], channel, timestamp, x, y, z);
+            if (line.length() >= FLUSH_BYTES) flushLine();
+        }
+
+        private void fix(long timestamp, double latitude, double longitude) throws IOException {
+            Window w = window(timestamp);
+            w.fixes++;
+            if (trackPoints == 0) {
+                firstFixNanos = timestamp;
+                firstLatitude = latitude;
+                firstLongitude = longitude;
+            } else {
+                w.distanceMeters += RoughnessFeatureEngine.distanceMeters(lastLatitude, lastLongitude, latitude, longitude);
+                w.fixPairNanos += timestamp - lastFixNanos;
+            }
+            lastFixNanos = timestamp;
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+            if (2 * trackPoints + 2 > track.length) track = Arrays.copyOf(track, track.length * 2);
+            track[2 * trackPoints] = longitude;
+            track[2 * trackPoints + 1] = latitude;
+            trackPoints++;
+            if (anchors == 0) {
+                head().writeLocation(timestamp, latitude, longitude);
+                return;
+            }
+            appendLocation(line, session, true, anchorNanos[anchors - 1], anchorMillis[anchors - 1], timestamp, latitude, longitude);
+            if (line.length() >= FLUSH_BYTES) flushLine();
+        }
+
+        private Window window(long timestamp) {
+            Window w = windows.computeIfAbsent(Math.floorDiv(timestamp, segmentNanos), k -> new Window());
+            w.firstNanos = Math.min(w.firstNanos, timestamp);
+            w.lastNanos = Math.max(w.lastNanos, timestamp);
+            return w;
+        }
+
+        private BinaryRecordWriter head() throws IOException {
+            if (headWriter == null) {
+                headOut = new BufferedOutputStream(new FileOutputStream(head), FLUSH_BYTES);
+                headWriter = new BinaryRecordWriter(headOut, null, 0, HEAD_SCHEMA);
+                hasHead = true;
+            }
+            return headWriter;
+        }
+
+        private void closeHead() {
+            if (headOut == null) return;
+            try {
+                headOut.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+            }
+        }
+
+        private void flushLine() throws IOException {
+            line.writeTo(out);
+            line.clear();
+        }
+    }
+
+    /** Joins the chunks of one session, in file order, on the exporting thread. */
+    private final class SessionMerge {
+        private final String session;
+        private final ClockAlignment clock = new ClockAlignment();
+        private final TreeMap<Long, Window> windows = new TreeMap<>();
+        private double[] track = new double[64];
+        int trackPoints;
+        private long lastFixNanos;
+        private double lastLatitude, lastLongitude;
+        // Latest anchor of the chunks added so far, which rows parked in the next head take
+        private boolean anchored;
+        private long lastAnchorNanos;
+        private long lastAnchorMillis;
+        private long firstNanos = Long.MAX_VALUE;
+        private long lastNanos = Long.MIN_VALUE;
+        private double distanceMeters;
+
+        SessionMerge(String session) {
+            this.session = session;
+        }
+
+        void add(ChunkTask chunk, FileOutputStream merged, AsciiBuffer line) throws IOException {
+            if (chunk.hasHead) writeHead(chunk, merged, line);
+            try (FileChannel from = new FileInputStream(chunk.part).getChannel()) {
+                FileChannel to = merged.getChannel();
+                long size = from.size();
+                for (long done = 0; done < size; ) done += from.transferTo(done, size - done, to);
+            }
+            for (int i = 0; i < chunk.anchors; i++) clock.addAnchor(chunk.anchorNanos[i], chunk.anchorMillis[i]);
+            if (chunk.anchors > 0) {
+                anchored = true;
+                lastAnchorNanos = chunk.anchorNanos[chunk.anchors - 1];
+                lastAnchorMillis = chunk.anchorMillis[chunk.anchors - 1];
+            }
+            for (Map.Entry<Long, Window> e : chunk.windows.entrySet()) {
+                Window w = windows.get(e.getKey());
+                if (w == null) {
+                    windows.put(e.getKey(), e.getValue());
+                } else {
+                    w.merge(e.getValue());
+                }
+                firstNanos = Math.min(firstNanos, e.getValue().firstNanos);
+                lastNanos = Math.max(lastNanos, e.getValue().lastNanos);
+                distanceMeters += e.getValue().distanceMeters;
+            }
+            if (chunk.trackPoints == 0) return;
+            if (trackPoints > 0) {
+                // The pair of fixes either side of the chunk boundary
+                Window w = windows.get(Math.floorDiv(chunk.firstFixNanos, segmentNanos));
+                double d = RoughnessFeatureEngine.distanceMeters(lastLatitude, lastLongitude,
+                        chunk.firstLatitude, chunk.firstLongitude);
+                w.distanceMeters += d;
+                w.fixPairNanos += chunk.firstFixNanos - lastFixNanos;
+                distanceMeters += d;
+            }
+            lastFixNanos = chunk.lastFixNanos;
+            lastLatitude = chunk.lastLatitude;
+            lastLongitude = chunk.lastLongitude;
+            int values = 2 * (trackPoints + chunk.trackPoints);
+            if (values > track.length) track = Arrays.copyOf(track, Math.max(values, track.length * 2));
+            System.arraycopy(chunk.track, 0, track, 2 * trackPoints, 2 * chunk.trackPoints);
+            trackPoints += chunk.trackPoints;
+        }
+
+        // Rows of the chunk ahead of its first anchor take the latest anchor of the chunks before it
+        private void writeHead(ChunkTask chunk, FileOutputStream merged, AsciiBuffer line) throws IOException {
+            BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+            try (BinaryRecordReader in = new BinaryRecordReader(
+                    new BufferedInputStream(new FileInputStream(chunk.head), FLUSH_BYTES))) {
+                while (in.next(r)) {
+                    if (r.type == BinaryRecordReader.RECORD_LOCATION) {
+                        appendLocation(line, session, anchored, lastAnchorNanos, lastAnchorMillis, r.timestamp, r.latitude, r.longitude);
+                    } else {
+                        appendSensor(line, session, anchored, lastAnchorNanos, lastAnchorMillis, r.channel, r.timestamp, r.x, r.y, r.z);
+                    }
+                    if (line.length() >= FLUSH_BYTES) {
+                        line.writeTo(merged);
+                        line.clear();
+                    }
+                }
+            }
+            line.writeTo(merged);
+            line.clear();
+        }
+
+        void writeSegments(OutputStream out, AsciiBuffer line) throws IOException {
+            boolean aligned = clock.anchorCount() > 0;
+            for (Map.Entry<Long, Window> e : windows.entrySet()) {
+                Window w = e.getValue();
+                line.append(session).append(',').append(e.getKey()).append(',')
+                        .append(w.firstNanos).append(',').append(w.lastNanos).append(',');
+                if (aligned) line.append(clock.toWallMillis(w.firstNanos), 3);
+                line.append(',').append(w.accelSamples).append(',');
+                if (w.accelSamples > 0) {
+                    line.append(Math.sqrt(w.vibrationSumSquares / w.accelSamples), VALUE_DIGITS).append(',')
+                            .append(w.accelMax, VALUE_DIGITS);
+                } else {
+                    line.append(',');
+                }
+                line.append(',').append(w.gyroSamples).append(',');
+                if (w.gyroSamples > 0) {
+                    line.append(Math.sqrt(w.gyroSumSquares / w.gyroSamples), VALUE_DIGITS).append(',')
+                            .append(w.gyroMax, VALUE_DIGITS);
+                } else {
+                    line.append(',');
+                }
+                line.append(',').append(w.fixes).append(',').append(w.distanceMeters, 3).append(',');
+                if (w.fixPairNanos > 0) line.append(w.distanceMeters / (w.fixPairNanos / 1e9), 3);
+                line.append('\n');
+                if (line.length() >= FLUSH_BYTES) {
+                    line.writeTo(out);
+                    line.clear();
+                }
+            }
+            line.writeTo(out);
+            line.clear();
+        }
+
+        void writeTrack(OutputStream out, AsciiBuffer line) throws IOException {
+            line.append("\n{\"type\":\"Feature\",\"properties\":{\"session\":\"").append(session)
+                    .append("\",\"fixes\":").append(trackPoints)
+                    .append(",\"distanceM\":").append(distanceMeters, 1);
+            if (clock.anchorCount() > 0) {
+                line.append(",\"startWallMs\":").append(Math.round(clock.toWallMillis(firstNanos)))
+                        .append(",\"endWallMs\":").append(Math.round(clock.toWallMillis(lastNanos)));
+            }
+            line.append("},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+            for (int i = 0; i < trackPoints; i++) {
+                if (i > 0) line.append(',');
+                line.append('[').append(track[2 * i], COORDINATE_DIGITS).append(',')
+                        .append(track[2 * i + 1], COORDINATE_DIGITS).append(']');
+                if (line.length() >= FLUSH_BYTES) {
+                    line.writeTo(out);
+                    line.clear();
+                }
+            }
+            line.append("]}}");
+            line.writeTo(out);
+            line.clear();
+        }
+    }
+
+    // "<session>,<wall ms>,<time>,<type>,x,y,z,," with empty cells for NaN and an unknown wall time
+    static void appendSensor(AsciiBuffer line, String session, boolean aligned, long anchorNanos, long anchorMillis,
+                             int channel, long timestamp, float x, float y, float z) {
+        appendPrefix(line, session, aligned, anchorNanos, anchorMillis, timestamp, channel);
+        value(line, x);
+        value(line, y);
+        value(line, z);
+        line.append(",,\n");
+    }
+
+    // "<session>,<wall ms>,<time>,Location,,,,lat,lon"
+    static void appendLocation(AsciiBuffer line, String session, boolean aligned, long anchorNanos, long anchorMillis,
+                               long timestamp, double latitude, double longitude) {
+        appendPrefix(line, session, aligned, anchorNanos, anchorMillis, timestamp, Channels.LOCATION);
+        line.append(",,,,").append(latitude, COORDINATE_DIGITS).append(',').append(longitude, COORDINATE_DIGITS).append('\n');
+    }
+
+    private static void appendPrefix(AsciiBuffer line, String session, boolean aligned, long anchorNanos,
+                                     long anchorMillis, long timestamp, int channel) {
+        line.append(session).append(',');
+        if (aligned) line.append(anchorMillis + (timestamp - anchorNanos) / 1e6, 3);
+        line.append(',').append(timestamp).append(',').append(Channels.name(channel));
+    }
+
+    private static void value(AsciiBuffer line, float v) {
+        line.append(',');
+        if (!Float.isNaN(v)) line.append(v, VALUE_DIGITS);
+    }
+
+    /** File name without extensions, reduced to characters that need no quoting in CSV or JSON. */
+    static String sessionName(File file) {
+        String name = file.getName();
+        int dot = name.indexOf('.');
+        if (dot > 0) name = name.substring(0, dot);
+        StringBuilder sb = new StringBuilder(name.length());
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            boolean plain = c < 128 && (Character.isLetterOrDigit(c) || c == '_' || c == '-');
+            sb.append(plain ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Session files given directly, and those named sensor_data_* in the directories given. A
+     * segmented session is found by its manifest; the segments it lists and the features files
+     * written next to sessions are left out.
+     */
+    static List<File> sessionFiles(List<String> paths) throws IOException {
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            File f = new File(path);
+            if (!f.isDirectory()) {
+                if (!f.isFile()) throw new IOException("No such file: " + path);
+                files.add(f);
+                continue;
+            }
+            File[] listed = f.listFiles();
+            if (listed == null) throw new IOException("Cannot list " + path);
+            Set<String> segments = new HashSet<>();
+            for (File c : listed) {
+                if (!c.isFile() || !c.getName().endsWith(SegmentManifest.SUFFIX)) continue;
+                try {
+                    for (SegmentManifest.Entry e : SegmentManifest.load(c).entries()) segments.add(e.fileName);
+                } catch (IOException e) {
+                    // Still listed below, so the export reports why it cannot be read
+                }
+            }
+            for (File c : listed) {
+                String n = c.getName();
+                if (!c.isFile() || !n.startsWith("sensor_data_") || segments.contains(n) || n.endsWith(FeatureFileWriter.SUFFIX)) {
+                    continue;
+                }
+                if (n.endsWith(SegmentManifest.SUFFIX)) {
+                    files.add(c);
+                    continue;
+                }
+                if (n.endsWith(RecordingFormat.COMPRESSED_SUFFIX)) {
+                    n = n.substring(0, n.length() - RecordingFormat.COMPRESSED_SUFFIX.length());
+                }
+                boolean session = n.endsWith(RecordingFormat.CSV.extension) || n.endsWith(RecordingFormat.BINARY.extension);
+                if (session) files.add(c);
+            }
+        }
+        return files;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        long chunkMb = DEFAULT_CHUNK_MB;
+        long segmentSeconds = DEFAULT_SEGMENT_SECONDS;
+        List<String> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--threads") && i + 1 < args.length) {
+                threads = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("--chunk-mb") && i + 1 < args.length) {
+                chunkMb = Long.parseLong(args[++i]);
+            } else if (args[i].equals("--segment-s") && i + 1 < args.length) {
+                segmentSeconds = Long.parseLong(args[++i]);
+            } else {
+                paths.add(args[i]);
+            }
+        }
+        if (paths.size() < 2) {
+            System.err.println("usage: BatchExporter [--threads N] [--chunk-mb M] [--segment-s S]"
+                    + " <output dir> <session file or dir>...");
+            System.exit(2);
+        }
+        File outDir = new File(paths.get(0));
+        if (!outDir.isDirectory() && !outDir.mkdirs()) throw new IOException("Cannot create " + outDir);
+        List<File> files = sessionFiles(paths.subList(1, paths.size()));
+        BatchExporter exporter = new BatchExporter(outDir, threads, chunkMb << 20, segmentSeconds * NANOS_PER_SECOND);
+        Report report = exporter.export(files);
+        for (String s : report.skipped) System.err.println("Skipped " + s);
+        System.out.println("Exported " + report);
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Streams a binary session back out in the CSV layout written by {@link CsvRecordWriter}, so
+ * existing CSV tooling keeps working. Block-compressed input is detected and inflated on the
+ * fly. Runs on a plain JVM:
+ *
+ * <pre>java com.example.roadsensorrecorder.BinaryCsvConverter sensor_data_X.rsr sensor_data_X.csv</pre>
+ */
+public final class BinaryCsvConverter {
+
+    private BinaryCsvConverter() {}
+
+    /**
+     * Convert every record from {@code in} and flush {@code out}; neither stream is closed.
+     *
+     * @param in a stream supporting mark/reset, e.g. a BufferedInputStream
+     */
+    static long convert(InputStream in, OutputStream out) throws IOException {
+        if (BlockCompressedInputStream.isCompressed(in)) {
+            in = new BlockCompressedInputStream(in);
+        }
+        BinaryRecordReader reader = new BinaryRecordReader(in);
+        CsvRecordWriter csv = new CsvRecordWriter(out, null, reader.schema(), CsvPrecision.SHORTEST);
+        BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+        long records = 0;
+        while (reader.next(r)) {
+            write(r, csv);
+            records++;
+        }
+        csv.flush();
+        return records;
+    }
+
+    /** Write one record read by a {@link RecordReader} to {@code out}. */
+    static void write(BinaryRecordReader.Record r, RecordWriter out) throws IOException {
+        switch (r.type) {
+            case BinaryRecordReader.RECORD_SENSOR:
+                out.writeSensor(r.channel, r.timestamp, r.x, r.y, r.z);
+                break;
+            case BinaryRecordReader.RECORD_LOCATION:
+                out.writeLocation(r.timestamp, r.latitude, r.longitude);
+                break;
+            case BinaryRecordReader.RECORD_DROPPED:
+                out.writeDropped(r.channel, r.timestamp, r.count);
+                break;
+            case BinaryRecordReader.RECORD_FRAME:
+                out.writeFrame(r.timestamp, r.x, r.y, r.z, r.gx, r.gy, r.gz, r.latitude, r.longitude);
+                break;
+            case BinaryRecordReader.RECORD_SUMMARY:
+                out.writeSummary(r.channel, r.timestamp, r.count, r.x, r.y);
+                break;
+            case BinaryRecordReader.RECORD_EVENT:
+                out.writeEvent(r.timestamp, r.channel, r.x);
+                break;
+            case BinaryRecordReader.RECORD_RATE:
+                out.writeRate(r.timestamp, (int) r.count, r.x);
+                break;
+            case BinaryRecordReader.RECORD_ANCHOR:
+                out.writeAnchor(r.timestamp, r.channel, r.count);
+                break;
+            case BinaryRecordReader.RECORD_CHANNEL_STATS:
+                out.writeChannelStats(r.channel, r.timestamp, r.count, r.x, r.y, r.z);
+                break;
+            case BinaryRecordReader.RECORD_PIPELINE_STATS:
+                out.writePipelineStats(r.timestamp, r.channel, r.count, r.x, r.y, r.z);
+                break;
+            default:
+                break;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: BinaryCsvConverter <input.rsr[.z]> <output.csv>");
+            System.exit(2);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(args[0]), 1 << 16);
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]), 1 << 16)) {
+            long records = convert(in, out);
+            System.out.println("Converted " + records + " records");
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Layout constants for the compact binary session format (version 3). All multi-byte values
+ * are little-endian.
+ *
+ * <pre>
+ * header:
+ *   magic        4 bytes  "RSRB"
+ *   version      u8
+ *   startMillis  i64      wall clock when the session was opened
+ *   channelCount u8
+ *   channelCount times:
+ *     id u8, kind u8, valueCount u8, sensorType varint, periodUs varint, nameLength u8, name (ASCII)
+ *   (the session's {@link ChannelSchema}; a KIND_FRAME entry is present only in resampled sessions)
+ *
+ * record:
+ *   tag          u8       channel id, or one of the TAG_* meta records
+ *   dt           varint   zig-zag delta to the previous record's timestamp
+ *   payload      KIND_XYZ: 3 x f32, KIND_SCALAR: 1 x f32, KIND_LAT_LON: 2 x f64,
+ *                KIND_FRAME: 6 x f32 (accelerometer, gyroscope) + 2 x f64 (lat, lon), TAG_DROPPED: u8 channel + varint count,
+ *                TAG_TIME_BASE: i64 absolute timestamp (dt is 0),
+ *                TAG_ANCHOR: u8 source + i64 wall-clock millis at the record's timestamp,
+ *                TAG_SUMMARY: u8 channel + varint count + f32 rms + f32 max,
+ *                TAG_EVENT: u8 trigger kind + f32 level,
+ *                TAG_RATE: varint sampling period in us + f32 speed,
+ *                TAG_CHANNEL_STATS: u8 channel + varint events + f32 events/s + f32 measured Hz + f32 requested Hz,
+ *                TAG_PIPELINE_STATS: varint peak queue depth + varint bytes written + 3 x f32 latency p50/p99/max ms
+ * </pre>
+ *
+ * Version 2 timestamps are elapsed-realtime nanoseconds; version 1 used wall-clock millis and
+ * had no anchors. Version 3 added sensorType and periodUs to the channel table; periodUs 0 means
+ * the channel follows the session rate stated by TAG_RATE records.
+ *
+ * A TAG_TIME_BASE record resets the delta base; writers emit one at the start of every
+ * independently decodable unit (e.g. a compressed block) so readers can start there.
+ */
+final class BinaryFormat {
+
+    static final byte[] MAGIC = {'R', 'S', 'R', 'B'};
+    static final int VERSION = 3;
+
+    static final int KIND_XYZ = 0;
+    static final int KIND_LAT_LON = 1;
+    static final int KIND_FRAME = 2;
+    static final int KIND_SCALAR = 3;
+
+    /** Meta record tags start here; channel ids must stay below. */
+    static final int TAG_META_BASE = 0xF0;
+    static final int TAG_DROPPED = 0xF0;
+    static final int TAG_TIME_BASE = 0xF1;
+    static final int TAG_ANCHOR = 0xF2;
+    static final int TAG_SUMMARY = 0xF3;
+    static final int TAG_EVENT = 0xF4;
+    static final int TAG_RATE = 0xF5;
+    static final int TAG_CHANNEL_STATS = 0xF6;
+    static final int TAG_PIPELINE_STATS = 0xF7;
+
+    /** Largest encoded record: tag + 10-byte varint + 40-byte frame payload. */
+    static final int MAX_RECORD_BYTES = 64;
+
+    // Record encoding of each channel id, up to and including Channels.RESAMPLED
+    private static final int[] KINDS = {KIND_XYZ, KIND_XYZ, KIND_LAT_LON, KIND_XYZ, KIND_XYZ, KIND_XYZ,
+            KIND_SCALAR, KIND_FRAME};
+
+    private BinaryFormat() {}
+
+    static int kindOf(int channel) {
+        return KINDS[channel];
+    }
+
+    static int valueCount(int kind) {
+        return kind == KIND_FRAME ? 8 : kind == KIND_LAT_LON ? 2 : kind == KIND_SCALAR ? 1 : 3;
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.roadsensorrecorder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Streams records out of a {@link BinaryFormat} session one at a time into a reused
+ * {@link Record}, so arbitrarily long sessions can be read in constant memory.
+ */
+final class BinaryRecordReader implements RecordReader {
+
+    static final int RECORD_SENSOR = 0;
+    static final int RECORD_LOCATION = 1;
+    static final int RECORD_DROPPED = 2;
+    static final int RECORD_ANCHOR = 3;
+    static final int RECORD_FRAME = 4;
+    static final int RECORD_SUMMARY = 5;
+    static final int RECORD_EVENT = 6;
+    static final int RECORD_RATE = 7;
+    static final int RECORD_CHANNEL_STATS = 8;
+    static final int RECORD_PIPELINE_STATS = 9;
+
+    private final InputStream in;
+    private final byte[] buf = new byte[40];
+    private final int version;
+    private final long startMillis;
+    private final String[] channelNames = new String[BinaryFormat.TAG_META_BASE];
+    private final int[] channelKinds = new int[BinaryFormat.TAG_META_BASE];
+    // Declared period per channel, ChannelSchema.OFF if undeclared
+    private final int[] channelPeriods = new int[BinaryFormat.TAG_META_BASE];
+    private long lastTimestamp;
+
+    /**
+     * Continue reading with {@code header}'s channel table from a stream positioned at the start
+     * of an independently decodable unit (which begins with a time base record).
+     */
+    BinaryRecordReader(InputStream in, BinaryRecordReader header) {
+        this.in = in;
+        this.version = header.version;
+        this.startMillis = header.startMillis;
+        System.arraycopy(header.channelNames, 0, channelNames, 0, channelNames.length);
+        System.arraycopy(header.channelKinds, 0, channelKinds, 0, channelKinds.length);
+        System.arraycopy(header.channelPeriods, 0, channelPeriods, 0, channelPeriods.length);
+    }
+
+    /** @param in a buffered stream positioned at the start of the session */
+    BinaryRecordReader(InputStream in) throws IOException {
+        this.in = in;
+        readFully(4);
+        if (!Arrays.equals(Arrays.copyOf(buf, 4), BinaryFormat.MAGIC)) {
+            throw new IOException("Not a binary recording (bad magic)");
+        }
+        version = readByte();
+        if (version < 1 || version > BinaryFormat.VERSION) {
+            throw new IOException("Unsupported binary recording version " + version);
+        }
+        startMillis = readLong();
+        Arrays.fill(channelKinds, -1);
+        Arrays.fill(channelPeriods, ChannelSchema.OFF);
+        int count = readByte();
+        for (int i = 0; i < count; i++) {
+            int id = readByte();
+            int kind = readByte();
+            readByte(); // value count, implied by kind
+            // Earlier versions recorded fixes once a second and sensors at the session rate
+            int period = id == Channels.LOCATION ? ChannelSchema.LOCATION_PERIOD_US : ChannelSchema.SESSION_RATE;
+            if (version >= 3) {
+                readVarint(); // sensor type, implied by the channel id
+                period = (int) readVarint();
+            }
+            channelPeriods[id] = period;
+            int nameLength = readByte();
+            byte[] name = new byte[nameLength];
+            readFully(name, nameLength);
+            channelKinds[id] = kind;
+            channelNames[id] = new String(name, StandardCharsets.US_ASCII);
+        }
+    }
+
+    int version() {
+        return version;
+    }
+
+    long startMillis() {
+        return startMillis;
+    }
+
+    String channelName(int channel) {
+        return channelNames[channel];
+    }
+
+    /**
+     * The channels declared in the header. Files written before version 3 declare no rates; their
+     * sensors read as following the session rate.
+     */
+    ChannelSchema schema() {
+        int[] periods = new int[Channels.COUNT];
+        Arrays.fill(periods, ChannelSchema.OFF);
+        for (int ch = 0; ch < Channels.COUNT; ch++) {
+            // Frames were declared under id 3 before the extra sensors took it
+            if (channelKinds[ch] >= 0 && channelKinds[ch] != BinaryFormat.KIND_FRAME) periods[ch] = channelPeriods[ch];
+        }
+        return new ChannelSchema(periods, isResampled());
+    }
+
+    /** True if the session holds {@link #RECORD_FRAME} records rather than per-channel samples. */
+    boolean isResampled() {
+        for (int kind : channelKinds) {
+            if (kind == BinaryFormat.KIND_FRAME) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Read the next record.
+     *
+     * @return false at a clean end of stream
+     * @throws EOFException if the stream ends in the middle of a record
+     */
+    @Override
+    public boolean next(Record r) throws IOException {
+        int tag = in.read();
+        if (tag < 0) return false;
+        if (tag == BinaryFormat.TAG_TIME_BASE) {
+            readVarint();
+            lastTimestamp = readLong();
+            tag = readByte();
+        }
+        long zz = readVarint();
+        lastTimestamp += (zz >>> 1) ^ -(zz & 1);
+        r.timestamp = lastTimestamp;
+        if (tag == BinaryFormat.TAG_DROPPED) {
+            r.type = RECORD_DROPPED;
+            r.channel = readByte();
+            r.count = readVarint();
+            return true;
+        }
+        if (tag == BinaryFormat.TAG_SUMMARY) {
+            r.type = RECORD_SUMMARY;
+            r.channel = readByte();
+            r.count = readVarint();
+            readFully(8);
+            r.x = Float.intBitsToFloat(getInt(buf, 0));
+            r.y = Float.intBitsToFloat(getInt(buf, 4));
+            return true;
+        }
+        if (tag == BinaryFormat.TAG_EVENT) {
+            r.type = RECORD_EVENT;
+            r.channel = readByte(); // trigger kind
+            readFully(4);
+            r.x = Float.intBitsToFloat(getInt(buf, 0));
+            return true;
+        }
+        if (tag == BinaryFormat.TAG_RATE) {
+            r.type = RECORD_RATE;
+            r.count = readVarint(); // period in us
+            readFully(4);
+            r.x = Float.intBitsToFloat(getInt(buf, 0));
+            return true;
+        }
+        if (tag == BinaryFormat.TAG_ANCHOR) {
+            r.type = RECORD_ANCHOR;
+            r.channel = readByte(); // anchor source
+            r.count = readLong();   // wall-clock millis
+            return true;
+        }
+        if (tag == BinaryFormat.TAG_CHANNEL_STATS) {
+            r.type = RECORD_CHANNEL_STATS;
+            r.channel = readByte();
+            r.count = readVarint(); // events
+            readFully(12);
+            r.x = Float.intBitsToFloat(getInt(buf, 0)); // events/s
+            r.y = Float.intBitsToFloat(getInt(buf, 4)); // measured Hz
+            r.z = Float.intBitsToFloat(getInt(buf, 8)); // requested Hz
+            return true;
+        }
+        if (tag == BinaryFormat.TAG_PIPELINE_STATS) {
+            r.type = RECORD_PIPELINE_STATS;
+            r.channel = (int) readVarint(); // peak queue depth
+            r.count = readVarint();         // bytes written
+            readFully(12);
+            r.x = Float.intBitsToFloat(getInt(buf, 0)); // latency p50, p99, max in ms
+            r.y = Float.intBitsToFloat(getInt(buf, 4));
+            r.z = Float.intBitsToFloat(getInt(buf, 8));
+            return true;
+        }
+        if (tag >= BinaryFormat.TAG_META_BASE || channelKinds[tag] < 0) {
+            throw new IOException("Unknown record tag " + tag);
+        }
+        r.channel = tag;
+        if (channelKinds[tag] == BinaryFormat.KIND_FRAME) {
+            readFully(40);
+            r.type = RECORD_FRAME;
+            r.x = Float.intBitsToFloat(getInt(buf, 0));
+            r.y = Float.intBitsToFloat(getInt(buf, 4));
+            r.z = Float.intBitsToFloat(getInt(buf, 8));
+            r.gx = Float.intBitsToFloat(getInt(buf, 12));
+            r.gy = Float.intBitsToFloat(getInt(buf, 16));
+            r.gz = Float.intBitsToFloat(getInt(buf, 20));
+            r.latitude = Double.longBitsToDouble(getLong(buf, 24));
+            r.longitude = Double.longBitsToDouble(getLong(buf, 32));
+        } else if (channelKinds[tag] == BinaryFormat.KIND_LAT_LON) {
+            readFully(16);
+            r.type = RECORD_LOCATION;
+            r.latitude = Double.longBitsToDouble(getLong(buf, 0));
+            r.longitude = Double.longBitsToDouble(getLong(buf, 8));
+        } else if (channelKinds[tag] == BinaryFormat.KIND_SCALAR) {
+            readFully(4);
+            r.type = RECORD_SENSOR;
+            r.x = Float.intBitsToFloat(getInt(buf, 0));
+            r.y = Float.NaN;
+            r.z = Float.NaN;
+        } else {
+            readFully(12);
+            r.type = RECORD_SENSOR;
+            r.x = Float.intBitsToFloat(getInt(buf, 0));
+            r.y = Float.intBitsToFloat(getInt(buf, 4));
+            r.z = Float.intBitsToFloat(getInt(buf, 8));
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0) throw new EOFException();
+        return b;
+    }
+
+    private long readLong() throws IOException {
+        readFully(8);
+        return getLong(buf, 0);
+    }
+
+    private long readVarint() throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = readByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private void readFully(int n) throws IOException {
+        readFully(buf, n);
+    }
+
+    private void readFully(byte[] dst, int n) throws IOException {
+        int off = 0;
+        while (off < n) {
+            int r = in.read(dst, off, n - off);
+            if (r < 0) throw new EOFException();
+            off += r;
+        }
+    }
+
+    static int getInt(byte[] b, int p) {
+        return (b[p] & 0xFF) | (b[p + 1] & 0xFF) << 8 | (b[p + 2] & 0xFF) << 16 | (b[p + 3] & 0xFF) << 24;
+    }
+
+    static long getLong(byte[] b, int p) {
+        return (getInt(b, p) & 0xFFFFFFFFL) | ((long) getInt(b, p + 4) << 32);
+    }
+
+    /**
+     * Mutable holder reused for every record. Dropped records put the cumulative count in
+     * {@code count}; anchors put the source in {@code channel} and the wall-clock millis in {@code count};
+     * frames put the accelerometer in {@code x, y, z} and the gyroscope in {@code gx, gy, gz};
+     * single-value sensors put their value in {@code x} and NaN in {@code y, z};
+     * summaries put RMS and max in {@code x, y}; events put the trigger kind in {@code channel}
+     * and the level in {@code x}; rate changes put the period in {@code count} and the speed in {@code x}.
+     */
+    static final class Record {
+        int type;
+        int channel;
+        long timestamp;
+        float x, y, z;
+        float gx, gy, gz;
+        double latitude, longitude;
+        long count;
+    }
+}
@@ -0,0 +1,210 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Writes sessions in the {@link BinaryFormat} layout: a one-byte channel id, a delta-encoded
+ * varint timestamp and raw IEEE values per record, typically 14 bytes per three-axis sample and
+ * 6 per pressure reading. Samples, fixes and frames are only accepted for channels the header
+ * declares, since readers cannot size any other record.
+ */
+final class BinaryRecordWriter implements RecordWriter {
+
+    private final OutputStream out;
+    private final RecordBoundaryListener boundaries;
+    private final byte[] buf = new byte[BinaryFormat.MAX_RECORD_BYTES];
+    // Indexed by channel id, frames included
+    private final boolean[] declared = new boolean[Channels.COUNT + 1];
+    private long lastTimestamp;
+
+    BinaryRecordWriter(OutputStream out, long startMillis) throws IOException {
+        this(out, null, startMillis, ChannelSchema.standard(false));
+    }
+
+    /**
+     * @param boundaries notified before each record, or null
+     * @param schema     the channels declared in the header
+     */
+    BinaryRecordWriter(OutputStream out, RecordBoundaryListener boundaries, long startMillis,
+                       ChannelSchema schema) throws IOException {
+        this.out = out;
+        this.boundaries = boundaries;
+        writeHeader(startMillis, schema);
+    }
+
+    private void writeHeader(long startMillis, ChannelSchema schema) throws IOException {
+        out.write(BinaryFormat.MAGIC);
+        out.write(BinaryFormat.VERSION);
+        int p = putLong(buf, 0, startMillis);
+        out.write(buf, 0, p);
+        int[] ids = schema.headerChannels();
+        out.write(ids.length);
+        for (int ch : ids) {
+            declared[ch] = true;
+            byte[] name = Channels.name(ch).getBytes(StandardCharsets.US_ASCII);
+            int kind = BinaryFormat.kindOf(ch);
+            out.write(ch);
+            out.write(kind);
+            out.write(BinaryFormat.valueCount(kind));
+            p = putVarint(buf, 0, ch < Channels.COUNT ? Channels.sensorType(ch) : 0);
+            p = putVarint(buf, p, Math.max(0, schema.periodUs(ch)));
+            out.write(buf, 0, p);
+            out.write(name.length);
+            out.write(name);
+        }
+    }
+
+    @Override
+    public void writeSensor(int channel, long timestamp, float x, float y, float z) throws IOException {
+        if (channel < 0 || channel >= Channels.COUNT || !declared[channel]) {
+            throw new IllegalArgumentException("Channel " + channel + " is not in the session schema");
+        }
+        int p = putHead(channel, timestamp);
+        p = putInt(buf, p, Float.floatToRawIntBits(x));
+        if (BinaryFormat.kindOf(channel) != BinaryFormat.KIND_SCALAR) {
+            p = putInt(buf, p, Float.floatToRawIntBits(y));
+            p = putInt(buf, p, Float.floatToRawIntBits(z));
+        }
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writeLocation(long timestamp, double latitude, double longitude) throws IOException {
+        if (!declared[Channels.LOCATION]) throw new IllegalStateException("Location is not in the session schema");
+        int p = putHead(Channels.LOCATION, timestamp);
+        p = putLong(buf, p, Double.doubleToRawLongBits(latitude));
+        p = putLong(buf, p, Double.doubleToRawLongBits(longitude));
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writeFrame(long timestamp, float ax, float ay, float az, float gx, float gy, float gz,
+                           double latitude, double longitude) throws IOException {
+        if (!declared[Channels.RESAMPLED]) throw new IllegalStateException("Frames need a resampled schema");
+        int p = putHead(Channels.RESAMPLED, timestamp);
+        p = putInt(buf, p, Float.floatToRawIntBits(ax));
+        p = putInt(buf, p, Float.floatToRawIntBits(ay));
+        p = putInt(buf, p, Float.floatToRawIntBits(az));
+        p = putInt(buf, p, Float.floatToRawIntBits(gx));
+        p = putInt(buf, p, Float.floatToRawIntBits(gy));
+        p = putInt(buf, p, Float.floatToRawIntBits(gz));
+        p = putLong(buf, p, Double.doubleToRawLongBits(latitude));
+        p = putLong(buf, p, Double.doubleToRawLongBits(longitude));
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writeDropped(int channel, long timestamp, long count) throws IOException {
+        int p = putHead(BinaryFormat.TAG_DROPPED, timestamp);
+        buf[p++] = (byte) channel;
+        p = putVarint(buf, p, count);
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writeSummary(int channel, long timestamp, long count, float rms, float max) throws IOException {
+        int p = putHead(BinaryFormat.TAG_SUMMARY, timestamp);
+        buf[p++] = (byte) channel;
+        p = putVarint(buf, p, count);
+        p = putInt(buf, p, Float.floatToRawIntBits(rms));
+        p = putInt(buf, p, Float.floatToRawIntBits(max));
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writeEvent(long timestamp, int kind, float level) throws IOException {
+        int p = putHead(BinaryFormat.TAG_EVENT, timestamp);
+        buf[p++] = (byte) kind;
+        p = putInt(buf, p, Float.floatToRawIntBits(level));
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writeRate(long timestamp, int periodUs, float speed) throws IOException {
+        int p = putHead(BinaryFormat.TAG_RATE, timestamp);
+        p = putVarint(buf, p, periodUs);
+        p = putInt(buf, p, Float.floatToRawIntBits(speed));
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writeAnchor(long timestamp, int source, long wallMillis) throws IOException {
+        int p = putHead(BinaryFormat.TAG_ANCHOR, timestamp);
+        buf[p++] = (byte) source;
+        p = putLong(buf, p, wallMillis);
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writeChannelStats(int channel, long timestamp, long events, float eventsPerSecond, float measuredHz,
+                                  float requestedHz) throws IOException {
+        int p = putHead(BinaryFormat.TAG_CHANNEL_STATS, timestamp);
+        buf[p++] = (byte) channel;
+        p = putVarint(buf, p, events);
+        p = putInt(buf, p, Float.floatToRawIntBits(eventsPerSecond));
+        p = putInt(buf, p, Float.floatToRawIntBits(measuredHz));
+        p = putInt(buf, p, Float.floatToRawIntBits(requestedHz));
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void writePipelineStats(long timestamp, int peakQueueDepth, long bytesWritten, float p50Millis,
+                                   float p99Millis, float maxMillis) throws IOException {
+        int p = putHead(BinaryFormat.TAG_PIPELINE_STATS, timestamp);
+        p = putVarint(buf, p, peakQueueDepth);
+        p = putVarint(buf, p, bytesWritten);
+        p = putInt(buf, p, Float.floatToRawIntBits(p50Millis));
+        p = putInt(buf, p, Float.floatToRawIntBits(p99Millis));
+        p = putInt(buf, p, Float.floatToRawIntBits(maxMillis));
+        out.write(buf, 0, p);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private int putHead(int tag, long timestamp) throws IOException {
+        if (boundaries != null && boundaries.onRecordStart(timestamp)) {
+            // New independently decodable unit: restate the absolute time before any delta
+            buf[0] = (byte) BinaryFormat.TAG_TIME_BASE;
+            buf[1] = 0;
+            int p = putLong(buf, 2, timestamp);
+            out.write(buf, 0, p);
+            lastTimestamp = timestamp;
+        }
+        buf[0] = (byte) tag;
+        long delta = timestamp - lastTimestamp;
+        lastTimestamp = timestamp;
+        return putVarint(buf, 1, (delta << 1) ^ (delta >> 63));
+    }
+
+    static int putVarint(byte[] b, int p, long v) {
+        while ((v & ~0x7FL) != 0) {
+            b[p++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        b[p++] = (byte) v;
+        return p;
+    }
+
+    static int putInt(byte[] b, int p, int v) {
+        b[p] = (byte) v;
+        b[p + 1] = (byte) (v >>> 8);
+        b[p + 2] = (byte) (v >>> 16);
+        b[p + 3] = (byte) (v >>> 24);
+        return p + 4;
+    }
+
+    static int putLong(byte[] b, int p, long v) {
+        p = putInt(b, p, (int) v);
+        return putInt(b, p, (int) (v >>> 32));
+    }
+}
@@ -0,0 +1,75 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Second-order IIR section (transposed direct form II) with RBJ cookbook designs. Filtering is
+ * O(1) per sample with two doubles of state, so any number can run on the IO thread.
+ */
+final class Biquad {
+
+    private final double b0, b1, b2, a1, a2;
+    private double z1, z2;
+
+    private Biquad(double b0, double b1, double b2, double a0, double a1, double a2) {
+        this.b0 = b0 / a0;
+        this.b1 = b1 / a0;
+        this.b2 = b2 / a0;
+        this.a1 = a1 / a0;
+        this.a2 = a2 / a0;
+    }
+
+    static Biquad lowPass(double sampleRateHz, double cutoffHz, double q) {
+        double[] c = new double[5];
+        lowPassCoefficients(sampleRateHz, cutoffHz, q, c, 0);
+        return new Biquad(c[0], c[1], c[2], 1, c[3], c[4]);
+    }
+
+    /**
+     * Normalized low-pass coefficients {b0, b1, b2, a1, a2} into {@code dst[off..off+4]}, for
+     * filters that keep many sections in flat arrays.
+     */
+    static void lowPassCoefficients(double sampleRateHz, double cutoffHz, double q, double[] dst, int off) {
+        double w = 2 * Math.PI * cutoffHz / sampleRateHz;
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        double a0 = 1 + alpha;
+        dst[off] = (1 - cos) / 2 / a0;
+        dst[off + 1] = (1 - cos) / a0;
+        dst[off + 2] = (1 - cos) / 2 / a0;
+        dst[off + 3] = -2 * cos / a0;
+        dst[off + 4] = (1 - alpha) / a0;
+    }
+
+    /** Q of section {@code k} of a Butterworth low-pass built from {@code sections} biquads. */
+    static double butterworthQ(int sections, int k) {
+        return 1 / (2 * Math.sin(Math.PI * (2 * k + 1) / (4.0 * sections)));
+    }
+
+    static Biquad highPass(double sampleRateHz, double cutoffHz, double q) {
+        double w = 2 * Math.PI * cutoffHz / sampleRateHz;
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        return new Biquad((1 + cos) / 2, -(1 + cos), (1 + cos) / 2, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    /** Band-pass between {@code lowHz} and {@code highHz} with 0 dB peak gain. */
+    static Biquad bandPass(double sampleRateHz, double lowHz, double highHz) {
+        double center = Math.sqrt(lowHz * highHz);
+        double q = center / (highHz - lowHz);
+        double w = 2 * Math.PI * center / sampleRateHz;
+        double cos = Math.cos(w);
+        double alpha = Math.sin(w) / (2 * q);
+        return new Biquad(alpha, 0, -alpha, 1 + alpha, -2 * cos, 1 - alpha);
+    }
+
+    double process(double x) {
+        double y = b0 * x + z1;
+        z1 = b1 * x - a1 * y + z2;
+        z2 = b2 * x - a2 * y;
+        return y;
+    }
+
+    void reset() {
+        z1 = 0;
+        z2 = 0;
+    }
+}
@@ -0,0 +1,171 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Sequential reader for {@link BlockCompressedOutputStream} files. Inflates one frame at a
+ * time, so memory is bounded by the block size. A torn frame at the end of the file (the
+ * data written after the last flush when the recorder died) is treated as end of data and
+ * reported by {@link #isTruncated()}.
+ */
+final class BlockCompressedInputStream extends InputStream {
+
+    private final InputStream in;
+    private final Inflater inflater = new Inflater(true);
+    private final CRC32 crc = new CRC32();
+    private final byte[] frameHeader = new byte[BlockCompressedOutputStream.FRAME_HEADER_BYTES];
+    private byte[] compressed = new byte[0];
+    private byte[] block = new byte[0];
+    private int pos;
+    private int limit;
+    private boolean eof;
+    private boolean truncated;
+
+    /** Read a whole file, starting with its header. */
+    BlockCompressedInputStream(InputStream in) throws IOException {
+        this(in, true);
+    }
+
+    /**
+     * @param readHeader false when {@code in} is already positioned at a frame, e.g. after
+     *                   seeking with {@link BlockIndex}
+     */
+    BlockCompressedInputStream(InputStream in, boolean readHeader) throws IOException {
+        this.in = in;
+        if (readHeader) {
+            byte[] header = new byte[BlockCompressedOutputStream.HEADER_BYTES];
+            if (readFully(header, header.length) < header.length
+                    || !startsWith(header, BlockCompressedOutputStream.MAGIC)) {
+                throw new IOException("Not a block-compressed recording");
+            }
+            int version = header[4] & 0xFF;
+            if (version < 1 || version > BlockCompressedOutputStream.VERSION) {
+                throw new IOException("Unsupported block-compressed version " + (header[4] & 0xFF));
+            }
+        }
+    }
+
+    /** True if {@code in} starts with the block-compressed file magic; {@code in} must support mark. */
+    static boolean isCompressed(InputStream in) throws IOException {
+        byte[] magic = new byte[4];
+        in.mark(4);
+        int n = 0;
+        while (n < 4) {
+            int r = in.read(magic, n, 4 - n);
+            if (r < 0) break;
+            n += r;
+        }
+        in.reset();
+        return n == 4 && Arrays.equals(magic, BlockCompressedOutputStream.MAGIC);
+    }
+
+    /** True if reading stopped at an incomplete or unrecognised frame rather than the index. */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (pos == limit && !nextBlock()) return -1;
+        return block[pos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (pos == limit && !nextBlock()) return -1;
+        int n = Math.min(len, limit - pos);
+        System.arraycopy(block, pos, b, off, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+
+    private boolean nextBlock() throws IOException {
+        if (eof) return false;
+        int n = readFully(frameHeader, 4);
+        if (n == 0 || (n == 4 && startsWith(frameHeader, BlockCompressedOutputStream.INDEX_MAGIC))) {
+            eof = true;
+            return false;
+        }
+        boolean continuation = n == 4 && startsWith(frameHeader, BlockCompressedOutputStream.CONTINUATION_MAGIC);
+        if (n < 4 || !(continuation || startsWith(frameHeader, BlockCompressedOutputStream.FRAME_MAGIC))) {
+            return stopTruncated();
+        }
+        int rest = frameHeader.length - 4;
+        if (readFully(frameHeader, 4, rest) < rest) return stopTruncated();
+        int clen = BinaryRecordReader.getInt(frameHeader, 4);
+        int length = BinaryRecordReader.getInt(frameHeader, 8);
+        int expectedCrc = BinaryRecordReader.getInt(frameHeader, 28);
+        if (clen < 0 || length < 0) return stopTruncated();
+        if (compressed.length < clen) compressed = new byte[clen];
+        // One spare byte shows a frame that inflates to more than it declares
+        if (block.length <= length) block = new byte[length + 1];
+        if (readFully(compressed, clen) < clen) return stopTruncated();
+
+        // A continuation frame carries on the Deflate stream of the frames before it
+        if (!continuation) inflater.reset();
+        inflater.setInput(compressed, 0, clen);
+        int got = 0;
+        try {
+            // Consume the whole frame, including the trailing sync marker, before the next one's input
+            while (got <= length && !inflater.finished()) {
+                int r = inflater.inflate(block, got, block.length - got);
+                if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                got += r;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed block", e);
+        }
+        crc.reset();
+        crc.update(block, 0, got);
+        if (got != length || (int) crc.getValue() != expectedCrc) {
+            throw new IOException("Compressed block failed integrity check");
+        }
+        pos = 0;
+        limit = length;
+        return length > 0 || nextBlock();
+    }
+
+    private boolean stopTruncated() {
+        eof = true;
+        truncated = true;
+        return false;
+    }
+
+    private int readFully(byte[] b, int len) throws IOException {
+        return readFully(b, 0, len);
+    }
+
+    private int readFully(byte[] b, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int r = in.read(b, off + n, len - n);
+            if (r < 0) break;
+            n += r;
+        }
+        return n;
+    }
+
+    static boolean startsWith(byte[] b, byte[] magic) {
+        for (int i = 0; i < magic.length; i++) {
+            if (b[i] != magic[i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses a session in independent Deflate blocks so memory stays bounded, a crash only
+ * loses what was written since the last flush, and readers can start at any block.
+ *
+ * <pre>
+ * file   := header block* [index footer]
+ * header := "RSRZ" version:u8 blockSize:u32
+ * block  := frame("RZFB") frame("RZFC")*
+ * frame  := magic compressedLength:u32 length:u32 firstTimestamp:i64 lastTimestamp:i64 crc32:u32 deflate-data
+ * index  := "RZIX" count:u32 (fileOffset:i64 logicalOffset:i64 firstTimestamp:i64 lastTimestamp:i64)*
+ * footer := indexOffset:i64 "RZND"
+ * </pre>
+ *
+ * A block is one raw Deflate stream, split into frames wherever {@link #flush()} pushed it out
+ * with a sync flush. Continuation frames ("RZFC") share the block's dictionary, so a group
+ * commit costs a few bytes of flush marker instead of a fresh block with an empty dictionary;
+ * only the first frame of a block is indexed. Each frame carries the length, timestamps and
+ * CRC of its own bytes. Blocks are only cut at record boundaries reported through
+ * {@link #onRecordStart(long)}, once they hold the block size, so every block begins with a
+ * whole record. Integers are little-endian. Not thread-safe; used from the IO thread only.
+ */
+final class BlockCompressedOutputStream extends OutputStream implements RecordBoundaryListener {
+
+    static final byte[] MAGIC = {'R', 'S', 'R', 'Z'};
+    static final byte[] FRAME_MAGIC = {'R', 'Z', 'F', 'B'};
+    static final byte[] CONTINUATION_MAGIC = {'R', 'Z', 'F', 'C'};
+    static final byte[] INDEX_MAGIC = {'R', 'Z', 'I', 'X'};
+    static final byte[] FOOTER_MAGIC = {'R', 'Z', 'N', 'D'};
+    /** Version 1 files have no continuation frames; readers accept both. */
+    static final int VERSION = 2;
+    static final int HEADER_BYTES = 9;
+    static final int FRAME_HEADER_BYTES = 32;
+    static final int FOOTER_BYTES = 12;
+    static final int DEFAULT_BLOCK_SIZE = 64 * 1024;
+
+    private final OutputStream out;
+    private final int blockSize;
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[FRAME_HEADER_BYTES];
+    // Bytes not yet compressed into a frame
+    private byte[] block;
+    private byte[] compressed;
+    private int count;
+    private long firstTimestamp = Long.MAX_VALUE;
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    private long fileOffset;
+    private long logicalOffset;
+    // The open block: where its first frame starts and what its frames so far hold
+    private long blockFileOffset;
+    private int blockBytes;
+    private long blockFirstTimestamp = Long.MAX_VALUE;
+    private long blockLastTimestamp = Long.MIN_VALUE;
+    private final List<BlockIndex.Entry> index = new ArrayList<>();
+    private boolean closed;
+
+    BlockCompressedOutputStream(OutputStream out, int blockSize, int level) throws IOException {
+        if (blockSize < 1024) throw new IllegalArgumentException("blockSize must be >= 1024");
+        this.out = out;
+        this.blockSize = blockSize;
+        this.deflater = new Deflater(level, true);
+        this.block = new byte[blockSize + 1024];
+        this.compressed = new byte[blockSize + blockSize / 8 + 64];
+        out.write(MAGIC);
+        out.write(VERSION);
+        BinaryRecordWriter.putInt(scratch, 0, blockSize);
+        out.write(scratch, 0, 4);
+        fileOffset = HEADER_BYTES;
+    }
+
+    @Override
+    public boolean onRecordStart(long timestamp) throws IOException {
+        if (blockBytes + count >= blockSize) finishBlock();
+        boolean fresh = blockBytes == 0 && count == 0;
+        if (timestamp < firstTimestamp) firstTimestamp = timestamp;
+        if (timestamp > lastTimestamp) lastTimestamp = timestamp;
+        return fresh;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureCapacity(1);
+        block[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureCapacity(len);
+        System.arraycopy(b, off, block, count, len);
+        count += len;
+    }
+
+    /**
+     * Puts everything written so far on the underlying stream as a frame of the current block.
+     * The block stays open, so flushing often costs little compression.
+     */
+    @Override
+    public void flush() throws IOException {
+        writeFrame();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            finishBlock();
+            writeIndex(out, fileOffset, index);
+            out.flush();
+        } finally {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private void ensureCapacity(int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        if (count + len > block.length) {
+            // A single record larger than the slack; grow rather than split it across blocks
+            byte[] grown = new byte[Math.max(block.length * 2, count + len)];
+            System.arraycopy(block, 0, grown, 0, count);
+            block = grown;
+        }
+    }
+
+    private void finishBlock() throws IOException {
+        writeFrame();
+        if (blockBytes == 0) return;
+        index.add(new BlockIndex.Entry(blockFileOffset, logicalOffset, blockFirstTimestamp, blockLastTimestamp));
+        logicalOffset += blockBytes;
+        blockBytes = 0;
+        blockFirstTimestamp = Long.MAX_VALUE;
+        blockLastTimestamp = Long.MIN_VALUE;
+        deflater.reset();
+    }
+
+    // Compress the pending bytes up to a sync flush, continuing the open block's Deflate stream
+    private void writeFrame() throws IOException {
+        if (count == 0) return;
+        crc.reset();
+        crc.update(block, 0, count);
+        deflater.setInput(block, 0, count);
+        int clen = 0;
+        while (true) {
+            clen += deflater.deflate(compressed, clen, compressed.length - clen, Deflater.SYNC_FLUSH);
+            // A full output buffer may hold back more of the flush
+            if (clen < compressed.length) break;
+            compressed = Arrays.copyOf(compressed, compressed.length * 2);
+        }
+
+        boolean first = blockBytes == 0;
+        if (first) blockFileOffset = fileOffset;
+        int p = 0;
+        System.arraycopy(first ? FRAME_MAGIC : CONTINUATION_MAGIC, 0, scratch, 0, 4);
+        p += 4;
+        p = BinaryRecordWriter.putInt(scratch, p, clen);
+        p = BinaryRecordWriter.putInt(scratch, p, count);
+        p = BinaryRecordWriter.putLong(scratch, p, firstTimestamp);
+        p = BinaryRecordWriter.putLong(scratch, p, lastTimestamp);
+        BinaryRecordWriter.putInt(scratch, p, (int) crc.getValue());
+        out.write(scratch, 0, FRAME_HEADER_BYTES);
+        out.write(compressed, 0, clen);
+
+        fileOffset += FRAME_HEADER_BYTES + clen;
+        blockBytes += count;
+        blockFirstTimestamp = Math.min(blockFirstTimestamp, firstTimestamp);
+        blockLastTimestamp = Math.max(blockLastTimestamp, lastTimestamp);
+        count = 0;
+        firstTimestamp = Long.MAX_VALUE;
+        lastTimestamp = Long.MIN_VALUE;
+    }
+
+    /** Append the block table and footer; {@code indexOffset} is where the table starts in the file. */
+    static void writeIndex(OutputStream out, long indexOffset, List<BlockIndex.Entry> index) throws IOException {
+        byte[] entry = new byte[32];
+        out.write(INDEX_MAGIC);
+        BinaryRecordWriter.putInt(entry, 0, index.size());
+        out.write(entry, 0, 4);
+        for (BlockIndex.Entry e : index) {
+            int p = BinaryRecordWriter.putLong(entry, 0, e.fileOffset);
+            p = BinaryRecordWriter.putLong(entry, p, e.logicalOffset);
+            p = BinaryRecordWriter.putLong(entry, p, e.firstTimestamp);
+            p = BinaryRecordWriter.putLong(entry, p, e.lastTimestamp);
+            out.write(entry, 0, p);
+        }
+        BinaryRecordWriter.putLong(entry, 0, indexOffset);
+        System.arraycopy(FOOTER_MAGIC, 0, entry, 8, 4);
+        out.write(entry, 0, FOOTER_BYTES);
+    }
+}
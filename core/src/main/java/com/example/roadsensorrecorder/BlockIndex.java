@@ -0,0 +1,169 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Block table of a {@link BlockCompressedOutputStream} file, read from the trailing index or,
+ * for a session that was never closed, rebuilt by walking the frame headers.
+ */
+final class BlockIndex {
+
+    static final class Entry {
+        final long fileOffset;
+        final long logicalOffset;
+        final long firstTimestamp;
+        final long lastTimestamp;
+
+        Entry(long fileOffset, long logicalOffset, long firstTimestamp, long lastTimestamp) {
+            this.fileOffset = fileOffset;
+            this.logicalOffset = logicalOffset;
+            this.firstTimestamp = firstTimestamp;
+            this.lastTimestamp = lastTimestamp;
+        }
+
+        boolean hasRecords() {
+            return firstTimestamp <= lastTimestamp;
+        }
+    }
+
+    private final List<Entry> entries;
+    private final boolean fromFooter;
+    private final long framesEnd;
+
+    private BlockIndex(List<Entry> entries, boolean fromFooter, long framesEnd) {
+        this.entries = Collections.unmodifiableList(entries);
+        this.fromFooter = fromFooter;
+        this.framesEnd = framesEnd;
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /** False if the file had no valid footer and the index was rebuilt by scanning frames. */
+    boolean isComplete() {
+        return fromFooter;
+    }
+
+    /** File offset just past the last complete frame, where the index starts (or should). */
+    long framesEnd() {
+        return framesEnd;
+    }
+
+    static BlockIndex load(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            BlockIndex fromFooter = readFooter(raf);
+            return fromFooter != null ? fromFooter : scan(raf);
+        }
+    }
+
+    /**
+     * Index of the block to start reading from to see every record at or after
+     * {@code timestamp}: the last block whose first record is not later than it.
+     */
+    int blockForTime(long timestamp) {
+        int found = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            if (!e.hasRecords()) continue;
+            if (e.firstTimestamp > timestamp) break;
+            found = i;
+        }
+        return found;
+    }
+
+    /** Index of the block containing uncompressed stream offset {@code logicalOffset}. */
+    int blockForLogicalOffset(long logicalOffset) {
+        int found = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).logicalOffset > logicalOffset) break;
+            found = i;
+        }
+        return found;
+    }
+
+    /** Decompressed stream starting at the first byte of {@code block}. */
+    InputStream openAt(File file, int block) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            fis.getChannel().position(entries.isEmpty() ? BlockCompressedOutputStream.HEADER_BYTES : entries.get(block).fileOffset);
+            return new BlockCompressedInputStream(new BufferedInputStream(fis, 1 << 16), false);
+        } catch (IOException e) {
+            fis.close();
+            throw e;
+        }
+    }
+
+    private static BlockIndex readFooter(RandomAccessFile raf) throws IOException {
+        long length = raf.length();
+        if (length < BlockCompressedOutputStream.HEADER_BYTES + BlockCompressedOutputStream.FOOTER_BYTES) return null;
+        byte[] footer = new byte[BlockCompressedOutputStream.FOOTER_BYTES];
+        raf.seek(length - footer.length);
+        raf.readFully(footer);
+        if (!matches(footer, 8, BlockCompressedOutputStream.FOOTER_MAGIC)) return null;
+        long indexOffset = BinaryRecordReader.getLong(footer, 0);
+        if (indexOffset < BlockCompressedOutputStream.HEADER_BYTES || indexOffset + 8 > length) return null;
+
+        byte[] head = new byte[8];
+        raf.seek(indexOffset);
+        raf.readFully(head);
+        if (!matches(head, 0, BlockCompressedOutputStream.INDEX_MAGIC)) return null;
+        int count = BinaryRecordReader.getInt(head, 4);
+        if (count < 0 || indexOffset + 8 + 32L * count + footer.length != length) return null;
+        byte[] table = new byte[32 * count];
+        raf.readFully(table);
+        List<Entry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int p = i * 32;
+            entries.add(new Entry(BinaryRecordReader.getLong(table, p), BinaryRecordReader.getLong(table, p + 8),
+                    BinaryRecordReader.getLong(table, p + 16), BinaryRecordReader.getLong(table, p + 24)));
+        }
+        return new BlockIndex(entries, true, indexOffset);
+    }
+
+    private static BlockIndex scan(RandomAccessFile raf) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        byte[] header = new byte[BlockCompressedOutputStream.FRAME_HEADER_BYTES];
+        long length = raf.length();
+        long offset = BlockCompressedOutputStream.HEADER_BYTES;
+        long logical = 0;
+        while (offset + header.length <= length) {
+            raf.seek(offset);
+            raf.readFully(header);
+            boolean continuation = matches(header, 0, BlockCompressedOutputStream.CONTINUATION_MAGIC);
+            if (!continuation && !matches(header, 0, BlockCompressedOutputStream.FRAME_MAGIC)) break;
+            if (continuation && entries.isEmpty()) break;
+            int clen = BinaryRecordReader.getInt(header, 4);
+            int ulen = BinaryRecordReader.getInt(header, 8);
+            if (clen < 0 || ulen < 0 || offset + header.length + clen > length) break;
+            long first = BinaryRecordReader.getLong(header, 12);
+            long last = BinaryRecordReader.getLong(header, 20);
+            if (continuation) {
+                // Later frames of a block widen its time range
+                Entry block = entries.remove(entries.size() - 1);
+                entries.add(new Entry(block.fileOffset, block.logicalOffset,
+                        Math.min(block.firstTimestamp, first), Math.max(block.lastTimestamp, last)));
+            } else {
+                entries.add(new Entry(offset, logical, first, last));
+            }
+            offset += header.length + clen;
+            logical += ulen;
+        }
+        return new BlockIndex(entries, false, offset);
+    }
+
+    private static boolean matches(byte[] b, int off, byte[] magic) {
+        for (int i = 0; i < magic.length; i++) {
+            if (b[off + i] != magic[i]) return false;
+        }
+        return true;
+    }
+}
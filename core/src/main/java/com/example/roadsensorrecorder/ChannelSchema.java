@@ -0,0 +1,113 @@
+package com.example.roadsensorrecorder;
+
+import java.util.Arrays;
+
+/**
+ * The channels one session records and the rate each is registered at, fixed when the session
+ * starts. The sensor source registers exactly these sensors and the writers declare them in the
+ * file header; encoding and value count follow from the channel id ({@link BinaryFormat#kindOf}).
+ *
+ * Everything is indexed by channel id, so per-sample lookups are array reads.
+ */
+final class ChannelSchema {
+
+    /** Period of a channel the session does not record. */
+    static final int OFF = -1;
+    /** Period of a channel that follows the session sampling rate (adaptive or decimated). */
+    static final int SESSION_RATE = 0;
+    /** Interval of the fused location request. */
+    static final int LOCATION_PERIOD_US = 1_000_000;
+
+    // Indexed by channel id, Channels.COUNT entries
+    private final int[] periodsUs;
+    private final boolean resampled;
+    // Recorded channels delivered by a sensor, in id order
+    private final int[] sensorChannels;
+
+    /**
+     * @param periodsUs per channel id: {@link #OFF}, {@link #SESSION_RATE} or a fixed period
+     * @param resampled the session holds {@link FixedRateResampler} frames
+     */
+    ChannelSchema(int[] periodsUs, boolean resampled) {
+        if (periodsUs.length != Channels.COUNT) throw new IllegalArgumentException("one period per channel");
+        this.periodsUs = periodsUs.clone();
+        this.resampled = resampled;
+        int n = 0;
+        for (int ch = 0; ch < Channels.COUNT; ch++) {
+            if (periodsUs[ch] != OFF && Channels.sensorType(ch) != 0) n++;
+        }
+        sensorChannels = new int[n];
+        n = 0;
+        for (int ch = 0; ch < Channels.COUNT; ch++) {
+            if (periodsUs[ch] != OFF && Channels.sensorType(ch) != 0) sensorChannels[n++] = ch;
+        }
+    }
+
+    /** Accelerometer and gyroscope at the session rate plus location: every session before schemas. */
+    static ChannelSchema standard(boolean resampled) {
+        return new ChannelSchema(standardPeriods(), resampled);
+    }
+
+    /** Periods of {@link #standard}, to add channels to. */
+    static int[] standardPeriods() {
+        int[] periods = new int[Channels.COUNT];
+        Arrays.fill(periods, OFF);
+        periods[Channels.ACCELEROMETER] = SESSION_RATE;
+        periods[Channels.GYROSCOPE] = SESSION_RATE;
+        periods[Channels.LOCATION] = LOCATION_PERIOD_US;
+        return periods;
+    }
+
+    /** The same schema without {@code channel}, e.g. a sensor the device lacks. */
+    ChannelSchema without(int channel) {
+        int[] periods = periodsUs.clone();
+        periods[channel] = OFF;
+        return new ChannelSchema(periods, resampled);
+    }
+
+    /** True for recorded channels, and for {@link Channels#RESAMPLED} in resampled sessions. */
+    boolean contains(int channel) {
+        if (channel == Channels.RESAMPLED) return resampled;
+        return channel >= 0 && channel < Channels.COUNT && periodsUs[channel] != OFF;
+    }
+
+    boolean resampled() {
+        return resampled;
+    }
+
+    /** {@link #OFF}, {@link #SESSION_RATE} or the fixed period of {@code channel}. */
+    int periodUs(int channel) {
+        return channel < Channels.COUNT ? periodsUs[channel] : SESSION_RATE;
+    }
+
+    boolean followsSessionRate(int channel) {
+        return channel < Channels.COUNT && periodsUs[channel] == SESSION_RATE;
+    }
+
+    /** Recorded channels a sensor delivers, in id order. */
+    int[] sensorChannels() {
+        return sensorChannels.clone();
+    }
+
+    /** Recorded channel ids in header order, {@link Channels#RESAMPLED} last. */
+    int[] headerChannels() {
+        int n = 0;
+        for (int ch = 0; ch <= Channels.RESAMPLED; ch++) if (contains(ch)) n++;
+        int[] ids = new int[n];
+        n = 0;
+        for (int ch = 0; ch <= Channels.RESAMPLED; ch++) if (contains(ch)) ids[n++] = ch;
+        return ids;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int ch : headerChannels()) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(Channels.name(ch));
+            int period = periodUs(ch);
+            if (ch != Channels.RESAMPLED && period > 0) sb.append('@').append(1_000_000 / period).append("Hz");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Dense channel ids shared by the ring buffer, the writers and the file formats. Which of them a
+ * session records, and at what rate, is its {@link ChannelSchema}.
+ */
+final class Channels {
+
+    static final int ACCELEROMETER = 0;
+    static final int GYROSCOPE = 1;
+    static final int LOCATION = 2;
+    static final int MAGNETOMETER = 3;
+    static final int LINEAR_ACCELERATION = 4;
+    /** x, y, z of the unit quaternion with w >= 0; w is sqrt(1 - x^2 - y^2 - z^2). */
+    static final int ROTATION_VECTOR = 5;
+    /** Barometric pressure in hPa, a single value. */
+    static final int PRESSURE = 6;
+
+    static final int COUNT = 7;
+
+    /** Combined fixed-rate frames from {@link FixedRateResampler}; not a sampled channel. */
+    static final int RESAMPLED = 7;
+
+    // Names double as the CSV "Type" column values
+    private static final String[] NAMES = {"Accelerometer", "Gyroscope", "Location", "Magnetometer",
+            "LinearAcceleration", "RotationVector", "Pressure", "Resampled"};
+    // android.hardware.Sensor.TYPE_* delivering each sampled channel; 0 for location
+    private static final int[] SENSOR_TYPES = {1, 4, 0, 2, 10, 11, 6};
+
+    private Channels() {}
+
+    static String name(int channel) {
+        return NAMES[channel];
+    }
+
+    /** Channel id for a CSV type name, or -1 if unknown. */
+    static int forName(String name) {
+        for (int i = 0; i < NAMES.length; i++) {
+            if (NAMES[i].equals(name)) return i;
+        }
+        return -1;
+    }
+
+    /** The Android sensor type that delivers {@code channel}, 0 if it is not a sensor. */
+    static int sensorType(int channel) {
+        return SENSOR_TYPES[channel];
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.roadsensorrecorder;
+
+import java.util.Arrays;
+
+/**
+ * Post-processing model mapping a session's elapsed-realtime nanosecond timestamps to wall-clock
+ * milliseconds, built from the anchor records of one source.
+ *
+ * Between two anchors the mapping is interpolated linearly, which absorbs slow drift and any
+ * wall-clock step (NTP/NITZ correction) between them; outside the anchored range the nearest
+ * anchor's offset is used.
+ */
+final class ClockAlignment {
+
+    private long[] elapsedNanos = new long[16];
+    private long[] wallMillis = new long[16];
+    private int count;
+
+    /** Add an anchor; anchors must arrive in elapsed-realtime order, as they do in a session file. */
+    void addAnchor(long elapsedNanos, long wallMillis) {
+        if (count > 0 && elapsedNanos <= this.elapsedNanos[count - 1]) return;
+        if (count == this.elapsedNanos.length) {
+            this.elapsedNanos = Arrays.copyOf(this.elapsedNanos, count * 2);
+            this.wallMillis = Arrays.copyOf(this.wallMillis, count * 2);
+        }
+        this.elapsedNanos[count] = elapsedNanos;
+        this.wallMillis[count] = wallMillis;
+        count++;
+    }
+
+    int anchorCount() {
+        return count;
+    }
+
+    /**
+     * Wall-clock millis (possibly fractional) for an elapsed-realtime timestamp.
+     *
+     * @throws IllegalStateException if no anchor has been added
+     */
+    double toWallMillis(long elapsed) {
+        if (count == 0) throw new IllegalStateException("No clock anchors");
+        int i = Arrays.binarySearch(elapsedNanos, 0, count, elapsed);
+        if (i >= 0) return wallMillis[i];
+        int next = -i - 1;
+        if (next == 0) return offsetMillis(0, elapsed);
+        if (next == count) return offsetMillis(count - 1, elapsed);
+        int prev = next - 1;
+        double f = (double) (elapsed - elapsedNanos[prev]) / (elapsedNanos[next] - elapsedNanos[prev]);
+        return wallMillis[prev] + f * (wallMillis[next] - wallMillis[prev]);
+    }
+
+    private double offsetMillis(int anchor, long elapsed) {
+        return wallMillis[anchor] + (elapsed - elapsedNanos[anchor]) / 1e6;
+    }
+}
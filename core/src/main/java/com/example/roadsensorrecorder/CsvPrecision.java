@@ -0,0 +1,22 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Fraction digits {@link CsvRecordWriter} writes for sensor-derived values and for coordinates.
+ * A negative count keeps the shortest round-trip form of Float/Double.toString.
+ */
+final class CsvPrecision {
+
+    /** The original output: every value as Float.toString / Double.toString. */
+    static final CsvPrecision SHORTEST = new CsvPrecision(-1, -1);
+
+    final int valueDigits;
+    final int coordinateDigits;
+
+    CsvPrecision(int valueDigits, int coordinateDigits) {
+        if (valueDigits > AsciiBuffer.MAX_PRECISION || coordinateDigits > AsciiBuffer.MAX_PRECISION) {
+            throw new IllegalArgumentException("at most " + AsciiBuffer.MAX_PRECISION + " fraction digits");
+        }
+        this.valueDigits = valueDigits;
+        this.coordinateDigits = coordinateDigits;
+    }
+}
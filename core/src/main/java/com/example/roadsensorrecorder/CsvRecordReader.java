@@ -0,0 +1,186 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Parses rows written by {@link CsvRecordWriter} back into {@link BinaryRecordReader.Record}s,
+ * one line at a time, so CSV and binary sessions can be queried the same way. Empty cells read
+ * as NaN; a final line without its newline (a torn tail) is ignored.
+ *
+ * Sessions from before the nanosecond layout, headed "Time,Type,...", are read too: their
+ * wall-clock milliseconds become the timestamps, scaled to nanoseconds. They have no clock
+ * anchors.
+ */
+final class CsvRecordReader implements RecordReader {
+
+    static final String LEGACY_HEADER = "Time,Type,X,Y,Z,Latitude,Longitude";
+
+    private final InputStream in;
+    private final boolean resampled;
+    // Legacy layout: timestamps are milliseconds
+    private final boolean millis;
+    private final StringBuilder lineBuffer = new StringBuilder(160);
+    private final int[] cells = new int[12];
+
+    /** @param in positioned at the start of the file */
+    CsvRecordReader(InputStream in) throws IOException {
+        this.in = new BufferedInputStream(in, 1 << 16);
+        String header = readLine();
+        millis = LEGACY_HEADER.equals(header);
+        if (header == null || !(millis || header.startsWith("TimeNs,Type,"))) throw new IOException("Not a session CSV");
+        resampled = (header + '\n').equals(CsvRecordWriter.RESAMPLED_HEADER);
+    }
+
+    /** Continue from a stream positioned at the start of a row of the file {@code header} was opened on. */
+    CsvRecordReader(InputStream in, CsvRecordReader header) {
+        this.in = new BufferedInputStream(in, 1 << 16);
+        this.resampled = header.resampled;
+        this.millis = header.millis;
+    }
+
+    boolean isResampled() {
+        return resampled;
+    }
+
+    /**
+     * Read the next row.
+     *
+     * @return false at the end of the stream
+     * @throws IOException for a row this reader does not understand
+     */
+    @Override
+    public boolean next(BinaryRecordReader.Record r) throws IOException {
+        String line;
+        while ((line = readLine()) != null) {
+            if (line.isEmpty()) continue;
+            if (parse(line, r)) return true;
+        }
+        return false;
+    }
+
+    // False for rows that are not records: torn rows and schema declarations
+    private boolean parse(String line, BinaryRecordReader.Record r) throws IOException {
+        int n = split(line);
+        if (n < 2) {
+            // A torn row has fewer cells than any complete one
+            return false;
+        }
+        try {
+            r.timestamp = Long.parseLong(cell(line, 0));
+            if (millis) r.timestamp *= 1_000_000L;
+            String type = cell(line, 1);
+            int colon = type.indexOf(':');
+            String kind = colon < 0 ? type : type.substring(0, colon);
+            String arg = colon < 0 ? null : type.substring(colon + 1);
+            int channel = Channels.forName(kind);
+            if (channel == Channels.LOCATION) {
+                r.type = BinaryRecordReader.RECORD_LOCATION;
+                r.channel = channel;
+                r.latitude = number(line, n, resampled ? 8 : 5);
+                r.longitude = number(line, n, resampled ? 9 : 6);
+            } else if (channel == Channels.RESAMPLED) {
+                r.type = BinaryRecordReader.RECORD_FRAME;
+                r.channel = channel;
+                r.x = (float) number(line, n, 2);
+                r.y = (float) number(line, n, 3);
+                r.z = (float) number(line, n, 4);
+                r.gx = (float) number(line, n, 5);
+                r.gy = (float) number(line, n, 6);
+                r.gz = (float) number(line, n, 7);
+                r.latitude = number(line, n, 8);
+                r.longitude = number(line, n, 9);
+            } else if (channel >= 0) {
+                r.type = BinaryRecordReader.RECORD_SENSOR;
+                r.channel = channel;
+                int first = 2 + (resampled ? 3 * channel : 0);
+                r.x = (float) number(line, n, first);
+                r.y = (float) number(line, n, first + 1);
+                r.z = (float) number(line, n, first + 2);
+            } else if (kind.equals("Dropped")) {
+                r.type = BinaryRecordReader.RECORD_DROPPED;
+                r.channel = Channels.forName(arg);
+                r.count = Long.parseLong(cell(line, 2));
+            } else if (kind.equals("Summary")) {
+                r.type = BinaryRecordReader.RECORD_SUMMARY;
+                r.channel = Channels.forName(arg);
+                r.count = Long.parseLong(cell(line, 2));
+                r.x = (float) number(line, n, 3);
+                r.y = (float) number(line, n, 4);
+            } else if (kind.equals("Event")) {
+                r.type = BinaryRecordReader.RECORD_EVENT;
+                r.channel = "Gyro".equals(arg) ? RecordWriter.EVENT_GYRO : RecordWriter.EVENT_JERK;
+                r.x = (float) number(line, n, 2);
+            } else if (kind.equals("Rate")) {
+                r.type = BinaryRecordReader.RECORD_RATE;
+                r.count = Long.parseLong(cell(line, 2));
+                r.x = (float) number(line, n, 3);
+            } else if (kind.equals("Stats") && "Pipeline".equals(arg)) {
+                r.type = BinaryRecordReader.RECORD_PIPELINE_STATS;
+                r.channel = Integer.parseInt(cell(line, 2));
+                r.count = Long.parseLong(cell(line, 3));
+                r.x = (float) number(line, n, 4);
+                r.y = (float) number(line, n, 5);
+                r.z = (float) number(line, n, 6);
+            } else if (kind.equals("Stats")) {
+                r.type = BinaryRecordReader.RECORD_CHANNEL_STATS;
+                r.channel = Channels.forName(arg);
+                r.count = Long.parseLong(cell(line, 2));
+                r.x = (float) number(line, n, 3);
+                r.y = (float) number(line, n, 4);
+                r.z = (float) number(line, n, 5);
+            } else if (kind.equals("Channel")) {
+                // Schema declaration below the header, not a record
+                return false;
+            } else if (kind.equals("Anchor")) {
+                r.type = BinaryRecordReader.RECORD_ANCHOR;
+                r.channel = "Location".equals(arg) ? RecordWriter.ANCHOR_LOCATION_FIX : RecordWriter.ANCHOR_SYSTEM_CLOCK;
+                r.count = Long.parseLong(cell(line, 2));
+            } else {
+                throw new IOException("Unknown row type " + type);
+            }
+            return true;
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed row: " + line, e);
+        }
+    }
+
+    // Record the start of each cell; cells[i + 1] - 1 is where cell i ends
+    private int split(String line) {
+        int n = 0;
+        cells[n++] = 0;
+        for (int i = 0; i < line.length() && n < cells.length - 1; i++) {
+            if (line.charAt(i) == ',') cells[n++] = i + 1;
+        }
+        cells[n] = line.length() + 1;
+        return n;
+    }
+
+    // Next complete line without its newline, or null at the end; an unterminated last line is dropped
+    private String readLine() throws IOException {
+        lineBuffer.setLength(0);
+        int b;
+        while ((b = in.read()) >= 0) {
+            if (b == '\n') return lineBuffer.toString();
+            lineBuffer.append((char) b);
+        }
+        return null;
+    }
+
+    private String cell(String line, int i) {
+        return line.substring(cells[i], cells[i + 1] - 1);
+    }
+
+    private double number(String line, int n, int i) {
+        if (i >= n) return Double.NaN;
+        int start = cells[i];
+        int end = cells[i + 1] - 1;
+        return start == end ? Double.NaN : Double.parseDouble(line.substring(start, end));
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
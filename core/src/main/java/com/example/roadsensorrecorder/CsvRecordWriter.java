@@ -0,0 +1,247 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the "TimeNs,Type,X,Y,Z,Latitude,Longitude" CSV layout, or for resampled sessions the
+ * wide layout with one column per sensor axis ({@link #RESAMPLED_HEADER}). TimeNs is
+ * elapsed-realtime nanoseconds; "Dropped:*", "Anchor:*" and "Event:*" rows carry their value in
+ * the first value column, "Summary:*" rows their count, RMS and maximum in the first three,
+ * "Rate" rows the new sampling period in microseconds and the speed that caused it.
+ * "Stats:<channel>" rows hold events, events/s, measured and requested Hz; "Stats:Pipeline"
+ * rows peak queue depth, bytes written and latency p50, p99 and maximum in milliseconds.
+ * Files opened with a {@link ChannelSchema} declare it right after the header in one
+ * "0,Channel:<channel>" row per channel: Android sensor type, period in microseconds (0 for the
+ * session rate) and value count. Single-value channels leave Y and Z empty.
+ *
+ * Rows are formatted straight into a reused {@link AsciiBuffer} and written in one call, so
+ * record boundaries line up with byte offsets in the output stream. With a fixed
+ * {@link CsvPrecision} no per-row String is created at all; {@link CsvPrecision#SHORTEST} keeps
+ * the Float/Double.toString digits of earlier files.
+ */
+final class CsvRecordWriter implements RecordWriter {
+
+    static final String HEADER = "TimeNs,Type,X,Y,Z,Latitude,Longitude\n";
+    static final String RESAMPLED_HEADER = "TimeNs,Type,AccelerometerX,AccelerometerY,AccelerometerZ,"
+            + "GyroscopeX,GyroscopeY,GyroscopeZ,Latitude,Longitude\n";
+
+    private final OutputStream out;
+    private final RecordBoundaryListener boundaries;
+    private final boolean resampled;
+    // Value columns after Type: X,Y,Z,Latitude,Longitude, or two axis triples plus the coordinates
+    private final int valueColumns;
+    private final int valueDigits;
+    private final int coordinateDigits;
+    private final AsciiBuffer line = new AsciiBuffer(160);
+
+    CsvRecordWriter(OutputStream out) throws IOException {
+        this(out, null, false, CsvPrecision.SHORTEST);
+    }
+
+    /**
+     * A file without schema rows, e.g. an export of selected records.
+     *
+     * @param boundaries notified before each row, or null
+     * @param resampled  use the wide layout for {@link #writeFrame} rows
+     * @param precision  fraction digits for sensor values and coordinates
+     */
+    CsvRecordWriter(OutputStream out, RecordBoundaryListener boundaries, boolean resampled,
+                    CsvPrecision precision) throws IOException {
+        this(out, boundaries, resampled, null, precision);
+    }
+
+    /**
+     * @param schema declared after the header; resampled schemas use the wide layout
+     */
+    CsvRecordWriter(OutputStream out, RecordBoundaryListener boundaries, ChannelSchema schema,
+                    CsvPrecision precision) throws IOException {
+        this(out, boundaries, schema.resampled(), schema, precision);
+    }
+
+    private CsvRecordWriter(OutputStream out, RecordBoundaryListener boundaries, boolean resampled,
+                            ChannelSchema schema, CsvPrecision precision) throws IOException {
+        this.out = out;
+        this.boundaries = boundaries;
+        this.resampled = resampled;
+        this.valueColumns = resampled ? 8 : 5;
+        this.valueDigits = precision.valueDigits;
+        this.coordinateDigits = precision.coordinateDigits;
+        line.append(resampled ? RESAMPLED_HEADER : HEADER);
+        if (schema != null) {
+            // "0,Channel:<channel>,<sensor type>,<period us>,<value count>,,"
+            for (int ch : schema.headerChannels()) {
+                line.append("0,Channel:").append(Channels.name(ch))
+                        .append(',').append(ch < Channels.COUNT ? Channels.sensorType(ch) : 0)
+                        .append(',').append(Math.max(0, schema.periodUs(ch)))
+                        .append(',').append(BinaryFormat.valueCount(BinaryFormat.kindOf(ch)));
+                commas(valueColumns - 3);
+                line.append('\n');
+            }
+        }
+        writeLine();
+    }
+
+    @Override
+    public void writeSensor(int channel, long timestamp, float x, float y, float z) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(',').append(Channels.name(channel));
+        // The wide layout gives each sensor its own triple of columns
+        int before = resampled ? 3 * channel : 0;
+        commas(1 + before);
+        if (BinaryFormat.kindOf(channel) == BinaryFormat.KIND_SCALAR) {
+            line.append(x, valueDigits);
+            commas(valueColumns - before - 1);
+        } else {
+            line.append(x, valueDigits).append(',').append(y, valueDigits).append(',').append(z, valueDigits);
+            commas(valueColumns - before - 3);
+        }
+        line.append('\n');
+        writeLine();
+    }
+
+    @Override
+    public void writeLocation(long timestamp, double latitude, double longitude) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(',').append(Channels.name(Channels.LOCATION));
+        commas(valueColumns - 1);
+        line.append(latitude, coordinateDigits).append(',').append(longitude, coordinateDigits).append('\n');
+        writeLine();
+    }
+
+    // "<time>,Resampled,ax,ay,az,gx,gy,gz,lat,lon" with empty cells for NaN
+    @Override
+    public void writeFrame(long timestamp, float ax, float ay, float az, float gx, float gy, float gz,
+                           double latitude, double longitude) throws IOException {
+        if (!resampled) throw new IllegalStateException("Frames need the resampled layout");
+        begin(timestamp);
+        line.append(timestamp).append(',').append(Channels.name(Channels.RESAMPLED));
+        value(ax);
+        value(ay);
+        value(az);
+        value(gx);
+        value(gy);
+        value(gz);
+        value(latitude);
+        value(longitude);
+        line.append('\n');
+        writeLine();
+    }
+
+    // "<time>,Dropped:<channel>,<cumulative count>,,,,"
+    @Override
+    public void writeDropped(int channel, long timestamp, long count) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(",Dropped:").append(Channels.name(channel)).append(',').append(count);
+        commas(valueColumns - 1);
+        line.append('\n');
+        writeLine();
+    }
+
+    // "<time>,Summary:<channel>,<count>,<rms>,<max>,,"
+    @Override
+    public void writeSummary(int channel, long timestamp, long count, float rms, float max) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(",Summary:").append(Channels.name(channel)).append(',').append(count)
+                .append(',').append(rms, valueDigits).append(',').append(max, valueDigits);
+        commas(valueColumns - 3);
+        line.append('\n');
+        writeLine();
+    }
+
+    // "<time>,Event:<kind>,<level>,,,,"
+    @Override
+    public void writeEvent(long timestamp, int kind, float level) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(kind == EVENT_GYRO ? ",Event:Gyro," : ",Event:Jerk,").append(level, valueDigits);
+        commas(valueColumns - 1);
+        line.append('\n');
+        writeLine();
+    }
+
+    // "<time>,Rate,<period us>,<speed>,,,"
+    @Override
+    public void writeRate(long timestamp, int periodUs, float speed) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(",Rate,").append(periodUs).append(',').append(speed, valueDigits);
+        commas(valueColumns - 2);
+        line.append('\n');
+        writeLine();
+    }
+
+    // "<time>,Anchor:<source>,<wall millis>,,,,"
+    @Override
+    public void writeAnchor(long timestamp, int source, long wallMillis) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(source == ANCHOR_LOCATION_FIX ? ",Anchor:Location," : ",Anchor:System,")
+                .append(wallMillis);
+        commas(valueColumns - 1);
+        line.append('\n');
+        writeLine();
+    }
+
+    // "<time>,Stats:<channel>,<events>,<events/s>,<measured Hz>,<requested Hz>,"
+    @Override
+    public void writeChannelStats(int channel, long timestamp, long events, float eventsPerSecond, float measuredHz,
+                                  float requestedHz) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(",Stats:").append(Channels.name(channel)).append(',').append(events);
+        // Rates are never worth more than two decimals
+        line.append(',').append(eventsPerSecond, 2).append(',').append(measuredHz, 2);
+        value(requestedHz, 2);
+        commas(valueColumns - 4);
+        line.append('\n');
+        writeLine();
+    }
+
+    // "<time>,Stats:Pipeline,<peak queue depth>,<bytes>,<p50 ms>,<p99 ms>,<max ms>"
+    @Override
+    public void writePipelineStats(long timestamp, int peakQueueDepth, long bytesWritten, float p50Millis,
+                                   float p99Millis, float maxMillis) throws IOException {
+        begin(timestamp);
+        line.append(timestamp).append(",Stats:Pipeline,").append(peakQueueDepth).append(',').append(bytesWritten)
+                .append(',').append(p50Millis, 3).append(',').append(p99Millis, 3).append(',').append(maxMillis, 3);
+        commas(valueColumns - 5);
+        line.append('\n');
+        writeLine();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void begin(long timestamp) throws IOException {
+        // Rows carry absolute timestamps, so a fresh block needs no extra state
+        if (boundaries != null) boundaries.onRecordStart(timestamp);
+        line.clear();
+    }
+
+    private void commas(int n) {
+        for (int i = 0; i < n; i++) line.append(',');
+    }
+
+    private void value(double v) {
+        line.append(',');
+        if (!Double.isNaN(v)) line.append(v, coordinateDigits);
+    }
+
+    private void value(float v) {
+        value(v, valueDigits);
+    }
+
+    private void value(float v, int digits) {
+        line.append(',');
+        if (!Float.isNaN(v)) line.append(v, digits);
+    }
+
+    private void writeLine() throws IOException {
+        line.writeTo(out);
+        line.clear();
+    }
+}
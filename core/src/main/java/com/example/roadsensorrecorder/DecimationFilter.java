@@ -0,0 +1,97 @@
+package com.example.roadsensorrecorder;
+
+import java.util.Arrays;
+
+/**
+ * Anti-aliasing decimator for three-axis channels: a Butterworth low-pass built from cascaded
+ * biquads runs at the input rate, and every {@code factor}-th filtered sample is emitted.
+ *
+ * The cutoff sits at 40% of the output rate (80% of the output Nyquist frequency), so vibration
+ * above it is attenuated instead of folding back into the road-quality band. Coefficients and
+ * filter state live in flat primitive arrays; {@link #process} never allocates. Owned by the IO
+ * thread.
+ */
+final class DecimationFilter {
+
+    /** Cutoff as a fraction of the output sample rate. */
+    static final double CUTOFF_RATIO = 0.4;
+
+    private final int factor;
+    private final int sections;
+    private final double cutoffHz;
+    // {b0, b1, b2, a1, a2} per section
+    private final double[] coefficients;
+    // {z1, z2} per section, per axis, per channel
+    private final double[] state;
+    private final int[] phase;
+
+    /**
+     * @param channelCount number of channel ids that will be processed (0..channelCount-1)
+     * @param inputRateHz  rate the samples arrive at
+     * @param factor       keep one output per {@code factor} inputs
+     * @param sections     biquads in the cascade; the filter order is twice this
+     */
+    DecimationFilter(int channelCount, double inputRateHz, int factor, int sections) {
+        if (factor < 1) throw new IllegalArgumentException("factor must be >= 1");
+        if (sections < 1) throw new IllegalArgumentException("sections must be >= 1");
+        this.factor = factor;
+        this.sections = sections;
+        this.cutoffHz = CUTOFF_RATIO * inputRateHz / factor;
+        coefficients = new double[sections * 5];
+        for (int k = 0; k < sections; k++) {
+            Biquad.lowPassCoefficients(inputRateHz, cutoffHz, Biquad.butterworthQ(sections, k), coefficients, k * 5);
+        }
+        state = new double[channelCount * 3 * sections * 2];
+        phase = new int[channelCount];
+    }
+
+    int factor() {
+        return factor;
+    }
+
+    double cutoffHz() {
+        return cutoffHz;
+    }
+
+    /**
+     * Filter one input sample of {@code channel}.
+     *
+     * @param out receives the decimated x, y, z when this call produces an output
+     * @return true if {@code out} holds a new output sample
+     */
+    boolean process(int channel, float x, float y, float z, float[] out) {
+        int base = channel * 3 * sections * 2;
+        double fx = filter(x, base);
+        double fy = filter(y, base + sections * 2);
+        double fz = filter(z, base + sections * 4);
+        int p = phase[channel] + 1;
+        if (p < factor) {
+            phase[channel] = p;
+            return false;
+        }
+        phase[channel] = 0;
+        out[0] = (float) fx;
+        out[1] = (float) fy;
+        out[2] = (float) fz;
+        return true;
+    }
+
+    /** Clear filter state, e.g. after a gap in the input. */
+    void reset() {
+        Arrays.fill(state, 0);
+        Arrays.fill(phase, 0);
+    }
+
+    // Run one axis through the cascade; transposed direct form II
+    private double filter(double v, int stateOffset) {
+        double[] c = coefficients;
+        double[] st = state;
+        for (int k = 0, ci = 0, si = stateOffset; k < sections; k++, ci += 5, si += 2) {
+            double y = c[ci] * v + st[si];
+            st[si] = c[ci + 1] * v - c[ci + 3] * y + st[si + 1];
+            st[si + 1] = c[ci + 2] * v - c[ci + 4] * y;
+            v = y;
+        }
+        return v;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * When buffered session data is pushed to storage (flush + fsync), trading throughput for a
+ * bound on how much of the tail a killed process can lose. A commit happens when any enabled
+ * trigger fires; disabled triggers are 0 / false. In a compressed session a commit ends a
+ * frame with a Deflate sync flush, a few bytes, and the block keeps its dictionary, so frequent
+ * commits cost the fsync rather than compression ratio.
+ */
+final class DurabilityPolicy {
+
+    /** Commit at least this often, in milliseconds. */
+    final long intervalMillis;
+    /** Commit once this many bytes were encoded since the last commit. */
+    final long maxUncommittedBytes;
+    /** Commit after a significant event such as a location fix. */
+    final boolean commitOnEvent;
+    /** Call fsync after flushing; without it data only reaches the OS page cache. */
+    final boolean fsync;
+
+    DurabilityPolicy(long intervalMillis, long maxUncommittedBytes, boolean commitOnEvent, boolean fsync) {
+        this.intervalMillis = Math.max(0, intervalMillis);
+        this.maxUncommittedBytes = Math.max(0, maxUncommittedBytes);
+        this.commitOnEvent = commitOnEvent;
+        this.fsync = fsync;
+    }
+
+    boolean shouldCommit(long millisSinceCommit, long uncommittedBytes, boolean sawEvent) {
+        if (uncommittedBytes == 0) return false;
+        if (intervalMillis > 0 && millisSinceCommit >= intervalMillis) return true;
+        if (maxUncommittedBytes > 0 && uncommittedBytes >= maxUncommittedBytes) return true;
+        return commitOnEvent && sawEvent;
+    }
+}
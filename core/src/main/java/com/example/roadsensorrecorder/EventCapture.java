@@ -0,0 +1,210 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+
+/**
+ * Event-capture stage: keeps the last few seconds of sensor samples in a preallocated circular
+ * buffer and only writes raw samples in a window around detected road events, plus a low-rate
+ * per-channel summary the rest of the time.
+ *
+ * Triggers are vertical jerk spikes (derivative of acceleration along a tracked gravity vector)
+ * and gyroscope bursts (angular rate magnitude). On a trigger the pre-trigger history is written,
+ * followed by every sample until {@code postTriggerNanos} after the last trigger. Owned by the IO
+ * thread; allocation-free after construction.
+ */
+final class EventCapture {
+
+    // Gravity tracking time constant for the vertical projection
+    private static final double GRAVITY_TAU_NS = 1e9;
+
+    private final RecordWriter out;
+    private final long preTriggerNanos;
+    private final long postTriggerNanos;
+    private final long summaryIntervalNanos;
+    private final double jerkThreshold;
+    private final double gyroThreshold;
+
+    // Pre-trigger history, oldest at head; overwritten once full
+    private final int capacity;
+    private final int[] channels;
+    private final long[] timestamps;
+    private final float[] values;
+    private int head;
+    private int size;
+
+    private long captureUntil = Long.MIN_VALUE;
+
+    // Vertical acceleration state for jerk
+    private boolean haveGravity;
+    private double gx, gy, gz;
+    private long lastAccelNanos;
+    private double lastVertical;
+
+    // Per-channel summary accumulators for the current interval
+    private long summaryStart = Long.MIN_VALUE;
+    private final long[] summaryCount = new long[Channels.COUNT];
+    private final double[] summarySumSquares = new double[Channels.COUNT];
+    private final double[] summaryMax = new double[Channels.COUNT];
+
+    private long events;
+    private long written;
+    private long skipped;
+
+    /**
+     * @param capacity      samples kept for the pre-trigger window; size it for the window at the
+     *                      highest expected rate of all sensor channels combined
+     * @param jerkThreshold vertical jerk in m/s^3 that starts a capture
+     * @param gyroThreshold angular rate magnitude in rad/s that starts a capture
+     */
+    EventCapture(RecordWriter out, int capacity, long preTriggerNanos, long postTriggerNanos,
+                 long summaryIntervalNanos, double jerkThreshold, double gyroThreshold) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity must be >= 1");
+        this.out = out;
+        this.capacity = capacity;
+        this.preTriggerNanos = preTriggerNanos;
+        this.postTriggerNanos = postTriggerNanos;
+        this.summaryIntervalNanos = summaryIntervalNanos;
+        this.jerkThreshold = jerkThreshold;
+        this.gyroThreshold = gyroThreshold;
+        channels = new int[capacity];
+        timestamps = new long[capacity];
+        values = new float[capacity * 3];
+    }
+
+    /** Triggers seen so far (including ones that extended a running capture). */
+    long eventCount() {
+        return events;
+    }
+
+    /** Raw samples written to the session. */
+    long writtenCount() {
+        return written;
+    }
+
+    /** Samples that aged out of the pre-trigger window without an event. */
+    long skippedCount() {
+        return skipped;
+    }
+
+    void addSensor(int channel, long timestamp, float x, float y, float z) throws IOException {
+        summarize(channel, timestamp, x, y, z);
+
+        int trigger = -1;
+        double level = 0;
+        if (channel == Channels.ACCELEROMETER) {
+            double jerk = verticalJerk(timestamp, x, y, z);
+            if (Math.abs(jerk) > jerkThreshold) {
+                trigger = RecordWriter.EVENT_JERK;
+                level = jerk;
+            }
+        } else if (channel == Channels.GYROSCOPE) {
+            double rate = Math.sqrt(x * x + y * y + z * z);
+            if (rate > gyroThreshold) {
+                trigger = RecordWriter.EVENT_GYRO;
+                level = rate;
+            }
+        }
+
+        if (trigger >= 0) {
+            events++;
+            if (timestamp > captureUntil) writeHistory(timestamp - preTriggerNanos);
+            out.writeEvent(timestamp, trigger, (float) level);
+            captureUntil = timestamp + postTriggerNanos;
+        }
+        if (timestamp <= captureUntil) {
+            out.writeSensor(channel, timestamp, x, y, z);
+            written++;
+        } else {
+            remember(channel, timestamp, x, y, z);
+        }
+    }
+
+    /** Write the summary for the interval in progress, e.g. before the session closes. */
+    void finish() throws IOException {
+        if (summaryStart != Long.MIN_VALUE) writeSummaries(summaryStart + summaryIntervalNanos);
+        skipped += size;
+        size = 0;
+    }
+
+    private double verticalJerk(long timestamp, float x, float y, float z) {
+        if (!haveGravity) {
+            gx = x;
+            gy = y;
+            gz = z;
+            haveGravity = true;
+            lastAccelNanos = timestamp;
+            lastVertical = 0;
+            return 0;
+        }
+        long dt = timestamp - lastAccelNanos;
+        if (dt <= 0) return 0;
+        double alpha = dt / (GRAVITY_TAU_NS + dt);
+        gx += alpha * (x - gx);
+        gy += alpha * (y - gy);
+        gz += alpha * (z - gz);
+        double g = Math.sqrt(gx * gx + gy * gy + gz * gz);
+        double vertical = g == 0 ? 0 : (x * gx + y * gy + z * gz) / g - g;
+        double jerk = (vertical - lastVertical) / (dt / 1e9);
+        lastVertical = vertical;
+        lastAccelNanos = timestamp;
+        return jerk;
+    }
+
+    private void remember(int channel, long timestamp, float x, float y, float z) {
+        int i;
+        if (size == capacity) {
+            i = head;
+            head = (head + 1) % capacity;
+            skipped++;
+        } else {
+            i = (head + size) % capacity;
+            size++;
+        }
+        channels[i] = channel;
+        timestamps[i] = timestamp;
+        values[i * 3] = x;
+        values[i * 3 + 1] = y;
+        values[i * 3 + 2] = z;
+    }
+
+    // Write buffered samples from {@code from} on and empty the history
+    private void writeHistory(long from) throws IOException {
+        for (int k = 0; k < size; k++) {
+            int i = (head + k) % capacity;
+            if (timestamps[i] < from) {
+                skipped++;
+                continue;
+            }
+            out.writeSensor(channels[i], timestamps[i], values[i * 3], values[i * 3 + 1], values[i * 3 + 2]);
+            written++;
+        }
+        head = 0;
+        size = 0;
+    }
+
+    private void summarize(int channel, long timestamp, float x, float y, float z) throws IOException {
+        if (summaryStart == Long.MIN_VALUE) {
+            summaryStart = timestamp;
+        } else if (timestamp - summaryStart >= summaryIntervalNanos) {
+            writeSummaries(summaryStart + summaryIntervalNanos);
+            // Skip empty intervals after a gap instead of writing a row for each
+            summaryStart += (timestamp - summaryStart) / summaryIntervalNanos * summaryIntervalNanos;
+        }
+        double sq = (double) x * x + (double) y * y + (double) z * z;
+        summaryCount[channel]++;
+        summarySumSquares[channel] += sq;
+        if (sq > summaryMax[channel]) summaryMax[channel] = sq;
+    }
+
+    private void writeSummaries(long timestamp) throws IOException {
+        for (int ch = 0; ch < Channels.COUNT; ch++) {
+            long n = summaryCount[ch];
+            if (n == 0) continue;
+            out.writeSummary(ch, timestamp, n, (float) Math.sqrt(summarySumSquares[ch] / n),
+                    (float) Math.sqrt(summaryMax[ch]));
+            summaryCount[ch] = 0;
+            summarySumSquares[ch] = 0;
+            summaryMax[ch] = 0;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.roadsensorrecorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes one CSV row per {@link RoughnessFeatureEngine.Segment}. Segments are rare (one per
+ * road segment), so each row is flushed to the file as soon as it is written.
+ */
+final class FeatureFileWriter implements RoughnessFeatureEngine.Sink, Closeable {
+
+    /** Replaces the extensions of the session file: "sensor_data_X.csv" -> "sensor_data_X_features.csv". */
+    static final String SUFFIX = "_features.csv";
+    static final String HEADER = "Segment,StartTimeNs,EndTimeNs,StartLatitude,StartLongitude,EndLatitude,EndLongitude,"
+            + "DistanceM,MeanSpeedMps,Samples,VerticalRms,VerticalMaxAbs,Peaks,Band0.5-2HzRms,Band2-8HzRms,Band8-20HzRms\n";
+
+    private final OutputStream out;
+    private final StringBuilder sb = new StringBuilder(256);
+    private byte[] bytes = new byte[256];
+
+    FeatureFileWriter(OutputStream out) throws IOException {
+        this.out = out;
+        sb.append(HEADER);
+        writeLine();
+        out.flush();
+    }
+
+    @Override
+    public void onSegment(RoughnessFeatureEngine.Segment s) throws IOException {
+        sb.append(s.index).append(',').append(s.startNanos).append(',').append(s.endNanos).append(',')
+                .append(s.startLatitude).append(',').append(s.startLongitude).append(',')
+                .append(s.endLatitude).append(',').append(s.endLongitude).append(',')
+                .append((float) s.distanceMeters).append(',').append((float) s.meanSpeed()).append(',')
+                .append(s.samples).append(',').append((float) s.verticalRms).append(',')
+                .append((float) s.verticalMaxAbs).append(',').append(s.peaks);
+        for (double band : s.bandRms) {
+            sb.append(',');
+            if (!Double.isNaN(band)) sb.append((float) band);
+        }
+        sb.append('\n');
+        writeLine();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private void writeLine() throws IOException {
+        int len = sb.length();
+        if (len > bytes.length) bytes = new byte[len];
+        for (int i = 0; i < len; i++) bytes[i] = (byte) sb.charAt(i);
+        out.write(bytes, 0, len);
+        sb.setLength(0);
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+
+/**
+ * Streaming stage that resamples the accelerometer, gyroscope and location channels onto one
+ * fixed-rate clock and writes a single {@link RecordWriter#writeFrame combined frame} per tick.
+ *
+ * Each channel keeps a bounded look-behind of its most recent samples. A tick is emitted once
+ * every channel has a sample at or after it, using linear interpolation between the samples on
+ * either side; a channel that lags so far behind that another channel's look-behind fills up is
+ * held at its last value (or NaN once it is older than {@code maxHoldNanos}). Samples further
+ * apart than {@code maxHoldNanos} are not interpolated across either: the earlier one is held,
+ * then the channel is NaN, and ticks with no channel at all are skipped. Ticks fall on multiples
+ * of the period, so frames from different sessions line up. Memory is fixed at construction.
+ * Owned by the IO thread.
+ */
+final class FixedRateResampler {
+
+    // Frames combine channel ids 0..FRAMED-1: accelerometer, gyroscope and location
+    private static final int FRAMED = Channels.LOCATION + 1;
+
+    private final RecordWriter out;
+    private final long periodNanos;
+    private final long maxHoldNanos;
+    // Indexed by channel id
+    private final Stream[] streams = new Stream[FRAMED];
+    private final double[] value = new double[3 * FRAMED];
+
+    private long nextTick = Long.MIN_VALUE;
+    private long frames;
+    private long discarded;
+
+    /**
+     * @param rateHz       output frames per second
+     * @param lookBehind   samples buffered per sensor channel while waiting for the others
+     * @param maxHoldNanos how long a channel's last value may stand in for missing data
+     */
+    FixedRateResampler(RecordWriter out, double rateHz, int lookBehind, long maxHoldNanos) {
+        if (rateHz <= 0) throw new IllegalArgumentException("rateHz must be > 0");
+        if (lookBehind < 2) throw new IllegalArgumentException("lookBehind must be >= 2");
+        this.out = out;
+        this.periodNanos = Math.max(1, Math.round(1e9 / rateHz));
+        this.maxHoldNanos = maxHoldNanos;
+        for (int ch = 0; ch < FRAMED; ch++) {
+            // Location fixes arrive about once a second, a few are enough to bracket a tick
+            streams[ch] = new Stream(ch == Channels.LOCATION ? 8 : lookBehind);
+        }
+    }
+
+    long periodNanos() {
+        return periodNanos;
+    }
+
+    /** Frames written so far. */
+    long frameCount() {
+        return frames;
+    }
+
+    /** Samples ignored because they were out of order or overran the look-behind. */
+    long discardedCount() {
+        return discarded;
+    }
+
+    /**
+     * Picks the frames that stand in for the 1 Hz location fixes when reading a resampled
+     * session: the first frame with a position in each elapsed-realtime second. Every frame
+     * carries an interpolated position, and ticks need not fall on whole seconds (30 Hz ticks
+     * never do), so the choice depends on the frames before; feed it every frame in file order.
+     */
+    static final class FixCadence {
+        private long lastSecond = Long.MIN_VALUE;
+
+        boolean isFix(long timestamp, double latitude) {
+            if (Double.isNaN(latitude)) return false;
+            long second = Math.floorDiv(timestamp, 1_000_000_000L);
+            if (second <= lastSecond) return false;
+            lastSecond = second;
+            return true;
+        }
+    }
+
+    /** Channels a frame has no place for are ignored. */
+    void addSensor(int channel, long timestamp, float x, float y, float z) throws IOException {
+        if (channel >= FRAMED) return;
+        add(channel, timestamp, x, y, z);
+    }
+
+    void addLocation(long timestamp, double latitude, double longitude) throws IOException {
+        add(Channels.LOCATION, timestamp, latitude, longitude, 0d);
+    }
+
+    /** Emit every remaining tick up to the newest sample, e.g. before the session closes. */
+    void flush() throws IOException {
+        long newest = Long.MIN_VALUE;
+        for (Stream s : streams) {
+            if (s.size > 0) newest = Math.max(newest, s.newest());
+        }
+        emitUntil(newest);
+    }
+
+    private void add(int channel, long timestamp, double a, double b, double c) throws IOException {
+        Stream s = streams[channel];
+        if (s.size > 0 && timestamp <= s.newest()) {
+            discarded++;
+            return;
+        }
+        if (nextTick == Long.MIN_VALUE) nextTick = ceilToTick(timestamp);
+        if (s.size == s.capacity) {
+            // This channel ran a full look-behind ahead of the slowest one: stop waiting for it
+            emitUntil(s.time(1));
+            s.removeBefore(nextTick);
+            if (s.size == s.capacity) {
+                s.removeOldest();
+                discarded++;
+            }
+        }
+        s.append(timestamp, a, b, c);
+        emitUntil(horizon());
+    }
+
+    // Latest time every channel has reached
+    private long horizon() {
+        long h = Long.MAX_VALUE;
+        for (Stream s : streams) {
+            if (s.size == 0) return Long.MIN_VALUE;
+            h = Math.min(h, s.newest());
+        }
+        return h;
+    }
+
+    private void emitUntil(long limit) throws IOException {
+        while (nextTick != Long.MIN_VALUE && nextTick <= limit) {
+            long t = nextTick;
+            boolean any = false;
+            for (int ch = 0; ch < FRAMED; ch++) {
+                any |= streams[ch].sample(t, maxHoldNanos, value, ch * 3);
+            }
+            if (any) {
+                int acc = Channels.ACCELEROMETER * 3;
+                int gyro = Channels.GYROSCOPE * 3;
+                int loc = Channels.LOCATION * 3;
+                out.writeFrame(t, (float) value[acc], (float) value[acc + 1], (float) value[acc + 2],
+                        (float) value[gyro], (float) value[gyro + 1], (float) value[gyro + 2],
+                        value[loc], value[loc + 1]);
+                frames++;
+                nextTick = t + periodNanos;
+            } else {
+                // Gap in every channel (device asleep, sensors paused): skip to the next data
+                long resume = Long.MAX_VALUE;
+                for (Stream s : streams) {
+                    long first = s.firstAfter(t);
+                    if (first != Long.MIN_VALUE) resume = Math.min(resume, first);
+                }
+                nextTick = resume == Long.MAX_VALUE ? t + periodNanos : ceilToTick(resume);
+            }
+        }
+    }
+
+    private long ceilToTick(long timestamp) {
+        return Math.floorDiv(timestamp + periodNanos - 1, periodNanos) * periodNanos;
+    }
+
+    /** Fixed-capacity FIFO of one channel's recent samples, three values per sample. */
+    private static final class Stream {
+        final int capacity;
+        final long[] times;
+        final double[] values;
+        int head;
+        int size;
+
+        Stream(int capacity) {
+            this.capacity = capacity;
+            times = new long[capacity];
+            values = new double[capacity * 3];
+        }
+
+        long time(int i) {
+            return times[(head + i) % capacity];
+        }
+
+        long newest() {
+            return time(size - 1);
+        }
+
+        void append(long t, double a, double b, double c) {
+            int i = (head + size) % capacity;
+            times[i] = t;
+            values[i * 3] = a;
+            values[i * 3 + 1] = b;
+            values[i * 3 + 2] = c;
+            size++;
+        }
+
+        void removeOldest() {
+            head = (head + 1) % capacity;
+            size--;
+        }
+
+        /** Drop samples that no tick at or after {@code t} can interpolate from. */
+        void removeBefore(long t) {
+            while (size >= 2 && time(1) <= t) removeOldest();
+        }
+
+        /** Earliest buffered time after {@code t}, or Long.MIN_VALUE. */
+        long firstAfter(long t) {
+            for (int i = 0; i < size; i++) {
+                if (time(i) > t) return time(i);
+            }
+            return Long.MIN_VALUE;
+        }
+
+        /**
+         * Write the channel's value at {@code t} into {@code dst[off..off+2]}, dropping samples
+         * no later tick can need. Returns false (and writes NaN) if there is no usable value.
+         */
+        boolean sample(long t, long maxHold, double[] dst, int off) {
+            removeBefore(t);
+            if (size == 0 || t < time(0)) {
+                dst[off] = dst[off + 1] = dst[off + 2] = Double.NaN;
+                return false;
+            }
+            int i0 = head * 3;
+            long t0 = time(0);
+            if (size >= 2 && time(1) - t0 <= maxHold) {
+                int i1 = ((head + 1) % capacity) * 3;
+                double f = (double) (t - t0) / (time(1) - t0);
+                for (int k = 0; k < 3; k++) {
+                    dst[off + k] = values[i0 + k] + f * (values[i1 + k] - values[i0 + k]);
+                }
+                return true;
+            }
+            if (t - t0 > maxHold) {
+                dst[off] = dst[off + 1] = dst[off + 2] = Double.NaN;
+                return false;
+            }
+            dst[off] = values[i0];
+            dst[off + 1] = values[i0 + 1];
+            dst[off + 2] = values[i0 + 2];
+            return true;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Geohash cells as plain longs: the hash of a cell of {@code bits} bits holds its bits in the low
+ * end, alternating longitude and latitude from the top, so all cells inside a coarser cell form
+ * one contiguous range of hashes. Five bits make one character of the usual base32 string.
+ */
+final class Geohash {
+
+    /** Longest supported hash in characters, 60 bits. */
+    static final int MAX_CHARS = 12;
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {}
+
+    /** Hash of the cell of {@code bits} bits containing the point. */
+    static long encode(double latitude, double longitude, int bits) {
+        return interleave(index(longitude, -180, 360, lonBits(bits)), index(latitude, -90, 180, latBits(bits)), bits);
+    }
+
+    static int lonBits(int bits) {
+        return (bits + 1) / 2;
+    }
+
+    static int latBits(int bits) {
+        return bits / 2;
+    }
+
+    /** Column (or row) of {@code v} on a grid of 2^bits cells over [min, min + span], clamped. */
+    static long index(double v, double min, double span, int bits) {
+        long cells = 1L << bits;
+        long i = (long) Math.floor((v - min) / span * cells);
+        return Math.max(0, Math.min(cells - 1, i));
+    }
+
+    static long interleave(long lonIndex, long latIndex, int bits) {
+        int lon = lonBits(bits);
+        int lat = latBits(bits);
+        long hash = 0;
+        for (int i = 0; i < bits; i++) {
+            long bit = (i & 1) == 0 ? lonIndex >>> --lon : latIndex >>> --lat;
+            hash = hash << 1 | (bit & 1);
+        }
+        return hash;
+    }
+
+    /** Write {minLatitude, maxLatitude, minLongitude, maxLongitude} of a cell into {@code out}. */
+    static void bounds(long hash, int bits, double[] out) {
+        long lonIndex = 0;
+        long latIndex = 0;
+        for (int i = 0; i < bits; i++) {
+            long bit = hash >>> (bits - 1 - i) & 1;
+            if ((i & 1) == 0) {
+                lonIndex = lonIndex << 1 | bit;
+            } else {
+                latIndex = latIndex << 1 | bit;
+            }
+        }
+        double width = 360.0 / (1L << lonBits(bits));
+        double height = 180.0 / (1L << latBits(bits));
+        out[0] = -90 + latIndex * height;
+        out[1] = out[0] + height;
+        out[2] = -180 + lonIndex * width;
+        out[3] = out[2] + width;
+    }
+
+    /** The base32 string of a hash of {@code 5 * chars} bits. */
+    static String toString(long hash, int chars) {
+        char[] c = new char[chars];
+        for (int i = 0; i < chars; i++) c[i] = BASE32[(int) (hash >>> 5 * (chars - 1 - i) & 31)];
+        return new String(c);
+    }
+}
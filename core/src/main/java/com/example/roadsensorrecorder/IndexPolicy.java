@@ -0,0 +1,20 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Whether session files get a {@link SparseIndex} sidecar and how coarse it is. A block ends
+ * at whichever limit is reached first.
+ */
+final class IndexPolicy {
+
+    static final IndexPolicy NONE = new IndexPolicy(false, 0, 0);
+
+    final boolean enabled;
+    final int maxRecords;
+    final long maxNanos;
+
+    IndexPolicy(boolean enabled, int maxRecords, long maxNanos) {
+        this.enabled = enabled;
+        this.maxRecords = Math.max(1, maxRecords);
+        this.maxNanos = Math.max(0, maxNanos);
+    }
+}
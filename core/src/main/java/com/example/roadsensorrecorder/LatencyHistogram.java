@@ -0,0 +1,65 @@
+package com.example.roadsensorrecorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed-bucket latency histogram. Recording is a bucket search over a few bounds and one atomic
+ * increment, so any thread can record without locks or allocation; {@link #harvest} moves the
+ * counts out atomically per bucket, so an interval never loses or double-counts a sample.
+ */
+final class LatencyHistogram {
+
+    /** Upper bucket bounds in milliseconds; one more bucket holds everything above the last. */
+    static final long[] BOUNDS_MS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10_000};
+
+    static final int BUCKETS = BOUNDS_MS.length + 1;
+
+    private static final long[] BOUNDS_NS = new long[BOUNDS_MS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_MS.length; i++) BOUNDS_NS[i] = BOUNDS_MS[i] * 1_000_000L;
+    }
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    void record(long nanos) {
+        int b = 0;
+        // Most latencies land in the first few buckets, so a linear scan beats a binary search
+        while (b < BOUNDS_NS.length && nanos >= BOUNDS_NS[b]) b++;
+        counts.incrementAndGet(b);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos)) max = maxNanos.get();
+    }
+
+    /**
+     * Move the counts recorded since the last harvest into {@code into} (length {@link #BUCKETS})
+     * and zero them.
+     *
+     * @return the largest latency recorded since the last harvest, in nanoseconds
+     */
+    long harvest(long[] into) {
+        for (int b = 0; b < BUCKETS; b++) into[b] = counts.getAndSet(b, 0);
+        return maxNanos.getAndSet(0);
+    }
+
+    /**
+     * Upper bound in milliseconds of the bucket holding quantile {@code q} of {@code counts}, or
+     * {@code maxMillis} when that is the open-ended last bucket or lower. 0 when empty.
+     */
+    static float quantileMillis(long[] counts, double q, float maxMillis) {
+        long total = 0;
+        for (long c : counts) total += c;
+        if (total == 0) return 0f;
+        long rank = (long) Math.ceil(q * total);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank && seen > 0) {
+                return b < BOUNDS_MS.length ? Math.min(BOUNDS_MS[b], maxMillis) : maxMillis;
+            }
+        }
+        return maxMillis;
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.roadsensorrecorder;
+
+import java.util.Locale;
+
+/**
+ * Running min/mean/max of a latency, recorded by a single thread without allocation. Read the
+ * summary from the same thread, or after the writer has stopped.
+ */
+final class LatencyStats {
+
+    private final String name;
+    private long count;
+    private long sumNanos;
+    private long minNanos = Long.MAX_VALUE;
+    private long maxNanos;
+
+    LatencyStats(String name) {
+        this.name = name;
+    }
+
+    void record(long nanos) {
+        count++;
+        sumNanos += nanos;
+        if (nanos < minNanos) minNanos = nanos;
+        if (nanos > maxNanos) maxNanos = nanos;
+    }
+
+    void reset() {
+        count = 0;
+        sumNanos = 0;
+        minNanos = Long.MAX_VALUE;
+        maxNanos = 0;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long meanNanos() {
+        return count == 0 ? 0 : sumNanos / count;
+    }
+
+    long maxNanos() {
+        return maxNanos;
+    }
+
+    String summary() {
+        if (count == 0) return name + ": no samples";
+        return String.format(Locale.US, "%s: n=%d min=%.2f ms mean=%.2f ms max=%.2f ms",
+                name, count, minNanos / 1e6, meanNanos() / 1e6, maxNanos / 1e6);
+    }
+}
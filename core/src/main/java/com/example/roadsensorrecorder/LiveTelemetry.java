@@ -0,0 +1,99 @@
+package com.example.roadsensorrecorder;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latest sample of each channel for live display, published by the callback threads and polled
+ * by the UI. Each channel is a seqlock with exactly one writer thread (the thread its callbacks
+ * run on): the writer makes the sequence odd, stores the fields and makes it even again, all
+ * with ordered stores and no allocation. Readers never write, so a polling UI cannot slow the
+ * writer down; a reader that overlaps a write sees the sequence change and retries.
+ */
+final class LiveTelemetry {
+
+    // Longs per channel: 128 bytes, so channels written by different threads share no cache line
+    private static final int STRIDE = 16;
+    private static final int SEQ = 0;
+    private static final int TIME = 1;
+    private static final int COUNT = 2;
+    // Sensor: x and y float bits packed, z bits; location: latitude and longitude double bits
+    private static final int V0 = 3;
+    private static final int V1 = 4;
+    // A reader gives up after this many torn reads in a row and keeps its previous reading
+    private static final int MAX_READ_ATTEMPTS = 64;
+
+    private final AtomicLongArray slots;
+
+    LiveTelemetry(int channelCount) {
+        slots = new AtomicLongArray(channelCount * STRIDE);
+    }
+
+    /** Latest values of one channel, owned by one reader thread. */
+    static final class Reading {
+        /** Elapsed-realtime nanoseconds of the sample; 0 if nothing was published yet. */
+        long timestamp;
+        /** Samples published on the channel so far. */
+        long count;
+        float x, y, z;
+        double latitude, longitude;
+
+        float magnitude() {
+            return (float) Math.sqrt(x * x + y * y + z * z);
+        }
+    }
+
+    /** Call only from the thread that delivers {@code channel}. */
+    void publishSensor(int channel, long timestamp, float x, float y, float z) {
+        int base = channel * STRIDE;
+        long seq = slots.get(base + SEQ);
+        // Each lazySet is a release store, so no field becomes visible before the odd sequence
+        slots.lazySet(base + SEQ, seq + 1);
+        slots.lazySet(base + TIME, timestamp);
+        slots.lazySet(base + COUNT, slots.get(base + COUNT) + 1);
+        slots.lazySet(base + V0, (long) Float.floatToRawIntBits(x) << 32 | (Float.floatToRawIntBits(y) & 0xFFFFFFFFL));
+        slots.lazySet(base + V1, Float.floatToRawIntBits(z));
+        slots.lazySet(base + SEQ, seq + 2);
+    }
+
+    /** Call only from the thread that delivers location fixes. */
+    void publishLocation(long timestamp, double latitude, double longitude) {
+        int base = Channels.LOCATION * STRIDE;
+        long seq = slots.get(base + SEQ);
+        slots.lazySet(base + SEQ, seq + 1);
+        slots.lazySet(base + TIME, timestamp);
+        slots.lazySet(base + COUNT, slots.get(base + COUNT) + 1);
+        slots.lazySet(base + V0, Double.doubleToRawLongBits(latitude));
+        slots.lazySet(base + V1, Double.doubleToRawLongBits(longitude));
+        slots.lazySet(base + SEQ, seq + 2);
+    }
+
+    /**
+     * Copy the latest values of {@code channel} into {@code into}.
+     *
+     * @return false if no consistent copy could be taken; {@code into} is then unchanged
+     */
+    boolean read(int channel, Reading into) {
+        int base = channel * STRIDE;
+        for (int attempt = 0; attempt < MAX_READ_ATTEMPTS; attempt++) {
+            long seq = slots.get(base + SEQ);
+            if ((seq & 1) != 0) continue;
+            long time = slots.get(base + TIME);
+            long count = slots.get(base + COUNT);
+            long v0 = slots.get(base + V0);
+            long v1 = slots.get(base + V1);
+            if (slots.get(base + SEQ) != seq) continue;
+            into.timestamp = time;
+            into.count = count;
+            if (channel == Channels.LOCATION) {
+                into.latitude = Double.longBitsToDouble(v0);
+                into.longitude = Double.longBitsToDouble(v1);
+            } else {
+                into.x = Float.intBitsToFloat((int) (v0 >>> 32));
+                into.y = Float.intBitsToFloat((int) v0);
+                into.z = Float.intBitsToFloat((int) v1);
+            }
+            return true;
+        }
+        return false;
+    }
+}
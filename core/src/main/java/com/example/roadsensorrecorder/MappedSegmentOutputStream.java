@@ -0,0 +1,122 @@
+package com.example.roadsensorrecorder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Output stream over a memory-mapped, preallocated file: a write is a copy into the page cache
+ * with no syscall and no user-space buffer. When the preallocated region fills, a further region
+ * of the same size is mapped. {@link #close()} cuts the file back to the bytes written.
+ *
+ * Each region's blocks are reserved by writing zeros before it is mapped. A file merely extended
+ * with {@code setLength} is sparse, and a store into it on a full disk raises SIGBUS instead of
+ * an IOException; reserving first turns a full disk into an IOException from the write that
+ * needed the next region.
+ *
+ * Pages reach the OS as soon as they are written, so a killed process loses nothing it wrote;
+ * {@link #sync()} forces them to storage. A file left behind by a crash is zero-filled past its
+ * last write, which {@link SessionRecovery} trims.
+ */
+final class MappedSegmentOutputStream extends OutputStream {
+
+    // Zeros written per call while reserving a region
+    private static final int RESERVE_CHUNK_BYTES = 64 * 1024;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long regionBytes;
+    private final boolean fsync;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private boolean closed;
+    private long closedLength;
+
+    /**
+     * @param preallocateBytes size of each mapped region; the file grows in steps of this
+     * @param fsync            whether {@link #sync()} and {@link #close()} force pages to storage
+     */
+    MappedSegmentOutputStream(File path, long preallocateBytes, boolean fsync) throws IOException {
+        if (preallocateBytes <= 0 || preallocateBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("preallocateBytes out of range: " + preallocateBytes);
+        }
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = file.getChannel();
+        this.regionBytes = preallocateBytes;
+        this.fsync = fsync;
+        try {
+            reserve(0, preallocateBytes);
+            region = channel.map(FileChannel.MapMode.READ_WRITE, 0, preallocateBytes);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /** Bytes written so far, i.e. the length the file will have once closed. */
+    long position() {
+        return closed ? closedLength : regionStart + region.position();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!region.hasRemaining()) nextRegion();
+        region.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!region.hasRemaining()) nextRegion();
+            int n = Math.min(len, region.remaining());
+            region.put(b, off, n);
+            off += n;
+            len -= n;
+        }
+    }
+
+    void sync() throws IOException {
+        if (closed) throw new IOException("closed");
+        if (fsync) region.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        long length = position();
+        closed = true;
+        closedLength = length;
+        try {
+            if (fsync) region.force();
+            region = null;
+            channel.truncate(length);
+            if (fsync) channel.force(true);
+        } finally {
+            file.close();
+        }
+    }
+
+    private void nextRegion() throws IOException {
+        if (closed) throw new IOException("closed");
+        // Earlier regions stay mapped until collected; force them now so sync() covers only the live one
+        if (fsync) region.force();
+        long start = regionStart + region.capacity();
+        reserve(start, start + regionBytes);
+        regionStart = start;
+        region = channel.map(FileChannel.MapMode.READ_WRITE, regionStart, regionBytes);
+    }
+
+    // Writes zeros over [from, to) so the file system allocates the blocks now
+    private void reserve(long from, long to) throws IOException {
+        ByteBuffer zeros = ByteBuffer.allocate((int) Math.min(RESERVE_CHUNK_BYTES, to - from));
+        for (long at = from; at < to; ) {
+            zeros.clear();
+            zeros.limit((int) Math.min(zeros.capacity(), to - at));
+            at += channel.write(zeros, at);
+        }
+    }
+}
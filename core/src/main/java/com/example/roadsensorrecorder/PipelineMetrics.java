@@ -0,0 +1,188 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Per-interval pipeline instrumentation: events per second and measured vs. requested rate per
+ * channel, peak ring depth, bytes written, loss and a {@link LatencyHistogram} of the time from
+ * a sample's arrival in the app to the end of the drain that wrote it, commit included when that
+ * drain made one. Owned by the IO thread; each
+ * {@link #take} closes the interval and returns an immutable {@link Snapshot} that is written
+ * into the session and may be handed to other threads.
+ *
+ * Only exists while enabled: the drain skips every call when it holds no instance.
+ */
+final class PipelineMetrics {
+
+    // Arrival stamps held until the drain that took them off the ring has written them
+    private static final int PENDING_CAPACITY = 1024;
+
+    private final int channelCount;
+    private final long intervalNanos;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final long[] buckets = new long[LatencyHistogram.BUCKETS];
+    private final int[] requestedPeriodUs;
+    private final long[] pending = new long[PENDING_CAPACITY];
+    private int pendingCount;
+
+    // Current interval
+    private final long[] events;
+    private final long[] firstNanos;
+    private final long[] lastNanos;
+    private long intervalStartNanos;
+    private int peakQueueDepth;
+
+    /**
+     * @param intervalNanos how often {@link #due} asks for a snapshot
+     * @param nowNanos      elapsed realtime at which the first interval starts
+     */
+    PipelineMetrics(int channelCount, long intervalNanos, long nowNanos) {
+        this.channelCount = channelCount;
+        this.intervalNanos = intervalNanos;
+        requestedPeriodUs = new int[channelCount];
+        events = new long[channelCount];
+        firstNanos = new long[channelCount];
+        lastNanos = new long[channelCount];
+        Arrays.fill(firstNanos, Long.MIN_VALUE);
+        intervalStartNanos = nowNanos;
+    }
+
+    /** The rate {@code channel} was registered at, or 0 if unknown. */
+    void setRequestedPeriodUs(int channel, int periodUs) {
+        requestedPeriodUs[channel] = periodUs;
+    }
+
+    /** Ring occupancy seen at the start of a drain. */
+    void queueDepth(int depth) {
+        if (depth > peakQueueDepth) peakQueueDepth = depth;
+    }
+
+    /**
+     * A sample of {@code channel} stamped {@code timestamp}, which reached the app at
+     * {@code enqueuedNanos}, was taken off the ring. Its latency counts at the next {@link #persisted}.
+     */
+    void sample(int channel, long timestamp, long enqueuedNanos) {
+        events[channel]++;
+        if (firstNanos[channel] == Long.MIN_VALUE) firstNanos[channel] = timestamp;
+        lastNanos[channel] = timestamp;
+        pending[pendingCount++] = enqueuedNanos;
+    }
+
+    /** No room for another {@link #sample} until {@link #persisted} is called. */
+    boolean pendingFull() {
+        return pendingCount == PENDING_CAPACITY;
+    }
+
+    /** Every sample passed to {@link #sample} so far has been written out as of {@code nowNanos}. */
+    void persisted(long nowNanos) {
+        for (int i = 0; i < pendingCount; i++) latency.record(Math.max(0, nowNanos - pending[i]));
+        pendingCount = 0;
+    }
+
+    boolean due(long nowNanos) {
+        return nowNanos - intervalStartNanos >= intervalNanos;
+    }
+
+    /**
+     * Close the current interval and start the next.
+     *
+     * @param bytesWritten encoded session bytes so far
+     * @param dropped      samples lost to backpressure so far, all channels
+     */
+    Snapshot take(long nowNanos, long bytesWritten, long dropped) {
+        double seconds = Math.max(1, nowNanos - intervalStartNanos) / 1e9;
+        float[] perSecond = new float[channelCount];
+        float[] measured = new float[channelCount];
+        float[] requested = new float[channelCount];
+        long[] counts = events.clone();
+        for (int ch = 0; ch < channelCount; ch++) {
+            perSecond[ch] = (float) (events[ch] / seconds);
+            // From the sample clock, so drain batching does not show up as rate jitter
+            long span = lastNanos[ch] - firstNanos[ch];
+            measured[ch] = events[ch] > 1 && span > 0 ? (float) ((events[ch] - 1) * 1e9 / span) : 0f;
+            requested[ch] = requestedPeriodUs[ch] > 0 ? 1_000_000f / requestedPeriodUs[ch] : Float.NaN;
+        }
+        float maxMillis = latency.harvest(buckets) / 1e6f;
+        Snapshot s = new Snapshot(nowNanos, (long) (seconds * 1000), counts, perSecond, measured, requested,
+                peakQueueDepth, bytesWritten, dropped, buckets.clone(),
+                LatencyHistogram.quantileMillis(buckets, 0.5, maxMillis),
+                LatencyHistogram.quantileMillis(buckets, 0.99, maxMillis), maxMillis);
+        Arrays.fill(events, 0);
+        Arrays.fill(firstNanos, Long.MIN_VALUE);
+        peakQueueDepth = 0;
+        intervalStartNanos = nowNanos;
+        return s;
+    }
+
+    /** One closed interval. */
+    static final class Snapshot {
+        /** Elapsed realtime at the end of the interval. */
+        final long timestamp;
+        final long intervalMillis;
+        // Indexed by channel id
+        final long[] events;
+        final float[] eventsPerSecond;
+        final float[] measuredHz;
+        /** NaN where the requested rate is unknown. */
+        final float[] requestedHz;
+        final int peakQueueDepth;
+        final long bytesWritten;
+        final long dropped;
+        /** Counts per {@link LatencyHistogram} bucket. */
+        final long[] latencyBuckets;
+        final float latencyP50Millis;
+        final float latencyP99Millis;
+        final float latencyMaxMillis;
+
+        Snapshot(long timestamp, long intervalMillis, long[] events, float[] eventsPerSecond, float[] measuredHz,
+                 float[] requestedHz, int peakQueueDepth, long bytesWritten, long dropped, long[] latencyBuckets,
+                 float latencyP50Millis, float latencyP99Millis, float latencyMaxMillis) {
+            this.timestamp = timestamp;
+            this.intervalMillis = intervalMillis;
+            this.events = events;
+            this.eventsPerSecond = eventsPerSecond;
+            this.measuredHz = measuredHz;
+            this.requestedHz = requestedHz;
+            this.peakQueueDepth = peakQueueDepth;
+            this.bytesWritten = bytesWritten;
+            this.dropped = dropped;
+            this.latencyBuckets = latencyBuckets;
+            this.latencyP50Millis = latencyP50Millis;
+            this.latencyP99Millis = latencyP99Millis;
+            this.latencyMaxMillis = latencyMaxMillis;
+        }
+
+        /** A channel with neither samples nor a requested rate is not part of the session. */
+        boolean recorded(int channel) {
+            return events[channel] > 0 || !Float.isNaN(requestedHz[channel]);
+        }
+
+        /** One stats record per recorded channel plus the pipeline record. */
+        void writeTo(RecordWriter writer) throws IOException {
+            for (int ch = 0; ch < events.length; ch++) {
+                if (!recorded(ch)) continue;
+                writer.writeChannelStats(ch, timestamp, events[ch], eventsPerSecond[ch], measuredHz[ch], requestedHz[ch]);
+            }
+            writer.writePipelineStats(timestamp, peakQueueDepth, bytesWritten,
+                    latencyP50Millis, latencyP99Millis, latencyMaxMillis);
+        }
+
+        String summary() {
+            StringBuilder sb = new StringBuilder();
+            for (int ch = 0; ch < events.length; ch++) {
+                if (!recorded(ch)) continue;
+                sb.append(String.format(Locale.US, "%s: %.1f/s, measured %.1f Hz", Channels.name(ch),
+                        eventsPerSecond[ch], measuredHz[ch]));
+                if (!Float.isNaN(requestedHz[ch])) sb.append(String.format(Locale.US, " of %.1f", requestedHz[ch]));
+                sb.append('\n');
+            }
+            sb.append(String.format(Locale.US, "Queue peak %d, %d KB written, %d dropped\n",
+                    peakQueueDepth, bytesWritten / 1024, dropped));
+            sb.append(String.format(Locale.US, "Latency p50 %.1f ms, p99 %.1f ms, max %.1f ms",
+                    latencyP50Millis, latencyP99Millis, latencyMaxMillis));
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+
+/**
+ * Output layer that needs to know where records start, e.g. to cut compressed blocks only
+ * between records. Writers call {@link #onRecordStart(long)} before encoding each record.
+ */
+interface RecordBoundaryListener {
+
+    /**
+     * @param timestamp timestamp of the record about to be written
+     * @return true if the record starts a new independently decodable unit, in which case
+     * the writer must not rely on state from earlier records (e.g. timestamp deltas)
+     */
+    boolean onRecordStart(long timestamp) throws IOException;
+}
@@ -0,0 +1,15 @@
+package com.example.roadsensorrecorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Pull-style source of session records, the read-side counterpart of {@link RecordWriter}.
+ * Implementations fill a caller-owned {@link BinaryRecordReader.Record} so reading allocates
+ * nothing per record.
+ */
+interface RecordReader extends Closeable {
+
+    /** @return false at the end of the records */
+    boolean next(BinaryRecordReader.Record r) throws IOException;
+}
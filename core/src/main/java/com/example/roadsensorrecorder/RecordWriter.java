@@ -0,0 +1,73 @@
+package com.example.roadsensorrecorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Session file encoder fed from the IO thread. Implementations are not thread-safe.
+ *
+ * Timestamps are elapsed-realtime nanoseconds (the {@code SensorEvent.timestamp} clock); anchor
+ * records map that clock onto wall time.
+ */
+interface RecordWriter extends Closeable {
+
+    /** Anchor source: {@code System.currentTimeMillis()} read together with the elapsed-realtime clock. */
+    int ANCHOR_SYSTEM_CLOCK = 0;
+    /** Anchor source: a location fix's UTC time paired with its {@code getElapsedRealtimeNanos()}. */
+    int ANCHOR_LOCATION_FIX = 1;
+
+    /** Event trigger: vertical jerk spike, level in m/s^3. */
+    int EVENT_JERK = 0;
+    /** Event trigger: gyroscope burst, level in rad/s. */
+    int EVENT_GYRO = 1;
+
+    void writeSensor(int channel, long timestamp, float x, float y, float z) throws IOException;
+
+    void writeLocation(long timestamp, double latitude, double longitude) throws IOException;
+
+    /**
+     * One fixed-rate frame combining every channel at {@code timestamp}; NaN marks a channel
+     * with no data at that time. Only sessions opened for resampled output receive frames.
+     */
+    void writeFrame(long timestamp, float ax, float ay, float az, float gx, float gy, float gz,
+                    double latitude, double longitude) throws IOException;
+
+    /** Cumulative number of samples of {@code channel} lost to backpressure so far. */
+    void writeDropped(int channel, long timestamp, long count) throws IOException;
+
+    /**
+     * Low-rate summary of {@code count} samples of {@code channel} in the interval ending at
+     * {@code timestamp}: RMS and maximum of the vector magnitude.
+     */
+    void writeSummary(int channel, long timestamp, long count, float rms, float max) throws IOException;
+
+    /** An event trigger fired at {@code timestamp}; raw samples around it follow. */
+    void writeEvent(long timestamp, int kind, float level) throws IOException;
+
+    /**
+     * The sensors were re-registered at {@code periodUs} at {@code timestamp}, because the
+     * vehicle speed was {@code speed} m/s. Later samples arrive at that rate.
+     */
+    void writeRate(long timestamp, int periodUs, float speed) throws IOException;
+
+    /** Wall-clock time {@code wallMillis} corresponded to elapsed-realtime {@code timestamp}. */
+    void writeAnchor(long timestamp, int source, long wallMillis) throws IOException;
+
+    /**
+     * Instrumentation for {@code channel} over the interval ending at {@code timestamp}: samples
+     * written, the same per wall-clock second, the rate measured from sample timestamps and the
+     * rate the channel was registered at (NaN if unknown).
+     */
+    void writeChannelStats(int channel, long timestamp, long events, float eventsPerSecond, float measuredHz,
+                           float requestedHz) throws IOException;
+
+    /**
+     * Pipeline instrumentation over the interval ending at {@code timestamp}: peak ring depth,
+     * encoded bytes so far and enqueue-to-write latency percentiles in milliseconds. Loss is
+     * recorded separately by {@link #writeDropped}.
+     */
+    void writePipelineStats(long timestamp, int peakQueueDepth, long bytesWritten, float p50Millis,
+                            float p99Millis, float maxMillis) throws IOException;
+
+    void flush() throws IOException;
+}
@@ -0,0 +1,29 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * On-disk encoding of a session, selected in the app's recording settings.
+ */
+enum RecordingFormat {
+    /** Human readable rows: Time,Type,X,Y,Z,Latitude,Longitude. */
+    CSV(".csv"),
+    /** Compact {@link BinaryRecordWriter} records, convertible back with {@link BinaryCsvConverter}. */
+    BINARY(".rsr");
+
+    final String extension;
+
+    RecordingFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /** Suffix appended to {@link #extension} when block compression is enabled. */
+    static final String COMPRESSED_SUFFIX = ".z";
+
+    static RecordingFormat fromName(String name, RecordingFormat fallback) {
+        if (name == null) return fallback;
+        try {
+            return valueOf(name.toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return fallback;
+        }
+    }
+}
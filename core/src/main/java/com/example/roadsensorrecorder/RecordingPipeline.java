@@ -0,0 +1,295 @@
+package com.example.roadsensorrecorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * The IO-thread half of a recording: drains the {@link SampleRingBuffer} that the sensor and
+ * location callbacks fill, through the optional processing stages, into a
+ * {@link RecordingSession}, adding clock anchors, loss counts and {@link PipelineMetrics} on the
+ * way. Plain Java, so the path from ingest to file runs on a JVM as well as on the device.
+ *
+ * Stages are set before the first {@link #drain}. Everything else must be called from the one
+ * thread that drains.
+ */
+final class RecordingPipeline {
+
+    /** Ring slots: ~40 s of two sensors at SENSOR_DELAY_FASTEST before the ring overflows. */
+    static final int RING_CAPACITY = 16384;
+
+    // Samples are stamped on the elapsed-realtime clock; this often the file restates its wall-clock mapping
+    private static final long CLOCK_ANCHOR_INTERVAL_NS = 10_000_000_000L;
+    // Samples drained between deadline checks
+    private static final int DEADLINE_CHECK_INTERVAL = 256;
+
+    /** The clock samples are stamped with: {@code SystemClock.elapsedRealtimeNanos} on a device. */
+    interface Clock {
+        long elapsedRealtimeNanos();
+    }
+
+    /** Notified on the draining thread. */
+    interface Listener {
+        /** The first samples of the session were committed, {@code nanos} after the session start. */
+        void onFirstPersisted(long nanos);
+
+        /** A metrics interval was closed and written into the session. */
+        void onStats(PipelineMetrics.Snapshot snapshot);
+    }
+
+    private final SampleRingBuffer ring;
+    private final RecordingSession session;
+    private final Clock clock;
+    private final long startNanos;
+    private final SampleRingBuffer.Sample sample = new SampleRingBuffer.Sample();
+    // Dropped counts last written to the file, per channel
+    private final long[] writtenDropped = new long[Channels.COUNT];
+    // Elapsed-realtime time at which the next clock / location-fix anchor is due; 0 means now
+    private long nextClockAnchorNanos;
+    private long nextFixAnchorNanos;
+    private boolean firstPersistPending = true;
+
+    // Non-null when the session records combined fixed-rate frames instead of raw samples
+    private FixedRateResampler resampler;
+    // Anti-aliasing decimation of the sensor channels, null unless enabled
+    private DecimationFilter decimation;
+    private final float[] decimated = new float[3];
+    // Indexed by channel id: the decimator is designed for the session rate, fixed-rate channels bypass it
+    private final boolean[] sessionRate = new boolean[Channels.COUNT];
+    // Non-null in event-capture mode: raw samples only around detected road events
+    private EventCapture eventCapture;
+    // Per-segment roughness features and the file they go to, when enabled
+    private RoughnessFeatureEngine features;
+    private Closeable featureFile;
+    // False when only features are kept; the session file then holds anchors and loss counts only
+    private boolean recordRaw = true;
+    private PipelineMetrics metrics;
+    private Listener listener;
+
+    /**
+     * @param startNanos samples stamped earlier are leftovers of a previous session and skipped
+     */
+    RecordingPipeline(SampleRingBuffer ring, RecordingSession session, Clock clock, long startNanos) {
+        this.ring = ring;
+        this.session = session;
+        this.clock = clock;
+        this.startNanos = startNanos;
+        for (int ch = 0; ch < Channels.COUNT; ch++) sessionRate[ch] = session.schema().followsSessionRate(ch);
+    }
+
+    RecordingSession session() {
+        return session;
+    }
+
+    void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    void setDecimation(DecimationFilter decimation) {
+        this.decimation = decimation;
+    }
+
+    /** Frames go to the resampler's own writer, normally {@code session().writer()}. */
+    void setResampler(FixedRateResampler resampler) {
+        this.resampler = resampler;
+    }
+
+    FixedRateResampler resampler() {
+        return resampler;
+    }
+
+    void setEventCapture(EventCapture eventCapture) {
+        this.eventCapture = eventCapture;
+    }
+
+    EventCapture eventCapture() {
+        return eventCapture;
+    }
+
+    /** @param file closed by {@link #finish} once the engine has written its last segment */
+    void setFeatures(RoughnessFeatureEngine features, Closeable file) {
+        this.features = features;
+        this.featureFile = file;
+    }
+
+    void setRecordRaw(boolean recordRaw) {
+        this.recordRaw = recordRaw;
+    }
+
+    void setMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    PipelineMetrics metrics() {
+        return metrics;
+    }
+
+    /** Write a clock anchor with the next drain, e.g. before the final one. */
+    void requestClockAnchor() {
+        nextClockAnchorNanos = 0;
+    }
+
+    /** Restate the clock mapping at the start of a segment so it can be aligned on its own. */
+    void onSegmentStarted(RecordWriter writer) throws IOException {
+        long now = clock.elapsedRealtimeNanos();
+        writer.writeAnchor(now, RecordWriter.ANCHOR_SYSTEM_CLOCK, System.currentTimeMillis());
+        nextClockAnchorNanos = now + CLOCK_ANCHOR_INTERVAL_NS;
+    }
+
+    /**
+     * The session-rate sensors were re-registered at {@code periodUs}; samples taken at the old
+     * rate are written first.
+     */
+    void changeRate(long timestamp, int periodUs, float speed) throws IOException {
+        drain(Long.MAX_VALUE);
+        if (metrics != null) {
+            for (int ch = 0; ch < Channels.COUNT; ch++) {
+                if (sessionRate[ch]) metrics.setRequestedPeriodUs(ch, periodUs);
+            }
+        }
+        session.writer().writeRate(timestamp, periodUs, speed);
+    }
+
+    /**
+     * Encode every queued sample into the session in one pass, then commit as the durability
+     * policy asks. Stops early, leaving the rest queued, once the clock passes
+     * {@code deadlineNanos}.
+     *
+     * @return samples taken off the ring
+     */
+    long drain(long deadlineNanos) throws IOException {
+        RecordWriter writer = session.writer();
+        SampleRingBuffer.Sample s = sample;
+        long drained = 0;
+        long now = clock.elapsedRealtimeNanos();
+        if (now >= nextClockAnchorNanos) {
+            writer.writeAnchor(now, RecordWriter.ANCHOR_SYSTEM_CLOCK, System.currentTimeMillis());
+            nextClockAnchorNanos = now + CLOCK_ANCHOR_INTERVAL_NS;
+        }
+        FixedRateResampler frames = resampler;
+        EventCapture events = eventCapture;
+        DecimationFilter decimator = decimation;
+        RoughnessFeatureEngine roughness = features;
+        PipelineMetrics stats = metrics;
+        if (stats != null) stats.queueDepth(ring.size());
+        boolean raw = recordRaw;
+        int untilCheck = DEADLINE_CHECK_INTERVAL;
+        while (true) {
+            if (--untilCheck == 0) {
+                untilCheck = DEADLINE_CHECK_INTERVAL;
+                if (clock.elapsedRealtimeNanos() > deadlineNanos) break;
+            }
+            // Everything sampled so far has been handed to the writer
+            if (stats != null && stats.pendingFull()) stats.persisted(clock.elapsedRealtimeNanos());
+            if (!ring.poll(s)) break;
+            if (s.timestamp < startNanos) continue;
+            drained++;
+            if (stats != null) stats.sample(s.channel, s.timestamp, s.enqueuedNanos);
+            if (s.channel == Channels.LOCATION) {
+                if (roughness != null) roughness.addLocation(s.timestamp, s.latitude, s.longitude);
+                if (raw && frames != null) {
+                    frames.addLocation(s.timestamp, s.latitude, s.longitude);
+                } else if (raw) {
+                    writer.writeLocation(s.timestamp, s.latitude, s.longitude);
+                }
+                if (s.extra != 0 && s.timestamp >= nextFixAnchorNanos) {
+                    writer.writeAnchor(s.timestamp, RecordWriter.ANCHOR_LOCATION_FIX, s.extra);
+                    nextFixAnchorNanos = s.timestamp + CLOCK_ANCHOR_INTERVAL_NS;
+                }
+                session.markEvent();
+                continue;
+            }
+            float x = s.x;
+            float y = s.y;
+            float z = s.z;
+            if (decimator != null && sessionRate[s.channel]) {
+                if (!decimator.process(s.channel, x, y, z, decimated)) continue;
+                x = decimated[0];
+                y = decimated[1];
+                z = decimated[2];
+            }
+            if (roughness != null && s.channel == Channels.ACCELEROMETER) {
+                roughness.addAccel(s.timestamp, x, y, z);
+            }
+            if (!raw) continue;
+            if (events != null) {
+                events.addSensor(s.channel, s.timestamp, x, y, z);
+            } else if (frames != null) {
+                frames.addSensor(s.channel, s.timestamp, x, y, z);
+            } else {
+                writer.writeSensor(s.channel, s.timestamp, x, y, z);
+            }
+        }
+        writeDroppedCounts(writer);
+        if (firstPersistPending && drained > 0) {
+            // Measure start-to-disk for the first samples rather than leave them to the commit policy
+            session.commit();
+            firstPersistPending = false;
+            if (listener != null) listener.onFirstPersisted(clock.elapsedRealtimeNanos() - startNanos);
+        }
+        session.maybeCommit(System.currentTimeMillis());
+        if (stats != null) {
+            long end = clock.elapsedRealtimeNanos();
+            stats.persisted(end);
+            if (stats.due(end)) publishStats(stats, end);
+        }
+        return drained;
+    }
+
+    /** Throw away whatever is still queued, e.g. past the stop deadline. */
+    long discardQueued() {
+        long discarded = 0;
+        while (ring.poll(sample)) discarded++;
+        return discarded;
+    }
+
+    /** Flush what the stages still hold into the session and write the last metrics interval. */
+    void finish() throws IOException {
+        if (features != null) {
+            RoughnessFeatureEngine engine = features;
+            Closeable file = featureFile;
+            features = null;
+            featureFile = null;
+            try {
+                engine.finish();
+            } finally {
+                file.close();
+            }
+        }
+        if (eventCapture != null) {
+            EventCapture capture = eventCapture;
+            eventCapture = null;
+            capture.finish();
+        }
+        if (resampler != null) {
+            FixedRateResampler frames = resampler;
+            resampler = null;
+            frames.flush();
+        }
+        if (metrics != null) {
+            PipelineMetrics stats = metrics;
+            metrics = null;
+            // The last, usually partial, interval
+            publishStats(stats, clock.elapsedRealtimeNanos());
+        }
+        decimation = null;
+    }
+
+    // Record cumulative loss per channel whenever it changed since the last drain
+    private void writeDroppedCounts(RecordWriter writer) throws IOException {
+        for (int ch = 0; ch < writtenDropped.length; ch++) {
+            long dropped = ring.droppedCount(ch);
+            if (dropped == writtenDropped[ch]) continue;
+            writtenDropped[ch] = dropped;
+            writer.writeDropped(ch, clock.elapsedRealtimeNanos(), dropped);
+        }
+    }
+
+    // Close the metrics interval, record it in the session and pass it on
+    private void publishStats(PipelineMetrics stats, long nowNanos) throws IOException {
+        long dropped = 0;
+        for (int ch = 0; ch < Channels.COUNT; ch++) dropped += ring.droppedCount(ch);
+        PipelineMetrics.Snapshot snapshot = stats.take(nowNanos, session.encodedBytes(), dropped);
+        snapshot.writeTo(session.writer());
+        if (listener != null) listener.onStats(snapshot);
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+
+/**
+ * One open session: the output stream stack, its {@link RecordWriter} and the group-commit
+ * bookkeeping for the {@link DurabilityPolicy}. Owned by the IO thread.
+ *
+ * With a {@link SegmentPolicy} the session is a series of memory-mapped segment files, each a
+ * complete file with its own header, plus a {@link SegmentManifest}. {@link #writer()} then
+ * rolls over to the next segment on the record that crosses a limit, so the pipeline stages
+ * holding it never see the switch. With an {@link IndexPolicy} every file also gets a
+ * {@link SparseIndex} sidecar for {@link SessionRangeReader}.
+ */
+final class RecordingSession implements Closeable {
+
+    /** Notified on the IO thread when a later segment is opened, before its first record. */
+    interface SegmentListener {
+        /** @param writer the new segment's own writer, e.g. to restate a clock anchor */
+        void onSegmentStarted(RecordWriter writer, int index) throws IOException;
+    }
+
+    /** The session file, or the manifest of a segmented session. */
+    final File file;
+    private final File baseFile;
+    private final RecordingFormat format;
+    private final int compressionBlockSize;
+    private final ChannelSchema schema;
+    private final CsvPrecision csvPrecision;
+    private final DurabilityPolicy durability;
+    private final SegmentPolicy segments;
+    private final IndexPolicy indexing;
+    private final SegmentManifest manifest;
+    private final RecordWriter writer;
+    private SegmentListener segmentListener;
+
+    private Segment current;
+    private int segmentIndex;
+    // Encoded bytes of closed segments
+    private long closedBytes;
+
+    private long lastCommitMillis;
+    private long committedBytes;
+    private boolean pendingEvent;
+    private long commitCount;
+    private long commitNanos;
+
+    /** Output stack of one file. */
+    private static final class Segment {
+        final Syncable syncer;
+        // Null unless memory-mapped
+        final MappedSegmentOutputStream mapped;
+        final CountingOutputStream encoded;
+        final RecordWriter writer;
+        // Null unless indexed
+        final SparseIndexWriter index;
+        SegmentManifest.Entry entry;
+
+        Segment(Syncable syncer, MappedSegmentOutputStream mapped, CountingOutputStream encoded, RecordWriter writer,
+                SparseIndexWriter index) {
+            this.syncer = syncer;
+            this.mapped = mapped;
+            this.encoded = encoded;
+            this.writer = writer;
+            this.index = index;
+        }
+
+        void close() throws IOException {
+            try {
+                writer.close();
+            } finally {
+                if (index != null) index.close();
+            }
+        }
+    }
+
+    private interface Syncable {
+        void sync() throws IOException;
+    }
+
+    private RecordingSession(File baseFile, RecordingFormat format, int compressionBlockSize, ChannelSchema schema,
+                             CsvPrecision csvPrecision, DurabilityPolicy durability, SegmentPolicy segments,
+                             IndexPolicy indexing, long nowMillis) {
+        this.baseFile = baseFile;
+        this.format = format;
+        this.compressionBlockSize = compressionBlockSize;
+        this.schema = schema;
+        this.csvPrecision = csvPrecision;
+        this.durability = durability;
+        this.segments = segments;
+        this.indexing = indexing;
+        if (segments.enabled()) {
+            manifest = new SegmentManifest(new File(baseFile.getParentFile(),
+                    SegmentManifest.manifestName(baseFile.getName())));
+            file = manifest.file;
+        } else {
+            manifest = null;
+            file = baseFile;
+        }
+        writer = segments.enabled() || indexing.enabled ? new SessionWriter() : null;
+        this.lastCommitMillis = nowMillis;
+    }
+
+    /**
+     * Create {@code file} (or the first segment and the manifest) and write the format header.
+     *
+     * @param compressionBlockSize block size for {@link BlockCompressedOutputStream}, or 0 for none
+     * @param schema               channels declared in every file header; resampled schemas hold
+     *                             {@link FixedRateResampler} frames
+     * @param csvPrecision         number formatting for CSV files; ignored for binary
+     * @param segments             roll-over limits; segment names derive from {@code file}
+     * @param indexing             whether each file gets a {@link SparseIndex} sidecar
+     */
+    static RecordingSession open(File file, RecordingFormat format, int compressionBlockSize, ChannelSchema schema,
+                                 CsvPrecision csvPrecision, DurabilityPolicy durability, SegmentPolicy segments,
+                                 IndexPolicy indexing, long startMillis) throws IOException {
+        RecordingSession session = new RecordingSession(file, format, compressionBlockSize, schema,
+                csvPrecision, durability, segments, indexing, startMillis);
+        session.current = session.openSegment(startMillis);
+        session.commit();
+        return session;
+    }
+
+    ChannelSchema schema() {
+        return schema;
+    }
+
+    void setSegmentListener(SegmentListener listener) {
+        segmentListener = listener;
+    }
+
+    RecordWriter writer() {
+        return writer != null ? writer : current.writer;
+    }
+
+    /** Segment files written so far, 1 for an unsegmented session. */
+    int segmentCount() {
+        return segmentIndex + 1;
+    }
+
+    /** Note a significant event (e.g. a location fix) for {@link DurabilityPolicy#commitOnEvent}. */
+    void markEvent() {
+        pendingEvent = true;
+    }
+
+    /** Commit if the durability policy asks for it. Call after each drained batch. */
+    void maybeCommit(long nowMillis) throws IOException {
+        long uncommitted = encodedBytes() - committedBytes;
+        if (durability.shouldCommit(nowMillis - lastCommitMillis, uncommitted, pendingEvent)) {
+            commit();
+            lastCommitMillis = nowMillis;
+        }
+    }
+
+    /** Flush every layer and, if enabled, fsync so a killed process loses nothing written so far. */
+    void commit() throws IOException {
+        long t0 = System.nanoTime();
+        Segment s = current;
+        s.writer.flush();
+        s.syncer.sync();
+        // The index only ever points at data that has been pushed out before it
+        if (s.index != null) s.index.flush();
+        if (manifest != null) {
+            s.entry.bytes = s.mapped.position();
+            manifest.write(durability.fsync);
+        }
+        commitNanos += System.nanoTime() - t0;
+        commitCount++;
+        committedBytes = encodedBytes();
+        pendingEvent = false;
+    }
+
+    long encodedBytes() {
+        return closedBytes + current.encoded.count();
+    }
+
+    long commitCount() {
+        return commitCount;
+    }
+
+    /** Total time spent in {@link #commit()}, the throughput cost of the durability policy. */
+    long commitNanos() {
+        return commitNanos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        Segment s = current;
+        s.close();
+        if (manifest != null) {
+            s.entry.bytes = s.mapped.position();
+            s.entry.closed = true;
+            manifest.write(durability.fsync);
+        }
+    }
+
+    private Segment openSegment(long startMillis) throws IOException {
+        File target = manifest == null ? baseFile
+                : new File(baseFile.getParentFile(), SegmentManifest.segmentName(baseFile.getName(), segmentIndex));
+        OutputStream fileOut;
+        Syncable syncer;
+        MappedSegmentOutputStream mapped = null;
+        if (manifest != null) {
+            mapped = new MappedSegmentOutputStream(target, segments.regionBytes(), durability.fsync);
+            fileOut = mapped;
+            syncer = mapped::sync;
+        } else {
+            SyncingFileOutputStream syncing = new SyncingFileOutputStream(target, durability.fsync);
+            fileOut = syncing;
+            syncer = syncing::sync;
+        }
+        SparseIndexWriter index = null;
+        try {
+            OutputStream stream;
+            RecordBoundaryListener boundaries = null;
+            if (compressionBlockSize > 0) {
+                // Blocks are compressed on the IO thread as they fill; the block buffer is the only buffering
+                BlockCompressedOutputStream blocks = new BlockCompressedOutputStream(
+                        fileOut, compressionBlockSize, Deflater.DEFAULT_COMPRESSION);
+                stream = blocks;
+                boundaries = blocks;
+            } else if (mapped != null) {
+                // Writes into the mapping are already plain memory copies
+                stream = mapped;
+            } else {
+                stream = new BufferedOutputStream(fileOut, 1 << 16);
+            }
+            CountingOutputStream encoded = new CountingOutputStream(stream);
+            if (indexing.enabled) {
+                index = new SparseIndexWriter(boundaries, encoded,
+                        new BufferedOutputStream(new FileOutputStream(SparseIndex.fileFor(target)), 4096),
+                        indexing.maxRecords, indexing.maxNanos);
+                boundaries = index;
+            }
+            RecordWriter w = format == RecordingFormat.BINARY
+                    ? new BinaryRecordWriter(encoded, boundaries, startMillis, schema)
+                    : new CsvRecordWriter(encoded, boundaries, schema, csvPrecision);
+            Segment s = new Segment(syncer, mapped, encoded, w, index);
+            if (manifest != null) {
+                // Listed before any data so recovery finds every segment file
+                s.entry = manifest.add(target.getName());
+                manifest.write(durability.fsync);
+            }
+            return s;
+        } catch (IOException e) {
+            if (index != null) index.close();
+            fileOut.close();
+            throw e;
+        }
+    }
+
+    // Close the current segment and continue in the next one
+    private Segment roll() throws IOException {
+        Segment old = current;
+        old.close();
+        old.entry.bytes = old.mapped.position();
+        old.entry.closed = true;
+        closedBytes += old.encoded.count();
+        segmentIndex++;
+        current = openSegment(System.currentTimeMillis());
+        commit();
+        if (segmentListener != null) segmentListener.onSegmentStarted(current.writer, segmentIndex);
+        return current;
+    }
+
+    /**
+     * Routes each record to the current segment, rolling over first when a limit is reached, and
+     * feeds positions to the index.
+     */
+    private final class SessionWriter implements RecordWriter {
+
+        private RecordWriter to(long timestamp) throws IOException {
+            Segment s = current;
+            SegmentManifest.Entry e = s.entry;
+            if (e == null) return s.writer;
+            if (e.hasRecords() && segments.shouldRoll(s.encoded.count(), timestamp - e.firstNanos)) {
+                s = roll();
+                e = s.entry;
+            }
+            if (timestamp < e.firstNanos) e.firstNanos = timestamp;
+            if (timestamp > e.lastNanos) e.lastNanos = timestamp;
+            return s.writer;
+        }
+
+        // After the record is written, so it lands in the index block that record opened
+        private void located(double latitude, double longitude) {
+            SparseIndexWriter index = current.index;
+            if (index != null) index.location(latitude, longitude);
+        }
+
+        @Override
+        public void writeSensor(int channel, long timestamp, float x, float y, float z) throws IOException {
+            to(timestamp).writeSensor(channel, timestamp, x, y, z);
+        }
+
+        @Override
+        public void writeLocation(long timestamp, double latitude, double longitude) throws IOException {
+            to(timestamp).writeLocation(timestamp, latitude, longitude);
+            located(latitude, longitude);
+        }
+
+        @Override
+        public void writeFrame(long timestamp, float ax, float ay, float az, float gx, float gy, float gz,
+                               double latitude, double longitude) throws IOException {
+            to(timestamp).writeFrame(timestamp, ax, ay, az, gx, gy, gz, latitude, longitude);
+            located(latitude, longitude);
+        }
+
+        @Override
+        public void writeDropped(int channel, long timestamp, long count) throws IOException {
+            to(timestamp).writeDropped(channel, timestamp, count);
+        }
+
+        @Override
+        public void writeSummary(int channel, long timestamp, long count, float rms, float max) throws IOException {
+            to(timestamp).writeSummary(channel, timestamp, count, rms, max);
+        }
+
+        @Override
+        public void writeEvent(long timestamp, int kind, float level) throws IOException {
+            to(timestamp).writeEvent(timestamp, kind, level);
+        }
+
+        @Override
+        public void writeRate(long timestamp, int periodUs, float speed) throws IOException {
+            to(timestamp).writeRate(timestamp, periodUs, speed);
+        }
+
+        @Override
+        public void writeAnchor(long timestamp, int source, long wallMillis) throws IOException {
+            to(timestamp).writeAnchor(timestamp, source, wallMillis);
+        }
+
+        @Override
+        public void writeChannelStats(int channel, long timestamp, long events, float eventsPerSecond,
+                                      float measuredHz, float requestedHz) throws IOException {
+            to(timestamp).writeChannelStats(channel, timestamp, events, eventsPerSecond, measuredHz, requestedHz);
+        }
+
+        @Override
+        public void writePipelineStats(long timestamp, int peakQueueDepth, long bytesWritten, float p50Millis,
+                                       float p99Millis, float maxMillis) throws IOException {
+            to(timestamp).writePipelineStats(timestamp, peakQueueDepth, bytesWritten, p50Millis, p99Millis, maxMillis);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            current.writer.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            RecordingSession.this.close();
+        }
+    }
+
+    /** File stream that can fsync on demand and fsyncs once more when closed. */
+    private static final class SyncingFileOutputStream extends FileOutputStream {
+        private final boolean fsync;
+        private boolean closed;
+
+        SyncingFileOutputStream(File file, boolean fsync) throws IOException {
+            super(file);
+            this.fsync = fsync;
+        }
+
+        void sync() throws IOException {
+            if (fsync) getFD().sync();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) return;
+            closed = true;
+            try {
+                sync();
+            } finally {
+                super.close();
+            }
+        }
+    }
+}
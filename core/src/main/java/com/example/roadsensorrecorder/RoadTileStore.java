@@ -0,0 +1,504 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Road quality across sessions: vertical vibration of every accelerometer sample, binned by the
+ * geohash cell it was recorded in and the direction of travel, as one {@link VibrationSummary}
+ * per tile. Adding a session costs one pass over that session plus a merge of the tiles it
+ * touched; tiles already stored are not revisited. A bounding-box query scans only the hash
+ * ranges of the few coarser cells that cover the box.
+ *
+ * Each sample's position is interpolated between the fixes around it and its heading is the
+ * bearing between them. Samples while stopped (heading is noise and the vibration is the
+ * engine's), across gaps in the fixes and before gravity has settled are left out.
+ *
+ * The file is the header followed by one block per merge, each holding the sessions it added
+ * and their tiles; blocks are appended, and loading folds them together. A block torn by a
+ * crash fails its CRC and is dropped on the next append. Layout, little-endian:
+ *
+ * <pre>
+ * magic "RSRT", u8 version, u8 geohash characters
+ * blocks: i32 bodyLength, i32 crc32(body), body:
+ *         i32 sessions, per session: i32 nameLength, ASCII name
+ *         i32 tiles, per tile: i64 key (cell hash &lt;&lt; 3 | heading bin), {@link VibrationSummary#encode summary}
+ * </pre>
+ *
+ * <pre>java com.example.roadsensorrecorder.RoadTileStore tiles.rst add sensor_data_X.rsr.z ...
+ * java com.example.roadsensorrecorder.RoadTileStore tiles.rst query &lt;minLat&gt; &lt;maxLat&gt; &lt;minLon&gt; &lt;maxLon&gt; [out.csv]
+ * java com.example.roadsensorrecorder.RoadTileStore tiles.rst compact</pre>
+ */
+public final class RoadTileStore {
+
+    static final byte[] MAGIC = {'R', 'S', 'R', 'T'};
+    static final int VERSION = 1;
+    /** Geohash characters of a new store: cells of about 150 x 150 m. */
+    static final int DEFAULT_PRECISION = 7;
+    /** Directions of travel, 45 degrees each, bin 0 centred on north. */
+    static final int HEADING_BINS = 8;
+    static final String QUERY_HEADER = "Geohash,HeadingDeg,MinLatitude,MaxLatitude,MinLongitude,MaxLongitude,"
+            + "Samples,Mean,StdDev,Rms,P50,P90,P99,MaxAbs\n";
+
+    private static final int HEADING_SHIFT = 3;
+    private static final int HEADER_BYTES = MAGIC.length + 2;
+    // Below this the vehicle is treated as stopped
+    private static final double MIN_SPEED_MPS = 3;
+    // Samples between fixes further apart than this have no usable position
+    private static final long MAX_FIX_GAP_NS = 5_000_000_000L;
+    // Gravity tracking time constant, as in RoughnessFeatureEngine; samples in the first one are skipped
+    private static final double GRAVITY_TAU_S = 1.0;
+    // A box query splits into at most this many hash ranges
+    private static final int MAX_QUERY_RANGES = 64;
+
+    private final File file;
+    private final int precision;
+    private final int bits;
+    private final TreeMap<Long, VibrationSummary> tiles = new TreeMap<>();
+    private final Set<String> sessions = new HashSet<>();
+    // Length of the file up to the last intact block
+    private long validLength;
+
+    private RoadTileStore(File file, int precision) {
+        if (precision < 1 || precision > Geohash.MAX_CHARS) throw new IllegalArgumentException("precision 1.." + Geohash.MAX_CHARS);
+        this.file = file;
+        this.precision = precision;
+        this.bits = 5 * precision;
+    }
+
+    /**
+     * Load {@code file}, or start an empty store there.
+     *
+     * @param precision geohash characters if the store is new; an existing store keeps its own
+     */
+    static RoadTileStore open(File file, int precision) throws IOException {
+        if (!file.exists()) return new RoadTileStore(file, precision);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length < HEADER_BYTES || !Arrays.equals(Arrays.copyOf(bytes, MAGIC.length), MAGIC)) {
+            throw new IOException("Not a tile store: " + file);
+        }
+        if (bytes[MAGIC.length] != VERSION) throw new IOException("Unsupported tile store version " + bytes[MAGIC.length]);
+        RoadTileStore store = new RoadTileStore(file, bytes[MAGIC.length + 1]);
+        int p = HEADER_BYTES;
+        while (p + 8 <= bytes.length) {
+            int length = BinaryRecordReader.getInt(bytes, p);
+            if (length < 0 || length > bytes.length - p - 8) break;
+            CRC32 crc = new CRC32();
+            crc.update(bytes, p + 8, length);
+            if ((int) crc.getValue() != BinaryRecordReader.getInt(bytes, p + 4)) break;
+            store.readBlock(bytes, p + 8);
+            p += 8 + length;
+        }
+        store.validLength = p;
+        return store;
+    }
+
+    int precision() {
+        return precision;
+    }
+
+    int tileCount() {
+        return tiles.size();
+    }
+
+    boolean contains(String session) {
+        return sessions.contains(session);
+    }
+
+    /**
+     * Bin one session, a file or the segments of a manifest, and append its tiles to the store.
+     *
+     * @return false if a session of that name was added before; nothing is read then
+     * @throws IOException if the session cannot be read, leaving the store as it was
+     */
+    boolean add(File session) throws IOException {
+        String name = BatchExporter.sessionName(session);
+        if (sessions.contains(name)) return false;
+        Binner binner = new Binner(bits);
+        FixedRateResampler.FixCadence fixes = new FixedRateResampler.FixCadence();
+        for (File data : SegmentManifest.dataFiles(session)) {
+            try (SessionRangeReader.Cursor cursor = SessionRangeReader.open(data).timeRange(Long.MIN_VALUE, Long.MAX_VALUE)) {
+                BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+                while (cursor.next(r)) {
+                    switch (r.type) {
+                        case BinaryRecordReader.RECORD_SENSOR:
+                            if (r.channel == Channels.ACCELEROMETER) binner.addAccel(r.timestamp, r.x, r.y, r.z);
+                            break;
+                        case BinaryRecordReader.RECORD_LOCATION:
+                            binner.addLocation(r.timestamp, r.latitude, r.longitude);
+                            break;
+                        case BinaryRecordReader.RECORD_FRAME:
+                            if (!Float.isNaN(r.x)) binner.addAccel(r.timestamp, r.x, r.y, r.z);
+                            if (fixes.isFix(r.timestamp, r.latitude)) binner.addLocation(r.timestamp, r.latitude, r.longitude);
+                            break;
+                        default:
+                            break;
+                    }
+                }
+            }
+        }
+        append(Arrays.asList(name), binner.tiles);
+        sessions.add(name);
+        for (Map.Entry<Long, VibrationSummary> e : binner.tiles.entrySet()) mergeTile(e.getKey(), e.getValue());
+        return true;
+    }
+
+    /** One cell and heading bin of a query result. */
+    static final class Tile {
+        final long cell;
+        final int heading;
+        final VibrationSummary summary;
+        private final int precision;
+
+        Tile(long cell, int heading, VibrationSummary summary, int precision) {
+            this.cell = cell;
+            this.heading = heading;
+            this.summary = summary;
+            this.precision = precision;
+        }
+
+        String geohash() {
+            return Geohash.toString(cell, precision);
+        }
+
+        /** Centre of the heading bin in degrees clockwise from north. */
+        int headingDegrees() {
+            return heading * (360 / HEADING_BINS);
+        }
+    }
+
+    /** Tiles whose cell intersects the box, in hash order. */
+    List<Tile> query(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        if (minLatitude > maxLatitude || minLongitude > maxLongitude) throw new IllegalArgumentException("empty box");
+        // The finest level whose cells cover the box in few enough hash ranges
+        int level = bits;
+        while (level > 0 && cellsCovering(level, minLatitude, maxLatitude, minLongitude, maxLongitude) > MAX_QUERY_RANGES) {
+            level--;
+        }
+        long firstLon = Geohash.index(minLongitude, -180, 360, Geohash.lonBits(level));
+        long lastLon = Geohash.index(maxLongitude, -180, 360, Geohash.lonBits(level));
+        long firstLat = Geohash.index(minLatitude, -90, 180, Geohash.latBits(level));
+        long lastLat = Geohash.index(maxLatitude, -90, 180, Geohash.latBits(level));
+        int shift = bits - level + HEADING_SHIFT;
+        List<Tile> found = new ArrayList<>();
+        double[] bounds = new double[4];
+        long[] ranges = new long[(int) ((lastLon - firstLon + 1) * (lastLat - firstLat + 1))];
+        int n = 0;
+        for (long lon = firstLon; lon <= lastLon; lon++) {
+            for (long lat = firstLat; lat <= lastLat; lat++) ranges[n++] = Geohash.interleave(lon, lat, level);
+        }
+        // In hash order, so the result is too
+        Arrays.sort(ranges);
+        for (long coarse : ranges) {
+            long from = coarse << shift;
+            long to = from + (1L << shift) - 1;
+            for (Map.Entry<Long, VibrationSummary> e : tiles.subMap(from, true, to, true).entrySet()) {
+                long cell = e.getKey() >>> HEADING_SHIFT;
+                Geohash.bounds(cell, bits, bounds);
+                if (bounds[0] > maxLatitude || bounds[1] < minLatitude || bounds[2] > maxLongitude || bounds[3] < minLongitude) {
+                    continue;
+                }
+                int heading = (int) (e.getKey() & (1 << HEADING_SHIFT) - 1);
+                found.add(new Tile(cell, heading, e.getValue(), precision));
+            }
+        }
+        return found;
+    }
+
+    /** Rewrite the file as a single block. */
+    void compact() throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(header());
+            out.write(block(new ArrayList<>(sessions), tiles));
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        validLength = file.length();
+    }
+
+    /** Per-sample vertical vibration of one session, binned into its own tiles. */
+    static final class Binner {
+        final TreeMap<Long, VibrationSummary> tiles = new TreeMap<>();
+        private final int bits;
+
+        private boolean haveGravity;
+        private long gravityStartNanos;
+        private long lastAccelNanos;
+        private double gx, gy, gz;
+
+        // Vertical acceleration of the samples since the last fix, waiting for the next one
+        private long[] pendingNanos = new long[256];
+        private float[] pendingValues = new float[256];
+        private int pending;
+
+        private boolean haveFix;
+        private long lastFixNanos;
+        private double lastLatitude, lastLongitude;
+
+        // The tile of the previous sample; consecutive samples nearly always share it
+        private long lastKey = -1;
+        private VibrationSummary lastTile;
+
+        Binner(int bits) {
+            this.bits = bits;
+        }
+
+        void addAccel(long timestamp, float x, float y, float z) {
+            long dt = timestamp - lastAccelNanos;
+            if (!haveGravity || dt <= 0 || dt > MAX_FIX_GAP_NS) {
+                gx = x;
+                gy = y;
+                gz = z;
+                haveGravity = true;
+                gravityStartNanos = timestamp;
+            } else {
+                // Time-based, since the sampling rate may change during a session
+                double alpha = dt / (dt + GRAVITY_TAU_S * 1e9);
+                gx += alpha * (x - gx);
+                gy += alpha * (y - gy);
+                gz += alpha * (z - gz);
+            }
+            lastAccelNanos = timestamp;
+            if (!haveFix || timestamp - gravityStartNanos < GRAVITY_TAU_S * 1e9) return;
+            double g = Math.sqrt(gx * gx + gy * gy + gz * gz);
+            if (g == 0) return;
+            if (timestamp - lastFixNanos > MAX_FIX_GAP_NS) {
+                pending = 0;
+                return;
+            }
+            if (pending == pendingNanos.length) {
+                pendingNanos = Arrays.copyOf(pendingNanos, pending * 2);
+                pendingValues = Arrays.copyOf(pendingValues, pending * 2);
+            }
+            pendingNanos[pending] = timestamp;
+            pendingValues[pending] = (float) ((x * gx + y * gy + z * gz) / g - g);
+            pending++;
+        }
+
+        void addLocation(long timestamp, double latitude, double longitude) {
+            long dt = timestamp - lastFixNanos;
+            if (haveFix && dt > 0 && dt <= MAX_FIX_GAP_NS) {
+                double distance = RoughnessFeatureEngine.distanceMeters(lastLatitude, lastLongitude, latitude, longitude);
+                if (distance / (dt / 1e9) >= MIN_SPEED_MPS) {
+                    binPending(timestamp, latitude, longitude, headingBin(lastLatitude, lastLongitude, latitude, longitude));
+                }
+            }
+            // Samples stamped after this fix wait for the next one
+            int kept = 0;
+            for (int i = 0; i < pending; i++) {
+                if (pendingNanos[i] <= timestamp) continue;
+                pendingNanos[kept] = pendingNanos[i];
+                pendingValues[kept] = pendingValues[i];
+                kept++;
+            }
+            pending = kept;
+            haveFix = true;
+            lastFixNanos = timestamp;
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+        }
+
+        // Samples between the last fix and this one, at positions interpolated along the way
+        private void binPending(long timestamp, double latitude, double longitude, int heading) {
+            double span = timestamp - lastFixNanos;
+            for (int i = 0; i < pending; i++) {
+                long t = pendingNanos[i];
+                if (t < lastFixNanos || t > timestamp) continue;
+                double f = (t - lastFixNanos) / span;
+                long cell = Geohash.encode(lastLatitude + f * (latitude - lastLatitude),
+                        lastLongitude + f * (longitude - lastLongitude), bits);
+                long key = cell << HEADING_SHIFT | heading;
+                if (key != lastKey) {
+                    lastTile = tiles.computeIfAbsent(key, k -> new VibrationSummary());
+                    lastKey = key;
+                }
+                lastTile.add(pendingValues[i]);
+            }
+        }
+    }
+
+    /** Bin of the initial bearing from the first point to the second. */
+    static int headingBin(double lat1, double lon1, double lat2, double lon2) {
+        double p1 = Math.toRadians(lat1);
+        double p2 = Math.toRadians(lat2);
+        double dl = Math.toRadians(lon2 - lon1);
+        double bearing = Math.toDegrees(Math.atan2(Math.sin(dl) * Math.cos(p2),
+                Math.cos(p1) * Math.sin(p2) - Math.sin(p1) * Math.cos(p2) * Math.cos(dl)));
+        double width = 360.0 / HEADING_BINS;
+        return (int) Math.floor((bearing + 360 + width / 2) / width) % HEADING_BINS;
+    }
+
+    // Cells of the level covering the box, without building them
+    private static long cellsCovering(int level, double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+        long lon = Geohash.index(maxLongitude, -180, 360, Geohash.lonBits(level))
+                - Geohash.index(minLongitude, -180, 360, Geohash.lonBits(level)) + 1;
+        long lat = Geohash.index(maxLatitude, -90, 180, Geohash.latBits(level))
+                - Geohash.index(minLatitude, -90, 180, Geohash.latBits(level)) + 1;
+        return lon * lat;
+    }
+
+    private void mergeTile(long key, VibrationSummary summary) {
+        VibrationSummary existing = tiles.get(key);
+        if (existing == null) {
+            tiles.put(key, summary);
+        } else {
+            existing.merge(summary);
+        }
+    }
+
+    private void readBlock(byte[] b, int p) {
+        int count = BinaryRecordReader.getInt(b, p);
+        p += 4;
+        for (int i = 0; i < count; i++) {
+            int length = BinaryRecordReader.getInt(b, p);
+            sessions.add(new String(b, p + 4, length, StandardCharsets.US_ASCII));
+            p += 4 + length;
+        }
+        count = BinaryRecordReader.getInt(b, p);
+        p += 4;
+        for (int i = 0; i < count; i++) {
+            long key = BinaryRecordReader.getLong(b, p);
+            VibrationSummary summary = VibrationSummary.decode(b, p + 8);
+            p += 8 + summary.encodedBytes();
+            mergeTile(key, summary);
+        }
+    }
+
+    private byte[] header() {
+        byte[] h = Arrays.copyOf(MAGIC, HEADER_BYTES);
+        h[MAGIC.length] = VERSION;
+        h[MAGIC.length + 1] = (byte) precision;
+        return h;
+    }
+
+    // A framed block: length, CRC and body
+    private static byte[] block(List<String> names, TreeMap<Long, VibrationSummary> blockTiles) {
+        int size = 8 + 4 + 4;
+        for (String name : names) size += 4 + name.length();
+        for (VibrationSummary s : blockTiles.values()) size += 8 + s.encodedBytes();
+        byte[] b = new byte[size];
+        int p = BinaryRecordWriter.putInt(b, 8, names.size());
+        for (String name : names) {
+            p = BinaryRecordWriter.putInt(b, p, name.length());
+            byte[] ascii = name.getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(ascii, 0, b, p, ascii.length);
+            p += ascii.length;
+        }
+        p = BinaryRecordWriter.putInt(b, p, blockTiles.size());
+        for (Map.Entry<Long, VibrationSummary> e : blockTiles.entrySet()) {
+            p = BinaryRecordWriter.putLong(b, p, e.getKey());
+            p = e.getValue().encode(b, p);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(b, 8, size - 8);
+        BinaryRecordWriter.putInt(b, 0, size - 8);
+        BinaryRecordWriter.putInt(b, 4, (int) crc.getValue());
+        return b;
+    }
+
+    // Append one block after the last intact one, writing the header first for a new store
+    private void append(List<String> names, TreeMap<Long, VibrationSummary> blockTiles) throws IOException {
+        byte[] b = block(names, blockTiles);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (validLength == 0) {
+                raf.setLength(0);
+                raf.write(header());
+                validLength = HEADER_BYTES;
+            }
+            raf.setLength(validLength);
+            raf.seek(validLength);
+            raf.write(b);
+            raf.getFD().sync();
+        }
+        validLength += b.length;
+    }
+
+    private void writeQuery(List<Tile> found, OutputStream out) throws IOException {
+        AsciiBuffer line = new AsciiBuffer(1 << 16);
+        line.append(QUERY_HEADER);
+        double[] bounds = new double[4];
+        for (Tile t : found) {
+            VibrationSummary s = t.summary;
+            Geohash.bounds(t.cell, bits, bounds);
+            line.append(t.geohash()).append(',').append(t.headingDegrees());
+            for (double v : bounds) line.append(',').append(v, 7);
+            line.append(',').append(s.count())
+                    .append(',').append(s.mean(), 4).append(',').append(Math.sqrt(s.variance()), 4)
+                    .append(',').append(s.rms(), 4).append(',').append(s.quantile(0.5), 4)
+                    .append(',').append(s.quantile(0.9), 4).append(',').append(s.quantile(0.99), 4)
+                    .append(',').append(s.maxAbs(), 4).append('\n');
+            if (line.length() > 1 << 15) {
+                line.writeTo(out);
+                line.clear();
+            }
+        }
+        line.writeTo(out);
+        out.flush();
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: RoadTileStore <store> add <session file or dir>...\n"
+                    + "       RoadTileStore <store> query <minLat> <maxLat> <minLon> <maxLon> [output.csv]\n"
+                    + "       RoadTileStore <store> compact");
+            System.exit(2);
+        }
+        RoadTileStore store = open(new File(args[0]), DEFAULT_PRECISION);
+        switch (args[1]) {
+            case "add": {
+                List<File> files = BatchExporter.sessionFiles(Arrays.asList(args).subList(2, args.length));
+                long start = System.nanoTime();
+                int added = 0;
+                int skipped = 0;
+                for (File f : files) {
+                    try {
+                        if (store.add(f)) added++;
+                    } catch (IOException e) {
+                        // A session that cannot be read adds nothing; go on with the rest
+                        System.err.println("Skipped " + f + ": " + e.getMessage());
+                        skipped++;
+                    }
+                }
+                System.out.println("Added " + added + " of " + files.size() + " sessions in "
+                        + (System.nanoTime() - start) / 1_000_000 + " ms; " + skipped + " skipped; "
+                        + store.tileCount() + " tiles");
+                break;
+            }
+            case "query": {
+                if (args.length < 6) throw new IllegalArgumentException("query needs a box");
+                List<Tile> found = store.query(Double.parseDouble(args[2]), Double.parseDouble(args[3]),
+                        Double.parseDouble(args[4]), Double.parseDouble(args[5]));
+                if (args.length > 6) {
+                    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[6]), 1 << 16)) {
+                        store.writeQuery(found, out);
+                    }
+                    System.out.println("Wrote " + found.size() + " tiles");
+                } else {
+                    store.writeQuery(found, System.out);
+                }
+                break;
+            }
+            case "compact":
+                store.compact();
+                System.out.println("Compacted " + store.tileCount() + " tiles into " + store.file.length() + " bytes");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command " + args[1]);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.roadsensorrecorder;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Streaming road-roughness features per fixed-length road segment.
+ *
+ * Accelerometer samples are projected onto a slowly tracked gravity vector to get vertical
+ * acceleration, which feeds running sums for RMS, a peak counter with hysteresis and a bank of
+ * band-pass {@link Biquad}s for spectral band energy; all O(1) per sample. Location fixes
+ * accumulate distance, and every {@code segmentMeters} the finished {@link Segment} is handed to
+ * the {@link Sink}. Owned by the IO thread.
+ */
+final class RoughnessFeatureEngine {
+
+    /** Band edges in Hz: body bounce, suspension, wheel hop / surface texture. */
+    static final double[][] BANDS = {{0.5, 2}, {2, 8}, {8, 20}};
+
+    private static final double EARTH_RADIUS_M = 6_371_008.8;
+    // Gravity tracking time constant; road inputs above ~0.2 Hz pass through to the vertical signal
+    private static final double GRAVITY_TAU_S = 1.0;
+
+    interface Sink {
+        /** Called with a reused holder; copy anything kept beyond the call. */
+        void onSegment(Segment segment) throws IOException;
+    }
+
+    /** Features of one segment. Band RMS values are in m/s^2, NaN if the band is above Nyquist. */
+    static final class Segment {
+        int index;
+        long startNanos, endNanos;
+        double startLatitude, startLongitude, endLatitude, endLongitude;
+        double distanceMeters;
+        long samples;
+        double verticalRms;
+        double verticalMaxAbs;
+        int peaks;
+        final double[] bandRms = new double[BANDS.length];
+
+        double meanSpeed() {
+            long dt = endNanos - startNanos;
+            return dt > 0 ? distanceMeters / (dt / 1e9) : 0;
+        }
+    }
+
+    private final Sink sink;
+    private final double segmentMeters;
+    private final double peakThreshold;
+    private final double gravityAlpha;
+    private final Biquad[] bands = new Biquad[BANDS.length];
+
+    private final Segment segment = new Segment();
+    private final double[] bandSumSquares = new double[BANDS.length];
+    private double sumSquares;
+    private boolean peakArmed = true;
+    private int emitted;
+
+    private boolean haveGravity;
+    private double gx, gy, gz;
+
+    private boolean haveFix;
+    private long lastFixNanos;
+    private double lastLatitude, lastLongitude;
+
+    /**
+     * @param sampleRateHz  nominal accelerometer rate the filters are designed for
+     * @param segmentMeters road distance per emitted segment
+     * @param peakThreshold |vertical acceleration| in m/s^2 counted as a peak
+     */
+    RoughnessFeatureEngine(Sink sink, double sampleRateHz, double segmentMeters, double peakThreshold) {
+        this.sink = sink;
+        this.segmentMeters = segmentMeters;
+        this.peakThreshold = peakThreshold;
+        this.gravityAlpha = 1 / (1 + sampleRateHz * GRAVITY_TAU_S);
+        double nyquist = sampleRateHz / 2;
+        for (int i = 0; i < BANDS.length; i++) {
+            double low = BANDS[i][0];
+            double high = Math.min(BANDS[i][1], 0.9 * nyquist);
+            bands[i] = low < high ? Biquad.bandPass(sampleRateHz, low, high) : null;
+        }
+    }
+
+    void addAccel(long timestamp, float x, float y, float z) {
+        if (!haveGravity) {
+            gx = x;
+            gy = y;
+            gz = z;
+            haveGravity = true;
+        } else {
+            gx += gravityAlpha * (x - gx);
+            gy += gravityAlpha * (y - gy);
+            gz += gravityAlpha * (z - gz);
+        }
+        // Segments start at the first fix; before that there is no distance to key them by
+        if (!haveFix) return;
+        double g = Math.sqrt(gx * gx + gy * gy + gz * gz);
+        if (g == 0) return;
+        double vertical = (x * gx + y * gy + z * gz) / g - g;
+
+        segment.samples++;
+        sumSquares += vertical * vertical;
+        double abs = Math.abs(vertical);
+        if (abs > segment.verticalMaxAbs) segment.verticalMaxAbs = abs;
+        if (peakArmed && abs > peakThreshold) {
+            segment.peaks++;
+            peakArmed = false;
+        } else if (!peakArmed && abs < peakThreshold / 2) {
+            peakArmed = true;
+        }
+        for (int i = 0; i < bands.length; i++) {
+            if (bands[i] == null) continue;
+            double b = bands[i].process(vertical);
+            bandSumSquares[i] += b * b;
+        }
+    }
+
+    void addLocation(long timestamp, double latitude, double longitude) throws IOException {
+        if (!haveFix) {
+            haveFix = true;
+            beginSegment(timestamp, latitude, longitude);
+        } else {
+            segment.distanceMeters += distanceMeters(lastLatitude, lastLongitude, latitude, longitude);
+        }
+        lastFixNanos = timestamp;
+        lastLatitude = latitude;
+        lastLongitude = longitude;
+        if (segment.distanceMeters >= segmentMeters) {
+            emit();
+            beginSegment(timestamp, latitude, longitude);
+        }
+    }
+
+    /** Emit the partial segment in progress, e.g. when the session stops. */
+    void finish() throws IOException {
+        if (haveFix && segment.samples > 0 && segment.distanceMeters > 0) emit();
+    }
+
+    private void beginSegment(long timestamp, double latitude, double longitude) {
+        segment.startNanos = timestamp;
+        segment.startLatitude = latitude;
+        segment.startLongitude = longitude;
+        segment.distanceMeters = 0;
+        segment.samples = 0;
+        segment.verticalMaxAbs = 0;
+        segment.peaks = 0;
+        sumSquares = 0;
+        Arrays.fill(bandSumSquares, 0);
+    }
+
+    private void emit() throws IOException {
+        segment.index = emitted++;
+        segment.endNanos = lastFixNanos;
+        segment.endLatitude = lastLatitude;
+        segment.endLongitude = lastLongitude;
+        long n = segment.samples;
+        segment.verticalRms = n > 0 ? Math.sqrt(sumSquares / n) : 0;
+        for (int i = 0; i < bands.length; i++) {
+            segment.bandRms[i] = bands[i] == null ? Double.NaN : n > 0 ? Math.sqrt(bandSumSquares[i] / n) : 0;
+        }
+        sink.onSegment(segment);
+    }
+
+    /** Great-circle (haversine) distance in metres. */
+    static double distanceMeters(double lat1, double lon1, double lat2, double lon2) {
+        double p1 = Math.toRadians(lat1);
+        double p2 = Math.toRadians(lat2);
+        double dp = p2 - p1;
+        double dl = Math.toRadians(lon2 - lon1);
+        double h = Math.sin(dp / 2) * Math.sin(dp / 2) + Math.cos(p1) * Math.cos(p2) * Math.sin(dl / 2) * Math.sin(dl / 2);
+        return 2 * EARTH_RADIUS_M * Math.asin(Math.min(1, Math.sqrt(h)));
+    }
+}
@@ -0,0 +1,227 @@
+package com.example.roadsensorrecorder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Preallocated, bounded ring of sensor/location samples stored in parallel primitive arrays.
+ *
+ * Producers (sensor and location callbacks) copy primitives into a claimed slot, so the
+ * ingest path never allocates. The IO thread drains slots in bulk through {@link #poll(Sample)}
+ * into a reusable {@link Sample} holder. Slot hand-off uses a per-slot sequence number
+ * (bounded MPMC queue), which keeps producers and the consumer lock-free.
+ *
+ * When the ring fills up the configured {@link BackpressurePolicy} decides which samples are
+ * lost; every lost sample is counted against its channel so the writer can record it.
+ */
+final class SampleRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+
+    private final int[] channels;
+    private final long[] timestamps;
+    private final long[] enqueued;
+    private final float[] values;
+    private final double[] coordinates;
+    private final long[] extras;
+    private final AtomicLongArray sequences;
+
+    private final AtomicLong enqueuePos = new AtomicLong();
+    private final AtomicLong dequeuePos = new AtomicLong();
+
+    // Per-channel loss accounting; decimation phase is only advanced by the channel's producer
+    private final AtomicLongArray dropped;
+    private final int[] decimationPhase;
+
+    private volatile BackpressurePolicy policy = BackpressurePolicy.DROP_NEWEST;
+    private volatile int decimationFactor = 2;
+    private final int highWatermark;
+
+    /**
+     * @param capacity     number of slots, rounded up to the next power of two
+     * @param channelCount number of distinct channel ids that will be offered (0..channelCount-1)
+     */
+    SampleRingBuffer(int capacity, int channelCount) {
+        if (capacity < 2) throw new IllegalArgumentException("capacity must be >= 2");
+        if (channelCount < 1) throw new IllegalArgumentException("channelCount must be >= 1");
+        int cap = Integer.highestOneBit(capacity - 1) << 1;
+        this.capacity = cap;
+        this.mask = cap - 1;
+        this.highWatermark = cap - cap / 4;
+        dropped = new AtomicLongArray(channelCount);
+        decimationPhase = new int[channelCount];
+        channels = new int[cap];
+        timestamps = new long[cap];
+        enqueued = new long[cap];
+        values = new float[cap * 3];
+        coordinates = new double[cap * 2];
+        extras = new long[cap];
+        sequences = new AtomicLongArray(cap);
+        for (int i = 0; i < cap; i++) sequences.set(i, i);
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void setPolicy(BackpressurePolicy policy) {
+        this.policy = policy;
+    }
+
+    /** Keep one sample in {@code factor} per channel while {@link BackpressurePolicy#DECIMATE} is throttling. */
+    void setDecimationFactor(int factor) {
+        this.decimationFactor = Math.max(1, factor);
+    }
+
+    /** Approximate number of samples waiting to be drained. */
+    int size() {
+        long s = enqueuePos.get() - dequeuePos.get();
+        if (s < 0) return 0;
+        return (int) Math.min(s, capacity);
+    }
+
+    /** Cumulative number of samples of {@code channel} lost to backpressure. */
+    long droppedCount(int channel) {
+        return dropped.get(channel);
+    }
+
+    /** Zero the loss counters, e.g. when a new session starts. */
+    void resetDroppedCounts() {
+        for (int i = 0; i < dropped.length(); i++) dropped.set(i, 0);
+    }
+
+    /**
+     * Store a three-axis sensor sample. Returns false if the sample itself was dropped.
+     *
+     * @param enqueuedNanos elapsed realtime at which the sample reached the app, for latency metrics
+     */
+    boolean offer(int channel, long timestamp, long enqueuedNanos, float x, float y, float z) {
+        return offer(channel, timestamp, enqueuedNanos, x, y, z, 0d, 0d, 0L);
+    }
+
+    /**
+     * Store a location fix. Returns false if the fix itself was dropped.
+     *
+     * @param fixTimeMillis UTC time of the fix as reported by the provider, kept alongside
+     *                      {@code timestamp} so the drain can anchor the sample clock to GNSS time
+     */
+    boolean offer(int channel, long timestamp, long enqueuedNanos, double latitude, double longitude, long fixTimeMillis) {
+        return offer(channel, timestamp, enqueuedNanos, 0f, 0f, 0f, latitude, longitude, fixTimeMillis);
+    }
+
+    private boolean offer(int channel, long timestamp, long enqueuedNanos, float x, float y, float z,
+                          double latitude, double longitude, long extra) {
+        BackpressurePolicy p = policy;
+        if (p == BackpressurePolicy.DECIMATE && size() >= highWatermark) {
+            int phase = decimationPhase[channel];
+            decimationPhase[channel] = phase + 1 >= decimationFactor ? 0 : phase + 1;
+            if (phase != 0) {
+                dropped.incrementAndGet(channel);
+                return false;
+            }
+        }
+        while (!tryOffer(channel, timestamp, enqueuedNanos, x, y, z, latitude, longitude, extra)) {
+            if (p != BackpressurePolicy.DROP_OLDEST) {
+                dropped.incrementAndGet(channel);
+                return false;
+            }
+            int victim = discardOldest();
+            if (victim >= 0) dropped.incrementAndGet(victim);
+        }
+        return true;
+    }
+
+    private boolean tryOffer(int channel, long timestamp, long enqueuedNanos, float x, float y, float z,
+                             double latitude, double longitude, long extra) {
+        long pos = enqueuePos.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - pos;
+            if (dif == 0) {
+                if (enqueuePos.compareAndSet(pos, pos + 1)) break;
+                pos = enqueuePos.get();
+            } else if (dif < 0) {
+                return false;
+            } else {
+                pos = enqueuePos.get();
+            }
+        }
+        int idx = (int) (pos & mask);
+        channels[idx] = channel;
+        timestamps[idx] = timestamp;
+        enqueued[idx] = enqueuedNanos;
+        int v = idx * 3;
+        values[v] = x;
+        values[v + 1] = y;
+        values[v + 2] = z;
+        int c = idx * 2;
+        coordinates[c] = latitude;
+        coordinates[c + 1] = longitude;
+        extras[idx] = extra;
+        sequences.lazySet(idx, pos + 1);
+        return true;
+    }
+
+    /**
+     * Copy the oldest sample into {@code out} and release its slot.
+     *
+     * @return false when the ring is empty
+     */
+    boolean poll(Sample out) {
+        long pos = claimOldest();
+        if (pos < 0) return false;
+        int idx = (int) (pos & mask);
+        out.channel = channels[idx];
+        out.timestamp = timestamps[idx];
+        out.enqueuedNanos = enqueued[idx];
+        int v = idx * 3;
+        out.x = values[v];
+        out.y = values[v + 1];
+        out.z = values[v + 2];
+        int c = idx * 2;
+        out.latitude = coordinates[c];
+        out.longitude = coordinates[c + 1];
+        out.extra = extras[idx];
+        sequences.lazySet(idx, pos + capacity);
+        return true;
+    }
+
+    /** Release the oldest slot without reading its values; returns its channel or -1 if empty. */
+    private int discardOldest() {
+        long pos = claimOldest();
+        if (pos < 0) return -1;
+        int idx = (int) (pos & mask);
+        int channel = channels[idx];
+        sequences.lazySet(idx, pos + capacity);
+        return channel;
+    }
+
+    private long claimOldest() {
+        long pos = dequeuePos.get();
+        while (true) {
+            int idx = (int) (pos & mask);
+            long dif = sequences.get(idx) - (pos + 1);
+            if (dif == 0) {
+                if (dequeuePos.compareAndSet(pos, pos + 1)) break;
+                pos = dequeuePos.get();
+            } else if (dif < 0) {
+                return -1;
+            } else {
+                pos = dequeuePos.get();
+            }
+        }
+        return pos;
+    }
+
+    /** Mutable holder the consumer reuses for every drained sample. */
+    static final class Sample {
+        int channel;
+        long timestamp;
+        long enqueuedNanos;
+        float x, y, z;
+        double latitude, longitude;
+        // Location: provider fix time (UTC ms); unused for sensor samples
+        long extra;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Chooses a sensor sampling period from vehicle speed. Speeds map to tiers through ascending
+ * thresholds; a tier is entered once speed clears its threshold by {@code hysteresis}, and left
+ * only after speed has stayed below it (minus {@code hysteresis}) for {@code downshiftDelayNanos},
+ * so stop-and-go traffic does not re-register the sensors on every fix. Speeding up switches
+ * immediately so the first metres after a stop are sampled at the higher rate.
+ *
+ * Not thread-safe; owned by the location callback thread.
+ */
+final class SamplingRateController {
+
+    /** Stationary / walking pace / driving, in m/s. */
+    static final float[] DEFAULT_SPEED_THRESHOLDS = {1.0f, 5.0f};
+    /** 5 Hz when parked, 25 Hz crawling, full rate when driving. */
+    static final int[] DEFAULT_PERIODS_US = {200_000, 40_000, SensorSource.DEFAULT_SAMPLING_PERIOD_US};
+
+    private final float[] thresholds;
+    private final int[] periodsUs;
+    private final float hysteresis;
+    private final long downshiftDelayNanos;
+
+    private int tier;
+    private long belowSince = Long.MIN_VALUE;
+
+    /**
+     * @param thresholds ascending speeds in m/s separating {@code periodsUs.length} tiers
+     * @param periodsUs  sampling period per tier, slowest speed first
+     */
+    SamplingRateController(float[] thresholds, int[] periodsUs, float hysteresis, long downshiftDelayNanos) {
+        if (periodsUs.length != thresholds.length + 1) {
+            throw new IllegalArgumentException("need one more period than thresholds");
+        }
+        this.thresholds = thresholds.clone();
+        this.periodsUs = periodsUs.clone();
+        this.hysteresis = hysteresis;
+        this.downshiftDelayNanos = downshiftDelayNanos;
+        // Start at full rate until the first fixes say otherwise
+        this.tier = periodsUs.length - 1;
+    }
+
+    int tier() {
+        return tier;
+    }
+
+    int periodUs() {
+        return periodsUs[tier];
+    }
+
+    /**
+     * Feed one speed observation.
+     *
+     * @return true if the tier changed; read the new period with {@link #periodUs()}
+     */
+    boolean update(long timestampNanos, float speed) {
+        int up = tierFor(speed - hysteresis);
+        if (up > tier) {
+            tier = up;
+            belowSince = Long.MIN_VALUE;
+            return true;
+        }
+        int down = tierFor(speed + hysteresis);
+        if (down >= tier) {
+            belowSince = Long.MIN_VALUE;
+            return false;
+        }
+        if (belowSince == Long.MIN_VALUE) {
+            belowSince = timestampNanos;
+            return false;
+        }
+        if (timestampNanos - belowSince < downshiftDelayNanos) return false;
+        tier = down;
+        belowSince = Long.MIN_VALUE;
+        return true;
+    }
+
+    private int tierFor(float speed) {
+        int t = 0;
+        while (t < thresholds.length && speed >= thresholds[t]) t++;
+        return t;
+    }
+}
@@ -0,0 +1,137 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Small CSV listing the segment files of a session in order, with their length on disk and the
+ * sample time range they cover:
+ *
+ * <pre>Segment,File,Bytes,FirstTimeNs,LastTimeNs,Closed</pre>
+ *
+ * A segment is listed before its first record is written; Bytes and the time range of the open
+ * segment are as of its last commit. The file is replaced atomically, so a reader sees either
+ * the previous or the new version.
+ */
+final class SegmentManifest {
+
+    static final String SUFFIX = ".manifest.csv";
+    static final String HEADER = "Segment,File,Bytes,FirstTimeNs,LastTimeNs,Closed\n";
+
+    static final class Entry {
+        final String fileName;
+        long bytes;
+        /** Long.MAX_VALUE / Long.MIN_VALUE until the segment holds a record. */
+        long firstNanos = Long.MAX_VALUE;
+        long lastNanos = Long.MIN_VALUE;
+        boolean closed;
+
+        Entry(String fileName) {
+            this.fileName = fileName;
+        }
+
+        boolean hasRecords() {
+            return firstNanos <= lastNanos;
+        }
+    }
+
+    final File file;
+    private final List<Entry> entries = new ArrayList<>();
+
+    SegmentManifest(File file) {
+        this.file = file;
+    }
+
+    /** "sensor_data_X.csv.z", 3 -> "sensor_data_X_part003.csv.z" */
+    static String segmentName(String sessionName, int index) {
+        int dot = sessionName.indexOf('.');
+        String part = String.format(Locale.ROOT, "_part%03d", index);
+        if (dot < 0) return sessionName + part;
+        return sessionName.substring(0, dot) + part + sessionName.substring(dot);
+    }
+
+    /** "sensor_data_X.csv.z" -> "sensor_data_X.manifest.csv" */
+    static String manifestName(String sessionName) {
+        int dot = sessionName.indexOf('.');
+        return (dot < 0 ? sessionName : sessionName.substring(0, dot)) + SUFFIX;
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /** The segment files, in order; they sit next to the manifest. */
+    List<File> segmentFiles() {
+        List<File> files = new ArrayList<>(entries.size());
+        for (Entry e : entries) files.add(new File(file.getParentFile(), e.fileName));
+        return files;
+    }
+
+    /** The files holding a session's records in order: the segments of a manifest, or the file itself. */
+    static List<File> dataFiles(File session) throws IOException {
+        if (!session.getName().endsWith(SUFFIX)) return Collections.singletonList(session);
+        return load(session).segmentFiles();
+    }
+
+    Entry add(String fileName) {
+        Entry e = new Entry(fileName);
+        entries.add(e);
+        return e;
+    }
+
+    void write(boolean fsync) throws IOException {
+        StringBuilder sb = new StringBuilder(HEADER);
+        for (int i = 0; i < entries.size(); i++) {
+            Entry e = entries.get(i);
+            sb.append(i).append(',').append(e.fileName).append(',').append(e.bytes).append(',');
+            if (e.hasRecords()) sb.append(e.firstNanos).append(',').append(e.lastNanos);
+            else sb.append(',');
+            sb.append(',').append(e.closed).append('\n');
+        }
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            Writer w = new OutputStreamWriter(out, StandardCharsets.US_ASCII);
+            w.write(sb.toString());
+            w.flush();
+            if (fsync) out.getFD().sync();
+        }
+        if (!tmp.renameTo(file)) throw new IOException("Cannot replace " + file);
+    }
+
+    static SegmentManifest load(File file) throws IOException {
+        SegmentManifest manifest = new SegmentManifest(file);
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.US_ASCII))) {
+            String line = in.readLine();
+            if (line == null || !HEADER.equals(line + "\n")) throw new IOException("Not a segment manifest: " + file);
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] f = line.split(",", -1);
+                if (f.length != 6) throw new IOException("Malformed manifest row: " + line);
+                try {
+                    Entry e = manifest.add(f[1]);
+                    e.bytes = Long.parseLong(f[2]);
+                    if (!f[3].isEmpty()) {
+                        e.firstNanos = Long.parseLong(f[3]);
+                        e.lastNanos = Long.parseLong(f[4]);
+                    }
+                    e.closed = Boolean.parseBoolean(f[5]);
+                } catch (NumberFormatException ex) {
+                    throw new IOException("Malformed manifest row: " + line, ex);
+                }
+            }
+        }
+        return manifest;
+    }
+}
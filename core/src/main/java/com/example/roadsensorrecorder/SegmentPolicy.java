@@ -0,0 +1,44 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * When a session rolls over to a new segment file. A limit of 0 is disabled; with both disabled
+ * the session is a single file written through ordinary streams.
+ */
+final class SegmentPolicy {
+
+    static final SegmentPolicy NONE = new SegmentPolicy(0, 0);
+
+    // Region mapped at a time when only a time limit is set
+    private static final long DEFAULT_REGION_BYTES = 8L << 20;
+    // Largest region mapped at a time; a bigger segment maps further regions as it fills
+    private static final long MAX_REGION_BYTES = 32L << 20;
+    // Room past maxBytes for the record (or compressed block) that crosses the limit
+    private static final long REGION_SLACK_BYTES = 1L << 16;
+
+    /** Roll over once a segment holds this many bytes, before compression. */
+    final long maxBytes;
+    /** Roll over once a segment spans this much sample time. */
+    final long maxNanos;
+
+    SegmentPolicy(long maxBytes, long maxNanos) {
+        this.maxBytes = Math.max(0, maxBytes);
+        this.maxNanos = Math.max(0, maxNanos);
+    }
+
+    boolean enabled() {
+        return maxBytes > 0 || maxNanos > 0;
+    }
+
+    /**
+     * Size to preallocate and map at a time. A segment up to 32 MB fits one region with room for
+     * the record that crosses the limit; larger ones are mapped in 32 MB steps.
+     */
+    long regionBytes() {
+        return maxBytes > 0 ? Math.min(maxBytes + REGION_SLACK_BYTES, MAX_REGION_BYTES) : DEFAULT_REGION_BYTES;
+    }
+
+    boolean shouldRoll(long segmentBytes, long segmentNanos) {
+        if (maxBytes > 0 && segmentBytes >= maxBytes) return true;
+        return maxNanos > 0 && segmentNanos >= maxNanos;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Sizes the hardware report latency (maxReportLatencyUs) for each sensor when FIFO batching is
+ * enabled. With batching the sensor hub buffers samples and wakes the application processor
+ * once per burst instead of once per sample.
+ *
+ * The latency adapts to each sensor: it fills at most half of the sensor's share of the FIFO
+ * (so rate jitter and the flush at stop cannot overflow it), a burst from every batched sensor
+ * must fit in a quarter of the ingest ring, and it never exceeds the configured cap. Sensors
+ * without a FIFO are registered continuously.
+ */
+final class SensorBatching {
+
+    static final SensorBatching CONTINUOUS = new SensorBatching(false, 0);
+
+    final boolean enabled;
+    final int maxLatencyUs;
+
+    SensorBatching(boolean enabled, int maxLatencyUs) {
+        this.enabled = enabled;
+        this.maxLatencyUs = Math.max(0, maxLatencyUs);
+    }
+
+    /**
+     * @param samplingPeriodUs       requested period of the sensor
+     * @param fifoMaxEventCount      {@code Sensor.getFifoMaxEventCount()}, shared between sensors
+     * @param fifoReservedEventCount {@code Sensor.getFifoReservedEventCount()}, dedicated to this sensor
+     * @param batchedSensorCount     sensors that will be batched at the same time
+     * @param ringCapacity           slots in the ingest ring that receives the bursts
+     * @return maxReportLatencyUs to register with, 0 for continuous delivery
+     */
+    int reportLatencyUs(int samplingPeriodUs, int fifoMaxEventCount, int fifoReservedEventCount,
+                        int batchedSensorCount, int ringCapacity) {
+        if (!enabled || fifoMaxEventCount <= 0 || samplingPeriodUs <= 0) return 0;
+        int sensors = Math.max(1, batchedSensorCount);
+        long fifoShare = Math.max(fifoReservedEventCount, fifoMaxEventCount / sensors);
+        long fifoLimit = fifoShare / 2 * samplingPeriodUs;
+        long ringLimit = (long) ringCapacity / 4 / sensors * samplingPeriodUs;
+        long latency = Math.min(Math.min(fifoLimit, ringLimit), maxLatencyUs);
+        return (int) Math.max(0, latency);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Producer of three-axis sensor samples for the recording pipeline. The Android implementation
+ * lives in the app module; tests and benchmarks drive the pipeline with a fake that delivers bursts.
+ */
+interface SensorSource {
+
+    /** SENSOR_DELAY_GAME expressed as a period; the default until {@link #setSamplingPeriod} changes it. */
+    int DEFAULT_SAMPLING_PERIOD_US = 20_000;
+
+    interface Listener {
+        /**
+         * One sample, called on the source's callback thread. Must not block or allocate.
+         *
+         * @param timestampNanos elapsed-realtime nanoseconds at which the sample was taken (not delivered)
+         * @param deliveredNanos elapsed-realtime nanoseconds at which the callback received it
+         */
+        void onSensorSample(int channel, long timestampNanos, long deliveredNanos, float x, float y, float z);
+    }
+
+    /** Register every available sensor and start delivering samples to {@code listener}. */
+    void start(Listener listener, SensorBatching batching);
+
+    /**
+     * Ask the hardware to deliver everything still held in its FIFOs, then unregister and run
+     * {@code onStopped} on the callback thread. Stops without the flush after
+     * {@code flushTimeoutMillis}.
+     */
+    void stop(long flushTimeoutMillis, Runnable onStopped);
+
+    /**
+     * Change the sampling period of every sensor, re-registering them if already started. Samples
+     * held in hardware FIFOs are delivered first.
+     */
+    void setSamplingPeriod(int periodUs);
+
+    /** Unregister immediately, abandoning samples still held in hardware FIFOs. */
+    void stopNow();
+}
@@ -0,0 +1,360 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Range queries over one session file, CSV or binary, compressed or not. With a
+ * {@link SparseIndex} only the index blocks that can match are read, by seeking straight to
+ * them; without one the whole file is scanned. Either way records stream through a
+ * {@link Cursor} one at a time, so memory use does not depend on the file size.
+ *
+ * Time queries return exactly the records stamped inside the range. Box queries work at index
+ * block granularity: every record of a block with a location fix inside the box, which is the
+ * stretch of driving to narrow down further with a time query. Data past the last index entry
+ * (a session that was never closed) is always scanned.
+ *
+ * <pre>java com.example.roadsensorrecorder.SessionRangeReader sensor_data_X.rsr.z &lt;fromNs&gt; &lt;toNs&gt; out.csv</pre>
+ */
+public final class SessionRangeReader {
+
+    private final File file;
+    private final boolean binary;
+    private final SparseIndex index;
+    // Only for compressed files
+    private final BlockIndex blocks;
+    // Channel table for reading binary data from the middle of the file
+    private final BinaryRecordReader header;
+    // Layout for reading CSV rows from the middle of the file
+    private final CsvRecordReader csvHeader;
+    private final boolean resampled;
+
+    private SessionRangeReader(File file) throws IOException {
+        this.file = file;
+        String name = file.getName();
+        String plain = name.endsWith(RecordingFormat.COMPRESSED_SUFFIX)
+                ? name.substring(0, name.length() - RecordingFormat.COMPRESSED_SUFFIX.length()) : name;
+        binary = plain.endsWith(RecordingFormat.BINARY.extension);
+        blocks = plain.equals(name) ? null : BlockIndex.load(file);
+        index = SparseIndex.load(file);
+        try (RecordReader whole = openWhole(Long.MAX_VALUE)) {
+            header = binary ? (BinaryRecordReader) whole : null;
+            csvHeader = binary ? null : (CsvRecordReader) whole;
+            resampled = binary ? header.isResampled() : csvHeader.isResampled();
+        }
+    }
+
+    static SessionRangeReader open(File file) throws IOException {
+        return new SessionRangeReader(file);
+    }
+
+    boolean isIndexed() {
+        return index != null;
+    }
+
+    boolean isResampled() {
+        return resampled;
+    }
+
+    /** Records with {@code fromNanos <= timestamp <= toNanos}, in file order. */
+    Cursor timeRange(long fromNanos, long toNanos) throws IOException {
+        long[] spans = null;
+        if (index != null) {
+            SpanList list = new SpanList();
+            for (SparseIndex.Entry e : index.entries()) {
+                if (e.overlapsTime(fromNanos, toNanos)) list.add(e.startOffset, e.endOffset);
+            }
+            spans = list.withTail(index.indexedEnd());
+        }
+        return new Cursor(spans, fromNanos, toNanos);
+    }
+
+    /** Records of every index block with a fix inside the box, in file order; the whole file if unindexed. */
+    Cursor box(double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) throws IOException {
+        long[] spans = null;
+        if (index != null) {
+            SpanList list = new SpanList();
+            for (SparseIndex.Entry e : index.entries()) {
+                if (e.overlapsBox(minLatitude, maxLatitude, minLongitude, maxLongitude)) {
+                    list.add(e.startOffset, e.endOffset);
+                }
+            }
+            spans = list.withTail(index.indexedEnd());
+        }
+        return new Cursor(spans, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * The whole file as consecutive runs of records, each about {@code targetBytes} of
+     * uncompressed data, that can be read on different threads and together return every record
+     * once. Splits fall on index blocks, compressed blocks or, in a plain CSV file, line starts;
+     * a plain binary file without an index is a single run.
+     */
+    List<Cursor> chunks(long targetBytes) throws IOException {
+        long[] splits;
+        if (index != null) {
+            List<SparseIndex.Entry> entries = index.entries();
+            splits = new long[entries.size() + 1];
+            for (int i = 0; i < entries.size(); i++) splits[i] = entries.get(i).startOffset;
+            splits[entries.size()] = index.indexedEnd();
+        } else if (blocks != null) {
+            List<BlockIndex.Entry> entries = blocks.entries();
+            splits = new long[entries.size()];
+            for (int i = 0; i < entries.size(); i++) splits[i] = entries.get(i).logicalOffset;
+        } else if (!binary) {
+            splits = lineStarts(targetBytes);
+        } else {
+            splits = new long[0];
+        }
+        List<Cursor> chunks = new ArrayList<>();
+        long start = 0;
+        for (long split : splits) {
+            if (split - start < targetBytes) continue;
+            chunks.add(new Cursor(new long[] {start, split}, Long.MIN_VALUE, Long.MAX_VALUE));
+            start = split;
+        }
+        chunks.add(new Cursor(new long[] {start, Long.MAX_VALUE}, Long.MIN_VALUE, Long.MAX_VALUE));
+        return chunks;
+    }
+
+    // Start of the first line at or after each multiple of step in a plain file
+    private long[] lineStarts(long step) throws IOException {
+        long[] starts = new long[16];
+        int count = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long length = raf.length();
+            byte[] buffer = new byte[4096];
+            long last = 0;
+            for (long target = step; target < length; target += step) {
+                if (target <= last) continue;
+                long pos = target - 1;
+                raf.seek(pos);
+                long found = -1;
+                while (found < 0) {
+                    int n = raf.read(buffer);
+                    if (n <= 0) break;
+                    for (int i = 0; i < n; i++) {
+                        if (buffer[i] == '\n') {
+                            found = pos + i + 1;
+                            break;
+                        }
+                    }
+                    pos += n;
+                }
+                if (found < 0 || found >= length) break;
+                if (count == starts.length) starts = Arrays.copyOf(starts, count * 2);
+                starts[count++] = found;
+                last = found;
+            }
+        }
+        return Arrays.copyOf(starts, count);
+    }
+
+    /** Streams the records of a query. Not thread-safe. */
+    final class Cursor implements RecordReader {
+        // {start, end} pairs of uncompressed offsets, or null to read the whole file
+        private final long[] spans;
+        private final long fromNanos;
+        private final long toNanos;
+        private int nextSpan;
+        private RecordReader source;
+        private boolean done;
+
+        private Cursor(long[] spans, long fromNanos, long toNanos) {
+            this.spans = spans;
+            this.fromNanos = fromNanos;
+            this.toNanos = toNanos;
+        }
+
+        @Override
+        public boolean next(BinaryRecordReader.Record r) throws IOException {
+            while (!done) {
+                if (source == null && !openNext()) {
+                    done = true;
+                    break;
+                }
+                boolean read;
+                try {
+                    read = source.next(r);
+                } catch (EOFException e) {
+                    // Torn record at the end of an unclosed session
+                    read = false;
+                }
+                if (!read) {
+                    source.close();
+                    source = null;
+                    continue;
+                }
+                if (r.timestamp >= fromNanos && r.timestamp <= toNanos) return true;
+            }
+            return false;
+        }
+
+        private boolean openNext() throws IOException {
+            if (spans == null) {
+                if (nextSpan++ > 0) return false;
+                source = openWhole(Long.MAX_VALUE);
+                return true;
+            }
+            if (nextSpan >= spans.length) return false;
+            long start = spans[nextSpan];
+            long end = spans[nextSpan + 1];
+            nextSpan += 2;
+            if (start == 0) {
+                // A run from the top includes the file header
+                source = openWhole(end);
+                return true;
+            }
+            InputStream in = new LimitedInputStream(openAt(start), end - start);
+            source = binary ? new BinaryRecordReader(in, header) : new CsvRecordReader(in, csvHeader);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            done = true;
+            if (source != null) {
+                source.close();
+                source = null;
+            }
+        }
+    }
+
+    // Reader over the first limit uncompressed bytes, header included
+    private RecordReader openWhole(long limit) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        try {
+            if (blocks != null) in = new BlockCompressedInputStream(in);
+            if (limit != Long.MAX_VALUE) in = new LimitedInputStream(in, limit);
+            return binary ? new BinaryRecordReader(in) : new CsvRecordReader(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // Uncompressed stream positioned at uncompressed offset {@code offset}
+    private InputStream openAt(long offset) throws IOException {
+        InputStream in;
+        long skip;
+        if (blocks == null) {
+            FileInputStream fis = new FileInputStream(file);
+            fis.getChannel().position(offset);
+            in = new BufferedInputStream(fis, 1 << 16);
+            skip = 0;
+        } else {
+            int block = blocks.blockForLogicalOffset(offset);
+            in = blocks.openAt(file, block);
+            skip = blocks.entries().isEmpty() ? offset : offset - blocks.entries().get(block).logicalOffset;
+        }
+        try {
+            while (skip > 0) {
+                long n = in.skip(skip);
+                if (n <= 0) {
+                    if (in.read() < 0) break;
+                    n = 1;
+                }
+                skip -= n;
+            }
+            return in;
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /** Ascending offset ranges, merging blocks that are adjacent in the file. */
+    private static final class SpanList {
+        private long[] spans = new long[16];
+        private int size;
+
+        void add(long start, long end) {
+            if (size > 0 && spans[size - 1] == start) {
+                spans[size - 1] = end;
+                return;
+            }
+            if (size + 2 > spans.length) spans = Arrays.copyOf(spans, spans.length * 2);
+            spans[size++] = start;
+            spans[size++] = end;
+        }
+
+        long[] withTail(long indexedEnd) {
+            if (indexedEnd >= 0) add(indexedEnd, Long.MAX_VALUE);
+            return Arrays.copyOf(spans, size);
+        }
+    }
+
+    private static final class LimitedInputStream extends FilterInputStream {
+        private long remaining;
+
+        LimitedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) return -1;
+            int b = in.read();
+            if (b >= 0) remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) return -1;
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) remaining -= n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long s = in.skip(Math.min(n, remaining));
+            remaining -= s;
+            return s;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("usage: SessionRangeReader <session file> <fromNs> <toNs> <output.csv>");
+            System.exit(2);
+        }
+        SessionRangeReader reader = open(new File(args[0]));
+        long records = 0;
+        try (Cursor cursor = reader.timeRange(Long.parseLong(args[1]), Long.parseLong(args[2]));
+             OutputStream out = new BufferedOutputStream(new FileOutputStream(args[3]), 1 << 16)) {
+            CsvRecordWriter csv = new CsvRecordWriter(out, null, reader.isResampled(), CsvPrecision.SHORTEST);
+            BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+            while (cursor.next(r)) {
+                BinaryCsvConverter.write(r, csv);
+                records++;
+            }
+            csv.flush();
+        }
+        System.out.println("Wrote " + records + " records" + (reader.isIndexed() ? "" : " (no index, full scan)"));
+    }
+}
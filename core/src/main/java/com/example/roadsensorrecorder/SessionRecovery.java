@@ -0,0 +1,198 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+
+/**
+ * Repairs a session file that was left open when the recorder was killed: cuts it back to the
+ * last complete record, restores the block index for compressed sessions and renames it with a
+ * {@value #RECOVERED_MARKER} marker so downstream tooling can tell it apart.
+ *
+ * For a segmented session, pass the {@link SegmentManifest}: open segments are repaired in place
+ * and the manifest, updated with their recovered lengths, carries the marker instead.
+ */
+final class SessionRecovery {
+
+    static final String RECOVERED_MARKER = "_recovered";
+
+    /** Outcome of {@link #recover(File)}. */
+    static final class Result {
+        final File file;
+        /** Bytes of session data kept, excluding a rebuilt block index. */
+        final long keptBytes;
+        final long discardedBytes;
+
+        Result(File file, long keptBytes, long discardedBytes) {
+            this.file = file;
+            this.keptBytes = keptBytes;
+            this.discardedBytes = discardedBytes;
+        }
+    }
+
+    private SessionRecovery() {}
+
+    static Result recover(File file) throws IOException {
+        if (file.getName().endsWith(SegmentManifest.SUFFIX)) return recoverSegments(file);
+        long original = file.length();
+        long kept = repair(file);
+        File target = new File(file.getParentFile(), recoveredName(file.getName()));
+        File result = file.renameTo(target) ? target : file;
+        // The index may point past the cut; SessionRangeReader stops at the end of the data
+        File index = SparseIndex.fileFor(file);
+        if (result == target && index.exists()) index.renameTo(SparseIndex.fileFor(target));
+        return new Result(result, kept, original - kept);
+    }
+
+    // Cut one file back to its last complete record, keeping its name
+    private static long repair(File file) throws IOException {
+        String name = file.getName();
+        if (name.endsWith(RecordingFormat.COMPRESSED_SUFFIX)) return recoverCompressed(file);
+        if (name.endsWith(RecordingFormat.BINARY.extension)) return truncate(file, lastCompleteBinaryRecord(file));
+        return truncate(file, lastCompleteLine(file));
+    }
+
+    private static Result recoverSegments(File manifestFile) throws IOException {
+        SegmentManifest manifest = SegmentManifest.load(manifestFile);
+        long kept = 0;
+        long discarded = 0;
+        for (SegmentManifest.Entry e : manifest.entries()) {
+            File segment = new File(manifestFile.getParentFile(), e.fileName);
+            if (e.closed || !segment.exists()) {
+                kept += e.bytes;
+                continue;
+            }
+            long original = segment.length();
+            // Mapped segments are zero-filled past the last write. The mapping outlives the process,
+            // so data after the last commit is usually there too; keep at least the committed bytes.
+            truncate(segment, Math.min(original, Math.max(e.bytes, lastNonZeroByte(segment) + 1)));
+            e.bytes = repair(segment);
+            e.closed = true;
+            kept += e.bytes;
+            discarded += original - e.bytes;
+        }
+        manifest.write(true);
+        File target = new File(manifestFile.getParentFile(), recoveredName(manifestFile.getName()));
+        File result = manifestFile.renameTo(target) ? target : manifestFile;
+        return new Result(result, kept, discarded);
+    }
+
+    private static long lastNonZeroByte(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] buf = new byte[8192];
+            long pos = raf.length();
+            while (pos > 0) {
+                int n = (int) Math.min(buf.length, pos);
+                pos -= n;
+                raf.seek(pos);
+                raf.readFully(buf, 0, n);
+                for (int i = n - 1; i >= 0; i--) {
+                    if (buf[i] != 0) return pos + i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    /** "sensor_data_X.csv.z" -> "sensor_data_X_recovered.csv.z" */
+    static String recoveredName(String name) {
+        int dot = name.indexOf('.');
+        if (dot < 0) return name + RECOVERED_MARKER;
+        return name.substring(0, dot) + RECOVERED_MARKER + name.substring(dot);
+    }
+
+    private static long recoverCompressed(File file) throws IOException {
+        // Complete frames only ever contain whole records, so the torn tail is the only loss
+        BlockIndex index = BlockIndex.load(file);
+        if (index.isComplete()) return file.length();
+        long end = Math.max(index.framesEnd(), Math.min(file.length(), BlockCompressedOutputStream.HEADER_BYTES));
+        truncate(file, end);
+        if (end < BlockCompressedOutputStream.HEADER_BYTES) return end;
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            BlockCompressedOutputStream.writeIndex(out, end, index.entries());
+            out.getFD().sync();
+        }
+        return end;
+    }
+
+    private static long lastCompleteLine(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            byte[] buf = new byte[8192];
+            long pos = raf.length();
+            while (pos > 0) {
+                int n = (int) Math.min(buf.length, pos);
+                pos -= n;
+                raf.seek(pos);
+                raf.readFully(buf, 0, n);
+                for (int i = n - 1; i >= 0; i--) {
+                    if (buf[i] == '\n') return pos + i + 1;
+                }
+            }
+            return 0;
+        }
+    }
+
+    private static long lastCompleteBinaryRecord(File file) throws IOException {
+        try (PositionInputStream in = new PositionInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16))) {
+            BinaryRecordReader reader;
+            try {
+                reader = new BinaryRecordReader(in);
+            } catch (IOException e) {
+                return 0;
+            }
+            BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+            long complete = in.position;
+            try {
+                while (reader.next(r)) complete = in.position;
+            } catch (EOFException e) {
+                // torn record at the tail
+            } catch (IOException e) {
+                // garbage after the last good record
+            }
+            return complete;
+        }
+    }
+
+    private static long truncate(File file, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            if (raf.length() > length) raf.setLength(length);
+            raf.getFD().sync();
+        }
+        return length;
+    }
+
+    private static final class PositionInputStream extends FilterInputStream {
+        long position;
+
+        PositionInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) position++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long s = in.skip(n);
+            position += s;
+            return s;
+        }
+    }
+}
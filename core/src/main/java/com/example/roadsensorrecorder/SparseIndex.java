@@ -0,0 +1,116 @@
+package com.example.roadsensorrecorder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sidecar index of a session file, "&lt;session file&gt;{@value #SUFFIX}", written by
+ * {@link SparseIndexWriter}. Layout, little-endian:
+ *
+ * <pre>
+ * magic "RSRX", u8 version
+ * entries: i64 startOffset, i64 endOffset, i64 firstTimeNs, i64 lastTimeNs,
+ *          f64 minLatitude, f64 maxLatitude, f64 minLongitude, f64 maxLongitude
+ * </pre>
+ *
+ * Offsets are into the uncompressed record stream. The bounding box is NaN for blocks without a
+ * location fix. A session that was never closed lacks its last entry; the data past the last
+ * entry is the unindexed tail.
+ */
+final class SparseIndex {
+
+    static final String SUFFIX = ".idx";
+    static final byte[] MAGIC = {'R', 'S', 'R', 'X'};
+    static final int VERSION = 1;
+    static final int ENTRY_BYTES = 64;
+
+    static final class Entry {
+        final long startOffset;
+        final long endOffset;
+        final long firstNanos;
+        final long lastNanos;
+        final double minLatitude, maxLatitude, minLongitude, maxLongitude;
+
+        Entry(long startOffset, long endOffset, long firstNanos, long lastNanos,
+              double minLatitude, double maxLatitude, double minLongitude, double maxLongitude) {
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.firstNanos = firstNanos;
+            this.lastNanos = lastNanos;
+            this.minLatitude = minLatitude;
+            this.maxLatitude = maxLatitude;
+            this.minLongitude = minLongitude;
+            this.maxLongitude = maxLongitude;
+        }
+
+        boolean overlapsTime(long fromNanos, long toNanos) {
+            return firstNanos <= toNanos && lastNanos >= fromNanos;
+        }
+
+        /** False for blocks without a fix. */
+        boolean overlapsBox(double minLat, double maxLat, double minLon, double maxLon) {
+            return minLatitude <= maxLat && maxLatitude >= minLat && minLongitude <= maxLon && maxLongitude >= minLon;
+        }
+    }
+
+    private final List<Entry> entries;
+
+    private SparseIndex(List<Entry> entries) {
+        this.entries = Collections.unmodifiableList(entries);
+    }
+
+    static File fileFor(File session) {
+        return new File(session.getParentFile(), session.getName() + SUFFIX);
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    /** Uncompressed offset where the unindexed tail starts, or -1 if nothing is indexed. */
+    long indexedEnd() {
+        return entries.isEmpty() ? -1 : entries.get(entries.size() - 1).endOffset;
+    }
+
+    /** Load the index of {@code session}, or null if it has none. A torn last entry is ignored. */
+    static SparseIndex load(File session) throws IOException {
+        File file = fileFor(session);
+        if (!file.exists()) return null;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            byte[] head = new byte[MAGIC.length + 1];
+            if (read(in, head) < head.length || !Arrays.equals(Arrays.copyOf(head, MAGIC.length), MAGIC)) {
+                throw new IOException("Not a session index: " + file);
+            }
+            if (head[MAGIC.length] != VERSION) throw new IOException("Unsupported index version " + head[MAGIC.length]);
+            List<Entry> entries = new ArrayList<>();
+            byte[] b = new byte[ENTRY_BYTES];
+            while (read(in, b) == ENTRY_BYTES) {
+                entries.add(new Entry(BinaryRecordReader.getLong(b, 0), BinaryRecordReader.getLong(b, 8),
+                        BinaryRecordReader.getLong(b, 16), BinaryRecordReader.getLong(b, 24),
+                        getDouble(b, 32), getDouble(b, 40), getDouble(b, 48), getDouble(b, 56)));
+            }
+            return new SparseIndex(entries);
+        }
+    }
+
+    private static double getDouble(byte[] b, int p) {
+        return Double.longBitsToDouble(BinaryRecordReader.getLong(b, p));
+    }
+
+    private static int read(InputStream in, byte[] b) throws IOException {
+        int n = 0;
+        while (n < b.length) {
+            int r = in.read(b, n, b.length - n);
+            if (r < 0) break;
+            n += r;
+        }
+        return n;
+    }
+}
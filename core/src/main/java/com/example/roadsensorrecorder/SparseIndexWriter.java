@@ -0,0 +1,119 @@
+package com.example.roadsensorrecorder;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Builds the {@link SparseIndex} sidecar of a session file while it is written. Records are
+ * grouped into index blocks of at most {@code maxRecords} records or {@code maxNanos} of sample
+ * time; each block is stored as its uncompressed byte range, timestamp range and the bounding
+ * box of the location fixes inside it.
+ *
+ * Sits in the writer's {@link RecordBoundaryListener} chain, in front of the compression layer
+ * if any, and reports every block start as a new decodable unit so binary sessions restate
+ * their time base there and can be read from that offset.
+ */
+final class SparseIndexWriter implements RecordBoundaryListener, Closeable {
+
+    private final RecordBoundaryListener next;
+    private final CountingOutputStream data;
+    private final OutputStream out;
+    private final int maxRecords;
+    private final long maxNanos;
+    private final byte[] entry = new byte[SparseIndex.ENTRY_BYTES];
+
+    private boolean open;
+    private long startOffset;
+    private int records;
+    private long firstNanos;
+    private long lastNanos;
+    private double minLat, maxLat, minLon, maxLon;
+    private long entries;
+
+    /**
+     * @param next compression layer to notify as well, or null
+     * @param data the stream the writer encodes into; its count is the uncompressed offset
+     * @param out  receives the index file
+     */
+    SparseIndexWriter(RecordBoundaryListener next, CountingOutputStream data, OutputStream out,
+                      int maxRecords, long maxNanos) throws IOException {
+        this.next = next;
+        this.data = data;
+        this.out = out;
+        this.maxRecords = Math.max(1, maxRecords);
+        this.maxNanos = maxNanos;
+        out.write(SparseIndex.MAGIC);
+        out.write(SparseIndex.VERSION);
+    }
+
+    @Override
+    public boolean onRecordStart(long timestamp) throws IOException {
+        boolean cut = next != null && next.onRecordStart(timestamp);
+        if (open && (records >= maxRecords || (maxNanos > 0 && timestamp - firstNanos >= maxNanos))) {
+            finishEntry();
+        }
+        if (!open) {
+            open = true;
+            cut = true;
+            startOffset = data.count();
+            records = 0;
+            firstNanos = timestamp;
+            lastNanos = timestamp;
+            minLat = minLon = Double.POSITIVE_INFINITY;
+            maxLat = maxLon = Double.NEGATIVE_INFINITY;
+        }
+        records++;
+        if (timestamp < firstNanos) firstNanos = timestamp;
+        if (timestamp > lastNanos) lastNanos = timestamp;
+        return cut;
+    }
+
+    /** Widen the current block's bounding box; call after writing a record that carries a position. */
+    void location(double latitude, double longitude) {
+        if (!open || Double.isNaN(latitude) || Double.isNaN(longitude)) return;
+        if (latitude < minLat) minLat = latitude;
+        if (latitude > maxLat) maxLat = latitude;
+        if (longitude < minLon) minLon = longitude;
+        if (longitude > maxLon) maxLon = longitude;
+    }
+
+    long entryCount() {
+        return entries;
+    }
+
+    /** Push finished entries out; call after the data they describe has been flushed. */
+    void flush() throws IOException {
+        out.flush();
+    }
+
+    /** Finish the open block, which ends at the current data offset, and close the index. */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (open) finishEntry();
+            out.flush();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void finishEntry() throws IOException {
+        boolean hasFix = minLat <= maxLat;
+        int p = BinaryRecordWriter.putLong(entry, 0, startOffset);
+        p = BinaryRecordWriter.putLong(entry, p, data.count());
+        p = BinaryRecordWriter.putLong(entry, p, firstNanos);
+        p = BinaryRecordWriter.putLong(entry, p, lastNanos);
+        p = putDouble(p, hasFix ? minLat : Double.NaN);
+        p = putDouble(p, hasFix ? maxLat : Double.NaN);
+        p = putDouble(p, hasFix ? minLon : Double.NaN);
+        putDouble(p, hasFix ? maxLon : Double.NaN);
+        out.write(entry);
+        entries++;
+        open = false;
+    }
+
+    private int putDouble(int p, double v) {
+        return BinaryRecordWriter.putLong(entry, p, Double.doubleToRawLongBits(v));
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * Mergeable statistics of vertical-vibration samples: count, mean and variance (Welford's
+ * update, Chan's formula to merge), the largest magnitude, and a quantile sketch of the
+ * magnitudes. Merging two summaries gives the summary of all their samples, up to rounding of
+ * the moments, so a tile can be built from each session on its own and folded in later.
+ *
+ * The sketch counts magnitudes in logarithmic buckets, bucket i holding (GAMMA^(i-1), GAMMA^i],
+ * so a quantile is within {@code (GAMMA - 1) / (GAMMA + 1)}, under 5%, of the true value, and
+ * merging adds bucket counts. Road vibration spans a few decades, about 60 buckets.
+ */
+final class VibrationSummary {
+
+    static final double GAMMA = 1.1;
+    /** Magnitudes up to this count in the zero bucket. */
+    static final double MIN_MAGNITUDE = 1e-3;
+
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    private static final int[] NO_BUCKETS = new int[0];
+    // count, mean, m2, maxAbs, zeroCount, firstBucket, bucket count
+    private static final int FIXED_BYTES = 8 + 8 + 8 + 8 + 8 + 4 + 4;
+
+    private long count;
+    private double mean;
+    // Sum of squared deviations from the mean
+    private double m2;
+    private double maxAbs;
+    private long zeroCount;
+    private int firstBucket;
+    private int[] buckets = NO_BUCKETS;
+
+    void add(double v) {
+        count++;
+        double delta = v - mean;
+        mean += delta / count;
+        m2 += delta * (v - mean);
+        double abs = Math.abs(v);
+        if (abs > maxAbs) maxAbs = abs;
+        if (!(abs > MIN_MAGNITUDE)) {
+            zeroCount++;
+            return;
+        }
+        int bucket = (int) Math.ceil(Math.log(abs) / LOG_GAMMA);
+        cover(bucket, bucket);
+        buckets[bucket - firstBucket]++;
+    }
+
+    void merge(VibrationSummary o) {
+        if (o.count == 0) return;
+        long n = count + o.count;
+        double delta = o.mean - mean;
+        m2 += o.m2 + delta * delta * ((double) count * o.count / n);
+        mean += delta * o.count / n;
+        count = n;
+        maxAbs = Math.max(maxAbs, o.maxAbs);
+        zeroCount += o.zeroCount;
+        if (o.buckets.length == 0) return;
+        cover(o.firstBucket, o.firstBucket + o.buckets.length - 1);
+        for (int i = 0; i < o.buckets.length; i++) buckets[o.firstBucket - firstBucket + i] += o.buckets[i];
+    }
+
+    long count() {
+        return count;
+    }
+
+    double mean() {
+        return mean;
+    }
+
+    /** Population variance; 0 for fewer than two samples. */
+    double variance() {
+        return count > 1 ? m2 / count : 0;
+    }
+
+    double rms() {
+        return count > 0 ? Math.sqrt(variance() + mean * mean) : 0;
+    }
+
+    double maxAbs() {
+        return maxAbs;
+    }
+
+    /** Magnitude at quantile {@code q} in [0, 1]; NaN without samples. */
+    double quantile(double q) {
+        if (count == 0) return Double.NaN;
+        long rank = (long) Math.floor(q * (count - 1));
+        long seen = zeroCount;
+        if (rank < seen) return 0;
+        for (int i = 0; i < buckets.length; i++) {
+            seen += buckets[i];
+            if (rank < seen) return 2 * Math.pow(GAMMA, firstBucket + i) / (GAMMA + 1);
+        }
+        return maxAbs;
+    }
+
+    int encodedBytes() {
+        return FIXED_BYTES + 4 * buckets.length;
+    }
+
+    /** Little-endian, {@link #encodedBytes} long. @return the offset past it */
+    int encode(byte[] b, int p) {
+        p = BinaryRecordWriter.putLong(b, p, count);
+        p = BinaryRecordWriter.putLong(b, p, Double.doubleToRawLongBits(mean));
+        p = BinaryRecordWriter.putLong(b, p, Double.doubleToRawLongBits(m2));
+        p = BinaryRecordWriter.putLong(b, p, Double.doubleToRawLongBits(maxAbs));
+        p = BinaryRecordWriter.putLong(b, p, zeroCount);
+        p = BinaryRecordWriter.putInt(b, p, firstBucket);
+        p = BinaryRecordWriter.putInt(b, p, buckets.length);
+        for (int n : buckets) p = BinaryRecordWriter.putInt(b, p, n);
+        return p;
+    }
+
+    /** The summary encoded at {@code p}; its length is its {@link #encodedBytes}. */
+    static VibrationSummary decode(byte[] b, int p) {
+        VibrationSummary s = new VibrationSummary();
+        s.count = BinaryRecordReader.getLong(b, p);
+        s.mean = Double.longBitsToDouble(BinaryRecordReader.getLong(b, p + 8));
+        s.m2 = Double.longBitsToDouble(BinaryRecordReader.getLong(b, p + 16));
+        s.maxAbs = Double.longBitsToDouble(BinaryRecordReader.getLong(b, p + 24));
+        s.zeroCount = BinaryRecordReader.getLong(b, p + 32);
+        s.firstBucket = BinaryRecordReader.getInt(b, p + 40);
+        int n = BinaryRecordReader.getInt(b, p + 44);
+        if (n < 0 || p + FIXED_BYTES + 4L * n > b.length) throw new IllegalArgumentException("bad bucket count " + n);
+        s.buckets = n == 0 ? NO_BUCKETS : new int[n];
+        for (int i = 0; i < n; i++) s.buckets[i] = BinaryRecordReader.getInt(b, p + FIXED_BYTES + 4 * i);
+        return s;
+    }
+
+    // Grow the bucket array to include first..last
+    private void cover(int first, int last) {
+        if (buckets.length == 0) {
+            firstBucket = first;
+            buckets = new int[last - first + 1];
+            return;
+        }
+        int lastBucket = firstBucket + buckets.length - 1;
+        if (first >= firstBucket && last <= lastBucket) return;
+        int from = Math.min(first, firstBucket);
+        int to = Math.max(last, lastBucket);
+        int[] grown = new int[to - from + 1];
+        System.arraycopy(buckets, 0, grown, firstBucket - from, buckets.length);
+        firstBucket = from;
+        buckets = grown;
+    }
+
+    @Override
+    public String toString() {
+        return "n=" + count + " mean=" + mean + " rms=" + rms() + " p90=" + quantile(0.9) + " max=" + maxAbs;
+    }
+}
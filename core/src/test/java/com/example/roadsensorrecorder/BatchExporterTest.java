@@ -0,0 +1,191 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BatchExporterTest {
+
+    private static final long SEGMENT_NANOS = 5_000_000_000L;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // 40 s at 50 Hz with a fix a second; the first clock anchor comes 3 s in, then every 10 s
+    private static void record(RecordWriter w, long seed) throws IOException {
+        Random random = new Random(seed);
+        long start = 1_000_000_000_000L;
+        long nextAnchor = start + 3_000_000_000L;
+        for (long t = start; t < start + 40_000_000_000L; t += 20_000_000L) {
+            if (t >= nextAnchor) {
+                w.writeAnchor(t, RecordWriter.ANCHOR_SYSTEM_CLOCK, 1_700_000_000_000L + t / 1_000_000 + random.nextInt(3));
+                nextAnchor += 10_000_000_000L;
+            }
+            w.writeSensor(Channels.ACCELEROMETER, t, random.nextFloat(), random.nextFloat(), 9.8f + random.nextFloat());
+            w.writeSensor(Channels.GYROSCOPE, t + 1_000_000, random.nextFloat(), random.nextFloat(), random.nextFloat());
+            w.writeSensor(Channels.PRESSURE, t + 2_000_000, 1013 + random.nextFloat(), Float.NaN, Float.NaN);
+            if (t % 1_000_000_000L == 0) {
+                w.writeLocation(t, 52.5 + (t - start) * 1e-15, 13.4 + random.nextDouble() * 1e-4);
+            }
+        }
+    }
+
+    private List<File> sessions() throws IOException {
+        File csv = new File(tmp.getRoot(), "sensor_data_a.csv");
+        try (OutputStream out = new FileOutputStream(csv)) {
+            CsvRecordWriter w = new CsvRecordWriter(out, null, false, CsvPrecision.SHORTEST);
+            record(w, 1);
+            w.flush();
+        }
+        File binary = new File(tmp.getRoot(), "sensor_data_b.rsr" + RecordingFormat.COMPRESSED_SUFFIX);
+        try (BlockCompressedOutputStream out = new BlockCompressedOutputStream(new FileOutputStream(binary), 4096, 1)) {
+            int[] periods = ChannelSchema.standardPeriods();
+            periods[Channels.PRESSURE] = 40_000;
+            BinaryRecordWriter w = new BinaryRecordWriter(out, out, 0, new ChannelSchema(periods, false));
+            record(w, 2);
+            w.flush();
+        }
+        return Arrays.asList(binary, csv);
+    }
+
+    private String[] export(List<File> sessions, String name, int threads, long chunkBytes) throws IOException {
+        File out = new File(tmp.getRoot(), name);
+        assertTrue(out.mkdir());
+        BatchExporter.Report report = new BatchExporter(out, threads, chunkBytes, SEGMENT_NANOS).export(sessions);
+        assertEquals(2, report.sessions);
+        if (chunkBytes < Long.MAX_VALUE) assertTrue(report.chunks > 2 * 4);
+        assertFalse(new File(out, ".parts").exists());
+        return new String[] {
+                read(new File(out, BatchExporter.MERGED_CSV)),
+                read(new File(out, BatchExporter.TRACKS_GEOJSON)),
+                read(new File(out, BatchExporter.SEGMENTS_CSV)),
+        };
+    }
+
+    private static String read(File f) throws IOException {
+        return new String(Files.readAllBytes(f.toPath()), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void chunkedExportMatchesSequential() throws IOException {
+        List<File> sessions = sessions();
+        String[] whole = export(sessions, "whole", 1, Long.MAX_VALUE);
+        String[] chunked = export(sessions, "chunked", 4, 8192);
+        for (int i = 0; i < whole.length; i++) assertEquals("output " + i, whole[i], chunked[i]);
+
+        String[] rows = whole[0].split("\n");
+        assertEquals(BatchExporter.MERGED_HEADER.trim(), rows[0]);
+        // Three sensors at 50 Hz and a fix a second, for 40 s, twice; the merged file has no anchor rows
+        assertEquals(1 + 2 * (3 * 2000 + 40), rows.length);
+        // Sessions in name order; rows ahead of the first anchor have no wall time
+        assertTrue(rows[1].startsWith("sensor_data_a,,1000000000000,Accelerometer,"));
+        assertTrue(rows[rows.length - 1].startsWith("sensor_data_b,"));
+        assertFalse(rows[rows.length - 1].startsWith("sensor_data_b,,"));
+        // 40 s in 5 s windows per session
+        assertEquals(1 + 2 * 8, whole[2].split("\n").length);
+    }
+
+    // 60 s east at 10 m/s, 100 Hz sensors and a fix a second, resampled at a rate whose ticks miss whole seconds
+    private File resampled(String name, double rateHz) throws IOException {
+        File f = new File(tmp.getRoot(), name);
+        try (OutputStream out = new FileOutputStream(f)) {
+            BinaryRecordWriter w = new BinaryRecordWriter(out, null, 0, ChannelSchema.standard(true));
+            FixedRateResampler frames = new FixedRateResampler(w, rateHz, 32, 2_000_000_000L);
+            double metresPerDegree = 111_320 * Math.cos(Math.toRadians(52.5));
+            for (long t = 500_000; t <= 60_000_000_000L; t += 10_000_000L) {
+                frames.addSensor(Channels.ACCELEROMETER, t, 0.1f, 0.2f, 9.8f);
+                frames.addSensor(Channels.GYROSCOPE, t, 0.01f, 0.02f, 0.03f);
+                if (t % 1_000_000_000L == 500_000) frames.addLocation(t, 52.5, 13.4 + 10 * (t / 1e9) / metresPerDegree);
+            }
+            frames.flush();
+            w.flush();
+        }
+        return f;
+    }
+
+    @Test
+    public void resampledSessionsKeepOneFixPerSecond() throws IOException {
+        for (double rate : new double[] {30, 50}) {
+            File out = new File(tmp.getRoot(), "out" + (int) rate);
+            assertTrue(out.mkdir());
+            File session = resampled("sensor_data_r" + (int) rate + ".rsr", rate);
+            new BatchExporter(out, 2, 4096, SEGMENT_NANOS).export(Arrays.asList(session));
+            String tracks = read(new File(out, BatchExporter.TRACKS_GEOJSON));
+            // The frames span 59 s of fixes: a fix for each second they reach and about 590 m between them
+            assertTrue(rate + " Hz: " + tracks, tracks.contains("\"fixes\":59,") || tracks.contains("\"fixes\":60,"));
+            // No clock anchors, so the distance is the last property
+            int at = tracks.indexOf("\"distanceM\":") + "\"distanceM\":".length();
+            double distance = Double.parseDouble(tracks.substring(at, tracks.indexOf('}', at)));
+            assertEquals(rate + " Hz", 585, distance, 10);
+        }
+    }
+
+    @Test
+    public void legacySessionsAreReadAndUnreadableOnesSkipped() throws IOException {
+        // The millisecond layout of the first app versions, with a torn last line
+        File legacy = new File(tmp.getRoot(), "sensor_data_old.csv");
+        Files.write(legacy.toPath(), (CsvRecordReader.LEGACY_HEADER + "\n"
+                + "1700000000000,Accelerometer,0.1,0.2,9.8,,\n"
+                + "1700000000020,Gyroscope,0.01,0.02,0.03,,\n"
+                + "1700000001000,Location,,,,52.5,13.4\n"
+                + "1700000001010,Accel").getBytes(StandardCharsets.US_ASCII));
+        File broken = new File(tmp.getRoot(), "sensor_data_broken.rsr");
+        Files.write(broken.toPath(), "not a session".getBytes(StandardCharsets.US_ASCII));
+        File out = new File(tmp.getRoot(), "out");
+        assertTrue(out.mkdir());
+        BatchExporter.Report report = new BatchExporter(out, 2, 8192, SEGMENT_NANOS).export(Arrays.asList(broken, legacy));
+
+        assertEquals(1, report.sessions);
+        assertEquals(1, report.skipped.size());
+        assertTrue(report.skipped.get(0), report.skipped.get(0).startsWith("sensor_data_broken: "));
+        String[] rows = read(new File(out, BatchExporter.MERGED_CSV)).split("\n");
+        assertEquals(4, rows.length);
+        assertTrue(rows[1], rows[1].startsWith("sensor_data_old,,1700000000000000000,Accelerometer,0.1"));
+        assertTrue(rows[3], rows[3].startsWith("sensor_data_old,,1700000001000000000,Location,"));
+    }
+
+    @Test
+    public void segmentedSessionsExportAsOne() throws IOException {
+        File segmentedDir = new File(tmp.getRoot(), "segmented");
+        File singleDir = new File(tmp.getRoot(), "single");
+        assertTrue(segmentedDir.mkdir() && singleDir.mkdir());
+        for (SegmentPolicy policy : new SegmentPolicy[] {new SegmentPolicy(64 * 1024, 0), SegmentPolicy.NONE}) {
+            File base = new File(policy.enabled() ? segmentedDir : singleDir, "sensor_data_s.csv");
+            try (RecordingSession session = RecordingSession.open(base, RecordingFormat.CSV, 0, ChannelSchema.standard(false),
+                    CsvPrecision.SHORTEST, new DurabilityPolicy(0, 0, false, false), policy, IndexPolicy.NONE, 0)) {
+                record(session.writer(), 3);
+                session.commit();
+            }
+        }
+        // What else the app leaves next to a segmented session
+        Files.write(new File(segmentedDir, "sensor_data_s" + FeatureFileWriter.SUFFIX).toPath(),
+                FeatureFileWriter.HEADER.getBytes(StandardCharsets.US_ASCII));
+        List<File> found = BatchExporter.sessionFiles(Arrays.asList(segmentedDir.getPath()));
+        assertEquals(Arrays.asList(new File(segmentedDir, "sensor_data_s" + SegmentManifest.SUFFIX)), found);
+        assertTrue(SegmentManifest.dataFiles(found.get(0)).size() > 2);
+
+        File out = new File(tmp.getRoot(), "out");
+        File twin = new File(tmp.getRoot(), "twin");
+        assertTrue(out.mkdir() && twin.mkdir());
+        BatchExporter.Report report = new BatchExporter(out, 4, 8192, SEGMENT_NANOS).export(found);
+        assertEquals(1, report.sessions);
+        assertTrue(report.skipped.isEmpty());
+        assertEquals(1 + 3 * 2000 + 40, read(new File(out, BatchExporter.MERGED_CSV)).split("\n").length);
+        new BatchExporter(twin, 4, 8192, SEGMENT_NANOS).export(BatchExporter.sessionFiles(Arrays.asList(singleDir.getPath())));
+        for (String name : new String[] {BatchExporter.MERGED_CSV, BatchExporter.TRACKS_GEOJSON, BatchExporter.SEGMENTS_CSV}) {
+            assertEquals(name, read(new File(twin, name)), read(new File(out, name)));
+        }
+    }
+}
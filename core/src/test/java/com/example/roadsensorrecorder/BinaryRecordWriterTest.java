@@ -0,0 +1,112 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class BinaryRecordWriterTest {
+
+    private static ChannelSchema schema() {
+        int[] periods = ChannelSchema.standardPeriods();
+        periods[Channels.MAGNETOMETER] = 20_000;
+        periods[Channels.PRESSURE] = 100_000;
+        return new ChannelSchema(periods, true);
+    }
+
+    // Every record type, with timestamps that step back as well as forward
+    private static void record(RecordWriter w, boolean flushOften) throws IOException {
+        Random random = new Random(5);
+        long t = 1_000_000_000_000L;
+        w.writeAnchor(t, RecordWriter.ANCHOR_SYSTEM_CLOCK, 1_700_000_000_000L);
+        w.writeRate(t, 5000, Float.NaN);
+        for (int i = 0; i < 2000; i++) {
+            t += 5_000_000 + random.nextInt(1000);
+            w.writeSensor(Channels.ACCELEROMETER, t, random.nextFloat(), -random.nextFloat(), 9.81f + (float) random.nextGaussian());
+            w.writeSensor(Channels.GYROSCOPE, t - 700_000, (float) random.nextGaussian(), 0f, -0f);
+            if (i % 4 == 0) w.writeSensor(Channels.MAGNETOMETER, t + 10, 20.5f, -3.25f, 41f);
+            if (i % 20 == 0) w.writeSensor(Channels.PRESSURE, t - 3_000_000, 1013.25f + random.nextFloat(), Float.NaN, Float.NaN);
+            w.writeFrame(t, random.nextFloat(), Float.NaN, 9.8f, 0.5f, 0.25f, Float.NaN,
+                    i % 2 == 0 ? Double.NaN : 52.5 + i * 1e-7, 13.4 - i * 1e-7);
+            if (i % 200 == 0) {
+                w.writeLocation(t - 40_000_000, 52.5 + random.nextDouble() * 1e-3, 13.4 + random.nextDouble() * 1e-3);
+                w.writeAnchor(t, RecordWriter.ANCHOR_LOCATION_FIX, 1_700_000_000_000L + i * 5);
+                w.writeDropped(Channels.GYROSCOPE, t, i / 10);
+                w.writeSummary(Channels.ACCELEROMETER, t, 200, 0.75f, 3.5f);
+                w.writeEvent(t, RecordWriter.EVENT_JERK, 180.5f);
+                w.writeRate(t, 20_000, 12.5f);
+                w.writeChannelStats(Channels.MAGNETOMETER, t, 50, 49.5f, 50.25f, Float.NaN);
+                w.writePipelineStats(t, 17, 123_456_789_012L, 1.5f, 12.25f, 40f);
+                if (flushOften) w.flush();
+            }
+        }
+        w.flush();
+    }
+
+    private static String csv(ChannelSchema schema, boolean flushOften) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        record(new CsvRecordWriter(out, null, schema, CsvPrecision.SHORTEST), flushOften);
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    // Read back through the converter, so every record type is compared field by field as CSV
+    private static String convert(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryRecordReader reader = new BinaryRecordReader(in)) {
+            CsvRecordWriter csv = new CsvRecordWriter(out, null, reader.schema(), CsvPrecision.SHORTEST);
+            BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+            while (reader.next(r)) BinaryCsvConverter.write(r, csv);
+            csv.flush();
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void binaryRoundTripKeepsEveryRecord() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        record(new BinaryRecordWriter(out, null, 0, schema()), false);
+        String expected = csv(schema(), false);
+        assertEquals(expected, convert(new ByteArrayInputStream(out.toByteArray())));
+        assertTrue(expected.split("\n").length > 2000 * 3);
+    }
+
+    @Test
+    public void compressedRoundTripKeepsEveryRecord() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        // Small blocks and a flush every 200 rows: many blocks, each with continuation frames
+        try (BlockCompressedOutputStream blocks = new BlockCompressedOutputStream(out, 4096, Deflater.BEST_SPEED)) {
+            record(new BinaryRecordWriter(blocks, blocks, 0, schema()), true);
+        }
+        BlockCompressedInputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(csv(schema(), true), convert(in));
+        assertFalse(in.isTruncated());
+    }
+
+    @Test
+    public void undeclaredChannelsAreRejected() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryRecordWriter w = new BinaryRecordWriter(out, null, 0, ChannelSchema.standard(false));
+        int header = out.size();
+        try {
+            w.writeSensor(Channels.PRESSURE, 10, 1013f, Float.NaN, Float.NaN);
+            fail("pressure is not declared");
+        } catch (IllegalArgumentException expected) {
+            // nothing written
+        }
+        try {
+            w.writeFrame(10, 0, 0, 9.8f, 0, 0, 0, Double.NaN, Double.NaN);
+            fail("frames need a resampled schema");
+        } catch (IllegalStateException expected) {
+            // nothing written
+        }
+        w.flush();
+        assertEquals(header, out.size());
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class BlockCompressedStreamTest {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int SAMPLES = 6000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // 60 s of 100 Hz accelerometer, flushed like a group commit every commitEvery samples (0: never)
+    private File write(String name, int commitEvery) throws IOException {
+        File f = new File(tmp.getRoot(), name);
+        Random random = new Random(7);
+        try (BlockCompressedOutputStream blocks = new BlockCompressedOutputStream(
+                new FileOutputStream(f), BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION)) {
+            BinaryRecordWriter w = new BinaryRecordWriter(blocks, blocks, 0, ChannelSchema.standard(false));
+            for (int i = 0; i < SAMPLES; i++) {
+                w.writeSensor(Channels.ACCELEROMETER, i * 10_000_000L, 0.1f, 0.2f, 9.81f + (float) random.nextGaussian());
+                if (commitEvery > 0 && i % commitEvery == commitEvery - 1) w.flush();
+            }
+            w.flush();
+        }
+        return f;
+    }
+
+    private static BinaryRecordReader open(File f) throws IOException {
+        return new BinaryRecordReader(new BlockCompressedInputStream(new BufferedInputStream(new FileInputStream(f))));
+    }
+
+    private static String read(BinaryRecordReader records) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        try (BinaryRecordReader reader = records) {
+            BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+            while (reader.next(r)) {
+                if (r.type == BinaryRecordReader.RECORD_SENSOR) sb.append(r.timestamp).append(' ').append(r.z).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String dump(List<BlockIndex.Entry> entries) {
+        StringBuilder sb = new StringBuilder();
+        for (BlockIndex.Entry e : entries) {
+            sb.append(e.fileOffset).append(' ').append(e.logicalOffset).append(' ')
+                    .append(e.firstTimestamp).append(' ').append(e.lastTimestamp).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void commitsKeepBlocksOpen() throws IOException {
+        File once = write("once.rsr.z", 0);
+        File committed = write("committed.rsr.z", 100);
+        String expected = read(open(once));
+        assertEquals(SAMPLES, expected.split("\n").length);
+        assertEquals(expected, read(open(committed)));
+
+        // Sixty commits, yet blocks are still cut by size. A commit costs a frame header and a
+        // Deflate block header; on this noise a fresh block per commit cost 40% more than none.
+        BlockIndex index = BlockIndex.load(committed);
+        assertEquals(BlockIndex.load(once).entries().size(), index.entries().size());
+        assertTrue(committed.length() + " vs " + once.length(), committed.length() < once.length() * 1.3);
+
+        // Reading from a later block continues from its first frame
+        BlockIndex.Entry second = index.entries().get(1);
+        String tail;
+        try (BinaryRecordReader header = open(committed)) {
+            tail = read(new BinaryRecordReader(index.openAt(committed, 1), header));
+        }
+        assertTrue(tail.startsWith(second.firstTimestamp + " "));
+        assertTrue(expected.endsWith(tail));
+
+        // Without the footer, walking the frames gives the same block table
+        try (RandomAccessFile raf = new RandomAccessFile(committed, "rw")) {
+            raf.setLength(index.framesEnd());
+        }
+        BlockIndex scanned = BlockIndex.load(committed);
+        assertFalse(scanned.isComplete());
+        assertEquals(dump(index.entries()), dump(scanned.entries()));
+    }
+}
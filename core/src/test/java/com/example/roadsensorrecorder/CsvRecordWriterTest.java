@@ -0,0 +1,145 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CsvRecordWriterTest {
+
+    private static String reference(double v, int precision) {
+        return new BigDecimal(v).setScale(precision, RoundingMode.HALF_UP).toPlainString();
+    }
+
+    private static String fixed(double v, int precision) {
+        AsciiBuffer b = new AsciiBuffer(16);
+        b.append(v, precision);
+        return ascii(b);
+    }
+
+    private static String fixed(float v, int precision) {
+        AsciiBuffer b = new AsciiBuffer(16);
+        b.append(v, precision);
+        return ascii(b);
+    }
+
+    private static String ascii(AsciiBuffer b) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            b.writeTo(out);
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return new String(out.toByteArray(), StandardCharsets.US_ASCII);
+    }
+
+    @Test
+    public void fixedFloatsMatchExactRounding() {
+        Random random = new Random(1);
+        for (int i = 0; i < 200_000; i++) {
+            float v = (float) (random.nextGaussian() * Math.pow(10, random.nextInt(8) - 3));
+            int precision = random.nextInt(AsciiBuffer.MAX_PRECISION + 1);
+            assertEquals(v + " @" + precision, reference(v, precision), fixed(v, precision));
+        }
+    }
+
+    @Test
+    public void fixedDoublesMatchExactRounding() {
+        Random random = new Random(2);
+        for (int i = 0; i < 200_000; i++) {
+            double v = (random.nextDouble() - 0.5) * 360;
+            int precision = random.nextInt(AsciiBuffer.MAX_PRECISION + 1);
+            assertEquals(v + " @" + precision, reference(v, precision), fixed(v, precision));
+        }
+    }
+
+    @Test
+    public void fixedEdgeCases() {
+        assertEquals("0.000", fixed(0.0, 3));
+        assertEquals("0.000", fixed(-0.0, 3));
+        assertEquals("0.000", fixed(-0.0004, 3));
+        assertEquals("-0.001", fixed(-0.0005, 3));
+        assertEquals("10.000", fixed(9.9996, 3));
+        assertEquals("9.999", fixed(9.9995, 3));
+        assertEquals("3", fixed(2.5, 0));
+        assertEquals("-3", fixed(-2.5, 0));
+        assertEquals("0.125", fixed(0.125f, 3));
+        assertEquals("0.13", fixed(0.125f, 2));
+        assertEquals("123456789012345680.00", fixed(123456789012345680.0, 2));
+        assertEquals("NaN", fixed(Double.NaN, 2));
+        assertEquals("-Infinity", fixed(Float.NEGATIVE_INFINITY, 2));
+        AsciiBuffer b = new AsciiBuffer(1);
+        b.append(Long.MIN_VALUE).append(',').append(0L).append(',').append(Long.MAX_VALUE);
+        assertEquals(Long.MIN_VALUE + ",0," + Long.MAX_VALUE, ascii(b));
+    }
+
+    @Test
+    public void shortestKeepsToStringDigits() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvRecordWriter writer = new CsvRecordWriter(out);
+        writer.writeSensor(Channels.ACCELEROMETER, 123456789L, 0.1f, -9.81f, 1e-7f);
+        writer.writeLocation(987654321L, 52.520008, -13.404954);
+        writer.writeDropped(Channels.GYROSCOPE, 5L, 42);
+        writer.writeRate(6L, 40_000, 3.5f);
+        String expected = CsvRecordWriter.HEADER
+                + "123456789,Accelerometer," + 0.1f + "," + -9.81f + "," + 1e-7f + ",,\n"
+                + "987654321,Location,,,," + 52.520008 + "," + -13.404954 + "\n"
+                + "5,Dropped:Gyroscope,42,,,,\n"
+                + "6,Rate,40000," + 3.5f + ",,,\n";
+        assertEquals(expected, new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void fixedPrecisionRows() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvRecordWriter writer = new CsvRecordWriter(out, null, true, new CsvPrecision(3, 6));
+        writer.writeSensor(Channels.GYROSCOPE, 10L, 0.1f, -9.8125f, 2f);
+        writer.writeFrame(20L, 1f, 2f, 3f, Float.NaN, Float.NaN, Float.NaN, 52.5200084, Double.NaN);
+        String expected = CsvRecordWriter.RESAMPLED_HEADER
+                + "10,Gyroscope,,,,0.100,-9.813,2.000,,\n"
+                + "20,Resampled,1.000,2.000,3.000,,,,52.520008,\n";
+        assertEquals(expected, new String(out.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void schemaRowsAndSingleValueChannels() throws IOException {
+        int[] periods = ChannelSchema.standardPeriods();
+        periods[Channels.MAGNETOMETER] = 20_000;
+        periods[Channels.PRESSURE] = 100_000;
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        BinaryRecordWriter writer = new BinaryRecordWriter(binary, null, 0, new ChannelSchema(periods, false));
+        writer.writeSensor(Channels.PRESSURE, 10L, 1013.25f, 0f, 0f);
+        writer.writeSensor(Channels.MAGNETOMETER, 20L, 1f, 2f, 3f);
+        writer.flush();
+
+        ByteArrayOutputStream csv = new ByteArrayOutputStream();
+        BinaryCsvConverter.convert(new ByteArrayInputStream(binary.toByteArray()), csv);
+        String expected = CsvRecordWriter.HEADER
+                + "0,Channel:Accelerometer,1,0,3,,\n"
+                + "0,Channel:Gyroscope,4,0,3,,\n"
+                + "0,Channel:Location,0,1000000,2,,\n"
+                + "0,Channel:Magnetometer,2,20000,3,,\n"
+                + "0,Channel:Pressure,6,100000,1,,\n"
+                + "10,Pressure," + 1013.25f + ",,,,\n"
+                + "20,Magnetometer," + 1f + "," + 2f + "," + 3f + ",,\n";
+        assertEquals(expected, new String(csv.toByteArray(), StandardCharsets.US_ASCII));
+
+        CsvRecordReader reader = new CsvRecordReader(new ByteArrayInputStream(csv.toByteArray()));
+        BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+        assertTrue(reader.next(r));
+        assertEquals(Channels.PRESSURE, r.channel);
+        assertEquals(1013.25f, r.x, 0f);
+        assertTrue(Float.isNaN(r.y));
+        assertTrue(reader.next(r));
+        assertEquals(Channels.MAGNETOMETER, r.channel);
+        assertEquals(3f, r.z, 0f);
+        assertFalse(reader.next(r));
+    }
+}
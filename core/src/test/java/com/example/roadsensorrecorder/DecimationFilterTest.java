@@ -0,0 +1,98 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DecimationFilterTest {
+
+    private static final double INPUT_HZ = 200;
+    private static final int FACTOR = 4;
+
+    @Test
+    public void cutoff_isFractionOfOutputRate() {
+        DecimationFilter f = new DecimationFilter(1, INPUT_HZ, FACTOR, 3);
+        assertEquals(20.0, f.cutoffHz(), 1e-9);
+    }
+
+    @Test
+    public void emitsOneOutputPerFactorInputs() {
+        DecimationFilter f = new DecimationFilter(2, INPUT_HZ, FACTOR, 2);
+        float[] out = new float[3];
+        int outputs0 = 0;
+        int outputs1 = 0;
+        for (int i = 0; i < 400; i++) {
+            if (f.process(0, 1f, 2f, 3f, out)) outputs0++;
+            // Channels decimate independently
+            if (i % 2 == 0 && f.process(1, 1f, 2f, 3f, out)) outputs1++;
+        }
+        assertEquals(100, outputs0);
+        assertEquals(50, outputs1);
+    }
+
+    @Test
+    public void dc_passesWithUnityGain() {
+        DecimationFilter f = new DecimationFilter(1, INPUT_HZ, FACTOR, 3);
+        float[] out = new float[3];
+        for (int i = 0; i < 2000; i++) f.process(0, 9.81f, -1f, 0f, out);
+        assertEquals(9.81, out[0], 1e-4);
+        assertEquals(-1.0, out[1], 1e-5);
+        assertEquals(0.0, out[2], 1e-9);
+    }
+
+    @Test
+    public void passband_keepsAmplitude() {
+        // 5 Hz road input, well below the 20 Hz cutoff: within 0.1 dB
+        assertEquals(1.0, gain(5), 0.012);
+        // Butterworth: -3 dB at the cutoff
+        assertEquals(Math.sqrt(0.5), gain(20), 0.01);
+    }
+
+    @Test
+    public void stopband_attenuatesAliases() {
+        // 40 Hz would fold to 10 Hz at the 50 Hz output; sixth order gives ~36 dB at twice the cutoff
+        assertTrue("40 Hz gain " + gain(40), gain(40) < 0.02);
+        // Anything above the output Nyquist frequency is down by more than 40 dB
+        for (double hz = 45; hz < INPUT_HZ / 2; hz += 5) {
+            assertTrue(hz + " Hz gain " + gain(hz), gain(hz) < 0.01);
+        }
+    }
+
+    @Test
+    public void gain_isMonotonic() {
+        double previous = gain(1);
+        for (double hz = 2; hz < INPUT_HZ / 2; hz += 3) {
+            double g = gain(hz);
+            assertTrue(hz + " Hz", g <= previous + 1e-3);
+            previous = g;
+        }
+    }
+
+    @Test
+    public void reset_clearsState() {
+        DecimationFilter f = new DecimationFilter(1, INPUT_HZ, FACTOR, 3);
+        float[] out = new float[3];
+        for (int i = 0; i < 1000; i++) f.process(0, 100f, 100f, 100f, out);
+        f.reset();
+        for (int i = 0; i < FACTOR; i++) f.process(0, 0f, 0f, 0f, out);
+        assertEquals(0.0, out[0], 0.0);
+    }
+
+    // Steady-state peak amplitude of the decimated output for a unit sine at hz
+    private static double gain(double hz) {
+        DecimationFilter f = new DecimationFilter(1, INPUT_HZ, FACTOR, 3);
+        float[] out = new float[3];
+        double peak = 0;
+        int n = (int) (INPUT_HZ * 20);
+        for (int i = 0; i < n; i++) {
+            // Phase-shifted copies on y and z so decimation cannot land only on zero crossings
+            double t = i / INPUT_HZ;
+            float x = (float) Math.sin(2 * Math.PI * hz * t);
+            float y = (float) Math.cos(2 * Math.PI * hz * t);
+            if (f.process(0, x, y, 0f, out) && i > n / 2) {
+                peak = Math.max(peak, Math.hypot(out[0], out[1]));
+            }
+        }
+        return peak;
+    }
+}
@@ -0,0 +1,85 @@
+package com.example.roadsensorrecorder;
+
+/**
+ * {@link SensorSource} for JVM tests. Samples pushed with {@link #emit} are held in a simulated
+ * hardware FIFO and handed to the listener in bursts, the way a batched sensor hub delivers
+ * them, or one by one when batching is off.
+ */
+final class FakeSensorSource implements SensorSource {
+
+    private final int samplingPeriodUs;
+    private final int fifoMaxEventCount;
+
+    private final int[] channels;
+    private final long[] timestamps;
+    private final float[] values;
+    private int queued;
+
+    private Listener listener;
+    private int burstSize;
+    int bursts;
+
+    FakeSensorSource(int samplingPeriodUs, int fifoMaxEventCount) {
+        this.samplingPeriodUs = samplingPeriodUs;
+        this.fifoMaxEventCount = fifoMaxEventCount;
+        channels = new int[fifoMaxEventCount];
+        timestamps = new long[fifoMaxEventCount];
+        values = new float[fifoMaxEventCount * 3];
+    }
+
+    @Override
+    public void start(Listener listener, SensorBatching batching) {
+        this.listener = listener;
+        int latencyUs = batching.reportLatencyUs(samplingPeriodUs, fifoMaxEventCount, 0, 1, RecordingPipeline.RING_CAPACITY);
+        burstSize = Math.max(1, latencyUs / samplingPeriodUs);
+    }
+
+    /** Samples the hub would deliver in one wake-up. */
+    int burstSize() {
+        return burstSize;
+    }
+
+    void emit(int channel, long timestampNanos, float x, float y, float z) {
+        if (listener == null) return;
+        if (queued == fifoMaxEventCount) throw new IllegalStateException("hardware FIFO overflow");
+        channels[queued] = channel;
+        timestamps[queued] = timestampNanos;
+        values[queued * 3] = x;
+        values[queued * 3 + 1] = y;
+        values[queued * 3 + 2] = z;
+        queued++;
+        if (queued >= burstSize) deliver();
+    }
+
+    int queued() {
+        return queued;
+    }
+
+    @Override
+    public void stop(long flushTimeoutMillis, Runnable onStopped) {
+        deliver();
+        listener = null;
+        if (onStopped != null) onStopped.run();
+    }
+
+    @Override
+    public void setSamplingPeriod(int periodUs) {
+        // Rate changes are not simulated; the FIFO keeps its burst size
+    }
+
+    @Override
+    public void stopNow() {
+        queued = 0;
+        listener = null;
+    }
+
+    private void deliver() {
+        if (queued == 0) return;
+        bursts++;
+        for (int i = 0; i < queued; i++) {
+            // Delivery delay is not simulated
+            listener.onSensorSample(channels[i], timestamps[i], timestamps[i], values[i * 3], values[i * 3 + 1], values[i * 3 + 2]);
+        }
+        queued = 0;
+    }
+}
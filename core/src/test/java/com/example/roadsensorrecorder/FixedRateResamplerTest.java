@@ -0,0 +1,175 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FixedRateResamplerTest {
+
+    private static final long MS = 1_000_000L;
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    private final BinaryRecordWriter writer;
+
+    public FixedRateResamplerTest() throws IOException {
+        writer = new BinaryRecordWriter(out, null, 0, ChannelSchema.standard(true));
+    }
+
+    // Linear in time on every axis, so interpolation must reproduce them exactly
+    private static float accel(long t) {
+        return (float) (t / 1e9);
+    }
+
+    private static float gyro(long t) {
+        return (float) (1 - t / 1e9);
+    }
+
+    private static double latitude(long t) {
+        return 52 + t / 1e12;
+    }
+
+    /**
+     * Accelerometer at 3 ms past every 10 ms, gyroscope at 7 ms past, a fix every
+     * {@code fixEveryMs} at half that past, over [fromMs, toMs); each sensor stops at its own end.
+     */
+    private static void drive(FixedRateResampler frames, long fromMs, long toMs, long gyroEndMs, long fixEveryMs)
+            throws IOException {
+        for (long ms = fromMs; ms < toMs; ms++) {
+            long t = ms * MS;
+            if (ms % 10 == 3) frames.addSensor(Channels.ACCELEROMETER, t, accel(t), 2 * accel(t), -accel(t));
+            if (ms % 10 == 7 && ms < gyroEndMs) frames.addSensor(Channels.GYROSCOPE, t, gyro(t), 0f, 0.5f);
+            if (ms % fixEveryMs == fixEveryMs / 2) frames.addLocation(t, latitude(t), 13.4);
+        }
+    }
+
+    private List<BinaryRecordReader.Record> frames() throws IOException {
+        writer.flush();
+        List<BinaryRecordReader.Record> frames = new ArrayList<>();
+        try (BinaryRecordReader reader = new BinaryRecordReader(new ByteArrayInputStream(out.toByteArray()))) {
+            BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+            while (reader.next(r)) {
+                if (r.type != BinaryRecordReader.RECORD_FRAME) continue;
+                frames.add(r);
+                r = new BinaryRecordReader.Record();
+            }
+        }
+        return frames;
+    }
+
+    @Test
+    public void linearInputsInterpolateOntoAlignedTicks() throws IOException {
+        for (double rate : new double[] {50, 30}) {
+            out.reset();
+            // A look-behind of over a second of samples, so fixes a second apart are waited for
+            FixedRateResampler resampler = new FixedRateResampler(
+                    new BinaryRecordWriter(out, null, 0, ChannelSchema.standard(true)), rate, 128, 2_000 * MS);
+            drive(resampler, 0, 5000, 5000, 1000);
+            resampler.flush();
+            long period = resampler.periodNanos();
+            List<BinaryRecordReader.Record> frames = frames();
+
+            // Every tick from the first sample (3 ms) to the newest (4997 ms), on multiples of the period
+            long first = (3 * MS + period - 1) / period;
+            long last = 4997 * MS / period;
+            assertEquals(rate + " Hz", last - first + 1, frames.size());
+            assertEquals(frames.size(), resampler.frameCount());
+            assertEquals(0, resampler.discardedCount());
+            for (int i = 0; i < frames.size(); i++) {
+                BinaryRecordReader.Record f = frames.get(i);
+                long t = f.timestamp;
+                assertEquals((first + i) * period, t);
+                assertEquals(accel(t), f.x, 1e-5);
+                assertEquals(2 * accel(t), f.y, 1e-5);
+                assertEquals(-accel(t), f.z, 1e-5);
+                assertEquals(gyro(t), f.gx, 1e-5);
+                assertEquals(0.5f, f.gz, 0f);
+                if (t < 500 * MS) {
+                    // Before the first fix
+                    assertTrue(Double.isNaN(f.latitude));
+                } else if (t <= 4500 * MS) {
+                    assertEquals(latitude(t), f.latitude, 1e-9);
+                    assertEquals(13.4, f.longitude, 1e-9);
+                } else {
+                    // Past the last fix, held within maxHold
+                    assertEquals(latitude(4500 * MS), f.latitude, 1e-9);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void laggingChannelIsHeldThenNaN() throws IOException {
+        FixedRateResampler resampler = new FixedRateResampler(writer, 50, 16, 200 * MS);
+        // The gyroscope stops at 1 s; fixes come ten times a second
+        drive(resampler, 0, 3000, 1000, 100);
+        // Frames kept coming while the gyroscope was silent: the accelerometer's look-behind filled
+        assertTrue(resampler.frameCount() > 2500 / 20);
+        resampler.flush();
+        assertEquals(0, resampler.discardedCount());
+
+        List<BinaryRecordReader.Record> frames = frames();
+        long previous = 0;
+        for (BinaryRecordReader.Record f : frames) {
+            long t = f.timestamp;
+            assertEquals(previous + 20 * MS, t);
+            previous = t;
+            assertEquals(accel(t), f.x, 1e-5);
+            if (t <= 997 * MS) {
+                assertEquals(gyro(t), f.gx, 1e-5);
+            } else if (t <= 1197 * MS) {
+                assertEquals(gyro(997 * MS), f.gx, 0f);
+            } else {
+                assertTrue(t + " ms", Float.isNaN(f.gx) && Float.isNaN(f.gy) && Float.isNaN(f.gz));
+            }
+        }
+        assertEquals(2980 * MS, previous);
+    }
+
+    @Test
+    public void gapInEveryChannelIsSkippedNotBridged() throws IOException {
+        FixedRateResampler resampler = new FixedRateResampler(writer, 50, 32, 200 * MS);
+        drive(resampler, 0, 2000, 2000, 100);
+        // Asleep for 8 s
+        drive(resampler, 10_000, 12_000, 12_000, 100);
+        resampler.flush();
+
+        List<BinaryRecordReader.Record> frames = frames();
+        int resumed = -1;
+        for (int i = 1; i < frames.size(); i++) {
+            long step = frames.get(i).timestamp - frames.get(i - 1).timestamp;
+            if (step == 20 * MS) continue;
+            assertEquals("one gap only", -1, resumed);
+            resumed = i;
+        }
+        assertTrue("frames bridged the gap", resumed > 0);
+        // The last samples before the gap are held for maxHold, then ticks resume after it
+        BinaryRecordReader.Record held = frames.get(resumed - 1);
+        assertEquals(2180 * MS, held.timestamp);
+        assertEquals(accel(1993 * MS), held.x, 0f);
+        assertEquals(gyro(1997 * MS), held.gx, 0f);
+        BinaryRecordReader.Record after = frames.get(resumed);
+        assertEquals(10_020 * MS, after.timestamp);
+        assertEquals(accel(after.timestamp), after.x, 1e-5);
+        // The fix before the gap is too old to hold, the first after it is still to come
+        assertTrue(Double.isNaN(after.latitude));
+        assertEquals(10_080 * MS, frames.get(resumed + 3).timestamp);
+        assertEquals(latitude(10_080 * MS), frames.get(resumed + 3).latitude, 1e-9);
+    }
+
+    @Test
+    public void outOfOrderSamplesAreDiscarded() throws IOException {
+        FixedRateResampler resampler = new FixedRateResampler(writer, 50, 8, 200 * MS);
+        resampler.addSensor(Channels.ACCELEROMETER, 10 * MS, 1f, 1f, 1f);
+        resampler.addSensor(Channels.ACCELEROMETER, 10 * MS, 2f, 2f, 2f);
+        resampler.addSensor(Channels.ACCELEROMETER, 5 * MS, 3f, 3f, 3f);
+        // Channels a frame has no place for are ignored rather than discarded
+        resampler.addSensor(Channels.PRESSURE, 1 * MS, 1013f, Float.NaN, Float.NaN);
+        assertEquals(2, resampler.discardedCount());
+    }
+}
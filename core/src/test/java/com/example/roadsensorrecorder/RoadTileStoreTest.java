@@ -0,0 +1,161 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class RoadTileStoreTest {
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    @Test
+    public void geohashMatchesReferenceStrings() {
+        // Well-known cells: the Berlin TV tower and the Greenwich observatory
+        assertEquals("u33dc1", Geohash.toString(Geohash.encode(52.5208, 13.4094, 30), 6));
+        assertEquals("gcpuzgpd", Geohash.toString(Geohash.encode(51.4769, -0.0005, 40), 8));
+        double[] b = new double[4];
+        long cell = Geohash.encode(52.5208, 13.4094, 35);
+        Geohash.bounds(cell, 35, b);
+        assertTrue(b[0] <= 52.5208 && 52.5208 < b[1] && b[2] <= 13.4094 && 13.4094 < b[3]);
+    }
+
+    @Test
+    public void mergedSummaryMatchesOneSummaryOfAllSamples() {
+        Random random = new Random(3);
+        double[] samples = new double[20_000];
+        VibrationSummary all = new VibrationSummary();
+        VibrationSummary a = new VibrationSummary();
+        VibrationSummary b = new VibrationSummary();
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = random.nextGaussian() * (i % 7 == 0 ? 3 : 0.4);
+            all.add(samples[i]);
+            (i < 6_000 ? a : b).add(samples[i]);
+        }
+        a.merge(b);
+        assertEquals(all.count(), a.count());
+        assertEquals(all.mean(), a.mean(), 1e-12);
+        assertEquals(all.variance(), a.variance(), 1e-9);
+        double[] magnitudes = new double[samples.length];
+        for (int i = 0; i < samples.length; i++) magnitudes[i] = Math.abs(samples[i]);
+        Arrays.sort(magnitudes);
+        for (double q : new double[] {0.1, 0.5, 0.9, 0.99}) {
+            assertEquals(all.quantile(q), a.quantile(q), 0);
+            double exact = magnitudes[(int) Math.floor(q * (samples.length - 1))];
+            assertEquals("q" + q, exact, a.quantile(q), exact * (VibrationSummary.GAMMA - 1) / (VibrationSummary.GAMMA + 1));
+        }
+        byte[] encoded = new byte[a.encodedBytes()];
+        assertEquals(encoded.length, a.encode(encoded, 0));
+        assertEquals(a.toString(), VibrationSummary.decode(encoded, 0).toString());
+    }
+
+    // 60 s along a street at 10 m/s, 100 Hz accelerometer, a fix a second; westward if reverse
+    private File drive(String name, boolean reverse, long seed) throws IOException {
+        File f = new File(tmp.getRoot(), name);
+        Random random = new Random(seed);
+        try (OutputStream out = new FileOutputStream(f)) {
+            BinaryRecordWriter w = new BinaryRecordWriter(out, 0);
+            double metresPerDegree = 111_320 * Math.cos(Math.toRadians(52.52));
+            for (long t = 0; t <= 60_000_000_000L; t += 10_000_000L) {
+                w.writeSensor(Channels.ACCELEROMETER, t, 0.1f, 0.2f, 9.81f + (float) random.nextGaussian());
+                if (t % 1_000_000_000L == 0) {
+                    double metres = 10 * (t / 1e9);
+                    w.writeLocation(t, 52.52, 13.40 + (reverse ? 600 - metres : metres) / metresPerDegree);
+                }
+            }
+            w.flush();
+        }
+        return f;
+    }
+
+    private static String dump(List<RoadTileStore.Tile> tiles) {
+        StringBuilder sb = new StringBuilder();
+        for (RoadTileStore.Tile t : tiles) {
+            sb.append(t.geohash()).append('/').append(t.headingDegrees()).append(' ').append(t.summary.count())
+                    .append(' ').append((float) t.summary.rms()).append(' ').append(t.summary.quantile(0.9)).append('\n');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void incrementalMergeMatchesSingleBuild() throws IOException {
+        File east = drive("sensor_data_east.rsr", false, 1);
+        File west = drive("sensor_data_west.rsr", true, 2);
+        File incremental = new File(tmp.getRoot(), "incremental.rst");
+        RoadTileStore store = RoadTileStore.open(incremental, RoadTileStore.DEFAULT_PRECISION);
+        assertTrue(store.add(east));
+        store = RoadTileStore.open(incremental, 1);
+        assertEquals(RoadTileStore.DEFAULT_PRECISION, store.precision());
+        assertTrue(store.add(west));
+        assertFalse(store.add(east));
+
+        RoadTileStore once = RoadTileStore.open(new File(tmp.getRoot(), "once.rst"), RoadTileStore.DEFAULT_PRECISION);
+        once.add(west);
+        once.add(east);
+        List<RoadTileStore.Tile> all = once.query(52, 53, 13, 14);
+        assertEquals(dump(all), dump(RoadTileStore.open(incremental, 1).query(52, 53, 13, 14)));
+
+        // 600 m east along one street: a few cells, each driven once per direction
+        long samples = 0;
+        for (RoadTileStore.Tile t : all) {
+            assertTrue(t.headingDegrees() == 90 || t.headingDegrees() == 270);
+            samples += t.summary.count();
+        }
+        assertTrue(all.size() >= 6 && samples > 2 * 5000);
+
+        // A box around the first 100 m sees only its cells
+        List<RoadTileStore.Tile> start = once.query(52.519, 52.521, 13.3999, 13.4013);
+        assertTrue(!start.isEmpty() && start.size() < all.size());
+        assertTrue(once.query(10, 11, 10, 11).isEmpty());
+
+        // A torn append is dropped, and the next one goes after the last intact block
+        once.compact();
+        long compacted = new File(tmp.getRoot(), "once.rst").length();
+        try (RandomAccessFile raf = new RandomAccessFile(new File(tmp.getRoot(), "once.rst"), "rw")) {
+            raf.seek(compacted);
+            raf.write(new byte[] {100, 0, 0, 0, 1, 2, 3});
+        }
+        RoadTileStore reopened = RoadTileStore.open(new File(tmp.getRoot(), "once.rst"), 1);
+        assertEquals(dump(all), dump(reopened.query(52, 53, 13, 14)));
+        assertTrue(reopened.add(drive("sensor_data_again.rsr", false, 3)));
+        assertTrue(RoadTileStore.open(new File(tmp.getRoot(), "once.rst"), 1).contains("sensor_data_again"));
+    }
+
+    @Test
+    public void resampledSessionBinsAtAnyRate() throws IOException {
+        // 30 Hz ticks never fall on whole seconds, yet the frames still give a fix a second
+        File f = new File(tmp.getRoot(), "sensor_data_r30.rsr");
+        Random random = new Random(4);
+        try (OutputStream out = new FileOutputStream(f)) {
+            BinaryRecordWriter w = new BinaryRecordWriter(out, null, 0, ChannelSchema.standard(true));
+            FixedRateResampler frames = new FixedRateResampler(w, 30, 32, 2_000_000_000L);
+            double metresPerDegree = 111_320 * Math.cos(Math.toRadians(52.52));
+            for (long t = 0; t <= 60_000_000_000L; t += 10_000_000L) {
+                frames.addSensor(Channels.ACCELEROMETER, t, 0.1f, 0.2f, 9.81f + (float) random.nextGaussian());
+                if (t % 1_000_000_000L == 0) frames.addLocation(t, 52.52, 13.40 + 10 * (t / 1e9) / metresPerDegree);
+            }
+            frames.flush();
+            w.flush();
+        }
+        RoadTileStore store = RoadTileStore.open(new File(tmp.getRoot(), "r30.rst"), RoadTileStore.DEFAULT_PRECISION);
+        assertTrue(store.add(f));
+        List<RoadTileStore.Tile> all = store.query(52, 53, 13, 14);
+        long samples = 0;
+        for (RoadTileStore.Tile t : all) {
+            assertEquals(90, t.headingDegrees(), 0);
+            samples += t.summary.count();
+        }
+        assertTrue(all.size() >= 3 && samples > 1000);
+    }
+}
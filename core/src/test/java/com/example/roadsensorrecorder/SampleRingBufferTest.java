@@ -0,0 +1,176 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class SampleRingBufferTest {
+
+    @Test
+    public void capacityIsRoundedUpToAPowerOfTwo() {
+        assertEquals(16, new SampleRingBuffer(10, 1).capacity());
+        assertEquals(16, new SampleRingBuffer(16, 1).capacity());
+    }
+
+    @Test
+    public void samplesKeepTheirValues() {
+        SampleRingBuffer ring = new SampleRingBuffer(8, Channels.COUNT);
+        assertTrue(ring.offer(Channels.GYROSCOPE, 100, 105, 1f, -2f, 3.5f));
+        assertTrue(ring.offer(Channels.LOCATION, 200, 210, 52.5, 13.4, 1_700_000_000_000L));
+        assertEquals(2, ring.size());
+
+        SampleRingBuffer.Sample s = new SampleRingBuffer.Sample();
+        assertTrue(ring.poll(s));
+        assertEquals(Channels.GYROSCOPE, s.channel);
+        assertEquals(100, s.timestamp);
+        assertEquals(105, s.enqueuedNanos);
+        assertEquals(-2f, s.y, 0f);
+        assertEquals(3.5f, s.z, 0f);
+        assertTrue(ring.poll(s));
+        assertEquals(Channels.LOCATION, s.channel);
+        assertEquals(210, s.enqueuedNanos);
+        assertEquals(52.5, s.latitude, 0);
+        assertEquals(13.4, s.longitude, 0);
+        assertEquals(1_700_000_000_000L, s.extra);
+        assertFalse(ring.poll(s));
+        assertEquals(0, ring.size());
+    }
+
+    private static SampleRingBuffer full(BackpressurePolicy policy) {
+        SampleRingBuffer ring = new SampleRingBuffer(8, Channels.COUNT);
+        ring.setPolicy(policy);
+        for (int t = 0; t < 8; t++) assertTrue(ring.offer(Channels.ACCELEROMETER, t, t, 0f, 0f, 0f));
+        return ring;
+    }
+
+    private static String drain(SampleRingBuffer ring) {
+        StringBuilder sb = new StringBuilder();
+        SampleRingBuffer.Sample s = new SampleRingBuffer.Sample();
+        while (ring.poll(s)) sb.append(Channels.name(s.channel).charAt(0)).append(s.timestamp).append(' ');
+        return sb.toString().trim();
+    }
+
+    @Test
+    public void dropNewestRejectsIncomingSamples() {
+        SampleRingBuffer ring = full(BackpressurePolicy.DROP_NEWEST);
+        assertFalse(ring.offer(Channels.ACCELEROMETER, 8, 8, 0f, 0f, 0f));
+        assertFalse(ring.offer(Channels.GYROSCOPE, 9, 9, 0f, 0f, 0f));
+        assertFalse(ring.offer(Channels.LOCATION, 10, 10, 52.5, 13.4, 0L));
+        assertEquals(1, ring.droppedCount(Channels.ACCELEROMETER));
+        assertEquals(1, ring.droppedCount(Channels.GYROSCOPE));
+        assertEquals(1, ring.droppedCount(Channels.LOCATION));
+        assertEquals("A0 A1 A2 A3 A4 A5 A6 A7", drain(ring));
+
+        ring.resetDroppedCounts();
+        assertEquals(0, ring.droppedCount(Channels.ACCELEROMETER));
+        assertEquals(0, ring.droppedCount(Channels.GYROSCOPE));
+    }
+
+    @Test
+    public void dropOldestEvictsAndChargesTheEvictedChannel() {
+        SampleRingBuffer ring = full(BackpressurePolicy.DROP_OLDEST);
+        for (int t = 8; t < 11; t++) assertTrue(ring.offer(Channels.GYROSCOPE, t, t, 0f, 0f, 0f));
+        // The accelerometer lost its three oldest samples to make room for the gyroscope
+        assertEquals(3, ring.droppedCount(Channels.ACCELEROMETER));
+        assertEquals(0, ring.droppedCount(Channels.GYROSCOPE));
+        assertEquals("A3 A4 A5 A6 A7 G8 G9 G10", drain(ring));
+    }
+
+    @Test
+    public void decimateThinsEachChannelAboveTheHighWatermark() {
+        // 16 slots, throttling from 12 queued, one sample in three kept per channel
+        SampleRingBuffer ring = new SampleRingBuffer(16, Channels.COUNT);
+        ring.setPolicy(BackpressurePolicy.DECIMATE);
+        ring.setDecimationFactor(3);
+        for (int t = 0; t < 12; t++) assertTrue(ring.offer(Channels.ACCELEROMETER, t, t, 0f, 0f, 0f));
+        boolean[] kept = new boolean[6];
+        for (int t = 12; t < 18; t++) kept[t - 12] = ring.offer(Channels.ACCELEROMETER, t, t, 0f, 0f, 0f);
+        assertEquals("[true, false, false, true, false, false]", Arrays.toString(kept));
+        assertEquals(4, ring.droppedCount(Channels.ACCELEROMETER));
+        // Each channel keeps its own phase, so a rare channel is not starved by a busy one
+        assertTrue(ring.offer(Channels.GYROSCOPE, 18, 18, 0f, 0f, 0f));
+        assertFalse(ring.offer(Channels.GYROSCOPE, 19, 19, 0f, 0f, 0f));
+        assertEquals(1, ring.droppedCount(Channels.GYROSCOPE));
+        // 15 queued: the next kept sample fills the ring, after which even kept ones are rejected
+        assertTrue(ring.offer(Channels.ACCELEROMETER, 20, 20, 0f, 0f, 0f));
+        for (int t = 21; t < 24; t++) assertFalse(ring.offer(Channels.ACCELEROMETER, t, t, 0f, 0f, 0f));
+        assertEquals(16, ring.size());
+        assertEquals(4 + 3, ring.droppedCount(Channels.ACCELEROMETER));
+
+        // Below the watermark again, every sample is kept
+        SampleRingBuffer.Sample s = new SampleRingBuffer.Sample();
+        for (int i = 0; i < 8; i++) assertTrue(ring.poll(s));
+        for (int t = 24; t < 28; t++) assertTrue(ring.offer(Channels.ACCELEROMETER, t, t, 0f, 0f, 0f));
+        assertEquals(4 + 3, ring.droppedCount(Channels.ACCELEROMETER));
+    }
+
+    // Two sensor threads offer into a small ring while the IO thread drains it
+    @Test
+    public void twoProducersOneConsumerLoseAndRepeatNothing() throws Exception {
+        final int perProducer = 200_000;
+        final int[] producerChannels = {Channels.ACCELEROMETER, Channels.GYROSCOPE};
+        SampleRingBuffer ring = new SampleRingBuffer(256, Channels.COUNT);
+        boolean[][] accepted = new boolean[2][perProducer];
+        boolean[][] seen = new boolean[2][perProducer];
+        AtomicBoolean produced = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Thread[] producers = new Thread[2];
+        for (int p = 0; p < 2; p++) {
+            final int id = p;
+            producers[p] = new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    accepted[id][i] = ring.offer(producerChannels[id], i, 2L * i, (float) i, (float) id, (float) -i);
+                }
+            });
+        }
+        Thread consumer = new Thread(() -> {
+            SampleRingBuffer.Sample s = new SampleRingBuffer.Sample();
+            long[] last = {-1, -1};
+            try {
+                while (true) {
+                    boolean done = produced.get();
+                    if (!ring.poll(s)) {
+                        // Producers finished before this empty poll: nothing more can arrive
+                        if (done) return;
+                        Thread.yield();
+                        continue;
+                    }
+                    int id = s.channel == producerChannels[0] ? 0 : 1;
+                    int i = (int) s.timestamp;
+                    assertEquals(s.channel, producerChannels[id]);
+                    assertTrue("out of order", s.timestamp > last[id]);
+                    last[id] = s.timestamp;
+                    assertFalse("duplicate " + i, seen[id][i]);
+                    seen[id][i] = true;
+                    assertEquals(2L * i, s.enqueuedNanos);
+                    assertEquals((float) i, s.x, 0f);
+                    assertEquals((float) id, s.y, 0f);
+                    assertEquals((float) -i, s.z, 0f);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        consumer.start();
+        for (Thread t : producers) t.start();
+        for (Thread t : producers) t.join();
+        produced.set(true);
+        consumer.join();
+        if (failure.get() != null) throw new AssertionError(failure.get());
+
+        for (int id = 0; id < 2; id++) {
+            int acceptedCount = 0;
+            for (int i = 0; i < perProducer; i++) {
+                assertEquals("sample " + i + " of producer " + id, accepted[id][i], seen[id][i]);
+                if (accepted[id][i]) acceptedCount++;
+            }
+            assertEquals(perProducer - acceptedCount, ring.droppedCount(producerChannels[id]));
+        }
+        assertEquals(0, ring.size());
+    }
+}
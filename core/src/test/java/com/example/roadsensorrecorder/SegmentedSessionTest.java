@@ -0,0 +1,129 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SegmentedSessionTest {
+
+    private static final long PERIOD_NANOS = 10_000_000L;
+    private static final int SAMPLES = 3000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // 30 s of 100 Hz accelerometer and a fix a second
+    private File record(SegmentPolicy segments) throws IOException {
+        File base = new File(tmp.getRoot(), "sensor_data_s.rsr");
+        try (RecordingSession session = RecordingSession.open(base, RecordingFormat.BINARY, 0,
+                ChannelSchema.standard(false), CsvPrecision.SHORTEST, new DurabilityPolicy(0, 0, false, false),
+                segments, IndexPolicy.NONE, 0)) {
+            RecordWriter w = session.writer();
+            for (int i = 0; i < SAMPLES; i++) {
+                long t = i * PERIOD_NANOS;
+                w.writeSensor(Channels.ACCELEROMETER, t, 0.1f, 0.2f, 9.81f);
+                if (i % 100 == 99) w.writeLocation(t, 52.5 + i * 1e-6, 13.4);
+            }
+            return session.file;
+        }
+    }
+
+    // Checks each closed segment against its manifest entry and returns the records of all of them
+    private static int checkSegments(SegmentManifest manifest) throws IOException {
+        int records = 0;
+        long previousLast = Long.MIN_VALUE;
+        List<SegmentManifest.Entry> entries = manifest.entries();
+        for (int i = 0; i < entries.size(); i++) {
+            SegmentManifest.Entry e = entries.get(i);
+            assertEquals(SegmentManifest.segmentName("sensor_data_s.rsr", i), e.fileName);
+            assertTrue(e.closed);
+            File segment = new File(manifest.file.getParentFile(), e.fileName);
+            assertEquals(e.bytes, segment.length());
+            // Every segment is a complete file whose records span the manifest's time range
+            long first = Long.MAX_VALUE;
+            long last = Long.MIN_VALUE;
+            try (BinaryRecordReader reader = new BinaryRecordReader(new BufferedInputStream(new FileInputStream(segment)))) {
+                BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+                while (reader.next(r)) {
+                    records++;
+                    first = Math.min(first, r.timestamp);
+                    last = Math.max(last, r.timestamp);
+                }
+            }
+            assertEquals(first, e.firstNanos);
+            assertEquals(last, e.lastNanos);
+            assertTrue(first > previousLast);
+            previousLast = last;
+        }
+        return records;
+    }
+
+    @Test
+    public void rollsOverBySize() throws IOException {
+        SegmentManifest manifest = SegmentManifest.load(record(new SegmentPolicy(16 * 1024, 0)));
+        List<SegmentManifest.Entry> entries = manifest.entries();
+        assertTrue(entries.size() > 2);
+        assertEquals(SAMPLES + SAMPLES / 100, checkSegments(manifest));
+        // Each full segment stops on the record that reached the limit
+        for (int i = 0; i < entries.size() - 1; i++) {
+            long bytes = entries.get(i).bytes;
+            assertTrue(bytes + " bytes", bytes >= 16 * 1024 && bytes < 16 * 1024 + 64);
+        }
+        assertTrue(entries.get(entries.size() - 1).bytes < 16 * 1024 + 64);
+    }
+
+    @Test
+    public void rollsOverBySampleTime() throws IOException {
+        SegmentManifest manifest = SegmentManifest.load(record(new SegmentPolicy(0, 5_000_000_000L)));
+        List<SegmentManifest.Entry> entries = manifest.entries();
+        assertEquals(6, entries.size());
+        assertEquals(SAMPLES + SAMPLES / 100, checkSegments(manifest));
+        for (SegmentManifest.Entry e : entries) assertEquals(5_000_000_000L - PERIOD_NANOS, e.lastNanos - e.firstNanos);
+    }
+
+    @Test
+    public void manifestRoundTrips() throws IOException {
+        SegmentManifest manifest = new SegmentManifest(new File(tmp.getRoot(), SegmentManifest.manifestName("sensor_data_m.csv.z")));
+        assertEquals("sensor_data_m.manifest.csv", manifest.file.getName());
+        SegmentManifest.Entry full = manifest.add(SegmentManifest.segmentName("sensor_data_m.csv.z", 0));
+        full.bytes = 123_456;
+        full.firstNanos = -5;
+        full.lastNanos = 9_000_000_000L;
+        full.closed = true;
+        // Opened but still without a record
+        manifest.add(SegmentManifest.segmentName("sensor_data_m.csv.z", 1));
+        manifest.write(false);
+
+        SegmentManifest loaded = SegmentManifest.load(manifest.file);
+        assertEquals(2, loaded.entries().size());
+        SegmentManifest.Entry a = loaded.entries().get(0);
+        assertEquals("sensor_data_m_part000.csv.z", a.fileName);
+        assertEquals(123_456, a.bytes);
+        assertEquals(-5, a.firstNanos);
+        assertEquals(9_000_000_000L, a.lastNanos);
+        assertTrue(a.closed);
+        SegmentManifest.Entry b = loaded.entries().get(1);
+        assertEquals("sensor_data_m_part001.csv.z", b.fileName);
+        assertEquals(0, b.bytes);
+        assertFalse(b.hasRecords());
+        assertFalse(b.closed);
+        assertEquals(new File(tmp.getRoot(), "sensor_data_m_part001.csv.z"), loaded.segmentFiles().get(1));
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedHeaderIsNotAManifest() throws IOException {
+        File f = new File(tmp.getRoot(), "sensor_data_t" + SegmentManifest.SUFFIX);
+        Files.write(f.toPath(), "Segment,File,By".getBytes(StandardCharsets.US_ASCII));
+        SegmentManifest.load(f);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SensorBatchingTest {
+
+    private static final int PERIOD_US = 20_000;
+
+    @Test
+    public void continuousOrNoFifo_registersWithoutLatency() {
+        assertEquals(0, SensorBatching.CONTINUOUS.reportLatencyUs(PERIOD_US, 3000, 0, 2, 16384));
+        assertEquals(0, new SensorBatching(true, 10_000_000).reportLatencyUs(PERIOD_US, 0, 0, 2, 16384));
+    }
+
+    @Test
+    public void latency_fillsHalfOfFifoShare() {
+        SensorBatching batching = new SensorBatching(true, Integer.MAX_VALUE);
+        // 3000-event FIFO shared by two sensors: 750 events = 15 s at 50 Hz
+        assertEquals(15_000_000, batching.reportLatencyUs(PERIOD_US, 3000, 0, 2, 1 << 20));
+        // A larger reserved share wins over the even split
+        assertEquals(20_000_000, batching.reportLatencyUs(PERIOD_US, 3000, 2000, 2, 1 << 20));
+    }
+
+    @Test
+    public void latency_boundedByCapAndRing() {
+        assertEquals(10_000_000, new SensorBatching(true, 10_000_000).reportLatencyUs(PERIOD_US, 3000, 0, 2, 1 << 20));
+        // 1024-slot ring: a burst from both sensors may take a quarter, 128 events each
+        assertEquals(128 * PERIOD_US, new SensorBatching(true, Integer.MAX_VALUE).reportLatencyUs(PERIOD_US, 3000, 0, 2, 1024));
+    }
+
+    @Test
+    public void bursts_reachRingWithoutLoss() {
+        SampleRingBuffer ring = new SampleRingBuffer(RecordingPipeline.RING_CAPACITY, Channels.COUNT);
+        FakeSensorSource source = new FakeSensorSource(PERIOD_US, 4000);
+        source.start((channel, t, delivered, x, y, z) -> ring.offer(channel, t, delivered, x, y, z), new SensorBatching(true, 10_000_000));
+        assertTrue(source.burstSize() > 1);
+
+        SampleRingBuffer.Sample s = new SampleRingBuffer.Sample();
+        long expected = 0;
+        for (int i = 0; i < 10_000; i++) {
+            source.emit(Channels.ACCELEROMETER, i, i, 0f, 9.81f);
+            if (source.queued() == 0) {
+                // A burst was delivered: the IO thread drains it in one pass
+                while (ring.poll(s)) assertEquals(expected++, s.timestamp);
+            }
+        }
+        source.stop(1000, null);
+        while (ring.poll(s)) assertEquals(expected++, s.timestamp);
+
+        assertEquals(10_000, expected);
+        assertEquals(0, ring.droppedCount(Channels.ACCELEROMETER));
+        assertTrue(source.bursts < 10_000 / 10);
+    }
+
+    @Test
+    public void stop_flushesFifoBeforeStopping() {
+        SampleRingBuffer ring = new SampleRingBuffer(1024, Channels.COUNT);
+        FakeSensorSource source = new FakeSensorSource(PERIOD_US, 4000);
+        source.start((channel, t, delivered, x, y, z) -> ring.offer(channel, t, delivered, x, y, z), new SensorBatching(true, 10_000_000));
+        for (int i = 0; i < 37; i++) source.emit(Channels.GYROSCOPE, i, 0f, 0f, 0f);
+        assertEquals(0, ring.size());
+
+        boolean[] stopped = {false};
+        source.stop(1000, () -> {
+            assertEquals("flushed samples must be queued before the stop callback", 37, ring.size());
+            stopped[0] = true;
+        });
+        assertTrue(stopped[0]);
+    }
+}
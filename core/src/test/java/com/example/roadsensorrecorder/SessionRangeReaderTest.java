@@ -0,0 +1,130 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SessionRangeReaderTest {
+
+    private static final long SECOND = 1_000_000_000L;
+    // Index blocks of two seconds
+    private static final IndexPolicy INDEXED = new IndexPolicy(true, 100_000, 2 * SECOND);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // 60 s of 100 Hz accelerometer and a fix a second, driving north
+    private File record(String name, RecordingFormat format, int blockSize, IndexPolicy indexing) throws IOException {
+        File file = new File(tmp.getRoot(), name);
+        try (RecordingSession session = RecordingSession.open(file, format, blockSize, ChannelSchema.standard(false),
+                CsvPrecision.SHORTEST, new DurabilityPolicy(0, 0, false, false), SegmentPolicy.NONE, indexing, 0)) {
+            RecordWriter w = session.writer();
+            for (int i = 0; i < 6000; i++) {
+                long t = i * 10_000_000L;
+                w.writeSensor(Channels.ACCELEROMETER, t, i % 7, 0.2f, 9.81f);
+                if (i % 100 == 50) w.writeLocation(t, latitude(t), 13.4);
+            }
+        }
+        return file;
+    }
+
+    private static double latitude(long t) {
+        return 52 + t / 1e12;
+    }
+
+    private static List<String> read(SessionRangeReader.Cursor cursor) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (SessionRangeReader.Cursor c = cursor) {
+            BinaryRecordReader.Record r = new BinaryRecordReader.Record();
+            while (c.next(r)) {
+                // The reader leaves fields a record does not carry as they were
+                boolean fix = r.channel == Channels.LOCATION;
+                records.add(r.type + "," + r.channel + "," + r.timestamp + "," + (fix ? r.latitude : r.x));
+            }
+        }
+        return records;
+    }
+
+    private static List<String> scan(File file, long fromNanos, long toNanos) throws IOException {
+        SessionRangeReader reader = SessionRangeReader.open(file);
+        assertFalse(reader.isIndexed());
+        return read(reader.timeRange(fromNanos, toNanos));
+    }
+
+    // Garbage over an index block, so only a reader that skips it still gets the right records
+    private static void clobber(File file, SparseIndex.Entry e) throws IOException {
+        byte[] junk = new byte[(int) (e.endOffset - e.startOffset)];
+        Arrays.fill(junk, (byte) 0x7f);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(e.startOffset);
+            raf.write(junk);
+        }
+    }
+
+    @Test
+    public void indexedTimeRangeMatchesAFullScan() throws IOException {
+        long from = 21_500_000_000L;
+        long to = 33_250_000_000L;
+        for (String name : new String[] {"sensor_data_i.rsr", "sensor_data_i.rsr.z", "sensor_data_i.csv.z"}) {
+            RecordingFormat format = name.contains(".csv") ? RecordingFormat.CSV : RecordingFormat.BINARY;
+            int blockSize = name.endsWith(RecordingFormat.COMPRESSED_SUFFIX) ? 4096 : 0;
+            File indexed = record(name, format, blockSize, INDEXED);
+            File plain = record("plain_" + name, format, blockSize, IndexPolicy.NONE);
+
+            List<String> expected = scan(plain, from, to);
+            assertEquals(1176 + 12, expected.size());
+            SessionRangeReader reader = SessionRangeReader.open(indexed);
+            assertTrue(reader.isIndexed());
+            assertEquals(name, expected, read(reader.timeRange(from, to)));
+            // Whole file, and nothing at all
+            assertEquals(name, scan(plain, Long.MIN_VALUE, Long.MAX_VALUE), read(reader.timeRange(Long.MIN_VALUE, Long.MAX_VALUE)));
+            assertTrue(read(reader.timeRange(100 * SECOND, 200 * SECOND)).isEmpty());
+        }
+    }
+
+    @Test
+    public void timeRangeSkipsBlocksOutsideIt() throws IOException {
+        File indexed = record("sensor_data_p.rsr", RecordingFormat.BINARY, 0, INDEXED);
+        File plain = record("plain.rsr", RecordingFormat.BINARY, 0, IndexPolicy.NONE);
+        List<SparseIndex.Entry> entries = SparseIndex.load(indexed).entries();
+        assertEquals(30, entries.size());
+        long from = entries.get(10).firstNanos;
+        long to = entries.get(12).lastNanos;
+        clobber(indexed, entries.get(5));
+        clobber(indexed, entries.get(20));
+
+        assertEquals(scan(plain, from, to), read(SessionRangeReader.open(indexed).timeRange(from, to)));
+    }
+
+    @Test
+    public void boxReturnsTheBlocksWithAFixInside() throws IOException {
+        File indexed = record("sensor_data_b.rsr", RecordingFormat.BINARY, 0, INDEXED);
+        File plain = record("plain.rsr", RecordingFormat.BINARY, 0, IndexPolicy.NONE);
+        List<SparseIndex.Entry> entries = SparseIndex.load(indexed).entries();
+        // Fixes from 10.5 s to 15.5 s, which are in the blocks of 10 s to 16 s
+        double minLat = latitude(10 * SECOND);
+        double maxLat = latitude(16 * SECOND);
+        List<String> expected = new ArrayList<>();
+        for (SparseIndex.Entry e : entries) {
+            if (e.overlapsBox(minLat, maxLat, 13, 14)) expected.addAll(scan(plain, e.firstNanos, e.lastNanos));
+        }
+        assertEquals(3 * 200 + 3 * 2, expected.size());
+        clobber(indexed, entries.get(0));
+        clobber(indexed, entries.get(29));
+
+        SessionRangeReader reader = SessionRangeReader.open(indexed);
+        assertEquals(expected, read(reader.box(minLat, maxLat, 13, 14)));
+        assertTrue(read(reader.box(minLat, maxLat, 14, 15)).isEmpty());
+        // Without an index a box query falls back to the whole file
+        assertEquals(scan(plain, Long.MIN_VALUE, Long.MAX_VALUE), read(SessionRangeReader.open(plain).box(minLat, maxLat, 13, 14)));
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.roadsensorrecorder;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class SessionRecoveryTest {
+
+    private static final int SAMPLES = 3000;
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    // 30 s of 100 Hz accelerometer and a fix a second; ends on a fix, whose last byte is not zero
+    private static void record(RecordWriter w, int from, int to) throws IOException {
+        for (int i = from; i < to; i++) {
+            long t = i * 10_000_000L;
+            w.writeSensor(Channels.ACCELEROMETER, t, 0.1f * (i % 7), 0.2f, 9.81f);
+            if (i % 100 == 99) w.writeLocation(t, 52.5 + i * 1e-6, 13.4 + i * 1e-6);
+        }
+    }
+
+    private static int count(RecordReader reader) throws IOException {
+        int n = 0;
+        try (RecordReader r = reader) {
+            BinaryRecordReader.Record record = new BinaryRecordReader.Record();
+            while (r.next(record)) n++;
+        }
+        return n;
+    }
+
+    private static InputStream in(File f) throws IOException {
+        return new BufferedInputStream(new FileInputStream(f));
+    }
+
+    private static void append(File f, byte[] bytes) throws IOException {
+        try (OutputStream out = new FileOutputStream(f, true)) {
+            out.write(bytes);
+        }
+    }
+
+    @Test
+    public void csvIsCutAtTheLastCompleteLine() throws IOException {
+        File f = new File(tmp.getRoot(), "sensor_data_c.csv");
+        try (OutputStream out = new FileOutputStream(f)) {
+            CsvRecordWriter w = new CsvRecordWriter(out, null, ChannelSchema.standard(false), CsvPrecision.SHORTEST);
+            record(w, 0, SAMPLES);
+            w.flush();
+        }
+        long complete = f.length();
+        append(f, "29990000000,Accelerometer,0.1,0.".getBytes("US-ASCII"));
+
+        SessionRecovery.Result result = SessionRecovery.recover(f);
+        assertEquals("sensor_data_c_recovered.csv", result.file.getName());
+        assertEquals(complete, result.keptBytes);
+        assertEquals(32, result.discardedBytes);
+        assertEquals(complete, result.file.length());
+        assertEquals(SAMPLES + SAMPLES / 100, count(new CsvRecordReader(in(result.file))));
+    }
+
+    @Test
+    public void binaryIsCutAtTheLastCompleteRecord() throws IOException {
+        File f = new File(tmp.getRoot(), "sensor_data_b.rsr");
+        try (OutputStream out = new FileOutputStream(f)) {
+            BinaryRecordWriter w = new BinaryRecordWriter(out, null, 0, ChannelSchema.standard(false));
+            record(w, 0, SAMPLES);
+            w.flush();
+        }
+        long complete = f.length();
+        // A sensor record torn inside its values
+        append(f, new byte[] {(byte) Channels.ACCELEROMETER, 20, 1, 2, 3});
+
+        SessionRecovery.Result result = SessionRecovery.recover(f);
+        assertEquals("sensor_data_b_recovered.rsr", result.file.getName());
+        assertEquals(complete, result.keptBytes);
+        assertEquals(5, result.discardedBytes);
+        assertEquals(SAMPLES + SAMPLES / 100, count(new BinaryRecordReader(in(result.file))));
+    }
+
+    @Test
+    public void compressedIsCutAtTheLastFrameAndIndexed() throws IOException {
+        // The same session twice: once cut off after its last commit, once closed normally
+        File f = new File(tmp.getRoot(), "sensor_data_z.rsr.z");
+        File closed = new File(tmp.getRoot(), "closed.rsr.z");
+        FileOutputStream crashed = new FileOutputStream(f);
+        BlockCompressedOutputStream open = new BlockCompressedOutputStream(crashed, 4096, Deflater.DEFAULT_COMPRESSION);
+        BinaryRecordWriter w = new BinaryRecordWriter(open, open, 0, ChannelSchema.standard(false));
+        try (BlockCompressedOutputStream twin = new BlockCompressedOutputStream(
+                new FileOutputStream(closed), 4096, Deflater.DEFAULT_COMPRESSION)) {
+            BinaryRecordWriter t = new BinaryRecordWriter(twin, twin, 0, ChannelSchema.standard(false));
+            for (int i = 0; i < SAMPLES; i += 250) {
+                record(w, i, i + 250);
+                record(t, i, i + 250);
+                w.flush();
+                t.flush();
+            }
+        }
+        crashed.close();
+        long complete = f.length();
+        // The frame being written when the process died: a header and part of its data
+        byte[] torn = new byte[BlockCompressedOutputStream.FRAME_HEADER_BYTES + 100];
+        System.arraycopy(BlockCompressedOutputStream.CONTINUATION_MAGIC, 0, torn, 0, 4);
+        BinaryRecordWriter.putInt(torn, 4, 4000);
+        BinaryRecordWriter.putInt(torn, 8, 9000);
+        append(f, torn);
+
+        SessionRecovery.Result result = SessionRecovery.recover(f);
+        assertEquals("sensor_data_z_recovered.rsr.z", result.file.getName());
+        assertEquals(complete, result.keptBytes);
+        assertEquals(torn.length, result.discardedBytes);
+        // The rebuilt footer is the one a normal close writes
+        BlockIndex index = BlockIndex.load(result.file);
+        BlockIndex expected = BlockIndex.load(closed);
+        assertTrue(index.isComplete());
+        assertEquals(complete, index.framesEnd());
+        assertEquals(expected.entries().size(), index.entries().size());
+        for (int i = 0; i < index.entries().size(); i++) {
+            BlockIndex.Entry a = expected.entries().get(i);
+            BlockIndex.Entry b = index.entries().get(i);
+            assertEquals(a.fileOffset, b.fileOffset);
+            assertEquals(a.logicalOffset, b.logicalOffset);
+            assertEquals(a.firstTimestamp, b.firstTimestamp);
+            assertEquals(a.lastTimestamp, b.lastTimestamp);
+        }
+        assertTrue(index.entries().size() > 5);
+        assertEquals(Files.size(closed.toPath()), Files.size(result.file.toPath()));
+        BlockCompressedInputStream data = new BlockCompressedInputStream(in(result.file));
+        assertEquals(SAMPLES + SAMPLES / 100, count(new BinaryRecordReader(data)));
+        assertFalse(data.isTruncated());
+    }
+
+    @Test
+    public void mappedSegmentsLoseOnlyTheirZeroFilledTail() throws IOException {
+        File base = new File(tmp.getRoot(), "sensor_data_m.rsr");
+        RecordingSession session = RecordingSession.open(base, RecordingFormat.BINARY, 0, ChannelSchema.standard(false),
+                CsvPrecision.SHORTEST, new DurabilityPolicy(0, 0, false, false), new SegmentPolicy(16 * 1024, 0),
+                IndexPolicy.NONE, 0);
+        record(session.writer(), 0, SAMPLES / 2);
+        session.commit();
+        // Written into the mapping after the last commit; the pages outlive the process
+        record(session.writer(), SAMPLES / 2, SAMPLES);
+        long written = session.encodedBytes();
+        int segments = session.segmentCount();
+        assertTrue(segments > 2);
+        // Killed here: the open segment is still at its preallocated, zero-filled length
+
+        SessionRecovery.Result result = SessionRecovery.recover(session.file);
+        assertEquals("sensor_data_m_recovered" + SegmentManifest.SUFFIX, result.file.getName());
+        assertEquals(written, result.keptBytes);
+        SegmentManifest manifest = SegmentManifest.load(result.file);
+        assertEquals(segments, manifest.entries().size());
+        int records = 0;
+        long bytes = 0;
+        for (SegmentManifest.Entry e : manifest.entries()) {
+            assertTrue(e.closed);
+            File segment = new File(tmp.getRoot(), e.fileName);
+            assertEquals(e.bytes, segment.length());
+            bytes += e.bytes;
+            records += count(new BinaryRecordReader(in(segment)));
+        }
+        assertEquals(written, bytes);
+        assertEquals(SAMPLES + SAMPLES / 100, records);
+    }
+}
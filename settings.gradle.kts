@@ -21,3 +21,5 @@ dependencyResolutionManagement {
 
 rootProject.name = "RoadSensorRecorder"
 include(":app")
+include(":core")
+include(":benchmarks")